@@ -0,0 +1,683 @@
+package com.codeforces.commons.cache;
+
+import org.jetbrains.annotations.Contract;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory cache with bounded number of entries both per section and in total.
+ * <p>
+ * Eviction follows W-TinyLFU policy: new entries get into a small LRU window and are admitted to the main space
+ * (segmented into probation and protected parts) only if they were requested more often than the eviction victim.
+ * Access frequencies are estimated with {@link FrequencySketch}. When a section exceeds its own limit, the least
+ * recently used entry of the section is evicted, so a new entry is always readable right after it has been put.
+ * <p>
+ * Reads do not take locks. Hits are recorded into striped lossy buffers, which are replayed against the eviction
+ * policy by the thread that holds the eviction lock. Writes update the policy under this lock.
+ * Entries with lifetime are removed by the {@link TimerWheel timing wheel} shared by all caches.
+ *
+ * @see InmemoryCache
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BoundedInmemoryCache<K, V> extends Cache<K, V> {
+    private static final int READ_BUFFER_COUNT = FrequencySketch.ceilingPowerOfTwo(
+            4 * Runtime.getRuntime().availableProcessors()
+    );
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private static final double WINDOW_PERCENTAGE = 0.01D;
+    private static final double PROTECTED_PERCENTAGE = 0.8D;
+
+    private static final byte NEW = 0;
+    private static final byte LINKED = 1;
+    private static final byte RETIRED = 2;
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final long maxSize;
+    private final long maxSectionSize;
+    private final long maxWindowSize;
+    private final long maxProtectedSize;
+
+    private final ConcurrentMap<String, Section<K, V>> sectionByName = new ConcurrentHashMap<>();
+    private final ReadBuffer<K, V>[] readBuffers;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final Lock evictionLock = new ReentrantLock();
+    private final FrequencySketch frequencySketch;
+    private final NodeDeque<K, V> window = new NodeDeque<>();
+    private final NodeDeque<K, V> probation = new NodeDeque<>();
+    private final NodeDeque<K, V> protectedDeque = new NodeDeque<>();
+    private long size;
+
+    @Nullable
+    private volatile Consumer<String> evictionListener;
+
+    /**
+     * @param maxSize maximal total number of entries in the cache
+     * @return new cache, which limits the total number of entries only
+     */
+    public static <K, V> BoundedInmemoryCache<K, V> newInstance(long maxSize) {
+        return new BoundedInmemoryCache<>(maxSize, maxSize);
+    }
+
+    /**
+     * @param maxSize        maximal total number of entries in the cache
+     * @param maxSectionSize maximal number of entries in each section
+     * @return new cache
+     */
+    public static <K, V> BoundedInmemoryCache<K, V> newInstance(long maxSize, long maxSectionSize) {
+        return new BoundedInmemoryCache<>(maxSize, maxSectionSize);
+    }
+
+    private BoundedInmemoryCache(long maxSize, long maxSectionSize) {
+        if (maxSize < 1L) {
+            throw new IllegalArgumentException("Argument 'maxSize' should be positive.");
+        }
+
+        if (maxSectionSize < 1L) {
+            throw new IllegalArgumentException("Argument 'maxSectionSize' should be positive.");
+        }
+
+        this.maxSize = maxSize;
+        this.maxSectionSize = Math.min(maxSectionSize, maxSize);
+        this.maxWindowSize = Math.max(1L, (long) (maxSize * WINDOW_PERCENTAGE));
+        this.maxProtectedSize = (long) ((maxSize - maxWindowSize) * PROTECTED_PERCENTAGE);
+
+        this.frequencySketch = new FrequencySketch(maxSize);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ReadBuffer<K, V>[] readBuffers = new ReadBuffer[READ_BUFFER_COUNT];
+        for (int bufferIndex = 0; bufferIndex < READ_BUFFER_COUNT; ++bufferIndex) {
+            readBuffers[bufferIndex] = new ReadBuffer<>();
+        }
+        this.readBuffers = readBuffers;
+    }
+
+    @Contract(pure = true)
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Contract(pure = true)
+    public long getMaxSectionSize() {
+        return maxSectionSize;
+    }
+
+    /**
+     * @return current number of entries in the cache, including the entries which are expired but not yet evicted
+     */
+    public long size() {
+        evictionLock.lock();
+        try {
+            return size;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @param evictionListener listener to invoke with the section of each entry evicted by the size limits
+     *                         (but not removed or expired), it is invoked under the eviction lock and should be fast
+     */
+    public void setEvictionListener(@Nullable Consumer<String> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    @Contract(pure = true)
+    @Override
+    public final boolean validate() {
+        return !closed.get();
+    }
+
+    @Override
+    public boolean contains(@Nonnull String section, @Nonnull K key) {
+        return get(section, key) != null;
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull K key, @Nonnull V value) {
+        internalPut(section, key, value, Long.MAX_VALUE, true);
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull K key, @Nonnull V value, long lifetimeMillis) {
+        internalPut(section, key, value, getExpirationTimeMillis(lifetimeMillis), true);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull K key, @Nonnull V value) {
+        internalPut(section, key, value, Long.MAX_VALUE, false);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull K key, @Nonnull V value, long lifetimeMillis) {
+        internalPut(section, key, value, getExpirationTimeMillis(lifetimeMillis), false);
+    }
+
+    @Nullable
+    @Override
+    public V get(@Nonnull String section, @Nonnull K key) {
+        ensureArguments(section, key);
+
+        Section<K, V> cacheSection = sectionByName.get(section);
+        if (cacheSection == null) {
+            return null;
+        }
+
+        Node<K, V> node = cacheSection.nodeByKey.get(key);
+        if (node == null) {
+            return null;
+        }
+
+        if (node.isExpired(System.currentTimeMillis())) {
+            if (cacheSection.nodeByKey.remove(key, node)) {
+                retireUnderLock(node);
+            }
+            return null;
+        }
+
+        afterRead(node);
+        return node.value;
+    }
+
+    @Override
+    public boolean remove(@Nonnull String section, @Nonnull K key) {
+        ensureArguments(section, key);
+
+        Section<K, V> cacheSection = sectionByName.get(section);
+        if (cacheSection == null) {
+            return false;
+        }
+
+        Node<K, V> node = cacheSection.nodeByKey.remove(key);
+        if (node == null) {
+            return false;
+        }
+
+        retireUnderLock(node);
+        return true;
+    }
+
+    @Override
+    public void clearSection(@Nonnull String section) {
+        if (section == null) {
+            throw new IllegalArgumentException("Argument 'section' is 'null'.");
+        }
+
+        Section<K, V> cacheSection = sectionByName.get(section);
+        if (cacheSection == null) {
+            return;
+        }
+
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            internalClearSection(cacheSection);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+
+            for (Section<K, V> cacheSection : sectionByName.values()) {
+                internalClearSection(cacheSection);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.getAndSet(true)) {
+            clear();
+        }
+    }
+
+    private void internalPut(String section, K key, V value, long expirationTimeMillis, boolean overwrite) {
+        ensureArguments(section, key);
+
+        if (value == null) {
+            throw new IllegalArgumentException("Argument 'value' is 'null'.");
+        }
+
+        Section<K, V> cacheSection = sectionByName.computeIfAbsent(section, name -> new Section<>(this, name));
+        Node<K, V> node = new Node<>(cacheSection, key, value, expirationTimeMillis);
+        Node<K, V> previousNode;
+
+        if (overwrite) {
+            previousNode = cacheSection.nodeByKey.put(key, node);
+        } else {
+            long currentTimeMillis = System.currentTimeMillis();
+
+            while (true) {
+                previousNode = cacheSection.nodeByKey.putIfAbsent(key, node);
+
+                if (previousNode == null) {
+                    break;
+                }
+
+                if (!previousNode.isExpired(currentTimeMillis)) {
+                    return;
+                }
+
+                if (cacheSection.nodeByKey.replace(key, previousNode, node)) {
+                    break;
+                }
+            }
+        }
+
+        afterWrite(node, previousNode);
+    }
+
+    private void afterRead(Node<K, V> node) {
+        ReadBuffer<K, V> readBuffer = readBuffers[(int) Thread.currentThread().getId() & (READ_BUFFER_COUNT - 1)];
+        int pendingCount = readBuffer.offer(node);
+
+        if (pendingCount >= READ_BUFFER_DRAIN_THRESHOLD && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterWrite(Node<K, V> node, @Nullable Node<K, V> previousNode) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+
+            if (previousNode != null) {
+                retire(previousNode);
+            }
+
+            // The node may have been already replaced or removed by a concurrent writer.
+            if (node.state == NEW && node.section.nodeByKey.get(node.key) == node) {
+                link(node);
+                frequencySketch.increment(node.hash);
+                evictIfNeeded(node);
+            } else {
+                node.state = RETIRED;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void retireUnderLock(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            retire(node);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (int bufferIndex = 0; bufferIndex < READ_BUFFER_COUNT; ++bufferIndex) {
+            ReadBuffer<K, V> readBuffer = readBuffers[bufferIndex];
+
+            for (Node<K, V> node; (node = readBuffer.poll()) != null; ) {
+                onAccess(node);
+            }
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.state != LINKED) {
+            return;
+        }
+
+        frequencySketch.increment(node.hash);
+        node.section.moveToBack(node);
+
+        switch (node.region) {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.region = PROTECTED;
+                protectedDeque.addLast(node);
+
+                while (protectedDeque.size > maxProtectedSize) {
+                    Node<K, V> demotedNode = protectedDeque.pollFirst();
+                    demotedNode.region = PROBATION;
+                    probation.addLast(demotedNode);
+                }
+                break;
+            case PROTECTED:
+                protectedDeque.moveToBack(node);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected region " + node.region + '.');
+        }
+    }
+
+    private void evictIfNeeded(Node<K, V> candidate) {
+        while (window.size > maxWindowSize) {
+            Node<K, V> node = window.pollFirst();
+            node.region = PROBATION;
+            probation.addLast(node);
+        }
+
+        while (size > maxSize) {
+            Node<K, V> victim = probation.head != null ? probation.head
+                    : protectedDeque.head != null ? protectedDeque.head : window.head;
+            Node<K, V> windowCandidate = probation.tail;
+
+            if (windowCandidate == null || windowCandidate == victim) {
+                evict(victim);
+            } else {
+                evict(admit(windowCandidate, victim) ? victim : windowCandidate);
+            }
+        }
+
+        Section<K, V> cacheSection = candidate.section;
+        if (cacheSection.size > maxSectionSize) {
+            // The new entry stays in the window like any other, the section gives up its least recently used one.
+            evict(cacheSection.head == candidate ? candidate.sectionNext : cacheSection.head);
+        }
+    }
+
+    private boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+        return frequencySketch.frequency(candidate.hash) > frequencySketch.frequency(victim.hash);
+    }
+
+    private void evict(Node<K, V> node) {
+        node.section.nodeByKey.remove(node.key, node);
+        retire(node);
+
+        Consumer<String> listener = evictionListener;
+        if (listener != null) {
+            listener.accept(node.section.name);
+        }
+    }
+
+    private void link(Node<K, V> node) {
+        node.state = LINKED;
+        node.region = WINDOW;
+        window.addLast(node);
+        node.section.addLast(node);
+        ++size;
+
+        if (node.expirationTimeMillis != Long.MAX_VALUE) {
+            TimerWheel.getInstance().schedule(node, node.expirationTimeMillis);
+        }
+    }
+
+    private void retire(Node<K, V> node) {
+        if (node.state == LINKED) {
+            switch (node.region) {
+                case WINDOW:
+                    window.remove(node);
+                    break;
+                case PROBATION:
+                    probation.remove(node);
+                    break;
+                case PROTECTED:
+                    protectedDeque.remove(node);
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected region " + node.region + '.');
+            }
+
+            node.section.remove(node);
+            --size;
+
+            if (node.expirationTimeMillis != Long.MAX_VALUE) {
+                TimerWheel.getInstance().cancel(node);
+            }
+        }
+
+        node.state = RETIRED;
+    }
+
+    private void internalClearSection(Section<K, V> cacheSection) {
+        cacheSection.nodeByKey.clear();
+
+        for (Node<K, V> node = cacheSection.head; node != null; ) {
+            Node<K, V> nextNode = node.sectionNext;
+            retire(node);
+            node = nextNode;
+        }
+    }
+
+    private static long getExpirationTimeMillis(long lifetimeMillis) {
+        long currentTimeMillis = System.currentTimeMillis();
+        long expirationTimeMillis = currentTimeMillis + lifetimeMillis;
+        return lifetimeMillis > 0L && expirationTimeMillis <= currentTimeMillis ? Long.MAX_VALUE : expirationTimeMillis;
+    }
+
+    private static void ensureArguments(String section, Object key) {
+        if (section == null) {
+            throw new IllegalArgumentException("Argument 'section' is 'null'.");
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Argument 'key' is 'null'.");
+        }
+    }
+
+    private static final class Node<K, V> extends TimerWheel.Timeout {
+        private final Section<K, V> section;
+        private final K key;
+        private final V value;
+        private final int hash;
+
+        /**
+         * Expiration time in milliseconds or {@code Long.MAX_VALUE} if entry is permanent.
+         */
+        private final long expirationTimeMillis;
+
+        // Fields below are guarded by the eviction lock.
+        private byte state = NEW;
+        private byte region;
+        private Node<K, V> previous;
+        private Node<K, V> next;
+        private Node<K, V> sectionPrevious;
+        private Node<K, V> sectionNext;
+
+        private Node(Section<K, V> section, K key, V value, long expirationTimeMillis) {
+            this.section = section;
+            this.key = key;
+            this.value = value;
+            this.hash = 32323 * section.name.hashCode() + key.hashCode();
+            this.expirationTimeMillis = expirationTimeMillis;
+        }
+
+        @Contract(pure = true)
+        private boolean isExpired(long currentTimeMillis) {
+            return currentTimeMillis > expirationTimeMillis;
+        }
+
+        @Override
+        void expire() {
+            if (section.nodeByKey.remove(key, this)) {
+                section.cache.retireUnderLock(this);
+            }
+        }
+    }
+
+    /**
+     * Entries of a section in the access order. All methods except constructor should be called
+     * under the eviction lock.
+     */
+    private static final class Section<K, V> {
+        private final BoundedInmemoryCache<K, V> cache;
+        private final String name;
+        private final ConcurrentMap<K, Node<K, V>> nodeByKey = new ConcurrentHashMap<>();
+
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        private long size;
+
+        private Section(BoundedInmemoryCache<K, V> cache, String name) {
+            this.cache = cache;
+            this.name = name;
+        }
+
+        private void addLast(Node<K, V> node) {
+            node.sectionPrevious = tail;
+            node.sectionNext = null;
+
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.sectionNext = node;
+            }
+
+            tail = node;
+            ++size;
+        }
+
+        private void remove(Node<K, V> node) {
+            if (node.sectionPrevious == null) {
+                head = node.sectionNext;
+            } else {
+                node.sectionPrevious.sectionNext = node.sectionNext;
+            }
+
+            if (node.sectionNext == null) {
+                tail = node.sectionPrevious;
+            } else {
+                node.sectionNext.sectionPrevious = node.sectionPrevious;
+            }
+
+            node.sectionPrevious = null;
+            node.sectionNext = null;
+            --size;
+        }
+
+        private void moveToBack(Node<K, V> node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * Doubly-linked list of entries of a policy region. Should be used under the eviction lock only.
+     */
+    private static final class NodeDeque<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        private long size;
+
+        private void addLast(Node<K, V> node) {
+            node.previous = tail;
+            node.next = null;
+
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+
+            tail = node;
+            ++size;
+        }
+
+        private Node<K, V> pollFirst() {
+            Node<K, V> node = head;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        private void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+
+            node.previous = null;
+            node.next = null;
+            --size;
+        }
+
+        private void moveToBack(Node<K, V> node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * Lossy bounded buffer of recent reads. Offers may be dropped under contention or when the buffer is full,
+     * this only makes the eviction policy slightly less precise.
+     */
+    private static final class ReadBuffer<K, V> {
+        private static final int MASK = READ_BUFFER_SIZE - 1;
+
+        private final AtomicReferenceArray<Node<K, V>> nodes = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        /**
+         * @return number of pending reads in the buffer
+         */
+        private int offer(Node<K, V> node) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            int pendingCount = (int) (tail - head);
+
+            if (pendingCount < READ_BUFFER_SIZE && writeCounter.compareAndSet(tail, tail + 1L)) {
+                nodes.lazySet((int) tail & MASK, node);
+                return pendingCount + 1;
+            } else {
+                return pendingCount;
+            }
+        }
+
+        /**
+         * Should be called under the eviction lock only.
+         */
+        @Nullable
+        private Node<K, V> poll() {
+            long head = readCounter;
+            if (head == writeCounter.get()) {
+                return null;
+            }
+
+            int index = (int) head & MASK;
+            Node<K, V> node = nodes.get(index);
+            if (node == null) {
+                // The write is not published yet.
+                return null;
+            }
+
+            nodes.lazySet(index, null);
+            readCounter = head + 1L;
+            return node;
+        }
+    }
+}
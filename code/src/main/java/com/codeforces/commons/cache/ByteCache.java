@@ -7,6 +7,9 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * All methods of this class throws {@code {@link IllegalArgumentException}} if either section or key
@@ -164,6 +167,81 @@ public abstract class ByteCache extends Cache<String, byte[]> {
         return bytes == null ? null : new String(bytes, STRING_ENCODING);
     }
 
+    /**
+     * Extracts values of the given keys from the storage and checks them for consistency.
+     * Default implementation calls {@link #get(String, String) get} for each key,
+     * implementations should override it to fetch values in a single round trip.
+     *
+     * @param section storage section
+     * @param keys    storage keys (unique for each section)
+     * @return map of the consistent values presented in the storage by their keys
+     */
+    @Nonnull
+    public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        Map<String, byte[]> valueByKey = new LinkedHashMap<>(keys.size());
+
+        for (String key : keys) {
+            byte[] value = get(section, key);
+            if (value != null) {
+                valueByKey.put(key, value);
+            }
+        }
+
+        return valueByKey;
+    }
+
+    /**
+     * Puts values into the storage using given section and their keys.
+     * Replaces old values if exist.
+     * Default implementation calls {@link #put(String, Object, Object) put} for each entry.
+     *
+     * @param section    storage section
+     * @param valueByKey values to store by their keys
+     * @throws IllegalArgumentException if any value is {@code null}
+     */
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+        for (Map.Entry<String, byte[]> entry : valueByKey.entrySet()) {
+            put(section, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Puts values into the storage using given section and their keys.
+     * Replaces old values if exist.
+     * Values will be considered outdated after {@code lifetimeMillis}.
+     * Default implementation calls {@link #put(String, String, byte[], long) put} for each entry.
+     *
+     * @param section        storage section
+     * @param valueByKey     values to store by their keys
+     * @param lifetimeMillis lifetime of values
+     * @throws IllegalArgumentException if any value is {@code null}
+     */
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        for (Map.Entry<String, byte[]> entry : valueByKey.entrySet()) {
+            put(section, entry.getKey(), entry.getValue(), lifetimeMillis);
+        }
+    }
+
+    /**
+     * Removes values of the given keys from the storage.
+     * Default implementation calls {@link #remove(String, Object) remove} for each key.
+     *
+     * @param section storage section
+     * @param keys    storage keys (unique for each section)
+     * @return number of values which have been presented in the storage and have been successfully deleted
+     */
+    public int removeAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        int removedCount = 0;
+
+        for (String key : keys) {
+            if (remove(section, key)) {
+                ++removedCount;
+            }
+        }
+
+        return removedCount;
+    }
+
     @Contract(pure = true)
     private static boolean isValidChar(char c) {
         return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'
@@ -1,5 +1,7 @@
 package com.codeforces.commons.cache;
 
+import com.codeforces.commons.compress.CompressionCodec;
+import com.codeforces.commons.compress.CompressionCodecs;
 import com.codeforces.commons.compress.ZipUtil;
 import com.codeforces.commons.io.FileUtil;
 import com.codeforces.commons.text.StringUtil;
@@ -19,8 +21,6 @@ import java.util.Arrays;
 import java.util.Objects;
 import java.util.zip.DataFormatException;
 
-import static com.codeforces.commons.compress.ZipUtil.MAXIMAL_COMPRESSION_LEVEL;
-
 /**
  * @author Maxim Shipko (sladethe@gmail.com)
  * Date: 14.02.11
@@ -37,7 +37,7 @@ public class FileSystemByteCache extends ByteCache {
 
     private final File directory;
     private final File tempDirectory;
-    private final boolean useCompression;
+    private final SectionCodecs codecs;
     private final long minFreeSpace;
 
     public FileSystemByteCache(@Nonnull File directory, boolean useCompression) {
@@ -50,6 +50,22 @@ public class FileSystemByteCache extends ByteCache {
 
     public FileSystemByteCache(
             @Nonnull File directory, boolean useCompression, boolean validateOnCreate, @Nonnegative long minFreeSpace) {
+        this(
+                directory, useCompression ? CompressionCodecs.DEFLATE : CompressionCodecs.NONE,
+                validateOnCreate, minFreeSpace
+        );
+    }
+
+    /**
+     * @param directory        directory to store values in
+     * @param defaultCodec     codec of the sections without {@link #setSectionCodec(String, CompressionCodec)
+     *                         their own codec}
+     * @param validateOnCreate whether to create the directory at once
+     * @param minFreeSpace     values are not stored if free space would become less than this number of bytes
+     */
+    public FileSystemByteCache(
+            @Nonnull File directory, @Nonnull CompressionCodec defaultCodec, boolean validateOnCreate,
+            @Nonnegative long minFreeSpace) {
         Objects.requireNonNull(directory, "Argument 'directory' is null.");
         Preconditions.checkArgument(minFreeSpace >= 0, String.format(
                 "Argument 'minFreeSpace' must be a nonnegative long integer, but got %d.", minFreeSpace
@@ -57,7 +73,7 @@ public class FileSystemByteCache extends ByteCache {
 
         this.directory = directory;
         this.tempDirectory = new File(directory, TEMP_DIR_NAME);
-        this.useCompression = useCompression;
+        this.codecs = new SectionCodecs(defaultCodec);
         this.minFreeSpace = minFreeSpace;
 
         if (validateOnCreate && !validate()) {
@@ -77,6 +93,22 @@ public class FileSystemByteCache extends ByteCache {
         }
     }
 
+    /**
+     * Sets the codec of new values of the section. Values stored before remain readable.
+     *
+     * @param section cache section
+     * @param codec   codec or {@code null} to use the default one
+     */
+    public void setSectionCodec(@Nonnull String section, @Nullable CompressionCodec codec) {
+        ensureCacheSectionName(section);
+        codecs.set(section, codec);
+    }
+
+    @Nonnull
+    public CompressionCodec getSectionCodec(@Nonnull String section) {
+        return codecs.get(section);
+    }
+
     @Override
     public boolean contains(@Nonnull String section, @Nonnull String key) {
         return getValueLocation(section, key).isFile();
@@ -127,7 +159,7 @@ public class FileSystemByteCache extends ByteCache {
         File tempFile = null;
         try {
             tempFile = File.createTempFile("cache-", null, tempDirectory);
-            writeValueToFile(tempFile, value, lifetimeMillis);
+            writeValueToFile(tempFile, value, lifetimeMillis, codecs.get(section));
             File storageFile = getValueLocation(section, key);
             FileUtil.renameFile(tempFile, storageFile, overwrite);
         } catch (IOException e) {
@@ -142,11 +174,12 @@ public class FileSystemByteCache extends ByteCache {
         }
     }
 
-    private void writeValueToFile(File file, byte[] value, long lifetimeMillis) throws IOException {
-        FileUtil.writeFile(file, packValue(value, lifetimeMillis));
+    private static void writeValueToFile(File file, byte[] value, long lifetimeMillis, CompressionCodec codec)
+            throws IOException {
+        FileUtil.writeFile(file, packValue(value, getExpirationTimeMillis(lifetimeMillis), codec));
     }
 
-    private byte[] packValue(byte[] valueBytes, long lifetimeMillis) {
+    static long getExpirationTimeMillis(long lifetimeMillis) {
         long expirationTimeMillis;
         if (lifetimeMillis == Long.MAX_VALUE) {
             expirationTimeMillis = Long.MAX_VALUE;
@@ -158,7 +191,15 @@ public class FileSystemByteCache extends ByteCache {
                 expirationTimeMillis += lifetimeMillis;
             }
         }
+        return expirationTimeMillis;
+    }
 
+    /**
+     * Packs value with its hash and expiration time into the storage format, which is encoded by the codec
+     * (see {@link CompressionCodecs#encode(CompressionCodec, byte[])}).
+     */
+    static byte[] packValue(byte[] valueBytes, long expirationTimeMillis, CompressionCodec codec)
+            throws IOException {
         byte[] hashBytes = calculateHash(valueBytes);
 
         ByteBuffer byteBuffer = ByteBuffer
@@ -172,7 +213,7 @@ public class FileSystemByteCache extends ByteCache {
                 .put(valueBytes)
                 .array();
 
-        return useCompression ? ZipUtil.compress(bytes, MAXIMAL_COMPRESSION_LEVEL) : bytes;
+        return CompressionCodecs.encode(codec, bytes);
     }
 
     @Nullable
@@ -206,9 +247,22 @@ public class FileSystemByteCache extends ByteCache {
         return extractValue(FileUtil.getBytes(file));
     }
 
-    private byte[] extractValue(byte[] storageBytes) throws IOException, LifetimeExpiredException {
+    /**
+     * Extracts value packed by {@link #packValue(byte[], long, CompressionCodec)} and validates its hash.
+     * Values stored before the codec header was introduced are either plain (they start with the hash length)
+     * or deflated (they start with a zlib header), both start with a byte less than {@code 0x80}.
+     */
+    static byte[] extractValue(byte[] storageBytes) throws IOException, LifetimeExpiredException {
         try {
-            byte[] bytes = useCompression ? ZipUtil.decompress(storageBytes) : storageBytes;
+            byte[] bytes;
+            if (CompressionCodecs.isEncoded(storageBytes)) {
+                bytes = CompressionCodecs.decode(storageBytes);
+            } else if (isZlibHeader(storageBytes)) {
+                bytes = ZipUtil.decompress(storageBytes);
+            } else {
+                bytes = storageBytes;
+            }
+
             ByteBuffer byteBuffer = ByteBuffer.wrap(bytes).order(CACHE_BYTE_ORDER);
 
             byte[] hashBytes = new byte[byteBuffer.getInt()];
@@ -281,6 +335,10 @@ public class FileSystemByteCache extends ByteCache {
         }
     }
 
+    private static boolean isZlibHeader(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0x0F) == 8 && ((bytes[0] & 0xFF) << 8 | bytes[1] & 0xFF) % 31 == 0;
+    }
+
     private static byte[] calculateHash(byte[] value) {
         return DigestUtils.sha1(value);
     }
@@ -293,8 +351,8 @@ public class FileSystemByteCache extends ByteCache {
     @Override
     public String toString() {
         return minFreeSpace > 0
-                ? StringUtil.toString(this, false, "directory", "useCompression", "minFreeSpace")
-                : StringUtil.toString(this, false, "directory", "useCompression");
+                ? StringUtil.toString(this, false, "directory", "codecs", "minFreeSpace")
+                : StringUtil.toString(this, false, "directory", "codecs");
     }
 
     @SuppressWarnings("StringBufferReplaceableByString")
@@ -312,8 +370,8 @@ public class FileSystemByteCache extends ByteCache {
         return new File(directory, section);
     }
 
-    private static final class LifetimeExpiredException extends Exception {
-        private LifetimeExpiredException(String message) {
+    static final class LifetimeExpiredException extends Exception {
+        LifetimeExpiredException(String message) {
             super(message);
         }
     }
@@ -0,0 +1,97 @@
+package com.codeforces.commons.cache;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Count-Min sketch with 4-bit counters used to estimate access frequencies of cache entries.
+ * Counters are periodically halved, so the sketch keeps track of the recent popularity only.
+ * <p>
+ * This class is not thread-safe. All calls should be made under the lock of the owning cache.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_FREQUENCY = 15;
+    private static final int MAX_TABLE_LENGTH = 1 << 26;
+
+    private final long[] table;
+    private final int counterMask;
+    private final int sampleSize;
+
+    private int additionCount;
+
+    FrequencySketch(@Nonnegative long expectedSize) {
+        int tableLength = ceilingPowerOfTwo((int) Math.min(Math.max(expectedSize, 1L), MAX_TABLE_LENGTH));
+
+        this.table = new long[tableLength];
+        this.counterMask = (tableLength << 4) - 1;
+        this.sampleSize = (int) Math.min(10L * Math.max(expectedSize, 1L), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param hash hash code of the element
+     * @return estimated number of recent occurrences of the element, from {@code 0} to {@code 15}
+     */
+    int frequency(int hash) {
+        int frequency = MAX_FREQUENCY;
+
+        for (int seedIndex = 0; seedIndex < SEEDS.length; ++seedIndex) {
+            int counterIndex = getCounterIndex(hash, seedIndex);
+            frequency = Math.min(frequency, (int) (table[counterIndex >>> 4] >>> ((counterIndex & 15) << 2)) & 15);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Increments the popularity of the element if it does not exceed the maximum (15). All counters are halved
+     * when the number of observed elements reaches the sample size.
+     *
+     * @param hash hash code of the element
+     */
+    void increment(int hash) {
+        boolean added = false;
+
+        for (int seedIndex = 0; seedIndex < SEEDS.length; ++seedIndex) {
+            added |= incrementAt(getCounterIndex(hash, seedIndex));
+        }
+
+        if (added && ++additionCount >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int counterIndex) {
+        int tableIndex = counterIndex >>> 4;
+        int offset = (counterIndex & 15) << 2;
+        long mask = 15L << offset;
+
+        if ((table[tableIndex] & mask) != mask) {
+            table[tableIndex] += 1L << offset;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private void reset() {
+        for (int tableIndex = table.length; --tableIndex >= 0; ) {
+            table[tableIndex] = (table[tableIndex] >>> 1) & RESET_MASK;
+        }
+
+        additionCount >>>= 1;
+    }
+
+    private int getCounterIndex(int hash, int seedIndex) {
+        long h = (hash + SEEDS[seedIndex]) * SEEDS[seedIndex];
+        h += h >>> 32;
+        return (int) h & counterMask;
+    }
+
+    static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
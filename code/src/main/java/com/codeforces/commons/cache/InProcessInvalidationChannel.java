@@ -0,0 +1,44 @@
+package com.codeforces.commons.cache;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers invalidations synchronously to the listeners of this process only.
+ */
+public class InProcessInvalidationChannel implements InvalidationChannel {
+    private static final Logger logger = Logger.getLogger(InProcessInvalidationChannel.class);
+
+    private final List<Consumer<Invalidation>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(@Nonnull Invalidation invalidation) {
+        for (Consumer<Invalidation> listener : listeners) {
+            try {
+                listener.accept(invalidation);
+            } catch (RuntimeException e) {
+                logger.error("Got unexpected exception while delivering " + invalidation + '.', e);
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Subscription subscribe(@Nonnull Consumer<Invalidation> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Argument 'listener' is 'null'.");
+        }
+
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+        listeners.clear();
+    }
+}
@@ -0,0 +1,109 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.text.StringUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Notification that values of some keys, of a section or of the whole cache have been changed
+ * and local copies of them should be dropped.
+ */
+public final class Invalidation {
+    private final String originId;
+
+    @Nullable
+    private final String section;
+
+    @Nullable
+    private final List<String> keys;
+
+    private Invalidation(@Nonnull String originId, @Nullable String section, @Nullable List<String> keys) {
+        if (originId == null) {
+            throw new IllegalArgumentException("Argument 'originId' is 'null'.");
+        }
+
+        this.originId = originId;
+        this.section = section;
+        this.keys = keys;
+    }
+
+    public static Invalidation ofKey(@Nonnull String originId, @Nonnull String section, @Nonnull String key) {
+        if (section == null) {
+            throw new IllegalArgumentException("Argument 'section' is 'null'.");
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Argument 'key' is 'null'.");
+        }
+
+        return new Invalidation(originId, section, Collections.singletonList(key));
+    }
+
+    /**
+     * Batch changes are published as a single invalidation of all changed keys.
+     */
+    public static Invalidation ofKeys(
+            @Nonnull String originId, @Nonnull String section, @Nonnull Collection<String> keys) {
+        if (section == null) {
+            throw new IllegalArgumentException("Argument 'section' is 'null'.");
+        }
+
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("Argument 'keys' is 'null' or empty.");
+        }
+
+        for (String key : keys) {
+            if (key == null) {
+                throw new IllegalArgumentException("Argument 'keys' contains 'null'.");
+            }
+        }
+
+        return new Invalidation(originId, section, Collections.unmodifiableList(new ArrayList<>(keys)));
+    }
+
+    public static Invalidation ofSection(@Nonnull String originId, @Nonnull String section) {
+        if (section == null) {
+            throw new IllegalArgumentException("Argument 'section' is 'null'.");
+        }
+
+        return new Invalidation(originId, section, null);
+    }
+
+    public static Invalidation ofAll(@Nonnull String originId) {
+        return new Invalidation(originId, null, null);
+    }
+
+    /**
+     * @return identifier of the cache which has published this invalidation, so it can skip its own invalidations
+     */
+    @Nonnull
+    public String getOriginId() {
+        return originId;
+    }
+
+    /**
+     * @return invalidated section or {@code null} if the whole cache is invalidated
+     */
+    @Nullable
+    public String getSection() {
+        return section;
+    }
+
+    /**
+     * @return invalidated keys or {@code null} if the whole section or cache is invalidated
+     */
+    @Nullable
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.toString(this, false, "originId", "section", "keys");
+    }
+}
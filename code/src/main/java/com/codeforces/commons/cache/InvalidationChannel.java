@@ -0,0 +1,30 @@
+package com.codeforces.commons.cache;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts {@link Invalidation invalidations} to all subscribers, including the subscribers of other processes
+ * if the implementation supports it. Delivery is best-effort: implementations log errors instead of throwing them.
+ */
+public interface InvalidationChannel extends Closeable {
+    void publish(@Nonnull Invalidation invalidation);
+
+    /**
+     * Registers the listener. Listener may be invoked from any thread and should not block.
+     *
+     * @param listener listener to invoke on each published invalidation
+     * @return subscription to close to unregister the listener
+     */
+    @Nonnull
+    Subscription subscribe(@Nonnull Consumer<Invalidation> listener);
+
+    @Override
+    void close();
+
+    interface Subscription extends Closeable {
+        @Override
+        void close();
+    }
+}
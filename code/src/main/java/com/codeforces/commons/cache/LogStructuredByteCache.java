@@ -0,0 +1,968 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.compress.CompressionCodec;
+import com.codeforces.commons.compress.CompressionCodecs;
+import com.codeforces.commons.io.FileUtil;
+import com.codeforces.commons.io.IoUtil;
+import com.codeforces.commons.process.ThreadUtil;
+import com.codeforces.commons.text.StringUtil;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stores values in append-only segment files instead of a file per entry.
+ * <p>
+ * Each {@link #put(String, String, byte[]) put} appends a record to the active segment with a single write,
+ * {@link #remove(String, String) remove} and {@link #clearSection(String) clearSection} append tombstones.
+ * Locations of live records are kept in the in-memory index, so {@link #contains(String, String) contains} does
+ * not touch the disk and {@link #get(String, String) get} makes a single positional read. The index is rebuilt
+ * from segments on creation, a partially written record at the end of a segment is truncated.
+ * <p>
+ * Values are packed, hashed and compressed exactly as by {@link FileSystemByteCache}, and a value is not stored
+ * if free disk space would become less than {@code minFreeSpace}.
+ * <p>
+ * Sealed segments are compacted in background: a segment which is mostly garbage (overwritten, removed or
+ * expired records) is rewritten to the active segment and deleted. Directory should be used
+ * by a single cache instance.
+ */
+@SuppressWarnings("WeakerAccess")
+public class LogStructuredByteCache extends ByteCache {
+    private static final Logger logger = Logger.getLogger(LogStructuredByteCache.class);
+
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * FileUtil.BYTES_PER_MB;
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1L);
+
+    private static final double COMPACTION_GARBAGE_RATIO = 0.5D;
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".log";
+
+    private static final ByteOrder RECORD_BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final byte PUT_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+    private static final byte CLEAR_SECTION_RECORD = 3;
+
+    /**
+     * Record header: section length (4), key length (4), payload length (4), type (1), expiration time (8).
+     * Header is followed by UTF-8 bytes of the section and the key and by the payload.
+     */
+    private static final int RECORD_HEADER_SIZE = 21;
+
+    /**
+     * Payload of a tombstone moved by compaction: identifier of the original segment (8) and the original offset (8).
+     * A tombstone without payload hides the records written before its own position.
+     */
+    private static final int TOMBSTONE_POSITION_SIZE = 16;
+    private static final int MAX_NAME_LENGTH = 1 << 16;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private static final ScheduledExecutorService compactionService = Executors.newSingleThreadScheduledExecutor(
+            ThreadUtil.getCustomPoolThreadFactory(thread -> {
+                thread.setDaemon(true);
+                thread.setName(LogStructuredByteCache.class.getSimpleName() + "#CompactionThread");
+            })
+    );
+
+    private final File directory;
+    private final SectionCodecs codecs;
+    private final long minFreeSpace;
+    private final long maxSegmentSize;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Location>> locationByKeyBySection
+            = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Segment> segmentById = new ConcurrentSkipListMap<>();
+
+    /**
+     * Guards appending to the active segment and modifications of the index.
+     */
+    private final Lock writeLock = new ReentrantLock();
+    private final Lock compactionLock = new ReentrantLock();
+
+    private volatile Segment activeSegment;
+    private volatile boolean closed;
+
+    @Nullable
+    private final ScheduledFuture<?> compactionFuture;
+
+    public LogStructuredByteCache(@Nonnull File directory, boolean useCompression) {
+        this(directory, useCompression, 0L);
+    }
+
+    public LogStructuredByteCache(@Nonnull File directory, boolean useCompression, @Nonnegative long minFreeSpace) {
+        this(directory, useCompression, minFreeSpace, DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_COMPACTION_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param directory                directory to store segments in
+     * @param useCompression           whether to compress values by {@link CompressionCodecs#DEFLATE deflate}
+     * @param minFreeSpace             values are not stored if free space would become less than this number of bytes
+     * @param maxSegmentSize           size to start a new segment at
+     * @param compactionIntervalMillis interval between background compactions or {@code 0} to compact
+     *                                 on {@link #compact()} only
+     */
+    public LogStructuredByteCache(
+            @Nonnull File directory, boolean useCompression, @Nonnegative long minFreeSpace,
+            @Nonnegative long maxSegmentSize, @Nonnegative long compactionIntervalMillis) {
+        this(
+                directory, useCompression ? CompressionCodecs.DEFLATE : CompressionCodecs.NONE,
+                minFreeSpace, maxSegmentSize, compactionIntervalMillis
+        );
+    }
+
+    /**
+     * @param directory                directory to store segments in
+     * @param defaultCodec             codec of the sections without {@link #setSectionCodec(String, CompressionCodec)
+     *                                 their own codec}
+     * @param minFreeSpace             values are not stored if free space would become less than this number of bytes
+     * @param maxSegmentSize           size to start a new segment at
+     * @param compactionIntervalMillis interval between background compactions or {@code 0} to compact
+     *                                 on {@link #compact()} only
+     */
+    public LogStructuredByteCache(
+            @Nonnull File directory, @Nonnull CompressionCodec defaultCodec, @Nonnegative long minFreeSpace,
+            @Nonnegative long maxSegmentSize, @Nonnegative long compactionIntervalMillis) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Argument 'directory' is 'null'.");
+        }
+
+        if (minFreeSpace < 0L) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'minFreeSpace' must be a nonnegative long integer, but got %d.", minFreeSpace
+            ));
+        }
+
+        if (maxSegmentSize <= 0L) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'maxSegmentSize' must be a positive long integer, but got %d.", maxSegmentSize
+            ));
+        }
+
+        if (compactionIntervalMillis < 0L) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'compactionIntervalMillis' must be a nonnegative long integer, but got %d.",
+                    compactionIntervalMillis
+            ));
+        }
+
+        this.directory = directory;
+        this.codecs = new SectionCodecs(defaultCodec);
+        this.minFreeSpace = minFreeSpace;
+        this.maxSegmentSize = maxSegmentSize;
+
+        try {
+            FileUtil.ensureDirectoryExists(directory);
+            recover();
+        } catch (IOException e) {
+            closeSegments();
+            throw new IllegalArgumentException("Can't open cache in the directory '" + directory + "'.", e);
+        }
+
+        compactionFuture = compactionIntervalMillis == 0L ? null : compactionService.scheduleWithFixedDelay(
+                new CompactionTask(this), compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS
+        );
+    }
+
+    @Override
+    public boolean validate() {
+        return !closed && directory.isDirectory();
+    }
+
+    /**
+     * Sets the codec of new values of the section. Values stored before remain readable.
+     *
+     * @param section cache section
+     * @param codec   codec or {@code null} to use the default one
+     */
+    public void setSectionCodec(@Nonnull String section, @Nullable CompressionCodec codec) {
+        ensureCacheSectionName(section);
+        codecs.set(section, codec);
+    }
+
+    @Nonnull
+    public CompressionCodec getSectionCodec(@Nonnull String section) {
+        return codecs.get(section);
+    }
+
+    @Override
+    public boolean contains(@Nonnull String section, @Nonnull String key) {
+        ensureCacheSectionName(section);
+        ensureCacheKeyName(key);
+
+        Location location = getLocation(section, key);
+        return location != null && !location.isExpired(System.currentTimeMillis());
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
+        internalPut(section, key, value, Long.MAX_VALUE, true);
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
+        internalPut(section, key, value, lifetimeMillis, true);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
+        internalPut(section, key, value, Long.MAX_VALUE, false);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
+        internalPut(section, key, value, lifetimeMillis, false);
+    }
+
+    private void internalPut(String section, String key, byte[] value, long lifetimeMillis, boolean overwrite) {
+        ensureCacheSectionName(section);
+        ensureCacheKeyName(key);
+
+        if (value == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'value' can't be 'null' (section='%s', key='%s').", section, key
+            ));
+        }
+
+        if (lifetimeMillis < 1L) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'lifetimeMillis' must be a positive long integer (section='%s', key='%s').", section, key
+            ));
+        }
+
+        if (!overwrite && contains(section, key)) {
+            return;
+        }
+
+        if (minFreeSpace > 0L && directory.getFreeSpace() - value.length < minFreeSpace) {
+            return;
+        }
+
+        long expirationTimeMillis = FileSystemByteCache.getExpirationTimeMillis(lifetimeMillis);
+        byte[] payload;
+        try {
+            payload = FileSystemByteCache.packValue(value, expirationTimeMillis, codecs.get(section));
+        } catch (IOException e) {
+            logger.error(String.format(
+                    "Got I/O-exception while packing value (section='%s', key='%s').", section, key
+            ), e);
+            return;
+        }
+
+        writeLock.lock();
+        try {
+            if (closed || !overwrite && contains(section, key)) {
+                return;
+            }
+
+            Location location = append(section, key, PUT_RECORD, expirationTimeMillis, payload);
+            markGarbage(ensureAndReturnSection(section).put(key, location));
+        } catch (IOException e) {
+            logger.error(String.format(
+                    "Got I/O-exception while storing value (section='%s', key='%s') in directory " + directory + '.',
+                    section, key
+            ), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public byte[] get(@Nonnull String section, @Nonnull String key) {
+        ensureCacheSectionName(section);
+        ensureCacheKeyName(key);
+
+        while (true) {
+            Location location = getLocation(section, key);
+            if (location == null) {
+                return null;
+            }
+
+            if (location.isExpired(System.currentTimeMillis())) {
+                removeLocation(section, key, location);
+                return null;
+            }
+
+            try {
+                return FileSystemByteCache.extractValue(readPayload(location));
+            } catch (FileSystemByteCache.LifetimeExpiredException ignored) {
+                removeLocation(section, key, location);
+                return null;
+            } catch (ClosedChannelException e) {
+                if (closed) {
+                    return null;
+                }
+
+                if (e instanceof ClosedByInterruptException) {
+                    // The interrupt of this thread has closed the shared channel, it is reopened for other threads.
+                    reopenChannel(location.segment);
+                    return null;
+                }
+
+                // Segment has been compacted concurrently, the record should be found at the new location.
+                // Otherwise the channel has been closed by an interrupt of another thread.
+                if (getLocation(section, key) == location && !reopenChannel(location.segment)) {
+                    logger.error(String.format(
+                            "Got unexpectedly closed segment while reading value (section='%s', key='%s').",
+                            section, key
+                    ), e);
+                    return null;
+                }
+            } catch (IOException e) {
+                logger.error(String.format(
+                        "Got I/O-exception while reading value (section='%s', key='%s').", section, key
+                ), e);
+                removeLocation(section, key, location);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(@Nonnull String section, @Nonnull String key) {
+        ensureCacheSectionName(section);
+        ensureCacheKeyName(key);
+
+        writeLock.lock();
+        try {
+            Location location = removeFromIndex(section, key);
+            if (location == null) {
+                return false;
+            }
+
+            markGarbage(location);
+            markGarbage(append(section, key, REMOVE_RECORD, Long.MAX_VALUE, null));
+            return true;
+        } catch (IOException e) {
+            logger.error(String.format(
+                    "Got I/O-exception while removing value (section='%s', key='%s').", section, key
+            ), e);
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void clearSection(@Nonnull String section) {
+        ensureCacheSectionName(section);
+
+        writeLock.lock();
+        try {
+            ConcurrentMap<String, Location> locationByKey = locationByKeyBySection.remove(section);
+            if (locationByKey == null || closed) {
+                return;
+            }
+
+            for (Location location : locationByKey.values()) {
+                markGarbage(location);
+            }
+
+            markGarbage(append(section, "", CLEAR_SECTION_RECORD, Long.MAX_VALUE, null));
+        } catch (IOException e) {
+            logger.error(String.format("Got I/O-exception while clearing section '%s'.", section), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        compactionLock.lock();
+        try {
+            writeLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+
+                locationByKeyBySection.clear();
+                for (Segment segment : segmentById.values()) {
+                    IoUtil.closeQuietly(segment.channel);
+                    FileUtil.removeFile(segment.file);
+                }
+                segmentById.clear();
+
+                activeSegment = openSegment(0L);
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (IOException e) {
+            logger.error("Got I/O-exception while clearing cache.", e);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites live records of sealed segments, which consist mostly of garbage or have expired,
+     * to the active segment and deletes these segments.
+     *
+     * @throws IOException if an I/O-exception occurs
+     */
+    public void compact() throws IOException {
+        compactionLock.lock();
+        try {
+            long currentTimeMillis = System.currentTimeMillis();
+
+            for (Segment segment : new ArrayList<>(segmentById.values())) {
+                if (closed || segment == activeSegment) {
+                    break;
+                }
+
+                if (segment.maxExpirationTimeMillis < currentTimeMillis
+                        || segment.garbageSize.get() >= COMPACTION_GARBAGE_RATIO * segment.size) {
+                    compact(segment);
+                }
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Should be called under the compaction lock.
+     */
+    private void compact(Segment segment) throws IOException {
+        boolean olderSegmentExists = segmentById.firstKey() < segment.id;
+
+        forEachRecord(segment, (section, key, type, expirationTimeMillis, offset, recordLength, payloadLength) -> {
+            if (type == PUT_RECORD) {
+                Location location = getLocation(section, key);
+                if (location == null || location.segment != segment || location.offset != offset) {
+                    return;
+                }
+
+                if (location.isExpired(System.currentTimeMillis())) {
+                    removeLocation(section, key, location);
+                    return;
+                }
+
+                ByteBuffer record = ByteBuffer.allocate(recordLength);
+                readFully(segment.channel, record, offset);
+                ((Buffer) record).flip();
+
+                writeLock.lock();
+                try {
+                    ConcurrentMap<String, Location> locationByKey = locationByKeyBySection.get(section);
+                    if (!closed && locationByKey != null && locationByKey.get(key) == location) {
+                        locationByKey.put(key, appendRecord(record, recordLength, payloadLength, expirationTimeMillis));
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            } else if (olderSegmentExists) {
+                // Tombstone is still required to hide records of the older segments. It keeps its original position
+                // not to hide the records written after it.
+                byte[] position = payloadLength == TOMBSTONE_POSITION_SIZE
+                        ? readPayload(new Location(segment, offset, recordLength, payloadLength, expirationTimeMillis))
+                        : toTombstonePosition(segment.id, offset);
+
+                writeLock.lock();
+                try {
+                    if (!closed && (type == CLEAR_SECTION_RECORD || getLocation(section, key) == null)) {
+                        markGarbage(append(section, key, type, Long.MAX_VALUE, position));
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        });
+
+        writeLock.lock();
+        try {
+            segmentById.remove(segment.id);
+            IoUtil.closeQuietly(segment.channel);
+            FileUtil.removeFile(segment.file);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Closes segment files and stops background compaction.
+     */
+    @Override
+    public void close() {
+        if (compactionFuture != null) {
+            compactionFuture.cancel(false);
+        }
+
+        compactionLock.lock();
+        try {
+            writeLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+                locationByKeyBySection.clear();
+                closeSegments();
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return minFreeSpace > 0L
+                ? StringUtil.toString(this, false, "directory", "codecs", "minFreeSpace", "maxSegmentSize")
+                : StringUtil.toString(this, false, "directory", "codecs", "maxSegmentSize");
+    }
+
+    @Nullable
+    private Location getLocation(String section, String key) {
+        ConcurrentMap<String, Location> locationByKey = locationByKeyBySection.get(section);
+        return locationByKey == null ? null : locationByKey.get(key);
+    }
+
+    private ConcurrentMap<String, Location> ensureAndReturnSection(String section) {
+        ConcurrentMap<String, Location> locationByKey = locationByKeyBySection.get(section);
+        return locationByKey == null
+                ? locationByKeyBySection.computeIfAbsent(section, __ -> new ConcurrentHashMap<>())
+                : locationByKey;
+    }
+
+    @Nullable
+    private Location removeFromIndex(String section, String key) {
+        ConcurrentMap<String, Location> locationByKey = locationByKeyBySection.get(section);
+        return locationByKey == null ? null : locationByKey.remove(key);
+    }
+
+    private void removeLocation(String section, String key, Location location) {
+        writeLock.lock();
+        try {
+            ConcurrentMap<String, Location> locationByKey = locationByKeyBySection.get(section);
+            if (locationByKey != null && locationByKey.remove(key, location)) {
+                markGarbage(location);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void markGarbage(@Nullable Location location) {
+        if (location != null) {
+            location.segment.garbageSize.addAndGet(location.recordLength);
+        }
+    }
+
+    /**
+     * Should be called under the write lock.
+     */
+    private Location append(
+            String section, String key, byte type, long expirationTimeMillis, @Nullable byte[] payload)
+            throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+
+        byte[] sectionBytes = section.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = payload == null ? 0 : payload.length;
+
+        ByteBuffer header = ByteBuffer
+                .allocate(RECORD_HEADER_SIZE + sectionBytes.length + keyBytes.length)
+                .order(RECORD_BYTE_ORDER)
+                .putInt(sectionBytes.length)
+                .putInt(keyBytes.length)
+                .putInt(payloadLength)
+                .put(type)
+                .putLong(expirationTimeMillis)
+                .put(sectionBytes)
+                .put(keyBytes);
+        ((Buffer) header).flip();
+
+        int recordLength = header.remaining() + payloadLength;
+        return payload == null
+                ? appendRecord(header, recordLength, payloadLength, expirationTimeMillis)
+                : appendRecord(new ByteBuffer[]{header, ByteBuffer.wrap(payload)}, recordLength, payloadLength,
+                expirationTimeMillis);
+    }
+
+    /**
+     * Should be called under the write lock.
+     */
+    private Location appendRecord(
+            ByteBuffer record, int recordLength, int payloadLength, long expirationTimeMillis) throws IOException {
+        return appendRecord(new ByteBuffer[]{record}, recordLength, payloadLength, expirationTimeMillis);
+    }
+
+    /**
+     * Should be called under the write lock. Writes the record with a single gathering write
+     * in most cases and starts a new segment if the active one is full.
+     */
+    private Location appendRecord(
+            ByteBuffer[] buffers, int recordLength, int payloadLength, long expirationTimeMillis) throws IOException {
+        Segment segment = activeSegment;
+        long offset = segment.size;
+
+        try {
+            segment.channel.position(offset);
+            long writtenByteCount = 0L;
+            while (writtenByteCount < recordLength) {
+                writtenByteCount += segment.channel.write(buffers);
+            }
+        } catch (IOException e) {
+            // The channel is closed if the thread has been interrupted, the interrupt is restored after truncation.
+            boolean interrupted = Thread.interrupted();
+            try {
+                if (reopenChannel(segment)) {
+                    segment.channel.truncate(offset);
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            throw e;
+        }
+
+        segment.size = offset + recordLength;
+        if (expirationTimeMillis > segment.maxExpirationTimeMillis) {
+            segment.maxExpirationTimeMillis = expirationTimeMillis;
+        }
+
+        if (segment.size >= maxSegmentSize) {
+            activeSegment = openSegment(segment.id + 1L);
+        }
+
+        return new Location(segment, offset, recordLength, payloadLength, expirationTimeMillis);
+    }
+
+    private static byte[] readPayload(Location location) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(location.payloadLength);
+        readFully(location.segment.channel, payload, location.getPayloadOffset());
+        return payload.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of segment at position " + position + '.');
+            }
+        }
+    }
+
+    /**
+     * Reopens the channel of the segment if it has been closed by an interrupt of a thread which used it.
+     *
+     * @return {@code true} if the segment is still in use and its channel is open
+     */
+    private boolean reopenChannel(Segment segment) {
+        writeLock.lock();
+        try {
+            if (closed || segmentById.get(segment.id) != segment) {
+                return false;
+            }
+
+            if (!segment.channel.isOpen()) {
+                segment.channel = FileChannel.open(
+                        segment.file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE
+                );
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("Got I/O-exception while reopening segment '" + segment.file + "'.", e);
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static byte[] toTombstonePosition(long segmentId, long offset) {
+        return ByteBuffer.allocate(TOMBSTONE_POSITION_SIZE).order(RECORD_BYTE_ORDER)
+                .putLong(segmentId).putLong(offset).array();
+    }
+
+    private static boolean isBefore(Location location, long segmentId, long offset) {
+        return location.segment.id < segmentId || location.segment.id == segmentId && location.offset < offset;
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        File file = new File(directory, SEGMENT_FILE_PREFIX + id + SEGMENT_FILE_SUFFIX);
+        FileChannel channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+
+        Segment segment = new Segment(id, file, channel);
+        segment.size = channel.size();
+        segmentById.put(id, segment);
+        return segment;
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segmentById.values()) {
+            IoUtil.closeQuietly(segment.channel);
+        }
+        segmentById.clear();
+    }
+
+    /**
+     * Opens existing segments in order and rebuilds the index.
+     */
+    private void recover() throws IOException {
+        List<Long> segmentIds = new ArrayList<>();
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (file.isFile() && name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX)) {
+                    try {
+                        segmentIds.add(Long.parseLong(name.substring(
+                                SEGMENT_FILE_PREFIX.length(), name.length() - SEGMENT_FILE_SUFFIX.length()
+                        )));
+                    } catch (NumberFormatException ignored) {
+                        // Not a segment.
+                    }
+                }
+            }
+        }
+
+        segmentIds.sort(null);
+        long currentTimeMillis = System.currentTimeMillis();
+
+        for (long segmentId : segmentIds) {
+            Segment segment = openSegment(segmentId);
+
+            forEachRecord(segment, (section, key, type, expirationTimeMillis, offset, recordLength, payloadLength) -> {
+                if (expirationTimeMillis > segment.maxExpirationTimeMillis) {
+                    segment.maxExpirationTimeMillis = expirationTimeMillis;
+                }
+
+                if (type == PUT_RECORD) {
+                    Location location = new Location(segment, offset, recordLength, payloadLength, expirationTimeMillis);
+                    if (location.isExpired(currentTimeMillis)) {
+                        markGarbage(location);
+                        markGarbage(removeFromIndex(section, key));
+                    } else {
+                        markGarbage(ensureAndReturnSection(section).put(key, location));
+                    }
+                } else {
+                    segment.garbageSize.addAndGet(recordLength);
+
+                    long tombstoneSegmentId = segment.id;
+                    long tombstoneOffset = offset;
+                    if (payloadLength == TOMBSTONE_POSITION_SIZE) {
+                        ByteBuffer position = ByteBuffer.wrap(readPayload(new Location(
+                                segment, offset, recordLength, payloadLength, expirationTimeMillis
+                        ))).order(RECORD_BYTE_ORDER);
+                        tombstoneSegmentId = position.getLong();
+                        tombstoneOffset = position.getLong();
+                    }
+
+                    Map<String, Location> locationByKey = locationByKeyBySection.get(section);
+                    if (locationByKey == null) {
+                        return;
+                    }
+
+                    if (type == REMOVE_RECORD) {
+                        Location location = locationByKey.get(key);
+                        if (location != null && isBefore(location, tombstoneSegmentId, tombstoneOffset)) {
+                            locationByKey.remove(key);
+                            markGarbage(location);
+                        }
+                    } else {
+                        for (Iterator<Location> iterator = locationByKey.values().iterator(); iterator.hasNext(); ) {
+                            Location location = iterator.next();
+                            if (isBefore(location, tombstoneSegmentId, tombstoneOffset)) {
+                                iterator.remove();
+                                markGarbage(location);
+                            }
+                        }
+                    }
+
+                    if (locationByKey.isEmpty()) {
+                        locationByKeyBySection.remove(section);
+                    }
+                }
+            });
+        }
+
+        activeSegment = segmentById.isEmpty() ? openSegment(0L) : segmentById.lastEntry().getValue();
+        if (activeSegment.size >= maxSegmentSize) {
+            activeSegment = openSegment(activeSegment.id + 1L);
+        }
+    }
+
+    /**
+     * Reads records of the segment sequentially. Partially written record at the end of the segment is truncated.
+     */
+    private static void forEachRecord(Segment segment, RecordHandler handler) throws IOException {
+        long segmentSize = segment.size;
+        byte[] headerBytes = new byte[RECORD_HEADER_SIZE];
+        ByteBuffer header = ByteBuffer.wrap(headerBytes).order(RECORD_BYTE_ORDER);
+        long offset = 0L;
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(segment.file), SCAN_BUFFER_SIZE
+        ))) {
+            while (offset + RECORD_HEADER_SIZE <= segmentSize) {
+                inputStream.readFully(headerBytes);
+                ((Buffer) header).clear();
+
+                int sectionLength = header.getInt();
+                int keyLength = header.getInt();
+                int payloadLength = header.getInt();
+                byte type = header.get();
+                long expirationTimeMillis = header.getLong();
+
+                if (sectionLength <= 0 || sectionLength > MAX_NAME_LENGTH
+                        || keyLength < 0 || keyLength > MAX_NAME_LENGTH || payloadLength < 0
+                        || type != PUT_RECORD && type != REMOVE_RECORD && type != CLEAR_SECTION_RECORD) {
+                    break;
+                }
+
+                long recordLength = (long) RECORD_HEADER_SIZE + sectionLength + keyLength + payloadLength;
+                if (offset + recordLength > segmentSize || recordLength > Integer.MAX_VALUE) {
+                    break;
+                }
+
+                byte[] nameBytes = new byte[sectionLength + keyLength];
+                inputStream.readFully(nameBytes);
+                String section = new String(nameBytes, 0, sectionLength, StandardCharsets.UTF_8);
+                String key = new String(nameBytes, sectionLength, keyLength, StandardCharsets.UTF_8);
+
+                skipFully(inputStream, payloadLength);
+
+                handler.handle(section, key, type, expirationTimeMillis, offset, (int) recordLength, payloadLength);
+                offset += recordLength;
+            }
+        }
+
+        if (offset < segmentSize) {
+            logger.warn(String.format(
+                    "Truncating segment '%s' at position %d of %d: incomplete or corrupted record.",
+                    segment.file, offset, segmentSize
+            ));
+            segment.channel.truncate(offset);
+            segment.size = offset;
+        }
+    }
+
+    private static void skipFully(DataInputStream inputStream, int byteCount) throws IOException {
+        int remainingByteCount = byteCount;
+        while (remainingByteCount > 0) {
+            int skippedByteCount = inputStream.skipBytes(remainingByteCount);
+            if (skippedByteCount <= 0) {
+                throw new EOFException("Unexpected end of segment.");
+            }
+            remainingByteCount -= skippedByteCount;
+        }
+    }
+
+    /**
+     * Does not prevent the cache from being garbage collected if it has not been closed.
+     */
+    private static final class CompactionTask implements Runnable {
+        private final WeakReference<LogStructuredByteCache> cacheReference;
+
+        private CompactionTask(LogStructuredByteCache cache) {
+            this.cacheReference = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void run() {
+            LogStructuredByteCache cache = cacheReference.get();
+            if (cache == null) {
+                // Suppresses subsequent executions.
+                throw new CancellationException("Cache has been garbage collected.");
+            }
+
+            try {
+                cache.compact();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Got unexpected exception while compacting cache in directory " + cache.directory + '.', e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordHandler {
+        void handle(
+                String section, String key, byte type, long expirationTimeMillis,
+                long offset, int recordLength, int payloadLength) throws IOException;
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final File file;
+        private final AtomicLong garbageSize = new AtomicLong();
+
+        /**
+         * Fields below are modified under the write lock.
+         */
+        private volatile FileChannel channel;
+        private volatile long size;
+        private volatile long maxExpirationTimeMillis = Long.MIN_VALUE;
+
+        private Segment(long id, File file, FileChannel channel) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final long offset;
+        private final int recordLength;
+        private final int payloadLength;
+        private final long expirationTimeMillis;
+
+        private Location(Segment segment, long offset, int recordLength, int payloadLength, long expirationTimeMillis) {
+            this.segment = segment;
+            this.offset = offset;
+            this.recordLength = recordLength;
+            this.payloadLength = payloadLength;
+            this.expirationTimeMillis = expirationTimeMillis;
+        }
+
+        private long getPayloadOffset() {
+            return offset + recordLength - payloadLength;
+        }
+
+        private boolean isExpired(long currentTimeMillis) {
+            return currentTimeMillis > expirationTimeMillis;
+        }
+    }
+}
@@ -0,0 +1,815 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.io.IoUtil;
+import com.codeforces.commons.text.StringUtil;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Contract;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Stores values outside of the Java heap in slabs of direct or memory-mapped {@link ByteBuffer}s,
+ * so the size of the cache does not affect garbage collection pauses.
+ * <p>
+ * Memory is allocated lazily by pages up to the given budget. Each page is split into chunks of one size class,
+ * entry (header, key and value) occupies the smallest fitting chunk. When there is no free chunk of the required
+ * class, an entry of this class is evicted using CLOCK algorithm (expired entries are evicted first).
+ * If the class has no pages at all, a page is taken from the largest class. Values larger than the page
+ * (without the entry header and key) are not stored.
+ * <p>
+ * Entries are found through an open-addressing index on the heap, which keeps 64-bit hashes of
+ * {@code section/key} and entry addresses only. Values are copied out on {@link #get(String, String) get}.
+ * Use {@link #readValue(String, String, Function) readValue} to process value without copying.
+ * <p>
+ * Memory-mapped file is used as a scratch space only: its content is not restored after restart.
+ */
+@SuppressWarnings("WeakerAccess")
+public class OffHeapByteCache extends ByteCache {
+    private static final Logger logger = Logger.getLogger(OffHeapByteCache.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 1 << 20;
+    private static final int MIN_PAGE_SIZE = 1 << 12;
+    private static final int MAX_SLAB_SIZE = 1 << 30;
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double CHUNK_SIZE_FACTOR = 1.25D;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 10;
+
+    private static final int HASH_OFFSET = 0;
+    private static final int EXPIRATION_TIME_OFFSET = 8;
+    private static final int KEY_LENGTH_OFFSET = 16;
+    private static final int VALUE_LENGTH_OFFSET = 20;
+    private static final int REFERENCED_OFFSET = 24;
+    private static final int HEADER_SIZE = 25;
+
+    private static final int FREE_CHUNK = -1;
+
+    private final long maxMemory;
+    private final int pageSize;
+    private final int pageCount;
+    private final int pagesPerSlab;
+
+    @Nullable
+    private final File file;
+
+    @Nullable
+    private final FileChannel fileChannel;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Fields below are guarded by the lock.
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final ChunkClass[] chunkClasses;
+    private final int[] chunkClassIndexByPage;
+    private int allocatedPageCount;
+
+    private long[] indexHashes = new long[INITIAL_INDEX_CAPACITY];
+    private long[] indexAddresses = new long[INITIAL_INDEX_CAPACITY];
+    private int indexSize;
+
+    private boolean closed;
+
+    /**
+     * Creates cache in direct memory with {@link #DEFAULT_PAGE_SIZE default page size}.
+     *
+     * @param maxMemory memory budget in bytes
+     */
+    public OffHeapByteCache(@Nonnegative long maxMemory) {
+        this(null, maxMemory, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Creates cache in direct memory.
+     *
+     * @param maxMemory memory budget in bytes
+     * @param pageSize  size of the page, also limits the size of a value
+     */
+    public OffHeapByteCache(@Nonnegative long maxMemory, @Nonnegative int pageSize) {
+        this(null, maxMemory, pageSize);
+    }
+
+    /**
+     * Creates cache in direct memory or in the memory mapped to the file.
+     *
+     * @param file      file to map slabs to or {@code null} to use direct memory
+     * @param maxMemory memory budget in bytes
+     * @param pageSize  size of the page, also limits the size of a value
+     */
+    public OffHeapByteCache(@Nullable File file, @Nonnegative long maxMemory, @Nonnegative int pageSize) {
+        if (pageSize < MIN_PAGE_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'pageSize' must be at least %d, but got %d.", MIN_PAGE_SIZE, pageSize
+            ));
+        }
+
+        if (maxMemory < pageSize) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'maxMemory' must be at least 'pageSize' (%d), but got %d.", pageSize, maxMemory
+            ));
+        }
+
+        if (maxMemory / pageSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Argument 'maxMemory' is too large for the given 'pageSize'.");
+        }
+
+        this.maxMemory = maxMemory;
+        this.pageSize = pageSize;
+        this.pageCount = (int) (maxMemory / pageSize);
+        this.pagesPerSlab = Math.max(1, MAX_SLAB_SIZE / pageSize);
+        this.file = file;
+
+        if (file == null) {
+            this.fileChannel = null;
+        } else {
+            try {
+                this.fileChannel = FileChannel.open(
+                        file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+                );
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Can't open file '" + file + "' to map cache slabs.", e);
+            }
+        }
+
+        this.chunkClasses = newChunkClasses(pageSize);
+        this.chunkClassIndexByPage = new int[pageCount];
+    }
+
+    private static ChunkClass[] newChunkClasses(int pageSize) {
+        List<ChunkClass> chunkClasses = new ArrayList<>();
+
+        for (long chunkSize = MIN_CHUNK_SIZE; chunkSize <= pageSize / 2;
+             chunkSize = (long) Math.ceil(chunkSize * CHUNK_SIZE_FACTOR / 8.0D) * 8L) {
+            chunkClasses.add(new ChunkClass((int) chunkSize, pageSize));
+        }
+
+        chunkClasses.add(new ChunkClass(pageSize, pageSize));
+        return chunkClasses.toArray(new ChunkClass[0]);
+    }
+
+    @Override
+    public boolean validate() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return !closed;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(@Nonnull String section, @Nonnull String key) {
+        byte[] keyBytes = getKeyBytes(section, key);
+        long hash = getHash(keyBytes);
+
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return !closed && findLiveAddress(keyBytes, hash) != -1L;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
+        internalPut(section, key, value, Long.MAX_VALUE, true);
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
+        internalPut(section, key, value, getExpirationTimeMillis(lifetimeMillis), true);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
+        internalPut(section, key, value, Long.MAX_VALUE, false);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
+        internalPut(section, key, value, getExpirationTimeMillis(lifetimeMillis), false);
+    }
+
+    @Nullable
+    @Override
+    public byte[] get(@Nonnull String section, @Nonnull String key) {
+        return readValue(section, key, buffer -> {
+            byte[] value = new byte[buffer.remaining()];
+            buffer.get(value);
+            return value;
+        });
+    }
+
+    /**
+     * Applies the function to the value without copying it to the heap.
+     * The buffer is read-only and is valid only during the function invocation.
+     * The function should not call methods of this cache.
+     *
+     * @param section  storage section
+     * @param key      storage key (unique for each section)
+     * @param function function to process value
+     * @param <T>      type of the result
+     * @return function result or {@code null} if there is no such value in the storage
+     */
+    @Nullable
+    public <T> T readValue(@Nonnull String section, @Nonnull String key, @Nonnull Function<ByteBuffer, T> function) {
+        byte[] keyBytes = getKeyBytes(section, key);
+        long hash = getHash(keyBytes);
+
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            if (closed) {
+                return null;
+            }
+
+            long address = findLiveAddress(keyBytes, hash);
+            if (address == -1L) {
+                return null;
+            }
+
+            ByteBuffer slab = getSlab(address);
+            int offset = getOffset(address);
+
+            // Benign race: concurrent readers may only set the flag.
+            slab.put(offset + REFERENCED_OFFSET, (byte) 1);
+
+            ByteBuffer buffer = slab.asReadOnlyBuffer();
+            int valueOffset = offset + HEADER_SIZE + slab.getInt(offset + KEY_LENGTH_OFFSET);
+            ((Buffer) buffer).limit(valueOffset + slab.getInt(offset + VALUE_LENGTH_OFFSET));
+            ((Buffer) buffer).position(valueOffset);
+            return function.apply(buffer.slice());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(@Nonnull String section, @Nonnull String key) {
+        byte[] keyBytes = getKeyBytes(section, key);
+        long hash = getHash(keyBytes);
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+
+            int slot = findSlot(keyBytes, hash);
+            if (slot == -1) {
+                return false;
+            }
+
+            long address = indexAddresses[slot];
+            removeSlot(slot);
+            freeChunk(address);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Scans the whole index, so takes time proportional to the number of entries in the cache.
+     *
+     * @param section storage section
+     */
+    @Override
+    public void clearSection(@Nonnull String section) {
+        ensureCacheSectionName(section);
+        byte[] prefixBytes = (section + '/').getBytes(StandardCharsets.UTF_8);
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            List<Long> addresses = new ArrayList<>();
+            for (int slot = indexHashes.length; --slot >= 0; ) {
+                if (indexHashes[slot] != 0L && hasKeyPrefix(indexAddresses[slot], prefixBytes)) {
+                    addresses.add(indexAddresses[slot]);
+                }
+            }
+
+            for (long address : addresses) {
+                removeEntry(address);
+                freeChunk(address);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            internalClear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Releases references to the slabs, memory is returned to the system when they are garbage collected.
+     */
+    @Override
+    public void close() {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            internalClear();
+            slabs.clear();
+            IoUtil.closeQuietly(fileChannel);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of bytes allocated for pages
+     */
+    public long getAllocatedMemory() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return (long) allocatedPageCount * pageSize;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Contract(pure = true)
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.toString(this, false, "file", "maxMemory", "pageSize");
+    }
+
+    private void internalPut(String section, String key, byte[] value, long expirationTimeMillis, boolean overwrite) {
+        if (value == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'value' can't be 'null' (section='%s', key='%s').", section, key
+            ));
+        }
+
+        byte[] keyBytes = getKeyBytes(section, key);
+        long hash = getHash(keyBytes);
+        long entrySize = (long) HEADER_SIZE + keyBytes.length + value.length;
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            int slot = findSlot(keyBytes, hash);
+            if (slot != -1) {
+                long address = indexAddresses[slot];
+                if (!overwrite && getSlab(address).getLong(getOffset(address) + EXPIRATION_TIME_OFFSET)
+                        >= System.currentTimeMillis()) {
+                    return;
+                }
+
+                removeSlot(slot);
+                freeChunk(address);
+            }
+
+            if (entrySize > pageSize) {
+                logger.warn(String.format(
+                        "Value is too large to be stored (section='%s', key='%s', size=%d, pageSize=%d).",
+                        section, key, value.length, pageSize
+                ));
+                return;
+            }
+
+            long address = allocateChunk(getChunkClassIndex((int) entrySize));
+            if (address == -1L) {
+                return;
+            }
+
+            ByteBuffer slab = getSlab(address);
+            int offset = getOffset(address);
+
+            slab.putLong(offset + HASH_OFFSET, hash);
+            slab.putLong(offset + EXPIRATION_TIME_OFFSET, expirationTimeMillis);
+            slab.putInt(offset + KEY_LENGTH_OFFSET, keyBytes.length);
+            slab.putInt(offset + VALUE_LENGTH_OFFSET, value.length);
+            slab.put(offset + REFERENCED_OFFSET, (byte) 0);
+
+            ByteBuffer buffer = slab.duplicate();
+            ((Buffer) buffer).position(offset + HEADER_SIZE);
+            buffer.put(keyBytes).put(value);
+
+            insertSlot(hash, address);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void internalClear() {
+        Arrays.fill(indexHashes, 0L);
+        Arrays.fill(indexAddresses, 0L);
+        indexSize = 0;
+
+        for (ChunkClass chunkClass : chunkClasses) {
+            chunkClass.pageCount = 0;
+            chunkClass.freeChunkCount = 0;
+            chunkClass.hand = 0L;
+        }
+
+        allocatedPageCount = 0;
+    }
+
+    private int getChunkClassIndex(int entrySize) {
+        int lowIndex = 0;
+        int highIndex = chunkClasses.length - 1;
+
+        while (lowIndex < highIndex) {
+            int middleIndex = (lowIndex + highIndex) >>> 1;
+            if (chunkClasses[middleIndex].chunkSize >= entrySize) {
+                highIndex = middleIndex;
+            } else {
+                lowIndex = middleIndex + 1;
+            }
+        }
+
+        return lowIndex;
+    }
+
+    /**
+     * @return address of the chunk or {@code -1} if there is no memory for this chunk class
+     */
+    private long allocateChunk(int chunkClassIndex) {
+        ChunkClass chunkClass = chunkClasses[chunkClassIndex];
+
+        if (chunkClass.freeChunkCount > 0) {
+            return chunkClass.freeChunks[--chunkClass.freeChunkCount];
+        }
+
+        if (allocatedPageCount < pageCount) {
+            long pageAddress = (long) allocatedPageCount++ * pageSize;
+            ensureSlab(pageAddress);
+            addPage(chunkClassIndex, pageAddress);
+            return chunkClass.freeChunks[--chunkClass.freeChunkCount];
+        }
+
+        if (chunkClass.pageCount > 0) {
+            return evictChunk(chunkClass);
+        }
+
+        int victimClassIndex = -1;
+        for (int classIndex = 0; classIndex < chunkClasses.length; ++classIndex) {
+            if (victimClassIndex == -1
+                    || chunkClasses[classIndex].pageCount > chunkClasses[victimClassIndex].pageCount) {
+                victimClassIndex = classIndex;
+            }
+        }
+
+        if (victimClassIndex == -1 || chunkClasses[victimClassIndex].pageCount == 0) {
+            return -1L;
+        }
+
+        addPage(chunkClassIndex, takePage(chunkClasses[victimClassIndex]));
+        return chunkClass.freeChunks[--chunkClass.freeChunkCount];
+    }
+
+    /**
+     * Finds a victim using CLOCK algorithm. Expired entries are evicted without a second chance.
+     * All chunks of the class are occupied, so two rounds are enough.
+     */
+    private long evictChunk(ChunkClass chunkClass) {
+        long chunkCount = (long) chunkClass.pageCount * chunkClass.chunksPerPage;
+        long currentTimeMillis = System.currentTimeMillis();
+
+        while (true) {
+            long address = chunkClass.getChunkAddress(chunkClass.hand);
+            chunkClass.hand = (chunkClass.hand + 1L) % chunkCount;
+
+            ByteBuffer slab = getSlab(address);
+            int offset = getOffset(address);
+
+            if (slab.getInt(offset + KEY_LENGTH_OFFSET) == FREE_CHUNK) {
+                continue;
+            }
+
+            if (slab.get(offset + REFERENCED_OFFSET) != 0
+                    && slab.getLong(offset + EXPIRATION_TIME_OFFSET) >= currentTimeMillis) {
+                slab.put(offset + REFERENCED_OFFSET, (byte) 0);
+                continue;
+            }
+
+            removeEntry(address);
+            slab.putInt(offset + KEY_LENGTH_OFFSET, FREE_CHUNK);
+            return address;
+        }
+    }
+
+    private void addPage(int chunkClassIndex, long pageAddress) {
+        ChunkClass chunkClass = chunkClasses[chunkClassIndex];
+        chunkClassIndexByPage[(int) (pageAddress / pageSize)] = chunkClassIndex;
+        chunkClass.addPage(pageAddress);
+
+        ByteBuffer slab = getSlab(pageAddress);
+        for (int chunkIndex = chunkClass.chunksPerPage; --chunkIndex >= 0; ) {
+            long address = pageAddress + (long) chunkIndex * chunkClass.chunkSize;
+            slab.putInt(getOffset(address) + KEY_LENGTH_OFFSET, FREE_CHUNK);
+            chunkClass.pushFreeChunk(address);
+        }
+    }
+
+    /**
+     * Evicts all entries of the page at the clock hand and detaches the page from its class.
+     */
+    private long takePage(ChunkClass chunkClass) {
+        int pageIndex = (int) (chunkClass.hand / chunkClass.chunksPerPage);
+        long pageAddress = chunkClass.pages[pageIndex];
+        ByteBuffer slab = getSlab(pageAddress);
+
+        for (int chunkIndex = 0; chunkIndex < chunkClass.chunksPerPage; ++chunkIndex) {
+            long address = pageAddress + (long) chunkIndex * chunkClass.chunkSize;
+            if (slab.getInt(getOffset(address) + KEY_LENGTH_OFFSET) != FREE_CHUNK) {
+                removeEntry(address);
+            }
+        }
+
+        chunkClass.removePage(pageIndex, pageAddress, pageSize);
+        return pageAddress;
+    }
+
+    private void freeChunk(long address) {
+        getSlab(address).putInt(getOffset(address) + KEY_LENGTH_OFFSET, FREE_CHUNK);
+        chunkClasses[chunkClassIndexByPage[(int) (address / pageSize)]].pushFreeChunk(address);
+    }
+
+    private void ensureSlab(long pageAddress) {
+        int slabIndex = (int) (pageAddress / pageSize / pagesPerSlab);
+
+        while (slabs.size() <= slabIndex) {
+            int slabPageCount = Math.min(pagesPerSlab, pageCount - slabs.size() * pagesPerSlab);
+            int slabSize = slabPageCount * pageSize;
+
+            if (fileChannel == null) {
+                slabs.add(ByteBuffer.allocateDirect(slabSize));
+            } else {
+                try {
+                    slabs.add(fileChannel.map(
+                            FileChannel.MapMode.READ_WRITE, (long) slabs.size() * pagesPerSlab * pageSize, slabSize
+                    ));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Can't map cache slab to the file '" + file + "'.", e);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer getSlab(long address) {
+        return slabs.get((int) (address / pageSize / pagesPerSlab));
+    }
+
+    private int getOffset(long address) {
+        return (int) (address % ((long) pagesPerSlab * pageSize));
+    }
+
+    /**
+     * @return address of the not expired entry or {@code -1}
+     */
+    private long findLiveAddress(byte[] keyBytes, long hash) {
+        int slot = findSlot(keyBytes, hash);
+        if (slot == -1) {
+            return -1L;
+        }
+
+        long address = indexAddresses[slot];
+        return getSlab(address).getLong(getOffset(address) + EXPIRATION_TIME_OFFSET) >= System.currentTimeMillis()
+                ? address : -1L;
+    }
+
+    private int findSlot(byte[] keyBytes, long hash) {
+        int mask = indexHashes.length - 1;
+
+        for (int slot = getHomeSlot(hash, mask); indexHashes[slot] != 0L; slot = (slot + 1) & mask) {
+            if (indexHashes[slot] == hash && hasKey(indexAddresses[slot], keyBytes)) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private void removeEntry(long address) {
+        ByteBuffer slab = getSlab(address);
+        long hash = slab.getLong(getOffset(address) + HASH_OFFSET);
+        int mask = indexHashes.length - 1;
+
+        for (int slot = getHomeSlot(hash, mask); indexHashes[slot] != 0L; slot = (slot + 1) & mask) {
+            if (indexAddresses[slot] == address) {
+                removeSlot(slot);
+                return;
+            }
+        }
+    }
+
+    private void insertSlot(long hash, long address) {
+        if (2 * (indexSize + 1) > indexHashes.length) {
+            resizeIndex();
+        }
+
+        int mask = indexHashes.length - 1;
+        int slot = getHomeSlot(hash, mask);
+        while (indexHashes[slot] != 0L) {
+            slot = (slot + 1) & mask;
+        }
+
+        indexHashes[slot] = hash;
+        indexAddresses[slot] = address;
+        ++indexSize;
+    }
+
+    /**
+     * Removes slot with backward shift, so the index never contains tombstones.
+     */
+    private void removeSlot(int slot) {
+        int mask = indexHashes.length - 1;
+        int emptySlot = slot;
+
+        for (int nextSlot = (slot + 1) & mask; indexHashes[nextSlot] != 0L; nextSlot = (nextSlot + 1) & mask) {
+            int homeSlot = getHomeSlot(indexHashes[nextSlot], mask);
+            if (((nextSlot - homeSlot) & mask) >= ((nextSlot - emptySlot) & mask)) {
+                indexHashes[emptySlot] = indexHashes[nextSlot];
+                indexAddresses[emptySlot] = indexAddresses[nextSlot];
+                emptySlot = nextSlot;
+            }
+        }
+
+        indexHashes[emptySlot] = 0L;
+        indexAddresses[emptySlot] = 0L;
+        --indexSize;
+    }
+
+    private void resizeIndex() {
+        long[] oldHashes = indexHashes;
+        long[] oldAddresses = indexAddresses;
+
+        indexHashes = new long[oldHashes.length << 1];
+        indexAddresses = new long[oldAddresses.length << 1];
+        indexSize = 0;
+
+        for (int slot = oldHashes.length; --slot >= 0; ) {
+            if (oldHashes[slot] != 0L) {
+                insertSlot(oldHashes[slot], oldAddresses[slot]);
+            }
+        }
+    }
+
+    private boolean hasKey(long address, byte[] keyBytes) {
+        ByteBuffer slab = getSlab(address);
+        int offset = getOffset(address);
+        return slab.getInt(offset + KEY_LENGTH_OFFSET) == keyBytes.length && hasKeyPrefix(address, keyBytes);
+    }
+
+    private boolean hasKeyPrefix(long address, byte[] prefixBytes) {
+        ByteBuffer slab = getSlab(address);
+        int offset = getOffset(address);
+
+        if (slab.getInt(offset + KEY_LENGTH_OFFSET) < prefixBytes.length) {
+            return false;
+        }
+
+        int keyOffset = offset + HEADER_SIZE;
+        for (int i = prefixBytes.length; --i >= 0; ) {
+            if (slab.get(keyOffset + i) != prefixBytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int getHomeSlot(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static byte[] getKeyBytes(@Nonnull String section, @Nonnull String key) {
+        ensureCacheSectionName(section);
+        ensureCacheKeyName(key);
+        return (section + '/' + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * FNV-1a hash with the final avalanche step of MurmurHash3. Never returns zero, which marks empty slot.
+     */
+    private static long getHash(byte[] bytes) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+
+        return hash == 0L ? 1L : hash;
+    }
+
+    private static long getExpirationTimeMillis(long lifetimeMillis) {
+        if (lifetimeMillis < 1L) {
+            throw new IllegalArgumentException("Argument 'lifetimeMillis' must be a positive long integer.");
+        }
+
+        long currentTimeMillis = System.currentTimeMillis();
+        long expirationTimeMillis = currentTimeMillis + lifetimeMillis;
+        return expirationTimeMillis <= currentTimeMillis ? Long.MAX_VALUE : expirationTimeMillis;
+    }
+
+    /**
+     * Pages and free chunks of one chunk size. Guarded by the cache lock.
+     */
+    private static final class ChunkClass {
+        private final int chunkSize;
+        private final int chunksPerPage;
+
+        private long[] pages = new long[4];
+        private int pageCount;
+
+        private long[] freeChunks = new long[16];
+        private int freeChunkCount;
+
+        /**
+         * Ordinal number of the next chunk to check by CLOCK algorithm.
+         */
+        private long hand;
+
+        private ChunkClass(int chunkSize, int pageSize) {
+            this.chunkSize = chunkSize;
+            this.chunksPerPage = pageSize / chunkSize;
+        }
+
+        private long getChunkAddress(long chunkOrdinal) {
+            return pages[(int) (chunkOrdinal / chunksPerPage)] + chunkOrdinal % chunksPerPage * chunkSize;
+        }
+
+        private void addPage(long pageAddress) {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount << 1);
+            }
+            pages[pageCount++] = pageAddress;
+        }
+
+        private void removePage(int pageIndex, long pageAddress, int pageSize) {
+            pages[pageIndex] = pages[--pageCount];
+
+            int newFreeChunkCount = 0;
+            for (int i = 0; i < freeChunkCount; ++i) {
+                long address = freeChunks[i];
+                if (address < pageAddress || address >= pageAddress + pageSize) {
+                    freeChunks[newFreeChunkCount++] = address;
+                }
+            }
+            freeChunkCount = newFreeChunkCount;
+
+            long chunkCount = (long) pageCount * chunksPerPage;
+            hand = chunkCount == 0L ? 0L : hand % chunkCount;
+        }
+
+        private void pushFreeChunk(long address) {
+            if (freeChunkCount == freeChunks.length) {
+                freeChunks = Arrays.copyOf(freeChunks, freeChunkCount << 1);
+            }
+            freeChunks[freeChunkCount++] = address;
+        }
+    }
+}
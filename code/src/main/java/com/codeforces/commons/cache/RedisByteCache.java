@@ -1,5 +1,7 @@
 package com.codeforces.commons.cache;
 
+import com.codeforces.commons.compress.CompressionCodec;
+import com.codeforces.commons.compress.CompressionCodecs;
 import com.codeforces.commons.math.RandomUtil;
 import com.codeforces.commons.text.Patterns;
 import com.codeforces.commons.time.TimeUtil;
@@ -7,24 +9,67 @@ import org.apache.log4j.Logger;
 import org.xerial.snappy.Snappy;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.SetParams;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores values in Redis. See {@link StorageMode} for the supported storage formats.
+ */
 public class RedisByteCache extends ByteCache {
     private static final Logger logger = Logger.getLogger(RedisByteCache.class);
     private static final long DEFAULT_LIFETIME = TimeUtil.MILLIS_PER_DAY;
 
+    /**
+     * Larger lifetimes are truncated in {@link StorageMode#NATIVE native} mode to keep Redis expiration time valid.
+     */
+    private static final long MAX_NATIVE_LIFETIME = 3650L * TimeUtil.MILLIS_PER_DAY;
+    private static final int UNLINK_BATCH_SIZE = 1000;
+
     private final String host;
     @SuppressWarnings("FieldCanBeLocal")
     private final int port;
+    private final StorageMode storageMode;
+    private final SectionCodecs codecs;
 
     private final JedisPool jedisPool;
 
     public RedisByteCache(String hostAndPort) {
+        this(hostAndPort, StorageMode.ITEM);
+    }
+
+    public RedisByteCache(String hostAndPort, @Nonnull StorageMode storageMode) {
+        this(hostAndPort, storageMode, CompressionCodecs.SNAPPY);
+    }
+
+    /**
+     * @param hostAndPort  Redis address
+     * @param storageMode  storage mode
+     * @param defaultCodec codec of the sections without {@link #setSectionCodec(String, CompressionCodec)
+     *                     their own codec}, values are compressed in {@link StorageMode#ITEM} mode only
+     */
+    public RedisByteCache(
+            String hostAndPort, @Nonnull StorageMode storageMode, @Nonnull CompressionCodec defaultCodec) {
+        if (storageMode == null) {
+            throw new IllegalArgumentException("Argument 'storageMode' is 'null'.");
+        }
+
+        this.storageMode = storageMode;
+        this.codecs = new SectionCodecs(defaultCodec);
+
         String[] items = Patterns.COLON_PATTERN.split(hostAndPort);
 
         if (items.length == 1) {
@@ -39,6 +84,22 @@ public class RedisByteCache extends ByteCache {
         jedisPool = new JedisPool(host, port);
     }
 
+    /**
+     * Sets the codec of new values of the section. Values stored before remain readable.
+     *
+     * @param section cache section
+     * @param codec   codec or {@code null} to use the default one
+     */
+    public void setSectionCodec(@Nonnull String section, @Nullable CompressionCodec codec) {
+        ensureCacheSectionName(section);
+        codecs.set(section, codec);
+    }
+
+    @Nonnull
+    public CompressionCodec getSectionCodec(@Nonnull String section) {
+        return codecs.get(section);
+    }
+
     private Jedis getJedis() {
         Jedis jedis = jedisPool.getResource();
 
@@ -69,6 +130,20 @@ public class RedisByteCache extends ByteCache {
         return (section + '/' + key).getBytes(StandardCharsets.UTF_8);
     }
 
+    /**
+     * Validates names, so the key can't clash with the {@link #getSectionIndexName(String) section index}.
+     */
+    private static byte[] getNativeFilename(@Nonnull String section, @Nonnull String key) {
+        ensureCacheSectionName(section);
+        ensureCacheKeyName(key);
+        return getFilename(section, key);
+    }
+
+    private static byte[] getSectionIndexName(@Nonnull String section) {
+        ensureCacheSectionName(section);
+        return (section + ":keys").getBytes(StandardCharsets.UTF_8);
+    }
+
     @Override
     public boolean contains(@Nonnull String section, @Nonnull String key) {
         Jedis jedis = getJedis();
@@ -87,11 +162,17 @@ public class RedisByteCache extends ByteCache {
 
     @Override
     public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
+        if (storageMode == StorageMode.NATIVE) {
+            nativePut(section, key, value, lifetimeMillis, false);
+            return;
+        }
+
         Jedis jedis = getJedis();
 
         try {
             byte[] keyBytes = getFilename(section, key);
-            byte[] valueBytes = new Item(value, System.currentTimeMillis() + lifetimeMillis).toByteArray();
+            byte[] valueBytes = new Item(value, System.currentTimeMillis() + lifetimeMillis)
+                    .toByteArray(codecs.get(section));
             jedis.set(keyBytes, valueBytes);
         } catch (IOException e) {
             logger.error("Can't put " + section + '/' + key + " to the Redis.", e);
@@ -102,24 +183,79 @@ public class RedisByteCache extends ByteCache {
 
     @Override
     public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
-        if (!contains(section, key)) {
-            put(section, key, value, DEFAULT_LIFETIME);
-        }
+        putIfAbsent(section, key, value, DEFAULT_LIFETIME);
     }
 
     @Override
     public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
-        if (!contains(section, key)) {
+        if (storageMode == StorageMode.NATIVE) {
+            nativePut(section, key, value, lifetimeMillis, true);
+        } else if (!contains(section, key)) {
             put(section, key, value, lifetimeMillis);
         }
     }
 
+    /**
+     * Stores the value with {@code SET PX [NX]} and adds its key to the section index in a single round trip.
+     */
+    private void nativePut(String section, String key, byte[] value, long lifetimeMillis, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'value' can't be 'null' (section='%s', key='%s').", section, key
+            ));
+        }
+
+        if (lifetimeMillis < 1L) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'lifetimeMillis' must be a positive long integer (section='%s', key='%s').", section, key
+            ));
+        }
+
+        long nativeLifetimeMillis = Math.min(lifetimeMillis, MAX_NATIVE_LIFETIME);
+        byte[] keyBytes = getNativeFilename(section, key);
+        byte[] sectionIndexName = getSectionIndexName(section);
+
+        SetParams setParams = SetParams.setParams().px(nativeLifetimeMillis);
+        if (onlyIfAbsent) {
+            setParams.nx();
+        }
+
+        Jedis jedis = getJedis();
+        try {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.set(keyBytes, value, setParams);
+            pipeline.sadd(sectionIndexName, keyBytes);
+            Response<Long> sectionIndexLifetime = pipeline.pttl(sectionIndexName);
+            pipeline.sync();
+
+            extendSectionIndexLifetime(jedis, sectionIndexName, sectionIndexLifetime.get(), nativeLifetimeMillis);
+        } finally {
+            releaseJedis(jedis);
+        }
+    }
+
+    /**
+     * Section index should outlive its keys. Its lifetime is extended with a margin of the key lifetime,
+     * so consecutive puts with similar lifetimes do not need the additional round trip. Keys of the expired values
+     * stay in the index no longer than the index itself.
+     */
+    private static void extendSectionIndexLifetime(
+            Jedis jedis, byte[] sectionIndexName, long sectionIndexLifetimeMillis, long lifetimeMillis) {
+        if (sectionIndexLifetimeMillis < lifetimeMillis) {
+            jedis.pexpire(sectionIndexName, Math.min(2L * lifetimeMillis, MAX_NATIVE_LIFETIME));
+        }
+    }
+
     @Nullable
     @Override
     public byte[] get(@Nonnull String section, @Nonnull String key) {
         Jedis jedis = getJedis();
 
         try {
+            if (storageMode == StorageMode.NATIVE) {
+                return jedis.get(getNativeFilename(section, key));
+            }
+
             byte[] keyBytes = getFilename(section, key);
             byte[] valueBytes = jedis.get(keyBytes);
 
@@ -142,8 +278,188 @@ public class RedisByteCache extends ByteCache {
         }
     }
 
+    /**
+     * Fetches all values with a single {@code MGET} command.
+     */
+    @Nonnull
+    @Override
+    public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        List<String> keyList = new ArrayList<>(keys);
+        byte[][] keyBytes = new byte[keyList.size()][];
+        for (int keyIndex = 0; keyIndex < keyBytes.length; ++keyIndex) {
+            keyBytes[keyIndex] = storageMode == StorageMode.NATIVE
+                    ? getNativeFilename(section, keyList.get(keyIndex))
+                    : getFilename(section, keyList.get(keyIndex));
+        }
+
+        List<byte[]> valuesBytes;
+        Jedis jedis = getJedis();
+        try {
+            valuesBytes = jedis.mget(keyBytes);
+        } finally {
+            releaseJedis(jedis);
+        }
+
+        if (storageMode == StorageMode.NATIVE) {
+            Map<String, byte[]> valueByKey = new LinkedHashMap<>(keyBytes.length);
+            for (int keyIndex = 0; keyIndex < keyBytes.length; ++keyIndex) {
+                byte[] valueBytes = valuesBytes.get(keyIndex);
+                if (valueBytes != null) {
+                    valueByKey.put(keyList.get(keyIndex), valueBytes);
+                }
+            }
+            return valueByKey;
+        }
+
+        Map<String, byte[]> valueByKey = new LinkedHashMap<>(keyBytes.length);
+        long currentTimeMillis = System.currentTimeMillis();
+
+        for (int keyIndex = 0; keyIndex < keyBytes.length; ++keyIndex) {
+            byte[] valueBytes = valuesBytes.get(keyIndex);
+            if (valueBytes == null) {
+                continue;
+            }
+
+            String key = keyList.get(keyIndex);
+            try {
+                Item item = Item.fromByteArray(valueBytes);
+                if (currentTimeMillis <= item.deadlineTime) {
+                    valueByKey.put(key, item.bytes);
+                }
+            } catch (IOException e) {
+                logger.error("Can't get " + section + '/' + key + " from the Redis.", e);
+            }
+        }
+
+        return valueByKey;
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+        putAll(section, valueByKey, DEFAULT_LIFETIME);
+    }
+
+    /**
+     * Sends all values in a single pipeline.
+     */
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        if (valueByKey.isEmpty()) {
+            return;
+        }
+
+        if (storageMode == StorageMode.NATIVE) {
+            nativePutAll(section, valueByKey, lifetimeMillis);
+            return;
+        }
+
+        long deadlineTime = System.currentTimeMillis() + lifetimeMillis;
+        Jedis jedis = getJedis();
+
+        try {
+            Pipeline pipeline = jedis.pipelined();
+            CompressionCodec codec = codecs.get(section);
+
+            for (Map.Entry<String, byte[]> entry : valueByKey.entrySet()) {
+                try {
+                    byte[] keyBytes = getFilename(section, entry.getKey());
+                    pipeline.set(keyBytes, new Item(entry.getValue(), deadlineTime).toByteArray(codec));
+                } catch (IOException e) {
+                    logger.error("Can't put " + section + '/' + entry.getKey() + " to the Redis.", e);
+                }
+            }
+
+            pipeline.sync();
+        } finally {
+            releaseJedis(jedis);
+        }
+    }
+
+    private void nativePutAll(String section, Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        if (lifetimeMillis < 1L) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'lifetimeMillis' must be a positive long integer (section='%s').", section
+            ));
+        }
+
+        long nativeLifetimeMillis = Math.min(lifetimeMillis, MAX_NATIVE_LIFETIME);
+        byte[] sectionIndexName = getSectionIndexName(section);
+        SetParams setParams = SetParams.setParams().px(nativeLifetimeMillis);
+
+        byte[][] keysBytes = new byte[valueByKey.size()][];
+        int keyIndex = 0;
+
+        Jedis jedis = getJedis();
+        try {
+            Pipeline pipeline = jedis.pipelined();
+
+            for (Map.Entry<String, byte[]> entry : valueByKey.entrySet()) {
+                byte[] value = entry.getValue();
+                if (value == null) {
+                    throw new IllegalArgumentException(String.format(
+                            "Argument 'value' can't be 'null' (section='%s', key='%s').", section, entry.getKey()
+                    ));
+                }
+
+                byte[] keyBytes = getNativeFilename(section, entry.getKey());
+                keysBytes[keyIndex++] = keyBytes;
+                pipeline.set(keyBytes, value, setParams);
+            }
+
+            pipeline.sadd(sectionIndexName, keysBytes);
+            Response<Long> sectionIndexLifetime = pipeline.pttl(sectionIndexName);
+            pipeline.sync();
+
+            extendSectionIndexLifetime(jedis, sectionIndexName, sectionIndexLifetime.get(), nativeLifetimeMillis);
+        } finally {
+            releaseJedis(jedis);
+        }
+    }
+
+    /**
+     * Removes all values with a single {@code DEL} command
+     * or with {@code UNLINK} in {@link StorageMode#NATIVE native} mode.
+     */
+    @Override
+    public int removeAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        byte[][] keyBytes = new byte[keys.size()][];
+        int keyIndex = 0;
+        for (String key : keys) {
+            keyBytes[keyIndex++] = storageMode == StorageMode.NATIVE
+                    ? getNativeFilename(section, key)
+                    : getFilename(section, key);
+        }
+
+        Jedis jedis = getJedis();
+        try {
+            if (storageMode == StorageMode.NATIVE) {
+                Pipeline pipeline = jedis.pipelined();
+                Response<Long> removedCount = pipeline.unlink(keyBytes);
+                pipeline.srem(getSectionIndexName(section), keyBytes);
+                pipeline.sync();
+                return Math.toIntExact(removedCount.get());
+            }
+
+            return Math.toIntExact(jedis.del(keyBytes));
+        } finally {
+            releaseJedis(jedis);
+        }
+    }
+
     @Override
     public boolean remove(@Nonnull String section, @Nonnull String key) {
+        if (storageMode == StorageMode.NATIVE) {
+            return removeAll(section, Collections.singletonList(key)) > 0;
+        }
+
         Jedis jedis = getJedis();
 
         try {
@@ -153,9 +469,42 @@ public class RedisByteCache extends ByteCache {
         }
     }
 
+    /**
+     * Supported in {@link StorageMode#NATIVE native} mode only. Detaches the section index with {@code RENAME},
+     * so concurrent puts start a new index, and unlinks the indexed keys in batches.
+     */
     @Override
     public void clearSection(@Nonnull String section) {
-        throw new UnsupportedOperationException();
+        if (storageMode != StorageMode.NATIVE) {
+            throw new UnsupportedOperationException();
+        }
+
+        byte[] sectionIndexName = getSectionIndexName(section);
+        byte[] detachedIndexName = (section + ":clearing:" + RandomUtil.getRandomToken()).getBytes(StandardCharsets.UTF_8);
+
+        Jedis jedis = getJedis();
+        try {
+            try {
+                jedis.rename(sectionIndexName, detachedIndexName);
+            } catch (JedisDataException ignored) {
+                // Section index does not exist.
+                return;
+            }
+
+            List<byte[]> keyBatch = new ArrayList<>(UNLINK_BATCH_SIZE);
+            for (byte[] keyBytes : jedis.smembers(detachedIndexName)) {
+                keyBatch.add(keyBytes);
+                if (keyBatch.size() == UNLINK_BATCH_SIZE) {
+                    jedis.unlink(keyBatch.toArray(new byte[keyBatch.size()][]));
+                    keyBatch.clear();
+                }
+            }
+
+            keyBatch.add(detachedIndexName);
+            jedis.unlink(keyBatch.toArray(new byte[keyBatch.size()][]));
+        } finally {
+            releaseJedis(jedis);
+        }
     }
 
     @Override
@@ -176,7 +525,22 @@ public class RedisByteCache extends ByteCache {
 
     @Override
     public String toString() {
-        return "RedisByteCache {host='" + host + "'}";
+        return "RedisByteCache {host='" + host + "', storageMode=" + storageMode + ", codecs=" + codecs + '}';
+    }
+
+    public enum StorageMode {
+        /**
+         * Values are compressed and wrapped with their deadline time. Redis does not expire them,
+         * {@link #clearSection(String) clearSection} is not supported.
+         */
+        ITEM,
+
+        /**
+         * Raw values are stored with Redis expiration time ({@code SET PX}), {@code putIfAbsent} is atomic
+         * ({@code SET NX}). Keys of each section are collected in a set, which allows to clear the section
+         * in time proportional to its size. Not compatible with values stored in {@link #ITEM} mode.
+         */
+        NATIVE
     }
 
     private static class Item {
@@ -190,15 +554,36 @@ public class RedisByteCache extends ByteCache {
             this.deadlineTime = deadlineTime;
         }
 
-        public byte[] toByteArray() throws IOException {
-            byte[] compressedBytes = Snappy.compress(bytes);
-            ByteBuffer byteBuffer = ByteBuffer.allocate(LONG_SIZE_BYTES + compressedBytes.length);
+        /**
+         * Codec header (see {@link CompressionCodecs#encode(CompressionCodec, byte[])}) is followed
+         * by the deadline time and the compressed bytes.
+         */
+        public byte[] toByteArray(CompressionCodec codec) throws IOException {
+            byte[] encodedBytes = CompressionCodecs.encode(codec, bytes);
+            ByteBuffer byteBuffer = ByteBuffer.allocate(LONG_SIZE_BYTES + encodedBytes.length);
+            byteBuffer.put(encodedBytes[0]);
             byteBuffer.putLong(deadlineTime);
-            byteBuffer.put(compressedBytes);
+            byteBuffer.put(encodedBytes, 1, encodedBytes.length - 1);
             return byteBuffer.array();
         }
 
+        /**
+         * Items stored before the codec header was introduced start with the deadline time,
+         * which is a nonnegative big-endian long, and are compressed by Snappy.
+         */
         public static Item fromByteArray(byte[] byteArray) throws IOException {
+            if (CompressionCodecs.isEncoded(byteArray)) {
+                if (byteArray.length <= LONG_SIZE_BYTES) {
+                    throw new IOException("Item is too short.");
+                }
+
+                byte[] encodedBytes = new byte[byteArray.length - LONG_SIZE_BYTES];
+                encodedBytes[0] = byteArray[0];
+                System.arraycopy(byteArray, 1 + LONG_SIZE_BYTES, encodedBytes, 1, encodedBytes.length - 1);
+                long deadlineTime = ByteBuffer.wrap(byteArray, 1, LONG_SIZE_BYTES).getLong();
+                return new Item(CompressionCodecs.decode(encodedBytes), deadlineTime);
+            }
+
             ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray);
             long deadlineTime = byteBuffer.getLong();
             byte[] compressedBytes = new byte[byteArray.length - LONG_SIZE_BYTES];
@@ -0,0 +1,211 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.process.ThreadUtil;
+import com.codeforces.commons.text.Patterns;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts invalidations to all processes through Redis pub/sub.
+ * <p>
+ * Messages published while the subscriber connection is broken are lost, so after reconnection
+ * listeners get the {@link Invalidation#ofAll(String) invalidation of the whole cache}.
+ */
+public class RedisInvalidationChannel implements InvalidationChannel {
+    private static final Logger logger = Logger.getLogger(RedisInvalidationChannel.class);
+
+    public static final String DEFAULT_CHANNEL_NAME = "cache-invalidations";
+    private static final String RECONNECTION_ORIGIN_ID = "";
+    private static final long RECONNECTION_DELAY_MILLIS = 1000L;
+
+    private final String host;
+    private final int port;
+    private final byte[] channelName;
+    private final JedisPool jedisPool;
+
+    private final List<Consumer<Invalidation>> listeners = new CopyOnWriteArrayList<>();
+    private final Object subscriberMonitor = new Object();
+
+    @Nullable
+    private Thread subscriberThread;
+
+    @Nullable
+    private volatile BinaryJedisPubSub pubSub;
+
+    private volatile boolean closed;
+
+    public RedisInvalidationChannel(@Nonnull String hostAndPort) {
+        this(hostAndPort, DEFAULT_CHANNEL_NAME);
+    }
+
+    public RedisInvalidationChannel(@Nonnull String hostAndPort, @Nonnull String channelName) {
+        String[] items = Patterns.COLON_PATTERN.split(hostAndPort);
+
+        if (items.length == 1) {
+            this.host = hostAndPort;
+            this.port = Protocol.DEFAULT_PORT;
+        } else {
+            this.host = items[0];
+            this.port = Integer.parseInt(items[1]);
+        }
+
+        this.channelName = channelName.getBytes(StandardCharsets.UTF_8);
+        this.jedisPool = new JedisPool(host, port);
+    }
+
+    @Override
+    public void publish(@Nonnull Invalidation invalidation) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.publish(channelName, encode(invalidation));
+        } catch (JedisException e) {
+            logger.error("Can't publish " + invalidation + " to the Redis.", e);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Subscription subscribe(@Nonnull Consumer<Invalidation> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Argument 'listener' is 'null'.");
+        }
+
+        listeners.add(listener);
+
+        synchronized (subscriberMonitor) {
+            if (subscriberThread == null && !closed) {
+                subscriberThread = ThreadUtil.newThread(
+                        RedisInvalidationChannel.class.getSimpleName() + "#SubscriberThread", this::listen, true
+                );
+                subscriberThread.start();
+            }
+        }
+
+        return () -> listeners.remove(listener);
+    }
+
+    private void listen() {
+        boolean reconnection = false;
+
+        while (!closed) {
+            boolean notifyReconnection = reconnection;
+            BinaryJedisPubSub currentPubSub = new BinaryJedisPubSub() {
+                @Override
+                public void onSubscribe(byte[] channel, int subscribedChannels) {
+                    if (notifyReconnection) {
+                        deliver(Invalidation.ofAll(RECONNECTION_ORIGIN_ID));
+                    }
+                }
+
+                @Override
+                public void onMessage(byte[] channel, byte[] message) {
+                    Invalidation invalidation = decode(message);
+                    if (invalidation != null) {
+                        deliver(invalidation);
+                    }
+                }
+            };
+
+            pubSub = currentPubSub;
+
+            try (Jedis jedis = new Jedis(host, port)) {
+                if (!closed) {
+                    jedis.subscribe(currentPubSub, channelName);
+                }
+            } catch (JedisException e) {
+                if (!closed) {
+                    logger.warn("Lost subscription to the Redis channel, reconnecting.", e);
+                    ThreadUtil.sleep(RECONNECTION_DELAY_MILLIS);
+                }
+            }
+
+            reconnection = true;
+        }
+    }
+
+    private void deliver(Invalidation invalidation) {
+        for (Consumer<Invalidation> listener : listeners) {
+            try {
+                listener.accept(invalidation);
+            } catch (RuntimeException e) {
+                logger.error("Got unexpected exception while delivering " + invalidation + '.', e);
+            }
+        }
+    }
+
+    /**
+     * Names of sections and keys can't contain line breaks, so the message is
+     * {@code originId\nsection\nkey1\nkey2...} with empty section or key if it is absent.
+     */
+    private static byte[] encode(Invalidation invalidation) {
+        String section = invalidation.getSection();
+        List<String> keys = invalidation.getKeys();
+
+        StringBuilder message = new StringBuilder(invalidation.getOriginId()).append('\n');
+        message.append(section == null ? "" : section);
+        if (keys == null) {
+            message.append('\n');
+        } else {
+            for (String key : keys) {
+                message.append('\n').append(key);
+            }
+        }
+
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static Invalidation decode(byte[] message) {
+        String[] parts = new String(message, StandardCharsets.UTF_8).split("\n", -1);
+        if (parts.length < 3) {
+            logger.warn("Got unexpected message from the Redis channel: " + new String(message, StandardCharsets.UTF_8));
+            return null;
+        }
+
+        if (parts[1].isEmpty()) {
+            return Invalidation.ofAll(parts[0]);
+        } else if (parts.length == 3 && parts[2].isEmpty()) {
+            return Invalidation.ofSection(parts[0], parts[1]);
+        } else {
+            return Invalidation.ofKeys(parts[0], parts[1], Arrays.asList(parts).subList(2, parts.length));
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (subscriberMonitor) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        BinaryJedisPubSub currentPubSub = pubSub;
+        if (currentPubSub != null && currentPubSub.isSubscribed()) {
+            try {
+                currentPubSub.unsubscribe();
+            } catch (JedisException e) {
+                logger.warn("Can't unsubscribe from the Redis channel.", e);
+            }
+        }
+
+        listeners.clear();
+        jedisPool.destroy();
+    }
+
+    @Override
+    public String toString() {
+        return "RedisInvalidationChannel {host='" + host + "', port=" + port + '}';
+    }
+}
@@ -0,0 +1,49 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.compress.CompressionCodec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compression codecs of cache sections: the default codec and the codecs chosen for particular sections.
+ * Stored values record their codec, so changing the codec of a section doesn't affect the existing values.
+ */
+final class SectionCodecs {
+    private final CompressionCodec defaultCodec;
+    private final ConcurrentMap<String, CompressionCodec> codecBySection = new ConcurrentHashMap<>();
+
+    SectionCodecs(@Nonnull CompressionCodec defaultCodec) {
+        if (defaultCodec == null) {
+            throw new IllegalArgumentException("Argument 'defaultCodec' is 'null'.");
+        }
+
+        this.defaultCodec = defaultCodec;
+    }
+
+    @Nonnull
+    CompressionCodec get(@Nonnull String section) {
+        return codecBySection.getOrDefault(section, defaultCodec);
+    }
+
+    /**
+     * @param codec codec of the section or {@code null} to use the default codec
+     */
+    void set(@Nonnull String section, @Nullable CompressionCodec codec) {
+        if (codec == null) {
+            codecBySection.remove(section);
+        } else {
+            codecBySection.put(section, codec);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return codecBySection.isEmpty()
+                ? String.valueOf(defaultCodec)
+                : defaultCodec + " " + new TreeMap<>(codecBySection);
+    }
+}
@@ -0,0 +1,259 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.process.ThreadUtil;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hashed hierarchical timing wheel which removes expired entries of in-memory caches.
+ * Single instance with a single daemon thread is shared by all caches.
+ * <p>
+ * Scheduling and cancellation take constant time. Each level of the wheel consists of 64 buckets,
+ * the bucket of the next level spans the whole previous level. Due timeouts are swept one bucket at a time:
+ * the bucket is detached under the wheel lock and the expiration callbacks are invoked outside of it.
+ * Timeouts of the upper levels, which are not due yet, are cascaded down to the lower levels.
+ * <p>
+ * Expiration callbacks are invoked in the wheel thread and should be fast and non-blocking.
+ * A callback may be invoked for a timeout cancelled concurrently with its expiration,
+ * so callbacks should remove only the exact entry they belong to.
+ */
+final class TimerWheel {
+    private static final Logger logger = Logger.getLogger(TimerWheel.class);
+
+    /**
+     * Bucket of the level {@code i} spans {@code 2^SHIFTS[i]} milliseconds: 16 ms, ~1 s, ~1 min, ~70 min, ~3 days.
+     */
+    private static final int[] SHIFTS = {4, 10, 16, 22, 28};
+    private static final int BUCKET_COUNT = 64;
+    private static final int BUCKET_MASK = BUCKET_COUNT - 1;
+    private static final long TICK_MILLIS = 1L << SHIFTS[0];
+
+    private static final TimerWheel INSTANCE = new TimerWheel();
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Timeout[][] buckets = new Timeout[SHIFTS.length][BUCKET_COUNT];
+
+    private long currentTimeMillis = System.currentTimeMillis();
+    private long size;
+
+    private TimerWheel() {
+        for (int level = 0; level < SHIFTS.length; ++level) {
+            for (int bucketIndex = 0; bucketIndex < BUCKET_COUNT; ++bucketIndex) {
+                buckets[level][bucketIndex] = new Sentinel();
+            }
+        }
+
+        ThreadUtil.newThread(TimerWheel.class.getSimpleName(), this::run, true).start();
+    }
+
+    static TimerWheel getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedules the timeout or reschedules it if it is already scheduled.
+     *
+     * @param timeout        timeout to schedule
+     * @param deadlineMillis time to invoke {@link Timeout#expire()} at
+     */
+    void schedule(@Nonnull Timeout timeout, long deadlineMillis) {
+        lock.lock();
+        try {
+            if (timeout.next != null) {
+                unlink(timeout);
+                --size;
+            }
+
+            timeout.deadlineMillis = deadlineMillis;
+            link(timeout);
+
+            if (++size == 1L) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the timeout. Does nothing if the timeout is not scheduled.
+     *
+     * @param timeout timeout to cancel
+     */
+    void cancel(@Nonnull Timeout timeout) {
+        lock.lock();
+        try {
+            if (timeout.next != null) {
+                unlink(timeout);
+                --size;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Should be called under the lock. The timeout should not be linked.
+     */
+    private void link(Timeout timeout) {
+        long deadlineMillis = Math.max(timeout.deadlineMillis, currentTimeMillis + TICK_MILLIS);
+        long delayMillis = deadlineMillis - currentTimeMillis;
+
+        int level = 0;
+        while (level < SHIFTS.length - 1 && delayMillis >= 1L << (SHIFTS[level] + 6)) {
+            ++level;
+        }
+
+        Timeout sentinel = buckets[level][(int) (deadlineMillis >>> SHIFTS[level]) & BUCKET_MASK];
+        timeout.previous = sentinel.previous;
+        timeout.next = sentinel;
+        sentinel.previous.next = timeout;
+        sentinel.previous = timeout;
+    }
+
+    /**
+     * Should be called under the lock. The timeout should be linked.
+     */
+    private static void unlink(Timeout timeout) {
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    @SuppressWarnings("InfiniteLoopStatement")
+    private void run() {
+        while (true) {
+            try {
+                awaitNextTick();
+                advance(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                logger.error("Got unexpected exception while removing expired cache entries.", e);
+            }
+        }
+    }
+
+    private void awaitNextTick() {
+        lock.lock();
+        try {
+            while (size == 0L) {
+                notEmpty.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        ThreadUtil.sleep(TICK_MILLIS);
+    }
+
+    private void advance(long newTimeMillis) {
+        long previousTimeMillis;
+
+        lock.lock();
+        try {
+            previousTimeMillis = currentTimeMillis;
+            if (newTimeMillis <= previousTimeMillis) {
+                return;
+            }
+            currentTimeMillis = newTimeMillis;
+        } finally {
+            lock.unlock();
+        }
+
+        for (int level = 0; level < SHIFTS.length; ++level) {
+            long previousTicks = previousTimeMillis >>> SHIFTS[level];
+            long currentTicks = newTimeMillis >>> SHIFTS[level];
+            long tickCount = currentTicks - previousTicks;
+
+            if (tickCount <= 0L) {
+                break;
+            }
+
+            long bucketCount = Math.min(tickCount + 1L, BUCKET_COUNT);
+            for (long tick = previousTicks; tick < previousTicks + bucketCount; ++tick) {
+                sweep(level, (int) tick & BUCKET_MASK, newTimeMillis);
+            }
+        }
+    }
+
+    /**
+     * Detaches the bucket, cascades not yet due timeouts and expires the others.
+     */
+    private void sweep(int level, int bucketIndex, long timeMillis) {
+        List<Timeout> expiredTimeouts;
+
+        lock.lock();
+        try {
+            Timeout sentinel = buckets[level][bucketIndex];
+            Timeout timeout = sentinel.next;
+
+            if (timeout == sentinel) {
+                return;
+            }
+
+            expiredTimeouts = new ArrayList<>();
+
+            sentinel.previous.next = null;
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+
+            while (timeout != null) {
+                Timeout nextTimeout = timeout.next;
+                timeout.previous = null;
+                timeout.next = null;
+
+                if (timeout.deadlineMillis <= timeMillis) {
+                    expiredTimeouts.add(timeout);
+                    --size;
+                } else {
+                    link(timeout);
+                }
+
+                timeout = nextTimeout;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Timeout timeout : expiredTimeouts) {
+            try {
+                timeout.expire();
+            } catch (RuntimeException e) {
+                logger.error("Got unexpected exception while expiring " + timeout + '.', e);
+            }
+        }
+    }
+
+    /**
+     * Element of the wheel. Fields are guarded by the wheel lock.
+     */
+    abstract static class Timeout {
+        private long deadlineMillis;
+        private Timeout previous;
+        private Timeout next;
+
+        /**
+         * Invoked by the wheel thread when the deadline has come.
+         */
+        abstract void expire();
+    }
+
+    private static final class Sentinel extends Timeout {
+        private Sentinel() {
+            ((Timeout) this).previous = this;
+            ((Timeout) this).next = this;
+        }
+
+        @Override
+        void expire() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -1,23 +1,33 @@
 package com.codeforces.commons.cache.util;
 
 import com.codeforces.commons.cache.ByteCache;
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import com.codeforces.commons.process.ThreadUtil;
 import org.apache.log4j.Logger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Performs writes in background. By default writes are executed one by one in a single thread.
+ * In write-behind mode writes are collected in a bounded queue (see {@link WriteBehindQueue}),
+ * pending writes of the same key are collapsed and the rest are flushed in batches by several threads.
+ * Use {@link #getQueueSize()}, {@link #getDroppedWriteCount()} and {@link #getCollapsedWriteCount()} to monitor it.
+ *
  * @author Maxim Shipko (sladethe@gmail.com)
  *         Date: 26.01.12
  */
-class AsynchronousByteCache extends ByteCache {
+public class AsynchronousByteCache extends ByteCache {
     private static final Logger logger = Logger.getLogger(AsynchronousByteCache.class);
 
     private static final int THREAD_COUNT = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int VALIDATION_QUEUE_CAPACITY = 64;
 
     private final ByteCache cache;
     private final long validationTimeoutMillis;
@@ -25,40 +35,16 @@ class AsynchronousByteCache extends ByteCache {
 
     private final AtomicLong lastValidationFail = new AtomicLong();
 
-    private final ExecutorService validationService = new ThreadPoolExecutor(0, THREAD_COUNT, 1L, TimeUnit.MINUTES,
-            new LinkedBlockingQueue<>(), new ThreadFactory() {
-        private final AtomicLong threadIndex = new AtomicLong();
-
-        @Nonnull
-        @Override
-        public Thread newThread(@Nonnull Runnable r) {
-            Thread thread = new Thread(r);
-            thread.setDaemon(true);
-            thread.setName(String.format(
-                    "%s#%s-%d#ValidationThread-%d",
-                    cache.getClass().getSimpleName(), AsynchronousByteCache.class.getSimpleName(), getIndex(),
-                    threadIndex.incrementAndGet()
-            ));
-            return thread;
-        }
-    });
-
-    private final ExecutorService executionService = Executors.newSingleThreadExecutor(new ThreadFactory() {
-        private final AtomicInteger threadIndex = new AtomicInteger();
-
-        @Nonnull
-        @Override
-        public Thread newThread(@Nonnull Runnable r) {
-            Thread thread = new Thread(r);
-            thread.setDaemon(true);
-            thread.setName(String.format(
-                    "%s#%s-%d#ExecutionThread-%d",
-                    cache.getClass().getSimpleName(), AsynchronousByteCache.class.getSimpleName(), getIndex(),
-                    threadIndex.incrementAndGet()
-            ));
-            return thread;
-        }
-    });
+    private final ExecutorService validationService;
+
+    /**
+     * Is used only if there is no write-behind queue.
+     */
+    @Nullable
+    private final ThreadPoolExecutor executionService;
+
+    @Nullable
+    private final WriteBehindQueue writeBehindQueue;
 
     AsynchronousByteCache(ByteCache cache, long validationTimeoutMillis, long disableOnFailMillis) {
         ensureArguments(cache, validationTimeoutMillis, disableOnFailMillis);
@@ -66,6 +52,47 @@ class AsynchronousByteCache extends ByteCache {
         this.cache = cache;
         this.validationTimeoutMillis = validationTimeoutMillis;
         this.disableOnFailMillis = disableOnFailMillis;
+        this.validationService = newValidationService();
+        this.executionService = newExecutionService();
+        this.writeBehindQueue = null;
+    }
+
+    AsynchronousByteCache(
+            ByteCache cache, long validationTimeoutMillis, long disableOnFailMillis,
+            int queueCapacity, int workerCount, int batchSize, OverflowPolicy overflowPolicy) {
+        ensureArguments(cache, validationTimeoutMillis, disableOnFailMillis);
+
+        this.cache = cache;
+        this.validationTimeoutMillis = validationTimeoutMillis;
+        this.disableOnFailMillis = disableOnFailMillis;
+        this.validationService = newValidationService();
+        this.executionService = null;
+        this.writeBehindQueue = new WriteBehindQueue(
+                cache, queueCapacity, workerCount, batchSize, overflowPolicy, getThreadNamePrefix()
+        );
+    }
+
+    private String getThreadNamePrefix() {
+        return cache.getClass().getSimpleName() + '#' + AsynchronousByteCache.class.getSimpleName() + '-' + getIndex();
+    }
+
+    /**
+     * Validation blocks on the underlying cache (usually on network I/O), so it runs by virtual threads if possible.
+     */
+    private ExecutorService newValidationService() {
+        return ExecutorUtil.newBlockingExecutor(
+                getThreadNamePrefix() + "#ValidationThread", THREAD_COUNT, VALIDATION_QUEUE_CAPACITY
+        );
+    }
+
+    /**
+     * The only thread keeps the order of writes.
+     */
+    private ThreadPoolExecutor newExecutionService() {
+        return new ThreadPoolExecutor(
+                1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                ThreadUtil.newThreadFactory(getThreadNamePrefix() + "#ExecutionThread", true)
+        );
     }
 
     private static void ensureArguments(ByteCache cache, long validationTimeoutMillis, long disableOnFailMillis) {
@@ -108,9 +135,8 @@ class AsynchronousByteCache extends ByteCache {
         if (validationTimeoutMillis == 0) {
             return cache.validate();
         } else {
-            Future<Boolean> future = validationService.submit(cache::validate);
-
             try {
+                Future<Boolean> future = validationService.submit(cache::validate);
                 return future.get(validationTimeoutMillis, TimeUnit.MILLISECONDS);
             } catch (Exception e) {
                 logger.error("Unexpected exception while validating.", e);
@@ -119,60 +145,192 @@ class AsynchronousByteCache extends ByteCache {
         }
     }
 
+    private static void ensureLifetime(String section, String key, long lifetimeMillis) {
+        if (lifetimeMillis < 1L) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'lifetimeMillis' must be a positive long integer (section='%s', key='%s').", section, key
+            ));
+        }
+    }
+
     @Override
     public boolean contains(@Nonnull String section, @Nonnull String key) {
-        return cache.contains(section, key);
+        return writeBehindQueue != null && writeBehindQueue.getPendingValue(section, key) != null
+                || cache.contains(section, key);
     }
 
     @Override
     public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
-        executionService.execute(() -> cache.put(section, key, value));
+        if (writeBehindQueue == null) {
+            executionService.execute(() -> cache.put(section, key, value));
+        } else {
+            writeBehindQueue.enqueue(section, key, value, 0L, false);
+        }
     }
 
     @Override
     public void put(@Nonnull String section, @Nonnull String key,
                     @Nonnull byte[] value, long lifetimeMillis) {
-        executionService.execute(() -> cache.put(section, key, value, lifetimeMillis));
+        if (writeBehindQueue == null) {
+            executionService.execute(() -> cache.put(section, key, value, lifetimeMillis));
+        } else {
+            ensureLifetime(section, key, lifetimeMillis);
+            writeBehindQueue.enqueue(section, key, value, lifetimeMillis, false);
+        }
     }
 
     @Override
     public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
-        executionService.execute(() -> cache.putIfAbsent(section, key, value));
+        if (writeBehindQueue == null) {
+            executionService.execute(() -> cache.putIfAbsent(section, key, value));
+        } else {
+            writeBehindQueue.enqueue(section, key, value, 0L, true);
+        }
     }
 
     @Override
     public void putIfAbsent(@Nonnull String section, @Nonnull String key,
                             @Nonnull byte[] value, long lifetimeMillis) {
-        executionService.execute(() -> cache.putIfAbsent(section, key, value, lifetimeMillis));
+        if (writeBehindQueue == null) {
+            executionService.execute(() -> cache.putIfAbsent(section, key, value, lifetimeMillis));
+        } else {
+            ensureLifetime(section, key, lifetimeMillis);
+            writeBehindQueue.enqueue(section, key, value, lifetimeMillis, true);
+        }
     }
 
     @Nullable
     @Override
     public byte[] get(@Nonnull String section, @Nonnull String key) {
+        if (writeBehindQueue != null) {
+            byte[] pendingValue = writeBehindQueue.getPendingValue(section, key);
+            if (pendingValue != null) {
+                return pendingValue;
+            }
+        }
+
         return cache.get(section, key);
     }
 
+    @Nonnull
+    @Override
+    public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        if (writeBehindQueue == null) {
+            return cache.getAll(section, keys);
+        }
+
+        Map<String, byte[]> valueByKey = cache.getAll(section, keys);
+        Map<String, byte[]> result = new LinkedHashMap<>(valueByKey.size());
+
+        for (String key : keys) {
+            byte[] value = writeBehindQueue.getPendingValue(section, key);
+            if (value == null) {
+                value = valueByKey.get(key);
+            }
+
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+        if (writeBehindQueue == null) {
+            executionService.execute(() -> cache.putAll(section, valueByKey));
+        } else {
+            for (Map.Entry<String, byte[]> entry : valueByKey.entrySet()) {
+                writeBehindQueue.enqueue(section, entry.getKey(), entry.getValue(), 0L, false);
+            }
+        }
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        if (writeBehindQueue == null) {
+            executionService.execute(() -> cache.putAll(section, valueByKey, lifetimeMillis));
+        } else {
+            for (Map.Entry<String, byte[]> entry : valueByKey.entrySet()) {
+                ensureLifetime(section, entry.getKey(), lifetimeMillis);
+                writeBehindQueue.enqueue(section, entry.getKey(), entry.getValue(), lifetimeMillis, false);
+            }
+        }
+    }
+
+    @Override
+    public int removeAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        if (writeBehindQueue != null) {
+            for (String key : keys) {
+                writeBehindQueue.discard(section, key);
+            }
+        }
+
+        return cache.removeAll(section, keys);
+    }
+
     @Override
     public boolean remove(@Nonnull String section, @Nonnull String key) {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.discard(section, key);
+        }
+
         return cache.remove(section, key);
     }
 
     @Override
     public void clearSection(@Nonnull String section) {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.discardSection(section);
+        }
+
         cache.clearSection(section);
     }
 
     @Override
     public void clear() {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.discardAll();
+        }
+
         cache.clear();
     }
 
+    /**
+     * @return number of writes waiting to be performed
+     */
+    public int getQueueSize() {
+        return writeBehindQueue == null ? executionService.getQueue().size() : writeBehindQueue.size();
+    }
+
+    /**
+     * @return number of writes dropped because the write-behind queue was full or closed
+     */
+    public long getDroppedWriteCount() {
+        return writeBehindQueue == null ? 0L : writeBehindQueue.getDroppedWriteCount();
+    }
+
+    /**
+     * @return number of writes collapsed with the pending writes of the same key
+     */
+    public long getCollapsedWriteCount() {
+        return writeBehindQueue == null ? 0L : writeBehindQueue.getCollapsedWriteCount();
+    }
+
+    /**
+     * Waits for pending writes (up to 30 seconds) before closing the underlying cache.
+     */
     @Override
     public void close() {
-        cache.close();
+        if (writeBehindQueue != null) {
+            writeBehindQueue.close(TimeUnit.SECONDS.toMillis(30L));
+        }
 
         validationService.shutdown();
-        executionService.shutdown();
+        if (executionService != null) {
+            executionService.shutdown();
+        }
 
         try {
             validationService.awaitTermination(30L, TimeUnit.SECONDS);
@@ -180,10 +338,34 @@ class AsynchronousByteCache extends ByteCache {
             // No operations.
         }
 
-        try {
-            executionService.awaitTermination(30L, TimeUnit.SECONDS);
-        } catch (InterruptedException ignored) {
-            // No operations.
+        if (executionService != null) {
+            try {
+                executionService.awaitTermination(30L, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                // No operations.
+            }
         }
+
+        cache.close();
+    }
+
+    /**
+     * Determines what to do with a new write when the write-behind queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drops the oldest pending write to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Drops the new write.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Performs the new write synchronously in the calling thread.
+         */
+        CALLER_RUNS
     }
 }
@@ -0,0 +1,272 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.text.StringUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-section counters and latency histograms collected by the caches created with
+ * {@link Caches#newInstrumentedByteCache(com.codeforces.commons.cache.ByteCache, CacheMetrics)} and
+ * {@link Caches#newInstrumentedCache(com.codeforces.commons.cache.Cache, CacheMetrics)}.
+ * One instance may be shared by several caches to aggregate their metrics. Evictions happen inside the cache,
+ * so they are counted only if the cache reports them to {@link #recordEviction(String)}.
+ * <p>
+ * Recording doesn't allocate objects (except for the first operation with a section) and doesn't lock.
+ * Snapshots are weakly consistent: operations concurrent with the snapshot may be partially reflected.
+ */
+public final class CacheMetrics {
+    private final ConcurrentMap<String, SectionMetrics> metricsBySection = new ConcurrentHashMap<>();
+
+    @Nonnull
+    SectionMetrics getSectionMetrics(@Nonnull String section) {
+        SectionMetrics sectionMetrics = metricsBySection.get(section);
+        return sectionMetrics == null
+                ? metricsBySection.computeIfAbsent(section, ignored -> new SectionMetrics())
+                : sectionMetrics;
+    }
+
+    /**
+     * Counts an entry of the section evicted by the cache to free space,
+     * see {@link com.codeforces.commons.cache.BoundedInmemoryCache#setEvictionListener}.
+     *
+     * @param section section of the evicted entry
+     */
+    public void recordEviction(@Nonnull String section) {
+        getSectionMetrics(section).recordEviction();
+    }
+
+    /**
+     * @return snapshots of all sections accessed so far ordered by section name
+     */
+    @Nonnull
+    public SortedMap<String, SectionSnapshot> getSnapshot() {
+        SortedMap<String, SectionSnapshot> snapshotBySection = new TreeMap<>();
+        for (Map.Entry<String, SectionMetrics> entry : metricsBySection.entrySet()) {
+            snapshotBySection.put(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        return snapshotBySection;
+    }
+
+    /**
+     * @param section section name
+     * @return snapshot of the section or {@code null} if the section has not been accessed
+     */
+    @Nullable
+    public SectionSnapshot getSectionSnapshot(@Nonnull String section) {
+        SectionMetrics sectionMetrics = metricsBySection.get(section);
+        return sectionMetrics == null ? null : sectionMetrics.getSnapshot();
+    }
+
+    static final class SectionMetrics {
+        private final LongAdder hitCount = new LongAdder();
+        private final LongAdder missCount = new LongAdder();
+        private final LongAdder putCount = new LongAdder();
+        private final LongAdder removeCount = new LongAdder();
+        private final LongAdder clearCount = new LongAdder();
+        private final LongAdder evictionCount = new LongAdder();
+
+        private final LatencyHistogram getLatency = new LatencyHistogram();
+        private final LatencyHistogram putLatency = new LatencyHistogram();
+        private final LatencyHistogram removeLatency = new LatencyHistogram();
+
+        private SectionMetrics() {
+        }
+
+        void recordGet(long nanos, int hitCount, int missCount) {
+            if (hitCount > 0) {
+                this.hitCount.add(hitCount);
+            }
+
+            if (missCount > 0) {
+                this.missCount.add(missCount);
+            }
+
+            getLatency.record(nanos);
+        }
+
+        void recordPut(long nanos, int putCount) {
+            this.putCount.add(putCount);
+            putLatency.record(nanos);
+        }
+
+        void recordRemove(long nanos, int removeCount) {
+            if (removeCount > 0) {
+                this.removeCount.add(removeCount);
+            }
+
+            removeLatency.record(nanos);
+        }
+
+        void recordClear() {
+            clearCount.increment();
+        }
+
+        void recordEviction() {
+            evictionCount.increment();
+        }
+
+        private SectionSnapshot getSnapshot() {
+            return new SectionSnapshot(
+                    hitCount.sum(), missCount.sum(), putCount.sum(), removeCount.sum(), clearCount.sum(),
+                    evictionCount.sum(), getLatency.getSnapshot(), putLatency.getSnapshot(), removeLatency.getSnapshot()
+            );
+        }
+    }
+
+    public static final class SectionSnapshot {
+        private final long hitCount;
+        private final long missCount;
+        private final long putCount;
+        private final long removeCount;
+        private final long clearCount;
+        private final long evictionCount;
+        private final LatencySnapshot getLatency;
+        private final LatencySnapshot putLatency;
+        private final LatencySnapshot removeLatency;
+
+        private SectionSnapshot(
+                long hitCount, long missCount, long putCount, long removeCount, long clearCount, long evictionCount,
+                LatencySnapshot getLatency, LatencySnapshot putLatency, LatencySnapshot removeLatency) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.putCount = putCount;
+            this.removeCount = removeCount;
+            this.clearCount = clearCount;
+            this.evictionCount = evictionCount;
+            this.getLatency = getLatency;
+            this.putLatency = putLatency;
+            this.removeLatency = removeLatency;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return part of the lookups which have found a value or {@code 0.0} if there were no lookups
+         */
+        public double getHitRatio() {
+            long lookupCount = hitCount + missCount;
+            return lookupCount == 0L ? 0.0D : (double) hitCount / lookupCount;
+        }
+
+        /**
+         * @return number of stored values (including {@code putIfAbsent} calls)
+         */
+        public long getPutCount() {
+            return putCount;
+        }
+
+        /**
+         * @return number of values actually removed by {@code remove} and {@code removeAll}
+         */
+        public long getRemoveCount() {
+            return removeCount;
+        }
+
+        /**
+         * @return number of {@code clearSection} calls
+         */
+        public long getClearCount() {
+            return clearCount;
+        }
+
+        /**
+         * @return number of values evicted by the cache to free space
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        @Nonnull
+        public LatencySnapshot getGetLatency() {
+            return getLatency;
+        }
+
+        @Nonnull
+        public LatencySnapshot getPutLatency() {
+            return putLatency;
+        }
+
+        @Nonnull
+        public LatencySnapshot getRemoveLatency() {
+            return removeLatency;
+        }
+
+        @Override
+        public String toString() {
+            return StringUtil.toString(
+                    this, false, "hitCount", "missCount", "putCount", "removeCount", "clearCount",
+                    "evictionCount", "getLatency", "putLatency", "removeLatency"
+            );
+        }
+    }
+
+    /**
+     * Latencies are reported in nanoseconds as upper bounds of histogram buckets.
+     */
+    public static final class LatencySnapshot {
+        static final double[] PERCENTILES = {50.0D, 90.0D, 99.0D, 99.9D};
+
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] percentileNanos;
+
+        LatencySnapshot(long count, long totalNanos, long maxNanos, long[] percentileNanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.percentileNanos = percentileNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return count == 0L ? 0L : totalNanos / count;
+        }
+
+        public long getMedianNanos() {
+            return percentileNanos[0];
+        }
+
+        public long getPercentile90Nanos() {
+            return percentileNanos[1];
+        }
+
+        public long getPercentile99Nanos() {
+            return percentileNanos[2];
+        }
+
+        public long getPercentile999Nanos() {
+            return percentileNanos[3];
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "LatencySnapshot {count=%d, meanNanos=%d, medianNanos=%d, percentile90Nanos=%d, "
+                            + "percentile99Nanos=%d, percentile999Nanos=%d, maxNanos=%d}",
+                    count, getMeanNanos(), getMedianNanos(), getPercentile90Nanos(),
+                    getPercentile99Nanos(), getPercentile999Nanos(), maxNanos
+            );
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.codeforces.commons.cache.util;
 
+import com.codeforces.commons.cache.BoundedInmemoryCache;
 import com.codeforces.commons.cache.ByteCache;
+import com.codeforces.commons.cache.Cache;
+import com.codeforces.commons.cache.InvalidationChannel;
+
+import java.util.concurrent.Executor;
 
 /**
  * @author Maxim Shipko (sladethe@gmail.com)
@@ -20,6 +25,25 @@ public final class Caches {
         return new AsynchronousByteCache(cache, validationTimeoutMillis, disableOnFailMillis);
     }
 
+    public static AsynchronousByteCache newWriteBehindByteCache(
+            ByteCache cache, int queueCapacity, AsynchronousByteCache.OverflowPolicy overflowPolicy) {
+        return new AsynchronousByteCache(cache, 0, 0, queueCapacity, 2, 100, overflowPolicy);
+    }
+
+    public static AsynchronousByteCache newWriteBehindByteCache(
+            ByteCache cache, int queueCapacity, int workerCount, int batchSize,
+            AsynchronousByteCache.OverflowPolicy overflowPolicy) {
+        return new AsynchronousByteCache(cache, 0, 0, queueCapacity, workerCount, batchSize, overflowPolicy);
+    }
+
+    public static AsynchronousByteCache newWriteBehindByteCache(
+            ByteCache cache, long validationTimeoutMillis, long disableOnFailMillis,
+            int queueCapacity, int workerCount, int batchSize, AsynchronousByteCache.OverflowPolicy overflowPolicy) {
+        return new AsynchronousByteCache(
+                cache, validationTimeoutMillis, disableOnFailMillis, queueCapacity, workerCount, batchSize, overflowPolicy
+        );
+    }
+
     public static ByteCache newLocalAndRemoteByteCache(ByteCache localCache, ByteCache remoteCache) {
         return new LocalAndRemoteByteCache(localCache, remoteCache);
     }
@@ -33,11 +57,73 @@ public final class Caches {
         return new LocalAndRemoteByteCache(localCache, remoteCache, localCacheOptional, remoteCacheOptional);
     }
 
+    public static ByteCache newLocalAndRemoteByteCache(
+            ByteCache localCache, ByteCache remoteCache, InvalidationChannel invalidationChannel) {
+        return new LocalAndRemoteByteCache(localCache, remoteCache, false, false, invalidationChannel);
+    }
+
+    public static ByteCache newLocalAndRemoteByteCache(
+            ByteCache localCache, ByteCache remoteCache, boolean localCacheOptional, boolean remoteCacheOptional,
+            InvalidationChannel invalidationChannel) {
+        return new LocalAndRemoteByteCache(
+                localCache, remoteCache, localCacheOptional, remoteCacheOptional, invalidationChannel
+        );
+    }
+
+    /**
+     * @deprecated Logs each call and intercepts it using Guice AOP, so it is too slow for production use.
+     * Use {@link #newInstrumentedByteCache(ByteCache, CacheMetrics)}.
+     */
+    @Deprecated
     public static ByteCache newLoggingByteCache(ByteCache cache) {
         return LoggingByteCache.newInstance(cache);
     }
 
+    /**
+     * @param cache   cache to decorate
+     * @param metrics metrics to record operations of the cache to, may be shared by several caches
+     * @return cache recording hits, misses, puts, removals and latencies per section
+     */
+    public static ByteCache newInstrumentedByteCache(ByteCache cache, CacheMetrics metrics) {
+        return new InstrumentedByteCache(cache, metrics);
+    }
+
+    /**
+     * @param cache   cache to decorate, evictions of {@link BoundedInmemoryCache} are recorded too
+     *                (its eviction listener is replaced)
+     * @param metrics metrics to record operations of the cache to, may be shared by several caches
+     * @return cache recording hits, misses, puts, removals, evictions and latencies per section
+     */
+    public static <K, V> Cache<K, V> newInstrumentedCache(Cache<K, V> cache, CacheMetrics metrics) {
+        InstrumentedCache<K, V> instrumentedCache = new InstrumentedCache<>(cache, metrics);
+        if (cache instanceof BoundedInmemoryCache) {
+            ((BoundedInmemoryCache<K, V>) cache).setEvictionListener(metrics::recordEviction);
+        }
+        return instrumentedCache;
+    }
+
     public static ByteCache newSynchronizedByteCache(ByteCache cache) {
         return new SynchronizedByteCache(cache);
     }
+
+    public static <K, V> SingleFlightLoader<K, V> newSingleFlightLoader(Cache<K, V> cache) {
+        return new SingleFlightLoader<>(cache, 1.0D, 0L, null);
+    }
+
+    /**
+     * @param cache               cache to store loaded values in
+     * @param refreshAheadRatio   part of the lifetime after which a requested value is reloaded in background,
+     *                            {@code 1.0} disables refresh ahead
+     * @param staleLifetimeMillis time to keep and return the value after its lifetime while it is being reloaded
+     * @return loader coalescing concurrent loads of the same key
+     */
+    public static <K, V> SingleFlightLoader<K, V> newSingleFlightLoader(
+            Cache<K, V> cache, double refreshAheadRatio, long staleLifetimeMillis) {
+        return new SingleFlightLoader<>(cache, refreshAheadRatio, staleLifetimeMillis, null);
+    }
+
+    public static <K, V> SingleFlightLoader<K, V> newSingleFlightLoader(
+            Cache<K, V> cache, double refreshAheadRatio, long staleLifetimeMillis, Executor refreshExecutor) {
+        return new SingleFlightLoader<>(cache, refreshAheadRatio, staleLifetimeMillis, refreshExecutor);
+    }
 }
@@ -0,0 +1,139 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.cache.ByteCache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Records operations of the cache to {@link CacheMetrics}. Replaces {@link LoggingByteCache} where
+ * the overhead of logging each call is not acceptable.
+ */
+class InstrumentedByteCache extends ByteCache {
+    private final ByteCache cache;
+    private final CacheMetrics metrics;
+
+    InstrumentedByteCache(ByteCache cache, CacheMetrics metrics) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Argument 'cache' is 'null'.");
+        }
+
+        if (metrics == null) {
+            throw new IllegalArgumentException("Argument 'metrics' is 'null'.");
+        }
+
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean validate() {
+        return cache.validate();
+    }
+
+    @Override
+    public boolean contains(@Nonnull String section, @Nonnull String key) {
+        return cache.contains(section, key);
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
+        long startTimeNanos = System.nanoTime();
+        cache.put(section, key, value);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, 1);
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
+        long startTimeNanos = System.nanoTime();
+        cache.put(section, key, value, lifetimeMillis);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, 1);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
+        long startTimeNanos = System.nanoTime();
+        cache.putIfAbsent(section, key, value);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, 1);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
+        long startTimeNanos = System.nanoTime();
+        cache.putIfAbsent(section, key, value, lifetimeMillis);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, 1);
+    }
+
+    @Nullable
+    @Override
+    public byte[] get(@Nonnull String section, @Nonnull String key) {
+        long startTimeNanos = System.nanoTime();
+        byte[] value = cache.get(section, key);
+        metrics.getSectionMetrics(section).recordGet(
+                System.nanoTime() - startTimeNanos, value == null ? 0 : 1, value == null ? 1 : 0
+        );
+        return value;
+    }
+
+    /**
+     * Records the latency of the whole batch once, hits and misses are counted per key.
+     */
+    @Nonnull
+    @Override
+    public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        long startTimeNanos = System.nanoTime();
+        Map<String, byte[]> valueByKey = cache.getAll(section, keys);
+        metrics.getSectionMetrics(section).recordGet(
+                System.nanoTime() - startTimeNanos, valueByKey.size(), keys.size() - valueByKey.size()
+        );
+        return valueByKey;
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+        long startTimeNanos = System.nanoTime();
+        cache.putAll(section, valueByKey);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, valueByKey.size());
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        long startTimeNanos = System.nanoTime();
+        cache.putAll(section, valueByKey, lifetimeMillis);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, valueByKey.size());
+    }
+
+    @Override
+    public int removeAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        long startTimeNanos = System.nanoTime();
+        int removedCount = cache.removeAll(section, keys);
+        metrics.getSectionMetrics(section).recordRemove(System.nanoTime() - startTimeNanos, removedCount);
+        return removedCount;
+    }
+
+    @Override
+    public boolean remove(@Nonnull String section, @Nonnull String key) {
+        long startTimeNanos = System.nanoTime();
+        boolean removed = cache.remove(section, key);
+        metrics.getSectionMetrics(section).recordRemove(System.nanoTime() - startTimeNanos, removed ? 1 : 0);
+        return removed;
+    }
+
+    @Override
+    public void clearSection(@Nonnull String section) {
+        cache.clearSection(section);
+        metrics.getSectionMetrics(section).recordClear();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+}
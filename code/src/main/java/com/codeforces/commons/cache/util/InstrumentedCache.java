@@ -0,0 +1,100 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.cache.Cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Records operations of the cache to {@link CacheMetrics}.
+ */
+class InstrumentedCache<K, V> extends Cache<K, V> {
+    private final Cache<K, V> cache;
+    private final CacheMetrics metrics;
+
+    InstrumentedCache(Cache<K, V> cache, CacheMetrics metrics) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Argument 'cache' is 'null'.");
+        }
+
+        if (metrics == null) {
+            throw new IllegalArgumentException("Argument 'metrics' is 'null'.");
+        }
+
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean validate() {
+        return cache.validate();
+    }
+
+    @Override
+    public boolean contains(@Nonnull String section, @Nonnull K key) {
+        return cache.contains(section, key);
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull K key, @Nonnull V value) {
+        long startTimeNanos = System.nanoTime();
+        cache.put(section, key, value);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, 1);
+    }
+
+    @Override
+    public void put(@Nonnull String section, @Nonnull K key, @Nonnull V value, long lifetimeMillis) {
+        long startTimeNanos = System.nanoTime();
+        cache.put(section, key, value, lifetimeMillis);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, 1);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull K key, @Nonnull V value) {
+        long startTimeNanos = System.nanoTime();
+        cache.putIfAbsent(section, key, value);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, 1);
+    }
+
+    @Override
+    public void putIfAbsent(@Nonnull String section, @Nonnull K key, @Nonnull V value, long lifetimeMillis) {
+        long startTimeNanos = System.nanoTime();
+        cache.putIfAbsent(section, key, value, lifetimeMillis);
+        metrics.getSectionMetrics(section).recordPut(System.nanoTime() - startTimeNanos, 1);
+    }
+
+    @Nullable
+    @Override
+    public V get(@Nonnull String section, @Nonnull K key) {
+        long startTimeNanos = System.nanoTime();
+        V value = cache.get(section, key);
+        metrics.getSectionMetrics(section).recordGet(
+                System.nanoTime() - startTimeNanos, value == null ? 0 : 1, value == null ? 1 : 0
+        );
+        return value;
+    }
+
+    @Override
+    public boolean remove(@Nonnull String section, @Nonnull K key) {
+        long startTimeNanos = System.nanoTime();
+        boolean removed = cache.remove(section, key);
+        metrics.getSectionMetrics(section).recordRemove(System.nanoTime() - startTimeNanos, removed ? 1 : 0);
+        return removed;
+    }
+
+    @Override
+    public void clearSection(@Nonnull String section) {
+        cache.clearSection(section);
+        metrics.getSectionMetrics(section).recordClear();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+}
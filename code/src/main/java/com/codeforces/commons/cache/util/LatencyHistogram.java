@@ -0,0 +1,103 @@
+package com.codeforces.commons.cache.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of durations in nanoseconds with logarithmic buckets: each power of two is split into
+ * {@link #SUB_BUCKET_COUNT} linear sub-buckets, so the relative error of a reported value doesn't exceed 12.5%.
+ * Recording is a single {@link LongAdder} increment and allocates nothing.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this bound have their own buckets.
+     */
+    private static final int LINEAR_BOUND = 2 * SUB_BUCKET_COUNT;
+
+    /**
+     * Greater values (about 18 minutes) are recorded to the last bucket.
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKET_COUNT = LINEAR_BOUND + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final LongAdder[] counts = new LongAdder[BUCKET_COUNT];
+    private final LongAdder totalNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        if (nanos < 0L) {
+            nanos = 0L;
+        }
+
+        counts[getBucketIndex(nanos)].increment();
+        totalNanos.add(nanos);
+    }
+
+    CacheMetrics.LatencySnapshot getSnapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long count = 0L;
+
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            bucketCounts[i] = counts[i].sum();
+            count += bucketCounts[i];
+        }
+
+        long[] percentileBounds = new long[CacheMetrics.LatencySnapshot.PERCENTILES.length];
+
+        if (count > 0L) {
+            int bucketIndex = -1;
+            long accumulatedCount = 0L;
+
+            for (int i = 0; i < percentileBounds.length; ++i) {
+                long rank = Math.max(1L, (long) Math.ceil(CacheMetrics.LatencySnapshot.PERCENTILES[i] / 100.0D * count));
+                while (accumulatedCount < rank) {
+                    accumulatedCount += bucketCounts[++bucketIndex];
+                }
+                percentileBounds[i] = getBucketUpperBound(bucketIndex);
+            }
+        }
+
+        long maxNanos = 0L;
+        for (int i = BUCKET_COUNT - 1; i >= 0; --i) {
+            if (bucketCounts[i] > 0L) {
+                maxNanos = getBucketUpperBound(i);
+                break;
+            }
+        }
+
+        return new CacheMetrics.LatencySnapshot(count, totalNanos.sum(), maxNanos, percentileBounds);
+    }
+
+    static int getBucketIndex(long nanos) {
+        if (nanos < LINEAR_BOUND) {
+            return (int) nanos;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return LINEAR_BOUND + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long getBucketUpperBound(int bucketIndex) {
+        if (bucketIndex < LINEAR_BOUND) {
+            return bucketIndex;
+        }
+
+        int exponent = (bucketIndex - LINEAR_BOUND) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS + 1;
+        int subBucket = (bucketIndex - LINEAR_BOUND) % SUB_BUCKET_COUNT;
+        long lowerBound = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1L;
+    }
+}
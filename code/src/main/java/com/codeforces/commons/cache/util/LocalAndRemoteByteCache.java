@@ -1,26 +1,63 @@
 package com.codeforces.commons.cache.util;
 
 import com.codeforces.commons.cache.ByteCache;
+import com.codeforces.commons.cache.Invalidation;
+import com.codeforces.commons.cache.InvalidationChannel;
+import com.codeforces.commons.time.TimeUtil;
+import org.apache.log4j.Logger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * @author Maxim Shipko (sladethe@gmail.com)
  *         Date: 14.02.11
  */
 class LocalAndRemoteByteCache extends ByteCache {
+    private static final Logger logger = Logger.getLogger(LocalAndRemoteByteCache.class);
+
+    /**
+     * Lifetime of local copies of values fetched in batch from the remote cache. The remote lifetime of a value
+     * is unknown, so its local copy should not outlive it for too long.
+     */
+    private static final long REMOTE_VALUE_LOCAL_LIFETIME = TimeUtil.MILLIS_PER_HOUR;
+
     private final ByteCache localCache;
     private final ByteCache remoteCache;
     private final boolean localCacheOptional;
     private final boolean remoteCacheOptional;
 
+    private final String originId = UUID.randomUUID().toString();
+
+    @Nullable
+    private final InvalidationChannel invalidationChannel;
+
+    @Nullable
+    private final InvalidationChannel.Subscription invalidationSubscription;
+
     LocalAndRemoteByteCache(ByteCache localCache, ByteCache remoteCache) {
         this(localCache, remoteCache, false, false);
     }
 
     LocalAndRemoteByteCache(
             ByteCache localCache, ByteCache remoteCache, boolean localCacheOptional, boolean remoteCacheOptional) {
+        this(localCache, remoteCache, localCacheOptional, remoteCacheOptional, null);
+    }
+
+    /**
+     * Each change of the remote cache made through this instance is published to {@code invalidationChannel},
+     * and each change published by other instances drops the local copies of changed values. Thus local values
+     * may live long without being stale. The channel is not closed by this cache, so it may be shared.
+     */
+    LocalAndRemoteByteCache(
+            ByteCache localCache, ByteCache remoteCache, boolean localCacheOptional, boolean remoteCacheOptional,
+            @Nullable InvalidationChannel invalidationChannel) {
         this.localCache = localCache;
         this.remoteCache = remoteCache;
         this.localCacheOptional = localCacheOptional;
@@ -28,6 +65,49 @@ class LocalAndRemoteByteCache extends ByteCache {
         if (!validate()) {
             throw new IllegalArgumentException("Can't validate cache.");
         }
+
+        this.invalidationChannel = invalidationChannel;
+        this.invalidationSubscription = invalidationChannel == null
+                ? null
+                : invalidationChannel.subscribe(this::onInvalidation);
+    }
+
+    private void onInvalidation(Invalidation invalidation) {
+        if (originId.equals(invalidation.getOriginId()) || localCache == null) {
+            return;
+        }
+
+        String section = invalidation.getSection();
+        List<String> keys = invalidation.getKeys();
+
+        try {
+            if (section == null) {
+                localCache.clear();
+            } else if (keys == null) {
+                localCache.clearSection(section);
+            } else if (keys.size() == 1) {
+                localCache.remove(section, keys.get(0));
+            } else {
+                localCache.removeAll(section, keys);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Can't apply " + invalidation + " to the local cache.", e);
+        }
+    }
+
+    private void publishKeyInvalidation(String section, String key) {
+        if (invalidationChannel != null) {
+            invalidationChannel.publish(Invalidation.ofKey(originId, section, key));
+        }
+    }
+
+    /**
+     * Publishes a single invalidation of all changed keys.
+     */
+    private void publishKeyInvalidations(String section, Collection<String> keys) {
+        if (invalidationChannel != null && !keys.isEmpty()) {
+            invalidationChannel.publish(Invalidation.ofKeys(originId, section, keys));
+        }
     }
 
     @Override
@@ -77,6 +157,7 @@ class LocalAndRemoteByteCache extends ByteCache {
     public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
         internalPut(localCache, section, key, value, localCacheOptional);
         internalPut(remoteCache, section, key, value, remoteCacheOptional);
+        publishKeyInvalidation(section, key);
     }
 
     private static void internalPut(ByteCache cache, String section, String key, byte[] value, boolean optional) {
@@ -97,6 +178,7 @@ class LocalAndRemoteByteCache extends ByteCache {
     public void put(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis) {
         internalPut(localCache, section, key, value, localCacheOptional, lifetimeMillis);
         internalPut(remoteCache, section, key, value, remoteCacheOptional, lifetimeMillis);
+        publishKeyInvalidation(section, key);
     }
 
     private static void internalPut(
@@ -114,6 +196,9 @@ class LocalAndRemoteByteCache extends ByteCache {
         }
     }
 
+    /**
+     * Doesn't publish invalidation: other instances could only have a copy of the same remote value.
+     */
     @Override
     public void putIfAbsent(@Nonnull String section, @Nonnull String key, @Nonnull byte[] value) {
         internalPutIfAbsent(localCache, section, key, value, localCacheOptional);
@@ -194,6 +279,7 @@ class LocalAndRemoteByteCache extends ByteCache {
     public boolean remove(@Nonnull String section, @Nonnull String key) {
         boolean remoteResult = internalRemove(remoteCache, section, key, remoteCacheOptional);
         boolean localResult = internalRemove(localCache, section, key, localCacheOptional);
+        publishKeyInvalidation(section, key);
         return localResult || remoteResult;
     }
 
@@ -215,20 +301,166 @@ class LocalAndRemoteByteCache extends ByteCache {
         }
     }
 
+    /**
+     * Fetches values from the local cache and requests only the missing ones from the remote cache
+     * in a single batch. Values found in the remote cache are stored to the local one
+     * for {@link #REMOTE_VALUE_LOCAL_LIFETIME}.
+     */
+    @Nonnull
+    @Override
+    public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        Map<String, byte[]> localValueByKey = internalGetAll(localCache, section, keys, localCacheOptional);
+        if (localValueByKey.size() == keys.size()) {
+            return localValueByKey;
+        }
+
+        List<String> missingKeys = new ArrayList<>(keys.size() - localValueByKey.size());
+        for (String key : keys) {
+            if (!localValueByKey.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+
+        Map<String, byte[]> remoteValueByKey = internalGetAll(remoteCache, section, missingKeys, remoteCacheOptional);
+        if (remoteValueByKey.isEmpty()) {
+            return localValueByKey;
+        }
+
+        internalPutAll(localCache, section, remoteValueByKey, localCacheOptional, REMOTE_VALUE_LOCAL_LIFETIME);
+
+        Map<String, byte[]> valueByKey = new LinkedHashMap<>(localValueByKey.size() + remoteValueByKey.size());
+        for (String key : keys) {
+            byte[] value = localValueByKey.get(key);
+            if (value == null) {
+                value = remoteValueByKey.get(key);
+            }
+
+            if (value != null) {
+                valueByKey.put(key, value);
+            }
+        }
+        return valueByKey;
+    }
+
+    @Nonnull
+    private static Map<String, byte[]> internalGetAll(
+            ByteCache cache, String section, Collection<String> keys, boolean optional) {
+        try {
+            if (cache != null) {
+                return cache.getAll(section, keys);
+            } else if (optional) {
+                return new LinkedHashMap<>();
+            } else {
+                throw new IllegalStateException("ByteCache is invalid.");
+            }
+        } catch (RuntimeException e) {
+            if (optional) {
+                return new LinkedHashMap<>();
+            } else {
+                throw new IllegalStateException("ByteCache is invalid.", e);
+            }
+        }
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+        internalPutAll(localCache, section, valueByKey, localCacheOptional);
+        internalPutAll(remoteCache, section, valueByKey, remoteCacheOptional);
+        publishKeyInvalidations(section, valueByKey.keySet());
+    }
+
+    private static void internalPutAll(
+            ByteCache cache, String section, Map<String, byte[]> valueByKey, boolean optional) {
+        try {
+            if (cache != null) {
+                cache.putAll(section, valueByKey);
+            } else if (!optional) {
+                throw new IllegalStateException("ByteCache is invalid.");
+            }
+        } catch (RuntimeException e) {
+            if (!optional) {
+                throw new IllegalStateException("ByteCache is invalid.", e);
+            }
+        }
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        internalPutAll(localCache, section, valueByKey, localCacheOptional, lifetimeMillis);
+        internalPutAll(remoteCache, section, valueByKey, remoteCacheOptional, lifetimeMillis);
+        publishKeyInvalidations(section, valueByKey.keySet());
+    }
+
+    private static void internalPutAll(
+            ByteCache cache, String section, Map<String, byte[]> valueByKey, boolean optional, long lifetimeMillis) {
+        try {
+            if (cache != null) {
+                cache.putAll(section, valueByKey, lifetimeMillis);
+            } else if (!optional) {
+                throw new IllegalStateException("ByteCache is invalid.");
+            }
+        } catch (RuntimeException e) {
+            if (!optional) {
+                throw new IllegalStateException("ByteCache is invalid.", e);
+            }
+        }
+    }
+
+    /**
+     * @return maximal number of values removed from one of the caches
+     */
+    @Override
+    public int removeAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        int remoteResult = internalRemoveAll(remoteCache, section, keys, remoteCacheOptional);
+        int localResult = internalRemoveAll(localCache, section, keys, localCacheOptional);
+        publishKeyInvalidations(section, keys);
+        return Math.max(localResult, remoteResult);
+    }
+
+    private static int internalRemoveAll(ByteCache cache, String section, Collection<String> keys, boolean optional) {
+        try {
+            if (cache != null) {
+                return cache.removeAll(section, keys);
+            } else if (optional) {
+                return 0;
+            } else {
+                throw new IllegalStateException("ByteCache is invalid.");
+            }
+        } catch (RuntimeException e) {
+            if (optional) {
+                return 0;
+            } else {
+                throw new IllegalStateException("ByteCache is invalid.", e);
+            }
+        }
+    }
+
     @Override
     public void clearSection(@Nonnull String section) {
         remoteCache.clearSection(section);
         localCache.clearSection(section);
+
+        if (invalidationChannel != null) {
+            invalidationChannel.publish(Invalidation.ofSection(originId, section));
+        }
     }
 
     @Override
     public void clear() {
         remoteCache.clear();
         localCache.clear();
+
+        if (invalidationChannel != null) {
+            invalidationChannel.publish(Invalidation.ofAll(originId));
+        }
     }
 
     @Override
     public void close() {
+        if (invalidationSubscription != null) {
+            invalidationSubscription.close();
+        }
+
         remoteCache.close();
         localCache.close();
     }
@@ -16,6 +16,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
 
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
@@ -72,6 +74,31 @@ class LoggingByteCache extends ByteCache {
         return cache.get(section, key);
     }
 
+    @LogPerformance
+    @Nonnull
+    @Override
+    public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        return cache.getAll(section, keys);
+    }
+
+    @LogPerformance
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+        cache.putAll(section, valueByKey);
+    }
+
+    @LogPerformance
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        cache.putAll(section, valueByKey, lifetimeMillis);
+    }
+
+    @LogPerformance
+    @Override
+    public int removeAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        return cache.removeAll(section, keys);
+    }
+
     @LogPerformance
     @Override
     public boolean remove(@Nonnull String section, @Nonnull String key) {
@@ -209,8 +236,13 @@ class LoggingByteCache extends ByteCache {
                             } else if (objectClass == String.class) {
                                 return '\'' + (String) o + '\'';
                             } else if (objectClass == boolean.class || objectClass == long.class
-                                    || objectClass == Boolean.class || objectClass == Long.class) {
+                                    || objectClass == Boolean.class || objectClass == Long.class
+                                    || objectClass == int.class || objectClass == Integer.class) {
                                 return String.valueOf(o);
+                            } else if (o instanceof Collection) {
+                                return "Collection[" + ((Collection<?>) o).size() + ']';
+                            } else if (o instanceof Map) {
+                                return "Map[" + ((Map<?, ?>) o).size() + ']';
                             } else {
                                 throw new IllegalArgumentException("Unexpected object: '" + o + "'.");
                             }
@@ -5,6 +5,9 @@ import org.apache.log4j.Logger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 class SilentByteCache extends ByteCache {
     private static final Logger logger = Logger.getLogger(SilentByteCache.class);
@@ -103,6 +106,47 @@ class SilentByteCache extends ByteCache {
         return null;
     }
 
+    @Nonnull
+    @Override
+    public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        try {
+            return byteCache.getAll(section, keys);
+        } catch (RuntimeException e) {
+            if (logErrors) {
+                logger.warn(String.format("Can't execute getAll('%s', count=%d).", section, keys.size()), e);
+            }
+        }
+
+        return new LinkedHashMap<>();
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+        try {
+            byteCache.putAll(section, valueByKey);
+        } catch (RuntimeException e) {
+            if (logErrors) {
+                logger.warn(String.format("Can't execute putAll('%s', count=%d).", section, valueByKey.size()), e);
+            }
+        }
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        try {
+            byteCache.putAll(section, valueByKey, lifetimeMillis);
+        } catch (RuntimeException e) {
+            if (logErrors) {
+                logger.warn(String.format("Can't execute putAll('%s', count=%d, %d).", section, valueByKey.size(), lifetimeMillis), e);
+            }
+        }
+    }
+
+    @Override
+    public int removeAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        return byteCache.removeAll(section, keys);
+    }
+
     @Override
     public boolean remove(@Nonnull String section, @Nonnull String key) {
         return byteCache.remove(section, key);
@@ -0,0 +1,232 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.cache.Cache;
+import com.codeforces.commons.cache.InmemoryCache;
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Loads missing values into the cache so that concurrent misses of the same key in this process
+ * invoke the loader only once: the first caller loads the value, the others wait for its result.
+ * <p>
+ * Optionally refreshes values ahead of their expiration: a value requested after {@code refreshAheadRatio}
+ * of its lifetime is reloaded in background while the current value is returned. A value may also be kept
+ * in the cache for {@code staleLifetimeMillis} after its lifetime, and such stale value is returned while
+ * it is being reloaded in background. Load times are tracked in memory of this process.
+ * <p>
+ * Works on top of any {@link Cache}, including decorators created by {@link Caches}.
+ */
+public final class SingleFlightLoader<K, V> {
+    private static final Logger logger = Logger.getLogger(SingleFlightLoader.class);
+
+    private static final int DEFAULT_REFRESH_QUEUE_CAPACITY = 4096;
+    private static final Executor DEFAULT_REFRESH_EXECUTOR = newDefaultRefreshExecutor();
+
+    private final Cache<K, V> cache;
+    private final double refreshAheadRatio;
+    private final long staleLifetimeMillis;
+    private final Executor refreshExecutor;
+
+    private final ConcurrentMap<Flight<K>, CompletableFuture<V>> futureByFlight = new ConcurrentHashMap<>();
+
+    @Nullable
+    private final InmemoryCache<K, Long> refreshTimeCache;
+
+    SingleFlightLoader(
+            @Nonnull Cache<K, V> cache, double refreshAheadRatio, long staleLifetimeMillis,
+            @Nullable Executor refreshExecutor) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Argument 'cache' is 'null'.");
+        }
+
+        if (!(refreshAheadRatio > 0.0D && refreshAheadRatio <= 1.0D)) {
+            throw new IllegalArgumentException("Argument 'refreshAheadRatio' should be in range (0, 1].");
+        }
+
+        if (staleLifetimeMillis < 0L) {
+            throw new IllegalArgumentException("Argument 'staleLifetimeMillis' is less than zero.");
+        }
+
+        this.cache = cache;
+        this.refreshAheadRatio = refreshAheadRatio;
+        this.staleLifetimeMillis = staleLifetimeMillis;
+        this.refreshExecutor = refreshExecutor == null ? DEFAULT_REFRESH_EXECUTOR : refreshExecutor;
+        this.refreshTimeCache = refreshAheadRatio < 1.0D || staleLifetimeMillis > 0L
+                ? InmemoryCache.newInstance()
+                : null;
+    }
+
+    @Nonnull
+    public Cache<K, V> getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the cached value or loads it. Concurrent loads of the same key are coalesced.
+     * If the loader throws an exception, all callers waiting for this load get it.
+     *
+     * @param section        storage section
+     * @param key            storage key (unique for each section)
+     * @param loader         loads the value, value is not stored if loader returns {@code null}
+     * @param lifetimeMillis value lifetime
+     * @return cached or loaded value
+     */
+    @Nullable
+    public V getOrLoad(@Nonnull String section, @Nonnull K key, @Nonnull Loader<K, V> loader, long lifetimeMillis) {
+        if (lifetimeMillis < 1L) {
+            throw new IllegalArgumentException(String.format(
+                    "Argument 'lifetimeMillis' must be a positive long integer (section='%s', key='%s').", section, key
+            ));
+        }
+
+        V value = cache.get(section, key);
+        if (value != null) {
+            Long refreshTimeMillis = refreshTimeCache == null ? null : refreshTimeCache.get(section, key);
+            if (refreshTimeMillis != null && System.currentTimeMillis() >= refreshTimeMillis) {
+                refreshAsync(section, key, loader, lifetimeMillis);
+            }
+            return value;
+        }
+
+        Flight<K> flight = new Flight<>(section, key);
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existingFuture = futureByFlight.putIfAbsent(flight, future);
+
+        if (existingFuture != null) {
+            try {
+                return existingFuture.join();
+            } catch (CompletionException e) {
+                throw toRuntimeException(section, key, e.getCause());
+            }
+        }
+
+        try {
+            value = load(section, key, loader, lifetimeMillis);
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw toRuntimeException(section, key, e);
+        } finally {
+            futureByFlight.remove(flight, future);
+        }
+    }
+
+    private void refreshAsync(String section, K key, Loader<K, V> loader, long lifetimeMillis) {
+        Flight<K> flight = new Flight<>(section, key);
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (futureByFlight.putIfAbsent(flight, future) != null) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    future.complete(load(section, key, loader, lifetimeMillis));
+                } catch (Throwable e) {
+                    logger.warn(String.format("Can't refresh value (section='%s', key='%s').", section, key), e);
+                    future.completeExceptionally(e);
+                } finally {
+                    futureByFlight.remove(flight, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            futureByFlight.remove(flight, future);
+            future.cancel(false);
+            logger.warn(String.format("Can't schedule refresh of value (section='%s', key='%s').", section, key), e);
+        }
+    }
+
+    @Nullable
+    private V load(String section, K key, Loader<K, V> loader, long lifetimeMillis) throws Exception {
+        V value = loader.load(section, key);
+        if (value == null) {
+            return null;
+        }
+
+        long currentTimeMillis = System.currentTimeMillis();
+        long storageLifetimeMillis = saturatedAdd(lifetimeMillis, staleLifetimeMillis);
+
+        cache.put(section, key, value, storageLifetimeMillis);
+
+        if (refreshTimeCache != null) {
+            long refreshTimeMillis = saturatedAdd(currentTimeMillis, (long) (lifetimeMillis * refreshAheadRatio));
+            refreshTimeCache.put(
+                    section, key, refreshTimeMillis, Math.min(storageLifetimeMillis, Long.MAX_VALUE - currentTimeMillis)
+            );
+        }
+
+        return value;
+    }
+
+    private static RuntimeException toRuntimeException(String section, Object key, Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+
+        return new IllegalStateException(String.format(
+                "Can't load value (section='%s', key='%s').", section, key
+        ), e);
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < a ? Long.MAX_VALUE : sum;
+    }
+
+    private static Executor newDefaultRefreshExecutor() {
+        return ExecutorUtil.newBlockingExecutor(
+                SingleFlightLoader.class.getSimpleName() + "#RefreshThread",
+                Math.max(2, Runtime.getRuntime().availableProcessors()), DEFAULT_REFRESH_QUEUE_CAPACITY
+        );
+    }
+
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        @Nullable
+        V load(@Nonnull String section, @Nonnull K key) throws Exception;
+    }
+
+    private static final class Flight<K> {
+        private final String section;
+        private final K key;
+
+        private Flight(String section, K key) {
+            this.section = section;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Flight)) {
+                return false;
+            }
+
+            Flight<?> flight = (Flight<?>) o;
+            return section.equals(flight.section) && key.equals(flight.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * section.hashCode() + Objects.hashCode(key);
+        }
+    }
+}
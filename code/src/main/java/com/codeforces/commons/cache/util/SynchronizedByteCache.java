@@ -4,6 +4,8 @@ import com.codeforces.commons.cache.ByteCache;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -99,6 +101,47 @@ class SynchronizedByteCache extends ByteCache {
         }
     }
 
+    @Nonnull
+    @Override
+    public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        lock.lock();
+        try {
+            return cache.getAll(section, keys);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+        lock.lock();
+        try {
+            cache.putAll(section, valueByKey);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+        lock.lock();
+        try {
+            cache.putAll(section, valueByKey, lifetimeMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int removeAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+        lock.lock();
+        try {
+            return cache.removeAll(section, keys);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public boolean remove(@Nonnull String section, @Nonnull String key) {
         lock.lock();
@@ -0,0 +1,437 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.cache.ByteCache;
+import com.codeforces.commons.process.ThreadUtil;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Bounded queue of pending writes flushed to the cache by worker threads.
+ * <p>
+ * Keys are distributed between stripes, each stripe is flushed by its own worker, so writes of the same key
+ * are applied in order. Pending writes of the same key are collapsed: only the latest value is written.
+ * Each worker takes up to {@code batchSize} writes at once and stores them using {@link ByteCache#putAll}.
+ * Writes being flushed stay visible to {@link #getPendingValue} and the discarding methods wait for them,
+ * so a removal made after the discarding is never overwritten by an older value.
+ */
+final class WriteBehindQueue {
+    private static final Logger logger = Logger.getLogger(WriteBehindQueue.class);
+
+    private static final long NO_LIFETIME = 0L;
+
+    private final ByteCache cache;
+    private final int batchSize;
+    private final AsynchronousByteCache.OverflowPolicy overflowPolicy;
+
+    private final Stripe[] stripes;
+    private final Thread[] workers;
+
+    private final AtomicLong droppedWriteCount = new AtomicLong();
+    private final AtomicLong collapsedWriteCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    WriteBehindQueue(
+            @Nonnull ByteCache cache, int capacity, int workerCount, int batchSize,
+            @Nonnull AsynchronousByteCache.OverflowPolicy overflowPolicy, @Nonnull String threadNamePrefix) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Argument 'capacity' should be positive.");
+        }
+
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Argument 'workerCount' should be positive.");
+        }
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Argument 'batchSize' should be positive.");
+        }
+
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Argument 'overflowPolicy' is 'null'.");
+        }
+
+        this.cache = cache;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+
+        int stripeCount = Math.min(workerCount, capacity);
+        this.stripes = new Stripe[stripeCount];
+        this.workers = new Thread[stripeCount];
+
+        for (int i = 0; i < stripeCount; ++i) {
+            Stripe stripe = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+            stripes[i] = stripe;
+            workers[i] = ThreadUtil.newThread(threadNamePrefix + "#WriteBehindThread-" + (i + 1), () -> work(stripe), true);
+            workers[i].start();
+        }
+    }
+
+    void enqueue(
+            @Nonnull String section, @Nonnull String key, @Nonnull byte[] value, long lifetimeMillis,
+            boolean onlyIfAbsent) {
+        Write write = new Write(section, key, value, lifetimeMillis, onlyIfAbsent);
+
+        if (closed) {
+            droppedWriteCount.incrementAndGet();
+            logger.warn("Write-behind queue is closed, dropping write (section='" + section + "', key='" + key + "').");
+            return;
+        }
+
+        Stripe stripe = getStripe(write.writeKey);
+        stripe.lock.lock();
+        try {
+            Write pendingWrite = stripe.writeByKey.get(write.writeKey);
+            if (pendingWrite != null) {
+                collapsedWriteCount.incrementAndGet();
+                if (!onlyIfAbsent) {
+                    stripe.writeByKey.put(write.writeKey, write);
+                }
+                return;
+            }
+
+            boolean full = stripe.writeByKey.size() >= stripe.capacity;
+
+            if (!full || overflowPolicy == AsynchronousByteCache.OverflowPolicy.DROP_OLDEST) {
+                if (full) {
+                    Iterator<Write> iterator = stripe.writeByKey.values().iterator();
+                    iterator.next();
+                    iterator.remove();
+                    droppedWriteCount.incrementAndGet();
+                }
+
+                stripe.writeByKey.put(write.writeKey, write);
+                stripe.notEmpty.signal();
+                return;
+            }
+
+            if (overflowPolicy == AsynchronousByteCache.OverflowPolicy.DROP_NEWEST) {
+                droppedWriteCount.incrementAndGet();
+                return;
+            }
+
+            // The caller's write should not be overwritten by the older one being flushed.
+            awaitFlushed(stripe, writeKey -> writeKey.equals(write.writeKey));
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        execute(write);
+    }
+
+    /**
+     * @return value of the pending or being flushed unconditional write or {@code null}
+     */
+    @Nullable
+    byte[] getPendingValue(@Nonnull String section, @Nonnull String key) {
+        WriteKey writeKey = new WriteKey(section, key);
+        Stripe stripe = getStripe(writeKey);
+
+        stripe.lock.lock();
+        try {
+            Write write = stripe.writeByKey.get(writeKey);
+            if (write == null) {
+                write = stripe.inFlightWriteByKey.get(writeKey);
+            }
+            return write == null || write.onlyIfAbsent ? null : write.value;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the pending write of the key and waits until its write being flushed (if any) is completed.
+     */
+    void discard(@Nonnull String section, @Nonnull String key) {
+        WriteKey writeKey = new WriteKey(section, key);
+        Stripe stripe = getStripe(writeKey);
+
+        stripe.lock.lock();
+        try {
+            stripe.writeByKey.remove(writeKey);
+            awaitFlushed(stripe, writeKey::equals);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    void discardSection(@Nonnull String section) {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.writeByKey.keySet().removeIf(writeKey -> writeKey.section.equals(section));
+                awaitFlushed(stripe, writeKey -> writeKey.section.equals(section));
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    void discardAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.writeByKey.clear();
+                awaitFlushed(stripe, writeKey -> true);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.writeByKey.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        return size;
+    }
+
+    long getDroppedWriteCount() {
+        return droppedWriteCount.get();
+    }
+
+    long getCollapsedWriteCount() {
+        return collapsedWriteCount.get();
+    }
+
+    /**
+     * Stops accepting writes and waits until the pending ones are flushed.
+     */
+    void close(long timeoutMillis) {
+        closed = true;
+
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.notEmpty.signalAll();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+        for (Thread worker : workers) {
+            long remainingMillis = deadlineMillis - System.currentTimeMillis();
+            if (remainingMillis <= 0L || !ThreadUtil.join(worker, remainingMillis)) {
+                logger.warn("Write-behind queue hasn't been flushed in " + timeoutMillis + " ms.");
+                return;
+            }
+        }
+    }
+
+    private Stripe getStripe(WriteKey writeKey) {
+        int hash = writeKey.hashCode();
+        return stripes[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    /**
+     * Should be called under the lock of the stripe.
+     */
+    private static void awaitFlushed(Stripe stripe, Predicate<WriteKey> predicate) {
+        while (stripe.inFlightWriteByKey.keySet().stream().anyMatch(predicate)) {
+            stripe.flushed.awaitUninterruptibly();
+        }
+    }
+
+    private void work(Stripe stripe) {
+        List<Write> batch = new ArrayList<>(Math.min(batchSize, stripe.capacity));
+
+        while (true) {
+            stripe.lock.lock();
+            try {
+                while (stripe.writeByKey.isEmpty()) {
+                    if (closed) {
+                        return;
+                    }
+
+                    stripe.notEmpty.await(1L, TimeUnit.SECONDS);
+                }
+
+                Iterator<Write> iterator = stripe.writeByKey.values().iterator();
+                while (iterator.hasNext() && batch.size() < batchSize) {
+                    Write write = iterator.next();
+                    batch.add(write);
+                    stripe.inFlightWriteByKey.put(write.writeKey, write);
+                    iterator.remove();
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Write-behind thread has been interrupted.", e);
+                return;
+            } finally {
+                stripe.lock.unlock();
+            }
+
+            try {
+                flush(batch);
+            } finally {
+                stripe.lock.lock();
+                try {
+                    stripe.inFlightWriteByKey.clear();
+                    stripe.flushed.signalAll();
+                } finally {
+                    stripe.lock.unlock();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Write> batch) {
+        Map<Group, Map<String, byte[]>> valueByKeyByGroup = new LinkedHashMap<>();
+
+        for (Write write : batch) {
+            if (write.onlyIfAbsent) {
+                execute(write);
+            } else {
+                valueByKeyByGroup.computeIfAbsent(
+                        new Group(write.writeKey.section, write.lifetimeMillis), group -> new LinkedHashMap<>()
+                ).put(write.writeKey.key, write.value);
+            }
+        }
+
+        for (Map.Entry<Group, Map<String, byte[]>> entry : valueByKeyByGroup.entrySet()) {
+            Group group = entry.getKey();
+            Map<String, byte[]> valueByKey = entry.getValue();
+
+            try {
+                if (group.lifetimeMillis == NO_LIFETIME) {
+                    cache.putAll(group.section, valueByKey);
+                } else {
+                    cache.putAll(group.section, valueByKey, group.lifetimeMillis);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Can't write " + valueByKey.size() + " values (section='" + group.section + "').", e);
+            }
+        }
+    }
+
+    private void execute(Write write) {
+        String section = write.writeKey.section;
+        String key = write.writeKey.key;
+
+        try {
+            if (write.onlyIfAbsent) {
+                if (write.lifetimeMillis == NO_LIFETIME) {
+                    cache.putIfAbsent(section, key, write.value);
+                } else {
+                    cache.putIfAbsent(section, key, write.value, write.lifetimeMillis);
+                }
+            } else {
+                if (write.lifetimeMillis == NO_LIFETIME) {
+                    cache.put(section, key, write.value);
+                } else {
+                    cache.put(section, key, write.value, write.lifetimeMillis);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Can't write value (section='" + section + "', key='" + key + "').", e);
+        }
+    }
+
+    private static final class Stripe {
+        private final int capacity;
+        private final Lock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition flushed = lock.newCondition();
+        private final Map<WriteKey, Write> writeByKey = new LinkedHashMap<>();
+        private final Map<WriteKey, Write> inFlightWriteByKey = new HashMap<>();
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    private static final class Write {
+        private final WriteKey writeKey;
+        private final byte[] value;
+        private final long lifetimeMillis;
+        private final boolean onlyIfAbsent;
+
+        private Write(String section, String key, byte[] value, long lifetimeMillis, boolean onlyIfAbsent) {
+            this.writeKey = new WriteKey(section, key);
+            this.value = value;
+            this.lifetimeMillis = lifetimeMillis;
+            this.onlyIfAbsent = onlyIfAbsent;
+        }
+    }
+
+    private static final class WriteKey {
+        private final String section;
+        private final String key;
+
+        private WriteKey(String section, String key) {
+            this.section = section;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof WriteKey)) {
+                return false;
+            }
+
+            WriteKey writeKey = (WriteKey) o;
+            return section.equals(writeKey.section) && key.equals(writeKey.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * section.hashCode() + key.hashCode();
+        }
+    }
+
+    private static final class Group {
+        private final String section;
+        private final long lifetimeMillis;
+
+        private Group(String section, long lifetimeMillis) {
+            this.section = section;
+            this.lifetimeMillis = lifetimeMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Group)) {
+                return false;
+            }
+
+            Group group = (Group) o;
+            return lifetimeMillis == group.lifetimeMillis && section.equals(group.section);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(section, lifetimeMillis);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.codeforces.commons.compress;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Compresses byte arrays. Implementations should be thread-safe.
+ * <p>
+ * Data encoded by {@link CompressionCodecs#encode(CompressionCodec, byte[])} starts with a header byte containing
+ * the codec identifier, so it can be decoded without knowing the codec. Custom codecs are registered by
+ * {@link CompressionCodecs#register(CompressionCodec)} or listed in
+ * {@code META-INF/services/com.codeforces.commons.compress.CompressionCodec}.
+ */
+public interface CompressionCodec {
+    /**
+     * @return identifier stored in the header of encoded data, built-in codecs use identifiers less than
+     * {@link CompressionCodecs#MIN_CUSTOM_CODEC_ID}, custom ones should use identifiers from
+     * {@link CompressionCodecs#MIN_CUSTOM_CODEC_ID} to {@link CompressionCodecs#MAX_CODEC_ID}
+     */
+    int getId();
+
+    @Nonnull
+    String getName();
+
+    @Nonnull
+    byte[] compress(@Nonnull byte[] bytes, int offset, int length) throws IOException;
+
+    @Nonnull
+    byte[] decompress(@Nonnull byte[] bytes, int offset, int length) throws IOException;
+}
@@ -0,0 +1,310 @@
+package com.codeforces.commons.compress;
+
+import org.apache.log4j.Logger;
+import org.xerial.snappy.Snappy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DataFormatException;
+
+/**
+ * Registry of {@link CompressionCodec}s and the self-describing format: encoded data is a header byte
+ * {@code 0x80 | codecId} followed by the compressed bytes.
+ * <p>
+ * Built-in codecs: {@link #NONE}, {@link #DEFLATE}, {@link #LZMA}, {@link #LZ4} (pure Java, several times faster
+ * than deflate at the cost of the ratio) and {@link #SNAPPY} (native).
+ */
+public final class CompressionCodecs {
+    private static final Logger logger = Logger.getLogger(CompressionCodecs.class);
+
+    public static final int MIN_CUSTOM_CODEC_ID = 64;
+    public static final int MAX_CODEC_ID = 127;
+
+    private static final int HEADER_FLAG = 0x80;
+
+    public static final CompressionCodec NONE = new NoneCodec();
+
+    /**
+     * Deflate (zlib) at {@link ZipUtil#MAXIMAL_COMPRESSION_LEVEL}, see {@link #newDeflateCodec(int)}
+     * for other levels.
+     */
+    public static final CompressionCodec DEFLATE = new DeflateCodec(ZipUtil.MAXIMAL_COMPRESSION_LEVEL);
+
+    public static final CompressionCodec LZMA = new LzmaCodec();
+    public static final CompressionCodec LZ4 = new Lz4Codec();
+    public static final CompressionCodec SNAPPY = new SnappyCodec();
+
+    private static final AtomicReferenceArray<CompressionCodec> codecById
+            = new AtomicReferenceArray<>(MAX_CODEC_ID + 1);
+
+    static {
+        internalRegister(NONE);
+        internalRegister(DEFLATE);
+        internalRegister(LZMA);
+        internalRegister(LZ4);
+        internalRegister(SNAPPY);
+
+        try {
+            for (CompressionCodec codec : ServiceLoader.load(CompressionCodec.class)) {
+                register(codec);
+            }
+        } catch (ServiceConfigurationError | IllegalArgumentException e) {
+            logger.error("Can't load compression codecs.", e);
+        }
+    }
+
+    private CompressionCodecs() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Registers the codec to decode data with its identifier. Codecs of the same class (e.g. deflate codecs
+     * of different levels) may share an identifier.
+     *
+     * @param codec codec to register
+     * @throws IllegalArgumentException if the identifier is out of the custom range (from
+     *                                  {@link #MIN_CUSTOM_CODEC_ID} to {@link #MAX_CODEC_ID}) or is used by a codec
+     *                                  of another class
+     */
+    public static void register(@Nonnull CompressionCodec codec) {
+        int id = codec.getId();
+        if (id < MIN_CUSTOM_CODEC_ID || id > MAX_CODEC_ID) {
+            throw new IllegalArgumentException(String.format(
+                    "Codec identifier %d of '%s' is out of the custom range.", id, codec.getName()
+            ));
+        }
+
+        internalRegister(codec);
+    }
+
+    private static void internalRegister(@Nonnull CompressionCodec codec) {
+        int id = codec.getId();
+
+        CompressionCodec registeredCodec = codecById.get(id);
+        if (registeredCodec != null && registeredCodec.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException(String.format(
+                    "Codec identifier %d of '%s' is used by '%s'.", id, codec.getName(), registeredCodec.getName()
+            ));
+        }
+
+        codecById.compareAndSet(id, null, codec);
+    }
+
+    @Nullable
+    public static CompressionCodec getCodec(int id) {
+        return id < 0 || id > MAX_CODEC_ID ? null : codecById.get(id);
+    }
+
+    /**
+     * @param name codec name, case insensitive
+     * @return registered codec or {@code null}
+     */
+    @Nullable
+    public static CompressionCodec getCodec(@Nonnull String name) {
+        for (int id = 0; id <= MAX_CODEC_ID; ++id) {
+            CompressionCodec codec = codecById.get(id);
+            if (codec != null && codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param level compression level (0-9)
+     * @return deflate codec, which shares the identifier and the decoding with {@link #DEFLATE}
+     */
+    @Nonnull
+    public static CompressionCodec newDeflateCodec(int level) {
+        if (level < ZipUtil.MINIMAL_COMPRESSION_LEVEL || level > ZipUtil.MAXIMAL_COMPRESSION_LEVEL) {
+            throw new IllegalArgumentException("Argument 'level' is out of range.");
+        }
+        return new DeflateCodec(level);
+    }
+
+    /**
+     * @return the header byte followed by the bytes compressed by the codec
+     */
+    @Nonnull
+    public static byte[] encode(@Nonnull CompressionCodec codec, @Nonnull byte[] bytes) throws IOException {
+        byte[] compressedBytes = codec == NONE ? bytes : codec.compress(bytes, 0, bytes.length);
+        byte[] encodedBytes = new byte[compressedBytes.length + 1];
+        encodedBytes[0] = (byte) (HEADER_FLAG | codec.getId());
+        System.arraycopy(compressedBytes, 0, encodedBytes, 1, compressedBytes.length);
+        return encodedBytes;
+    }
+
+    /**
+     * Checks the header flag only. Data of other formats may be considered encoded, e.g. if it starts with
+     * a negative number, so the formats should be distinguished by other means.
+     */
+    public static boolean isEncoded(@Nonnull byte[] bytes) {
+        return bytes.length > 0 && (bytes[0] & HEADER_FLAG) != 0;
+    }
+
+    /**
+     * @param bytes data encoded by {@link #encode(CompressionCodec, byte[])}
+     * @return decompressed bytes
+     * @throws IOException if the codec is unknown or the data is malformed
+     */
+    @Nonnull
+    public static byte[] decode(@Nonnull byte[] bytes) throws IOException {
+        if (!isEncoded(bytes)) {
+            throw new IOException("Data has no compression header.");
+        }
+
+        int id = bytes[0] & ~HEADER_FLAG & 0xFF;
+        CompressionCodec codec = codecById.get(id);
+        if (codec == null) {
+            throw new IOException("Unknown compression codec " + id + '.');
+        }
+
+        return codec.decompress(bytes, 1, bytes.length - 1);
+    }
+
+    /**
+     * @return {@code bytes} if the range covers the whole array, otherwise a copy of the range
+     */
+    @Nonnull
+    static byte[] toArray(@Nonnull byte[] bytes, int offset, int length) {
+        return offset == 0 && length == bytes.length ? bytes : Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    private static final class NoneCodec implements CompressionCodec {
+        @Override
+        public int getId() {
+            return 0;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "none";
+        }
+
+        @Nonnull
+        @Override
+        public byte[] compress(@Nonnull byte[] bytes, int offset, int length) {
+            return Arrays.copyOfRange(bytes, offset, offset + length);
+        }
+
+        @Nonnull
+        @Override
+        public byte[] decompress(@Nonnull byte[] bytes, int offset, int length) {
+            return Arrays.copyOfRange(bytes, offset, offset + length);
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+
+    private static final class DeflateCodec implements CompressionCodec {
+        private final int level;
+
+        private DeflateCodec(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public int getId() {
+            return 1;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "deflate";
+        }
+
+        @Nonnull
+        @Override
+        public byte[] compress(@Nonnull byte[] bytes, int offset, int length) {
+            return ZipUtil.compress(bytes, offset, length, level);
+        }
+
+        @Nonnull
+        @Override
+        public byte[] decompress(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+            try {
+                return ZipUtil.decompress(bytes, offset, length);
+            } catch (DataFormatException e) {
+                throw new IOException("Can't inflate data.", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%s-%d", getName(), level);
+        }
+    }
+
+    private static final class LzmaCodec implements CompressionCodec {
+        @Override
+        public int getId() {
+            return 2;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "lzma";
+        }
+
+        @Nonnull
+        @Override
+        public byte[] compress(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+            return LzmaUtil.compress(toArray(bytes, offset, length));
+        }
+
+        @Nonnull
+        @Override
+        public byte[] decompress(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+            return LzmaUtil.decompress(toArray(bytes, offset, length));
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+
+    private static final class SnappyCodec implements CompressionCodec {
+        @Override
+        public int getId() {
+            return 4;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return "snappy";
+        }
+
+        @Nonnull
+        @Override
+        public byte[] compress(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+            return Snappy.compress(toArray(bytes, offset, length));
+        }
+
+        @Nonnull
+        @Override
+        public byte[] decompress(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+            byte[] output = new byte[Snappy.uncompressedLength(bytes, offset, length)];
+            Snappy.uncompress(bytes, offset, length, output, 0);
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+}
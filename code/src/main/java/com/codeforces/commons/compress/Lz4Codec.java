@@ -0,0 +1,259 @@
+package com.codeforces.commons.compress;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure Java codec of the LZ4 block format: a greedy single-probe matcher, which trades the ratio for speed.
+ * The block is prefixed by the original length as a varint, since the block itself doesn't store it.
+ */
+final class Lz4Codec implements CompressionCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int RUN_MASK = 15;
+    private static final int MIN_HASH_LOG = 8;
+    private static final int MAX_HASH_LOG = 16;
+    private static final int SKIP_TRIGGER = 6;
+
+    /**
+     * Each sequence restores at most 255 bytes per encoded byte.
+     */
+    private static final long MAX_RATIO = 255L;
+
+    @Override
+    public int getId() {
+        return 3;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "lz4";
+    }
+
+    @Nonnull
+    @Override
+    public byte[] compress(@Nonnull byte[] bytes, int offset, int length) {
+        byte[] output = new byte[5 + length + length / 255 + 16];
+        int outputPosition = writeVarInt(output, 0, length);
+
+        int end = offset + length;
+        int anchor = offset;
+
+        if (length >= MF_LIMIT + 1) {
+            int hashLog = Math.max(MIN_HASH_LOG, Math.min(MAX_HASH_LOG, 32 - Integer.numberOfLeadingZeros(length)));
+            int[] positionByHash = new int[1 << hashLog];
+            Arrays.fill(positionByHash, -1);
+
+            int matchLimit = end - LAST_LITERALS;
+            int inputLimit = end - MF_LIMIT;
+            int position = offset + 1;
+            positionByHash[hash(readInt(bytes, offset), hashLog)] = offset;
+
+            while (position < inputLimit) {
+                int value = readInt(bytes, position);
+                int hash = hash(value, hashLog);
+                int reference = positionByHash[hash];
+                positionByHash[hash] = position;
+
+                if (reference < 0 || position - reference > MAX_OFFSET || readInt(bytes, reference) != value) {
+                    position += 1 + ((position - anchor) >>> SKIP_TRIGGER);
+                    continue;
+                }
+
+                while (position > anchor && reference > offset && bytes[position - 1] == bytes[reference - 1]) {
+                    --position;
+                    --reference;
+                }
+
+                int matchLength = MIN_MATCH;
+                while (position + matchLength < matchLimit
+                        && bytes[reference + matchLength] == bytes[position + matchLength]) {
+                    ++matchLength;
+                }
+
+                outputPosition = writeSequence(
+                        bytes, anchor, position - anchor, position - reference, matchLength, output, outputPosition
+                );
+
+                position += matchLength;
+                anchor = position;
+
+                if (position < inputLimit) {
+                    positionByHash[hash(readInt(bytes, position - 2), hashLog)] = position - 2;
+                }
+            }
+        }
+
+        outputPosition = writeLastLiterals(bytes, anchor, end - anchor, output, outputPosition);
+        return Arrays.copyOf(output, outputPosition);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] decompress(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+        try {
+            int end = offset + length;
+            long originalLength = 0L;
+            int position = offset;
+
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28) {
+                    throw new IOException("Malformed LZ4 length.");
+                }
+                int value = bytes[position++];
+                originalLength |= (long) (value & 0x7F) << shift;
+                if (value >= 0) {
+                    break;
+                }
+            }
+
+            if (originalLength > Integer.MAX_VALUE - 8 || originalLength > MAX_RATIO * (end - position)) {
+                throw new IOException("Malformed LZ4 length " + originalLength + '.');
+            }
+
+            byte[] output = new byte[(int) originalLength];
+            int outputPosition = 0;
+
+            while (true) {
+                int token = bytes[position++] & 0xFF;
+
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int value;
+                    do {
+                        value = bytes[position++] & 0xFF;
+                        literalLength += value;
+                    } while (value == 255 && literalLength > 0);
+                }
+
+                if (literalLength < 0 || literalLength > end - position
+                        || literalLength > output.length - outputPosition) {
+                    throw new IOException("Malformed LZ4 literals.");
+                }
+
+                System.arraycopy(bytes, position, output, outputPosition, literalLength);
+                position += literalLength;
+                outputPosition += literalLength;
+
+                if (position == end) {
+                    break;
+                }
+
+                int matchOffset = (bytes[position++] & 0xFF) | (bytes[position++] & 0xFF) << 8;
+
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int value;
+                    do {
+                        value = bytes[position++] & 0xFF;
+                        matchLength += value;
+                    } while (value == 255 && matchLength > 0);
+                }
+                matchLength += MIN_MATCH;
+
+                int reference = outputPosition - matchOffset;
+                if (matchOffset == 0 || reference < 0 || matchLength < MIN_MATCH
+                        || matchLength > output.length - outputPosition) {
+                    throw new IOException("Malformed LZ4 match.");
+                }
+
+                if (matchOffset >= matchLength) {
+                    System.arraycopy(output, reference, output, outputPosition, matchLength);
+                    outputPosition += matchLength;
+                } else {
+                    for (int i = 0; i < matchLength; ++i) {
+                        output[outputPosition++] = output[reference++];
+                    }
+                }
+            }
+
+            if (outputPosition != output.length) {
+                throw new IOException("LZ4 block is shorter than expected.");
+            }
+
+            return output;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("LZ4 block is truncated.", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF) | (bytes[position + 1] & 0xFF) << 8
+                | (bytes[position + 2] & 0xFF) << 16 | bytes[position + 3] << 24;
+    }
+
+    private static int hash(int value, int hashLog) {
+        return value * -1640531535 >>> 32 - hashLog;
+    }
+
+    private static int writeVarInt(byte[] output, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            output[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        output[position++] = (byte) value;
+        return position;
+    }
+
+    private static int writeLength(byte[] output, int position, int length) {
+        while (length >= 255) {
+            output[position++] = (byte) 255;
+            length -= 255;
+        }
+        output[position++] = (byte) length;
+        return position;
+    }
+
+    private static int writeSequence(
+            byte[] bytes, int literalOffset, int literalLength, int matchOffset, int matchLength,
+            byte[] output, int position) {
+        int tokenPosition = position++;
+        int token;
+
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            position = writeLength(output, position, literalLength - RUN_MASK);
+        } else {
+            token = literalLength << 4;
+        }
+
+        System.arraycopy(bytes, literalOffset, output, position, literalLength);
+        position += literalLength;
+
+        output[position++] = (byte) matchOffset;
+        output[position++] = (byte) (matchOffset >>> 8);
+
+        int extraMatchLength = matchLength - MIN_MATCH;
+        if (extraMatchLength >= RUN_MASK) {
+            token |= RUN_MASK;
+            position = writeLength(output, position, extraMatchLength - RUN_MASK);
+        } else {
+            token |= extraMatchLength;
+        }
+
+        output[tokenPosition] = (byte) token;
+        return position;
+    }
+
+    private static int writeLastLiterals(byte[] bytes, int literalOffset, int literalLength, byte[] output,
+                                         int position) {
+        if (literalLength >= RUN_MASK) {
+            output[position++] = (byte) (RUN_MASK << 4);
+            position = writeLength(output, position, literalLength - RUN_MASK);
+        } else {
+            output[position++] = (byte) (literalLength << 4);
+        }
+
+        System.arraycopy(bytes, literalOffset, output, position, literalLength);
+        return position + literalLength;
+    }
+}
@@ -1,53 +1,283 @@
 package com.codeforces.commons.compress;
 
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import com.codeforces.commons.concurrent.ManagedExecutor;
 import com.codeforces.commons.io.ByteArrayOutputStream;
+import com.codeforces.commons.io.FileUtil;
 import lzma.sdk.lzma.Decoder;
 import lzma.sdk.lzma.Encoder;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CountingInputStream;
 
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
+ * LZMA compression of byte arrays and streams.
+ * <p>
+ * Streams are compressed in the {@code .lzma} ("LZMA alone") format with an unknown size and an end marker,
+ * so the memory doesn't depend on the data size: the encoder takes about 11.5 dictionary sizes and the decoder
+ * one dictionary size. {@link #compressBlocks(InputStream, OutputStream, int, int, int) Block compression}
+ * splits the data into independently compressed blocks to use several threads. Decompression methods accept
+ * both formats.
+ *
  * @author Mike Mirzayanov
  */
 public class LzmaUtil {
+    public static final int MIN_DICTIONARY_SIZE = 1 << 12;
+    public static final int MAX_DICTIONARY_SIZE = 1 << 28;
+    public static final int DEFAULT_DICTIONARY_SIZE = 1 << 23;
+    public static final int DEFAULT_BLOCK_SIZE = (int) (32L * FileUtil.BYTES_PER_MB);
+
+    private static final int PROPERTIES_SIZE = 5;
+    private static final int SIZE_SIZE = 8;
+    private static final int STREAM_BUFFER_SIZE = 65536;
+    private static final int MIN_EXPECTED_SIZE = 256;
+    private static final int MAX_EXPECTED_COMPRESSION_RATIO = 16;
+
+    /**
+     * Each compression keeps at most {@code threadCount} pending blocks, so the queue is full only if there are
+     * many concurrent compressions.
+     */
+    private static final int COMPRESSION_QUEUE_CAPACITY = 4096;
+
+    /**
+     * Block format starts with this magic. Its first byte is not a valid properties byte of the LZMA format,
+     * which is less than {@code 9 * 5 * 5}.
+     */
+    private static final byte[] BLOCK_FORMAT_MAGIC = {(byte) 0xFF, 'L', 'Z', 'B'};
+
     private LzmaUtil() {
         throw new UnsupportedOperationException();
     }
 
     public static byte[] compress(byte[] plainBytes) throws IOException {
-        InputStream in = new ByteArrayInputStream(plainBytes);
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(new ByteArrayInputStream(plainBytes), out, DEFAULT_DICTIONARY_SIZE, plainBytes.length);
+        return out.toByteArray();
+    }
 
-        Encoder encoder = new Encoder();
+    public static byte[] decompress(byte[] compressedBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(getExpectedSize(compressedBytes));
+        decompress(new ByteArrayInputStream(compressedBytes), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Same as {@link #compress(InputStream, OutputStream, int)} with {@link #DEFAULT_DICTIONARY_SIZE}.
+     */
+    public static void compress(@Nonnull InputStream in, @Nonnull OutputStream out) throws IOException {
+        compress(in, out, DEFAULT_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Compresses the stream by a single thread. Streams are not closed.
+     *
+     * @param in             plain data
+     * @param out            compressed data
+     * @param dictionarySize dictionary size, from {@link #MIN_DICTIONARY_SIZE} to {@link #MAX_DICTIONARY_SIZE};
+     *                       larger dictionaries may improve the ratio of large data
+     * @throws IOException if can't read or write data
+     */
+    public static void compress(@Nonnull InputStream in, @Nonnull OutputStream out, int dictionarySize)
+            throws IOException {
+        BufferedOutputStream bufferedOut = new BufferedOutputStream(out, STREAM_BUFFER_SIZE);
+        encode(new BufferedInputStream(in, STREAM_BUFFER_SIZE), bufferedOut, dictionarySize, -1L);
+        bufferedOut.flush();
+    }
+
+    public static void compress(
+            @Nonnull ReadableByteChannel in, @Nonnull WritableByteChannel out, int dictionarySize)
+            throws IOException {
+        compress(Channels.newInputStream(in), Channels.newOutputStream(out), dictionarySize);
+    }
+
+    /**
+     * Compresses the stream by blocks in parallel. At most {@code threadCount} blocks are processed at once,
+     * so the memory is about {@code threadCount * (2 * blockSize + 11.5 * dictionarySize)}. The ratio
+     * is a bit worse than of {@link #compress(InputStream, OutputStream, int)}, since blocks don't share
+     * the dictionary. Streams are not closed.
+     *
+     * @param in             plain data
+     * @param out            compressed data
+     * @param dictionarySize dictionary size, it is reduced to the block size if larger
+     * @param blockSize      size of plain data in a block
+     * @param threadCount    maximal number of blocks compressed at once
+     * @throws IOException if can't read or write data
+     */
+    public static void compressBlocks(
+            @Nonnull InputStream in, @Nonnull OutputStream out, int dictionarySize, int blockSize, int threadCount)
+            throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Argument 'blockSize' should be positive.");
+        }
+
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Argument 'threadCount' should be positive.");
+        }
+
+        validateDictionarySize(dictionarySize);
+        int blockDictionarySize = Math.max(MIN_DICTIONARY_SIZE, Math.min(dictionarySize, blockSize));
+
+        DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out, STREAM_BUFFER_SIZE));
+        dataOut.write(BLOCK_FORMAT_MAGIC);
+
+        Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>(threadCount);
+        ManagedExecutor executor = CompressionExecutorHolder.INSTANCE;
+
+        try {
+            while (true) {
+                byte[] block = new byte[blockSize];
+                int blockLength = IOUtils.read(in, block);
+                if (blockLength == 0) {
+                    break;
+                }
+
+                try {
+                    pendingBlocks.addLast(executor.submit(() -> {
+                        ByteArrayOutputStream blockOut = new ByteArrayOutputStream(blockLength / 2 + 64);
+                        encode(new ByteArrayInputStream(block, 0, blockLength), blockOut, blockDictionarySize, -1L);
+                        return blockOut.toByteArray();
+                    }));
+                } catch (RejectedExecutionException e) {
+                    throw new IOException("Can't compress block: too many compressions.", e);
+                }
+
+                if (pendingBlocks.size() >= threadCount) {
+                    writeBlock(dataOut, pendingBlocks.removeFirst());
+                }
+
+                if (blockLength < blockSize) {
+                    break;
+                }
+            }
+
+            while (!pendingBlocks.isEmpty()) {
+                writeBlock(dataOut, pendingBlocks.removeFirst());
+            }
+        } finally {
+            for (Future<byte[]> pendingBlock : pendingBlocks) {
+                pendingBlock.cancel(true);
+            }
+        }
+
+        dataOut.writeInt(0);
+        dataOut.flush();
+    }
+
+    public static void compressBlocks(
+            @Nonnull ReadableByteChannel in, @Nonnull WritableByteChannel out, int dictionarySize, int blockSize,
+            int threadCount) throws IOException {
+        compressBlocks(Channels.newInputStream(in), Channels.newOutputStream(out), dictionarySize, blockSize,
+                threadCount);
+    }
+
+    /**
+     * Decompresses data of any format written by this class. Streams are not closed.
+     *
+     * @param in  compressed data
+     * @param out plain data
+     * @throws IOException if can't read or write data or the data is malformed
+     */
+    public static void decompress(@Nonnull InputStream in, @Nonnull OutputStream out) throws IOException {
+        BufferedInputStream bufferedIn = new BufferedInputStream(in, STREAM_BUFFER_SIZE);
+        BufferedOutputStream bufferedOut = new BufferedOutputStream(out, STREAM_BUFFER_SIZE);
+
+        bufferedIn.mark(BLOCK_FORMAT_MAGIC.length);
+        byte[] magic = new byte[BLOCK_FORMAT_MAGIC.length];
+        int magicLength = IOUtils.read(bufferedIn, magic);
+
+        if (magicLength == magic.length && Arrays.equals(magic, BLOCK_FORMAT_MAGIC)) {
+            decodeBlocks(bufferedIn, bufferedOut);
+        } else {
+            bufferedIn.reset();
+            decode(bufferedIn, bufferedOut);
+        }
 
-        encoder.setDictionarySize(1 << 23);
+        bufferedOut.flush();
+    }
+
+    public static void decompress(@Nonnull ReadableByteChannel in, @Nonnull WritableByteChannel out)
+            throws IOException {
+        decompress(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    /**
+     * The header is not trusted: the result never exceeds {@code MAX_EXPECTED_COMPRESSION_RATIO} times
+     * the compressed length, and the output buffer grows if the data is really that compressible.
+     *
+     * @return the size stored in the header if it is known and plausible, otherwise a guess
+     */
+    static int getExpectedSize(byte[] compressedBytes) {
+        int length = Math.min(compressedBytes.length, MAX_DICTIONARY_SIZE / MAX_EXPECTED_COMPRESSION_RATIO);
+        int guess = Math.max(MIN_EXPECTED_SIZE, 4 * length);
+        if (compressedBytes.length < PROPERTIES_SIZE + SIZE_SIZE || compressedBytes[0] == BLOCK_FORMAT_MAGIC[0]) {
+            return guess;
+        }
+
+        long size = 0;
+        for (int i = 0; i < SIZE_SIZE; ++i) {
+            size |= (long) (compressedBytes[PROPERTIES_SIZE + i] & 0xFF) << (8 * i);
+        }
+
+        int limit = Math.max(MIN_EXPECTED_SIZE, MAX_EXPECTED_COMPRESSION_RATIO * length);
+        return size >= 0 ? (int) Math.min(size, limit) : guess;
+    }
+
+    private static void validateDictionarySize(int dictionarySize) {
+        if (dictionarySize < MIN_DICTIONARY_SIZE || dictionarySize > MAX_DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Argument 'dictionarySize' is out of range.");
+        }
+    }
+
+    private static Encoder newEncoder(int dictionarySize) {
+        validateDictionarySize(dictionarySize);
+
+        Encoder encoder = new Encoder();
+        encoder.setDictionarySize(dictionarySize);
         encoder.setEndMarkerMode(true);
         encoder.setMatchFinder(Encoder.EMatchFinderTypeBT4);
         encoder.setNumFastBytes(0x20);
+        return encoder;
+    }
 
+    /**
+     * @param size data size or {@code -1} if unknown
+     */
+    private static void encode(InputStream in, OutputStream out, int dictionarySize, long size)
+            throws IOException {
+        Encoder encoder = newEncoder(dictionarySize);
         encoder.writeCoderProperties(out);
-        long fileSize = plainBytes.length;
-        for (int i = 0; i < 8; ++i) {
+
+        for (int i = 0; i < SIZE_SIZE; ++i) {
             //noinspection NumericCastThatLosesPrecision
-            out.write((int) (fileSize >>> (8 * i)) & 0xFF);
+            out.write((int) (size >>> (8 * i)) & 0xFF);
         }
 
         encoder.code(in, out, -1, -1, null);
-
-        in.close();
-
-        return out.toByteArray();
     }
 
-    public static byte[] decompress(byte[] compressedBytes) throws IOException {
-        InputStream in = new ByteArrayInputStream(compressedBytes);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-        int propertiesSize = 5;
-        byte[] properties = new byte[propertiesSize];
-        if (in.read(properties, 0, propertiesSize) != propertiesSize) {
+    private static void decode(InputStream in, OutputStream out) throws IOException {
+        byte[] properties = new byte[PROPERTIES_SIZE];
+        if (IOUtils.read(in, properties) != PROPERTIES_SIZE) {
             throw new IOException("LZMA-input is too short.");
         }
 
@@ -57,7 +287,7 @@ public class LzmaUtil {
         }
 
         long outSize = 0;
-        for (int i = 0; i < 8; i++) {
+        for (int i = 0; i < SIZE_SIZE; i++) {
             int v = in.read();
             if (v < 0) {
                 throw new IOException("Can't read stream size.");
@@ -69,9 +299,57 @@ public class LzmaUtil {
         if (!decoder.code(in, out, outSize)) {
             throw new IOException("Error in data stream.");
         }
+    }
 
-        in.close();
+    private static void decodeBlocks(InputStream in, OutputStream out) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
 
-        return out.toByteArray();
+        while (true) {
+            int compressedLength;
+            try {
+                compressedLength = dataIn.readInt();
+            } catch (EOFException e) {
+                throw new IOException("LZMA block stream is truncated.", e);
+            }
+
+            if (compressedLength == 0) {
+                return;
+            }
+
+            if (compressedLength < 0) {
+                throw new IOException("Illegal LZMA block length " + compressedLength + '.');
+            }
+
+            BoundedInputStream boundedIn = new BoundedInputStream(dataIn, compressedLength);
+            boundedIn.setPropagateClose(false);
+            CountingInputStream blockIn = new CountingInputStream(boundedIn);
+            decode(blockIn, out);
+
+            IOUtils.skip(blockIn, Long.MAX_VALUE);
+            if (blockIn.getByteCount() != compressedLength) {
+                throw new IOException("LZMA block stream is truncated.");
+            }
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, Future<byte[]> pendingBlock) throws IOException {
+        byte[] compressedBlock;
+        try {
+            compressedBlock = pendingBlock.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing block.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Can't compress block.", e.getCause());
+        }
+
+        out.writeInt(compressedBlock.length);
+        out.write(compressedBlock);
+    }
+
+    private static final class CompressionExecutorHolder {
+        private static final ManagedExecutor INSTANCE = ExecutorUtil.newExecutor(
+                "LzmaUtil#CompressionThread", Runtime.getRuntime().availableProcessors(), COMPRESSION_QUEUE_CAPACITY
+        );
     }
 }
@@ -0,0 +1,689 @@
+package com.codeforces.commons.compress;
+
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import com.codeforces.commons.concurrent.ManagedExecutor;
+import com.codeforces.commons.io.FileUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Extracts a ZIP-archive from a file or from memory reading its central directory once and inflating entries
+ * in parallel by positional reads, so entries don't share a stream and no temporary files are needed.
+ * <p>
+ * Sizes declared by the archive are not trusted: the extractor counts the bytes it actually writes, rejects
+ * entries which exceed their declared size, {@code maxEntrySize} or have a wrong CRC, and stops when the total
+ * size exceeds {@code maxExpansionRatio} sizes of the archive (but not less than {@link #MIN_CHECKED_TOTAL_SIZE}).
+ * Only stored and deflated unencrypted entries are supported, {@link #isSupported(List)} tells it before
+ * extracting.
+ */
+final class ParallelZipExtractor implements Closeable {
+    /**
+     * Total size below which the expansion ratio is not checked, so small archives of repetitive data pass.
+     */
+    static final long MIN_CHECKED_TOTAL_SIZE = 64L * FileUtil.BYTES_PER_MB;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034B50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014B50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054B50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064B50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064B50;
+
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+    private static final int ENCRYPTED_FLAG = 1;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Each extraction keeps at most {@code threadCount} pending entries, so the queue is full only if there are
+     * many concurrent extractions.
+     */
+    private static final int EXTRACTION_QUEUE_CAPACITY = 4096;
+
+    private final Source source;
+    private final int threadCount;
+    private final long maxEntrySize;
+    private final long maxTotalSize;
+    private final AtomicLong totalSize = new AtomicLong();
+
+    private ParallelZipExtractor(Source source, int threadCount, long maxEntrySize, long maxExpansionRatio) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Argument 'threadCount' should be positive.");
+        }
+
+        this.source = source;
+        this.threadCount = threadCount;
+        this.maxEntrySize = maxEntrySize;
+        this.maxTotalSize = Math.max(MIN_CHECKED_TOTAL_SIZE,
+                source.size() > Long.MAX_VALUE / maxExpansionRatio ? Long.MAX_VALUE : source.size() * maxExpansionRatio);
+    }
+
+    @Nonnull
+    static ParallelZipExtractor open(
+            @Nonnull File zipArchive, int threadCount, long maxEntrySize, long maxExpansionRatio)
+            throws IOException {
+        FileChannel channel = FileChannel.open(zipArchive.toPath(), StandardOpenOption.READ);
+        try {
+            return new ParallelZipExtractor(new FileSource(channel), threadCount, maxEntrySize, maxExpansionRatio);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Nonnull
+    static ParallelZipExtractor open(
+            @Nonnull byte[] bytes, int threadCount, long maxEntrySize, long maxExpansionRatio) {
+        return new ParallelZipExtractor(new ByteArraySource(bytes), threadCount, maxEntrySize, maxExpansionRatio);
+    }
+
+    /**
+     * @return entries in the order of the central directory
+     * @throws IOException if the archive is malformed
+     */
+    @Nonnull
+    List<Entry> readEntries() throws IOException {
+        long size = source.size();
+        int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(size - tailSize, tailSize);
+
+        int endPosition = -1;
+        for (int position = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; --position) {
+            if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                    && position + END_OF_CENTRAL_DIRECTORY_SIZE + (tail.getShort(position + 20) & 0xFFFF)
+                    == tailSize) {
+                endPosition = position;
+                break;
+            }
+        }
+
+        if (endPosition < 0) {
+            throw new IOException("ZIP-archive has no end of central directory record.");
+        }
+
+        long entryCount = tail.getShort(endPosition + 10) & 0xFFFF;
+        long centralDirectorySize = tail.getInt(endPosition + 12) & 0xFFFFFFFFL;
+        long centralDirectoryOffset = tail.getInt(endPosition + 16) & 0xFFFFFFFFL;
+
+        long locatorOffset = size - tailSize + endPosition - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE;
+        if (locatorOffset >= 0) {
+            ByteBuffer locator = read(locatorOffset, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+                ByteBuffer end = read(locator.getLong(8), ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE);
+                if (end.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    throw new IOException("ZIP64-archive has malformed end of central directory record.");
+                }
+                entryCount = end.getLong(32);
+                centralDirectorySize = end.getLong(40);
+                centralDirectoryOffset = end.getLong(48);
+            }
+        }
+
+        if (centralDirectoryOffset < 0 || centralDirectorySize < 0
+                || centralDirectoryOffset + centralDirectorySize > size || centralDirectorySize > Integer.MAX_VALUE
+                || entryCount < 0 || entryCount > centralDirectorySize / CENTRAL_DIRECTORY_HEADER_SIZE) {
+            throw new IOException("ZIP-archive has malformed central directory location.");
+        }
+
+        ByteBuffer centralDirectory = read(centralDirectoryOffset, (int) centralDirectorySize);
+        List<Entry> entries = new ArrayList<>((int) entryCount);
+
+        for (long i = 0; i < entryCount; ++i) {
+            entries.add(readEntry(centralDirectory));
+        }
+
+        return entries;
+    }
+
+    static boolean isSupported(@Nonnull List<Entry> entries) {
+        for (Entry entry : entries) {
+            if ((entry.flags & ENCRYPTED_FLAG) != 0
+                    || entry.method != METHOD_STORED && entry.method != METHOD_DEFLATED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extracts entries, later entries replace earlier ones of the same path.
+     *
+     * @return number of extracted entries
+     */
+    int extract(@Nonnull List<Entry> entries, @Nonnull File destinationDirectory, @Nullable FileFilter skipFilter,
+                long maxEntryCount) throws IOException {
+        FileUtil.ensureDirectoryExists(destinationDirectory);
+        Path destinationPath = destinationDirectory.getCanonicalFile().toPath();
+
+        Map<File, Entry> entryByFile = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            if (entryByFile.size() >= maxEntryCount) {
+                break;
+            }
+
+            File file = new File(destinationDirectory, entry.name).getCanonicalFile();
+            if (!file.toPath().startsWith(destinationPath)) {
+                throw new IOException("ZIP entry tries to escape destination directory: " + entry.name);
+            }
+
+            if (skipFilter != null && skipFilter.accept(file) || file.toPath().equals(destinationPath)) {
+                continue;
+            }
+
+            entryByFile.remove(file);
+            entryByFile.put(file, entry);
+        }
+
+        for (Map.Entry<File, Entry> fileAndEntry : entryByFile.entrySet()) {
+            File file = fileAndEntry.getKey();
+            Files.createDirectories((fileAndEntry.getValue().isDirectory() ? file : file.getParentFile()).toPath());
+        }
+
+        Deque<Future<?>> pendingEntries = new ArrayDeque<>(threadCount);
+        ManagedExecutor executor = ExtractionExecutorHolder.INSTANCE;
+        AtomicBoolean failed = new AtomicBoolean();
+
+        try {
+            for (Map.Entry<File, Entry> fileAndEntry : entryByFile.entrySet()) {
+                File file = fileAndEntry.getKey();
+                Entry entry = fileAndEntry.getValue();
+
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                try {
+                    pendingEntries.addLast(executor.submit(() -> {
+                        try {
+                            extract(entry, file, failed);
+                        } catch (IOException | RuntimeException | Error e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                        return null;
+                    }));
+                } catch (RejectedExecutionException e) {
+                    throw new IOException("Can't extract ZIP entry '" + entry.name + "': too many extractions.", e);
+                }
+
+                if (pendingEntries.size() >= threadCount) {
+                    await(pendingEntries.removeFirst());
+                }
+            }
+
+            while (!pendingEntries.isEmpty()) {
+                await(pendingEntries.removeFirst());
+            }
+        } finally {
+            // Pending tasks remain only on failure. They stop at the next buffer, but must not outlive the call,
+            // since the caller closes the source and may delete the destination.
+            failed.set(true);
+            while (!pendingEntries.isEmpty()) {
+                awaitUninterruptibly(pendingEntries.removeFirst());
+            }
+        }
+
+        return entryByFile.size();
+    }
+
+    long getTotalSize() {
+        return totalSize.get();
+    }
+
+    long getArchiveSize() {
+        return source.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private void extract(Entry entry, File file, AtomicBoolean failed) throws IOException {
+        if (failed.get()) {
+            throw new ExtractionStoppedException(entry);
+        }
+
+        ByteBuffer localHeader = read(entry.localHeaderOffset, LOCAL_FILE_HEADER_SIZE);
+        if (localHeader.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE) {
+            throw new IOException("ZIP entry '" + entry.name + "' has malformed local header.");
+        }
+
+        long dataOffset = entry.localHeaderOffset + LOCAL_FILE_HEADER_SIZE
+                + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+        if (dataOffset + entry.compressedSize > source.size()) {
+            throw new IOException("ZIP entry '" + entry.name + "' is truncated.");
+        }
+
+        Path path = file.toPath();
+        Files.deleteIfExists(path);
+
+        boolean extracted = false;
+        try (InputStream inputStream = new SourceInputStream(source, dataOffset, entry.compressedSize);
+             OutputStream outputStream = Files.newOutputStream(path)) {
+            CRC32 crc32 = new CRC32();
+            long size = entry.method == METHOD_STORED
+                    ? copyStored(entry, inputStream, outputStream, crc32, failed)
+                    : copyDeflated(entry, inputStream, outputStream, crc32, failed);
+
+            if (size != entry.size) {
+                throw new IOException(String.format(
+                        "ZIP entry '%s' has %d bytes instead of declared %d.", entry.name, size, entry.size
+                ));
+            }
+
+            if (crc32.getValue() != entry.crc32) {
+                throw new IOException("ZIP entry '" + entry.name + "' has wrong CRC.");
+            }
+
+            extracted = true;
+        } finally {
+            if (!extracted) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(fromDosTime(entry.dosTime));
+    }
+
+    private long copyStored(
+            Entry entry, InputStream inputStream, OutputStream outputStream, CRC32 crc32, AtomicBoolean failed)
+            throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0L;
+
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            size = count(entry, size, length, failed);
+            crc32.update(buffer, 0, length);
+            outputStream.write(buffer, 0, length);
+        }
+
+        return size;
+    }
+
+    private long copyDeflated(
+            Entry entry, InputStream inputStream, OutputStream outputStream, CRC32 crc32, AtomicBoolean failed)
+            throws IOException {
+        byte[] input = new byte[BUFFER_SIZE];
+        byte[] output = new byte[BUFFER_SIZE];
+        long size = 0L;
+
+        Inflater inflater = new Inflater(true);
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    int inputLength = inputStream.read(input);
+                    if (inputLength == -1) {
+                        throw new IOException("ZIP entry '" + entry.name + "' is truncated.");
+                    }
+                    inflater.setInput(input, 0, inputLength);
+                }
+
+                int length;
+                try {
+                    length = inflater.inflate(output);
+                } catch (DataFormatException e) {
+                    throw new IOException("ZIP entry '" + entry.name + "' is malformed.", e);
+                }
+
+                if (length == 0 && inflater.needsDictionary()) {
+                    throw new IOException("ZIP entry '" + entry.name + "' is malformed.");
+                }
+
+                size = count(entry, size, length, failed);
+                crc32.update(output, 0, length);
+                outputStream.write(output, 0, length);
+            }
+        } finally {
+            inflater.end();
+        }
+
+        return size;
+    }
+
+    /**
+     * Checks the limits before the bytes are written. Also stops the extraction if another entry has failed.
+     */
+    private long count(Entry entry, long size, int length, AtomicBoolean failed) throws IOException {
+        if (failed.get()) {
+            throw new ExtractionStoppedException(entry);
+        }
+
+        long newSize = size + length;
+
+        if (newSize > entry.size) {
+            throw new IOException(String.format(
+                    "ZIP entry '%s' is larger than declared %d bytes.", entry.name, entry.size
+            ));
+        }
+
+        if (newSize > maxEntrySize) {
+            throw new IOException(String.format(
+                    "Entry '%s' is larger than %s.", entry.name, FileUtil.formatSize(maxEntrySize)
+            ));
+        }
+
+        if (totalSize.addAndGet(length) > maxTotalSize) {
+            throw new IOException(String.format(
+                    "ZIP-archive of %s expands to more than %s.",
+                    FileUtil.formatSize(source.size()), FileUtil.formatSize(maxTotalSize)
+            ));
+        }
+
+        return newSize;
+    }
+
+    private Entry readEntry(ByteBuffer centralDirectory) throws IOException {
+        int position = centralDirectory.position();
+        if (centralDirectory.remaining() < CENTRAL_DIRECTORY_HEADER_SIZE
+                || centralDirectory.getInt(position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+            throw new IOException("ZIP-archive has malformed central directory.");
+        }
+
+        int flags = centralDirectory.getShort(position + 8) & 0xFFFF;
+        int method = centralDirectory.getShort(position + 10) & 0xFFFF;
+        int dosTime = centralDirectory.getInt(position + 12);
+        long crc32 = centralDirectory.getInt(position + 16) & 0xFFFFFFFFL;
+        long compressedSize = centralDirectory.getInt(position + 20) & 0xFFFFFFFFL;
+        long size = centralDirectory.getInt(position + 24) & 0xFFFFFFFFL;
+        int nameLength = centralDirectory.getShort(position + 28) & 0xFFFF;
+        int extraLength = centralDirectory.getShort(position + 30) & 0xFFFF;
+        int commentLength = centralDirectory.getShort(position + 32) & 0xFFFF;
+        long localHeaderOffset = centralDirectory.getInt(position + 42) & 0xFFFFFFFFL;
+
+        if (centralDirectory.remaining() < CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength) {
+            throw new IOException("ZIP-archive has malformed central directory.");
+        }
+
+        byte[] nameBytes = new byte[nameLength];
+        ((Buffer) centralDirectory).position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+        centralDirectory.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8).replace('\\', '/');
+
+        int extraPosition = centralDirectory.position();
+        int extraEnd = extraPosition + extraLength;
+        while (extraPosition + 4 <= extraEnd) {
+            int id = centralDirectory.getShort(extraPosition) & 0xFFFF;
+            int length = centralDirectory.getShort(extraPosition + 2) & 0xFFFF;
+            int valuePosition = extraPosition + 4;
+            int valueEnd = Math.min(valuePosition + length, extraEnd);
+
+            if (id == ZIP64_EXTRA_FIELD_ID) {
+                if (size == 0xFFFFFFFFL && valuePosition + 8 <= valueEnd) {
+                    size = centralDirectory.getLong(valuePosition);
+                    valuePosition += 8;
+                }
+                if (compressedSize == 0xFFFFFFFFL && valuePosition + 8 <= valueEnd) {
+                    compressedSize = centralDirectory.getLong(valuePosition);
+                    valuePosition += 8;
+                }
+                if (localHeaderOffset == 0xFFFFFFFFL && valuePosition + 8 <= valueEnd) {
+                    localHeaderOffset = centralDirectory.getLong(valuePosition);
+                }
+            }
+
+            extraPosition += 4 + length;
+        }
+
+        ((Buffer) centralDirectory).position(extraEnd + commentLength);
+
+        if (size < 0 || compressedSize < 0 || localHeaderOffset < 0) {
+            throw new IOException("ZIP entry '" + name + "' has malformed sizes.");
+        }
+
+        return new Entry(name, flags, method, dosTime, crc32, compressedSize, size, localHeaderOffset);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        if (position < 0 || position + length > source.size()) {
+            throw new IOException("ZIP-archive is truncated.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("ZIP-archive is truncated.");
+            }
+        }
+
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * Ignores entries stopped because of another failure: the failed entry is awaited later and reports the cause.
+     */
+    private static void await(Future<?> pendingEntry) throws IOException {
+        try {
+            pendingEntry.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting ZIP entry.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ExtractionStoppedException) {
+                return;
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Can't extract ZIP entry.", e.getCause());
+        }
+    }
+
+    private static void awaitUninterruptibly(Future<?> pendingEntry) {
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                pendingEntry.get();
+                break;
+            } catch (InterruptedException ignored) {
+                interrupted = true;
+            } catch (ExecutionException ignored) {
+                break;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long fromDosTime(int dosTime) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        //noinspection MagicConstant
+        calendar.set(
+                (dosTime >>> 25 & 0x7F) + 1980, (dosTime >>> 21 & 0x0F) - 1, dosTime >>> 16 & 0x1F,
+                dosTime >>> 11 & 0x1F, dosTime >>> 5 & 0x3F, (dosTime & 0x1F) << 1
+        );
+        return Math.max(0L, calendar.getTimeInMillis());
+    }
+
+    static final class Entry {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final long crc32;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int flags, int method, int dosTime, long crc32, long compressedSize, long size,
+                      long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc32 = crc32;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Archive data which supports concurrent positional reads.
+     */
+    private interface Source extends Closeable {
+        long size();
+
+        /**
+         * @return number of bytes read or {@code -1} if the position is at the end
+         */
+        int read(ByteBuffer buffer, long position) throws IOException;
+    }
+
+    private static final class FileSource implements Source {
+        private final FileChannel channel;
+        private final long size;
+
+        private FileSource(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, long position) throws IOException {
+            return channel.read(buffer, position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class ByteArraySource implements Source {
+        private final byte[] bytes;
+
+        private ByteArraySource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, long position) {
+            if (position >= bytes.length) {
+                return -1;
+            }
+
+            int length = (int) Math.min(buffer.remaining(), bytes.length - position);
+            buffer.put(bytes, (int) position, length);
+            return length;
+        }
+
+        @Override
+        public void close() {
+            // No operation.
+        }
+    }
+
+    /**
+     * Reads a range of the source by its own position, so streams of different entries are independent.
+     */
+    private static final class SourceInputStream extends InputStream {
+        private final Source source;
+        private final long end;
+        private long position;
+
+        private SourceInputStream(Source source, long position, long length) {
+            this.source = source;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            return read(bytes, 0, 1) == -1 ? -1 : bytes[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position));
+            int readByteCount = source.read(buffer, position);
+            if (readByteCount < 0) {
+                throw new IOException("ZIP-archive is truncated.");
+            }
+
+            position += readByteCount;
+            return readByteCount;
+        }
+    }
+
+    private static final class ExtractionStoppedException extends IOException {
+        private ExtractionStoppedException(Entry entry) {
+            super("Extraction of ZIP entry '" + entry.name + "' is stopped because of another failure.");
+        }
+    }
+
+    private static final class ExtractionExecutorHolder {
+        private static final ManagedExecutor INSTANCE = ExecutorUtil.newExecutor(
+                "ZipUtil#ExtractionThread", Runtime.getRuntime().availableProcessors(), EXTRACTION_QUEUE_CAPACITY
+        );
+    }
+}
@@ -0,0 +1,425 @@
+package com.codeforces.commons.compress;
+
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import com.codeforces.commons.concurrent.ManagedExecutor;
+import com.codeforces.commons.io.FileUtil;
+import com.codeforces.commons.io.IoUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a directory to a ZIP-archive compressing entries in parallel. Each entry is deflated by its own
+ * {@link Deflater} into a separate buffer, then the buffers are written in the order of entries, so the archive
+ * doesn't depend on the number of threads: entries are sorted by name, directories go before files of the same
+ * directory, and each entry keeps the modification time of its file.
+ * <p>
+ * Files larger than {@link #MAX_BUFFERED_ENTRY_SIZE} are deflated by the writing thread straight into the archive,
+ * and their header is patched afterwards. Archives which would need ZIP64 extensions are not supported,
+ * {@link #isSupported(List)} tells it before writing.
+ */
+final class ParallelZipWriter {
+    static final long MAX_BUFFERED_ENTRY_SIZE = 16L * FileUtil.BYTES_PER_MB;
+
+    private static final int MAX_ENTRY_COUNT = 0xFFFF;
+    private static final long MAX_ARCHIVE_SIZE = 0xFFFFFFFFL;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034B50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014B50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054B50;
+
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_FILE_HEADER_CRC_OFFSET = 14;
+
+    private static final int VERSION = 20;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int DIRECTORY_ATTRIBUTE = 0x10;
+
+    /**
+     * Each writer keeps at most {@code threadCount} pending entries, so the queue is full only if there are
+     * many concurrent writers.
+     */
+    private static final int COMPRESSION_QUEUE_CAPACITY = 4096;
+
+    private final int level;
+    private final int threadCount;
+
+    ParallelZipWriter(int level, int threadCount) {
+        if (level < ZipUtil.MINIMAL_COMPRESSION_LEVEL || level > ZipUtil.MAXIMAL_COMPRESSION_LEVEL) {
+            throw new IllegalArgumentException("Argument 'level' is out of range.");
+        }
+
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Argument 'threadCount' should be positive.");
+        }
+
+        this.level = level;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return entries of the directory in the archive order
+     */
+    @Nonnull
+    static List<Entry> listEntries(@Nonnull File source, @Nullable FileFilter skipFilter) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        listEntries("", source, skipFilter, entries);
+        return entries;
+    }
+
+    static boolean isSupported(@Nonnull List<Entry> entries) {
+        if (entries.size() > MAX_ENTRY_COUNT) {
+            return false;
+        }
+
+        long size = END_OF_CENTRAL_DIRECTORY_SIZE;
+        for (Entry entry : entries) {
+            // Deflate may expand incompressible data by 5 bytes per 16 KB block.
+            size += LOCAL_FILE_HEADER_SIZE + CENTRAL_DIRECTORY_HEADER_SIZE + 2L * entry.name.length
+                    + entry.size + 5L * (entry.size / 16384L + 1L);
+        }
+
+        return size <= MAX_ARCHIVE_SIZE;
+    }
+
+    void write(@Nonnull List<Entry> entries, @Nonnull File destination) throws IOException {
+        FileUtil.ensureParentDirectoryExists(destination);
+
+        try (FileChannel channel = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Deque<Future<CompressedEntry>> pendingEntries = new ArrayDeque<>(threadCount);
+            ManagedExecutor executor = CompressionExecutorHolder.INSTANCE;
+
+            try {
+                for (Entry entry : entries) {
+                    if (entry.directory || entry.size <= MAX_BUFFERED_ENTRY_SIZE) {
+                        try {
+                            pendingEntries.addLast(executor.submit(() -> compress(entry)));
+                        } catch (RejectedExecutionException e) {
+                            throw new IOException("Can't compress ZIP-entry: too many compressions.", e);
+                        }
+                        if (pendingEntries.size() >= threadCount) {
+                            writeEntry(channel, pendingEntries.removeFirst());
+                        }
+                    } else {
+                        while (!pendingEntries.isEmpty()) {
+                            writeEntry(channel, pendingEntries.removeFirst());
+                        }
+                        writeLargeEntry(channel, entry);
+                    }
+                }
+
+                while (!pendingEntries.isEmpty()) {
+                    writeEntry(channel, pendingEntries.removeFirst());
+                }
+            } finally {
+                for (Future<CompressedEntry> pendingEntry : pendingEntries) {
+                    pendingEntry.cancel(true);
+                }
+            }
+
+            writeCentralDirectory(channel, entries);
+        }
+    }
+
+    private CompressedEntry compress(Entry entry) throws IOException {
+        if (entry.directory) {
+            return new CompressedEntry(entry, new byte[0], 0, 0L);
+        }
+
+        byte[] bytes = FileUtil.getBytes(entry.file);
+        if (bytes.length != entry.size) {
+            throw new IOException("File '" + entry.file + "' has been changed while compressing.");
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, bytes.length);
+
+        if (level == ZipUtil.MINIMAL_COMPRESSION_LEVEL) {
+            return new CompressedEntry(entry, bytes, bytes.length, crc32.getValue());
+        }
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] output = new byte[bytes.length + 5 * (bytes.length / 16384 + 1) + 64];
+            int outputLength = 0;
+
+            while (!deflater.finished()) {
+                if (outputLength == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+            }
+
+            return new CompressedEntry(entry, output, outputLength, crc32.getValue());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeEntry(FileChannel channel, Future<CompressedEntry> pendingEntry) throws IOException {
+        CompressedEntry compressedEntry;
+        try {
+            compressedEntry = pendingEntry.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing ZIP-entry.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Can't compress ZIP-entry.", e.getCause());
+        }
+
+        Entry entry = compressedEntry.entry;
+        entry.offset = channel.position();
+        entry.crc32 = compressedEntry.crc32;
+        entry.compressedSize = compressedEntry.length;
+
+        writeFully(channel, newLocalFileHeader(entry));
+        writeFully(channel, ByteBuffer.wrap(compressedEntry.bytes, 0, compressedEntry.length));
+    }
+
+    private void writeLargeEntry(FileChannel channel, Entry entry) throws IOException {
+        entry.offset = channel.position();
+        writeFully(channel, newLocalFileHeader(entry));
+
+        CRC32 crc32 = new CRC32();
+        long compressedSize = 0L;
+        long size = 0L;
+        byte[] buffer = new byte[IoUtil.BUFFER_SIZE];
+        byte[] output = new byte[IoUtil.BUFFER_SIZE];
+        Deflater deflater = level == ZipUtil.MINIMAL_COMPRESSION_LEVEL ? null : new Deflater(level, true);
+
+        try (InputStream inputStream = FileUtil.getInputStream(entry.file)) {
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                crc32.update(buffer, 0, length);
+                size += length;
+
+                if (deflater == null) {
+                    writeFully(channel, ByteBuffer.wrap(buffer, 0, length));
+                    compressedSize += length;
+                } else {
+                    deflater.setInput(buffer, 0, length);
+                    while (!deflater.needsInput()) {
+                        compressedSize += writeDeflated(channel, deflater, output);
+                    }
+                }
+            }
+
+            if (deflater != null) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressedSize += writeDeflated(channel, deflater, output);
+                }
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+
+        if (size != entry.size) {
+            throw new IOException("File '" + entry.file + "' has been changed while compressing.");
+        }
+
+        entry.crc32 = crc32.getValue();
+        entry.compressedSize = compressedSize;
+
+        ByteBuffer patch = newBuffer(12);
+        patch.putInt((int) entry.crc32).putInt((int) entry.compressedSize).putInt((int) entry.size);
+        ((Buffer) patch).flip();
+        long position = entry.offset + LOCAL_FILE_HEADER_CRC_OFFSET;
+        while (patch.hasRemaining()) {
+            position += channel.write(patch, position);
+        }
+    }
+
+    private void writeCentralDirectory(FileChannel channel, List<Entry> entries) throws IOException {
+        long centralDirectoryOffset = channel.position();
+
+        for (Entry entry : entries) {
+            ByteBuffer header = newBuffer(CENTRAL_DIRECTORY_HEADER_SIZE + entry.name.length);
+            header.putInt(CENTRAL_DIRECTORY_HEADER_SIGNATURE);
+            header.putShort((short) VERSION);
+            putCommonFields(header, entry);
+            header.putShort((short) 0); // Comment length.
+            header.putShort((short) 0); // Disk number.
+            header.putShort((short) 0); // Internal attributes.
+            header.putInt(entry.directory ? DIRECTORY_ATTRIBUTE : 0);
+            header.putInt((int) entry.offset);
+            header.put(entry.name);
+            ((Buffer) header).flip();
+            writeFully(channel, header);
+        }
+
+        long centralDirectorySize = channel.position() - centralDirectoryOffset;
+
+        ByteBuffer end = newBuffer(END_OF_CENTRAL_DIRECTORY_SIZE);
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0).putShort((short) 0);
+        end.putShort((short) entries.size()).putShort((short) entries.size());
+        end.putInt((int) centralDirectorySize).putInt((int) centralDirectoryOffset);
+        end.putShort((short) 0);
+        ((Buffer) end).flip();
+        writeFully(channel, end);
+    }
+
+    private ByteBuffer newLocalFileHeader(Entry entry) {
+        ByteBuffer header = newBuffer(LOCAL_FILE_HEADER_SIZE + entry.name.length);
+        header.putInt(LOCAL_FILE_HEADER_SIGNATURE);
+        putCommonFields(header, entry);
+        header.put(entry.name);
+        ((Buffer) header).flip();
+        return header;
+    }
+
+    /**
+     * Puts fields from the version needed to extract to the extra field length, which are the same
+     * in local and central headers.
+     */
+    private void putCommonFields(ByteBuffer header, Entry entry) {
+        header.putShort((short) VERSION);
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) (entry.directory || level == ZipUtil.MINIMAL_COMPRESSION_LEVEL
+                ? METHOD_STORED : METHOD_DEFLATED));
+        header.putInt(entry.dosTime);
+        header.putInt((int) entry.crc32);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) 0);
+    }
+
+    private static int writeDeflated(FileChannel channel, Deflater deflater, byte[] output) throws IOException {
+        int length = deflater.deflate(output);
+        writeFully(channel, ByteBuffer.wrap(output, 0, length));
+        return length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void listEntries(
+            String prefix, File directory, @Nullable FileFilter skipFilter, List<Entry> entries)
+            throws IOException {
+        File[] files = skipFilter == null ? directory.listFiles()
+                : directory.listFiles(pathname -> !skipFilter.accept(pathname));
+
+        if (files == null) {
+            throw new IOException(String.format(
+                    "Can't list files in directory '%s' (isDirectory=%b, isFile=%b).",
+                    directory.getPath(), directory.isDirectory(), directory.isFile()
+            ));
+        }
+
+        Arrays.sort(files, Comparator.comparing(File::getName));
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                String path = prefix + file.getName() + '/';
+                entries.add(new Entry(path, file, true, 0L));
+                listEntries(path, file, skipFilter, entries);
+            }
+        }
+
+        for (File file : files) {
+            if (file.isFile()) {
+                entries.add(new Entry(prefix + file.getName(), file, false, file.length()));
+            }
+        }
+    }
+
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    static final class Entry {
+        private final byte[] name;
+        private final File file;
+        private final boolean directory;
+        private final long size;
+        private final int dosTime;
+
+        private long offset;
+        private long crc32;
+        private long compressedSize;
+
+        private Entry(String name, File file, boolean directory, long size) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.file = file;
+            this.directory = directory;
+            this.size = size;
+            this.dosTime = toDosTime(file.lastModified());
+        }
+
+        @Override
+        public String toString() {
+            return new String(name, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class CompressedEntry {
+        private final Entry entry;
+        private final byte[] bytes;
+        private final int length;
+        private final long crc32;
+
+        private CompressedEntry(Entry entry, byte[] bytes, int length, long crc32) {
+            this.entry = entry;
+            this.bytes = bytes;
+            this.length = length;
+            this.crc32 = crc32;
+        }
+    }
+
+    private static final class CompressionExecutorHolder {
+        private static final ManagedExecutor INSTANCE = ExecutorUtil.newExecutor(
+                "ZipUtil#CompressionThread", Runtime.getRuntime().availableProcessors(), COMPRESSION_QUEUE_CAPACITY
+        );
+    }
+}
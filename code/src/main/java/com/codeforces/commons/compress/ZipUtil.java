@@ -33,6 +33,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.zip.*;
@@ -51,8 +52,11 @@ public final class ZipUtil {
 
     private static final long MAX_ZIP_ENTRY_SIZE = FileUtil.BYTES_PER_GB;
     private static final long MAX_ZIP_ENTRY_COUNT = 100_000L;
+    private static final long MAX_ZIP_EXPANSION_RATIO = 200L;
+    private static final int DEFAULT_UNZIP_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
 
-    private static final int DEFAULT_BUFFER_SIZE = IoUtil.BUFFER_SIZE;
+    static final int MIN_DECOMPRESSION_BUFFER_SIZE = 256;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
 
     private ZipUtil() {
         throw new UnsupportedOperationException();
@@ -65,55 +69,112 @@ public final class ZipUtil {
 
     public static void compress(InputStream plainTextInputStream, OutputStream compressedTextOutputStream, int level)
             throws IOException {
-        Deflater compressor = new Deflater();
-        compressor.setLevel(level);
-        IoUtil.copy(new DeflaterInputStream(plainTextInputStream, compressor), compressedTextOutputStream);
+        Deflater compressor = ZlibPool.borrowDeflater(level);
+        try {
+            IoUtil.copy(new DeflaterInputStream(plainTextInputStream, compressor), compressedTextOutputStream);
+        } finally {
+            ZlibPool.releaseDeflater(compressor);
+        }
     }
 
     public static void decompress(InputStream compressedTextInputStream, OutputStream plainTextOutputStream)
             throws IOException {
-        IoUtil.copy(compressedTextInputStream, new InflaterOutputStream(plainTextOutputStream));
+        Inflater decompressor = ZlibPool.borrowInflater();
+        try {
+            InflaterOutputStream inflaterOutputStream = new InflaterOutputStream(plainTextOutputStream, decompressor);
+            IoUtil.copy(compressedTextInputStream, inflaterOutputStream);
+            inflaterOutputStream.finish();
+        } finally {
+            ZlibPool.releaseInflater(decompressor);
+        }
     }
 
     public static byte[] compress(byte[] bytes) {
         return compress(bytes, DEFAULT_COMPRESSION_LEVEL);
     }
 
+    /**
+     * Compresses bytes by a pooled deflater directly into an array of the zlib upper bound size,
+     * so the output is copied at most once.
+     */
     public static byte[] compress(byte[] bytes, int level) {
-        Deflater deflater = new Deflater();
-        deflater.setLevel(level);
-        deflater.setInput(bytes);
-        deflater.finish();
+        return compress(bytes, 0, bytes.length, level);
+    }
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length)) {
-            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+    static byte[] compress(byte[] bytes, int offset, int length, int level) {
+        Deflater deflater = ZlibPool.borrowDeflater(level);
+
+        try {
+            deflater.setInput(bytes, offset, length);
+            deflater.finish();
+
+            byte[] output = new byte[getMaxCompressedSize(length)];
+            int outputLength = 0;
 
             while (!deflater.finished()) {
-                outputStream.write(buffer, 0, deflater.deflate(buffer));
+                if (outputLength == output.length) {
+                    output = Arrays.copyOf(output, getGrownBufferSize(outputLength));
+                }
+                outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
             }
 
-            return outputStream.toByteArray();
+            return outputLength == output.length ? output : Arrays.copyOf(output, outputLength);
+        } finally {
+            ZlibPool.releaseDeflater(deflater);
         }
     }
 
+    /**
+     * Decompresses bytes by a pooled inflater into a buffer presized from the input.
+     *
+     * @throws DataFormatException if bytes are not a complete zlib stream
+     */
     public static byte[] decompress(byte[] bytes) throws DataFormatException {
-        if (bytes.length == 0) {
-            return bytes;
-        }
+        return bytes.length == 0 ? bytes : decompress(bytes, 0, bytes.length);
+    }
 
-        Inflater inflater = new Inflater();
-        inflater.setInput(bytes);
+    static byte[] decompress(byte[] bytes, int offset, int length) throws DataFormatException {
+        Inflater inflater = ZlibPool.borrowInflater();
+
+        try {
+            inflater.setInput(bytes, offset, length);
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+            byte[] output = new byte[(int) Math.min(
+                    MAX_ARRAY_SIZE, Math.max(MIN_DECOMPRESSION_BUFFER_SIZE, 4L * length)
+            )];
+            int outputLength = 0;
 
             while (!inflater.finished()) {
-                outputStream.write(buffer, 0, inflater.inflate(buffer));
+                if (outputLength == output.length) {
+                    output = Arrays.copyOf(output, getGrownBufferSize(outputLength));
+                }
+
+                int inflatedLength = inflater.inflate(output, outputLength, output.length - outputLength);
+                if (inflatedLength == 0 && !inflater.finished()
+                        && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Unexpected end of compressed data.");
+                }
+                outputLength += inflatedLength;
             }
 
-            inflater.end();
-            return outputStream.toByteArray();
+            return outputLength == output.length ? output : Arrays.copyOf(output, outputLength);
+        } finally {
+            ZlibPool.releaseInflater(inflater);
+        }
+    }
+
+    /**
+     * Same as {@code deflateBound} of zlib for the default window and memory levels.
+     */
+    private static int getMaxCompressedSize(int size) {
+        return (int) Math.min(MAX_ARRAY_SIZE, size + (size >> 12) + (size >> 14) + (size >> 25) + 13L);
+    }
+
+    private static int getGrownBufferSize(int size) {
+        if (size >= MAX_ARRAY_SIZE) {
+            throw new OutOfMemoryError("Can't allocate more than " + MAX_ARRAY_SIZE + " bytes.");
         }
+        return (int) Math.min(MAX_ARRAY_SIZE, 2L * size);
     }
 
     /**
@@ -180,6 +241,34 @@ public final class ZipUtil {
         }
     }
 
+    /**
+     * Adds a directory to a new ZIP-archive compressing files in parallel. The archive is the same for any
+     * number of threads. Directories which need ZIP64 extensions (more than 65535 entries or more than 4 GB)
+     * are compressed by {@link #zip(File, File, int, FileFilter)}.
+     *
+     * @param source      directory to compress, will not be added itself;
+     *                    source directory child files will be placed in the root of archive
+     * @param destination ZIP-archive, will be overwritten if exists
+     * @param level       compression level (0-9)
+     * @param skipFilter  skipped files filter or {@code null} to accept all files
+     * @param threadCount maximal number of files compressed at once
+     * @throws IOException if any I/O-exception occurred
+     */
+    public static void zip(
+            File source, File destination, int level, @Nullable FileFilter skipFilter, int threadCount)
+            throws IOException {
+        ParallelZipWriter writer = new ParallelZipWriter(level, threadCount);
+        List<ParallelZipWriter.Entry> entries = ParallelZipWriter.listEntries(source, skipFilter);
+
+        if (ParallelZipWriter.isSupported(entries)) {
+            writer.write(entries, destination);
+        } else {
+            logger.info("Directory '" + source + "' is too large to be compressed in parallel.");
+            FileUtil.deleteTotally(destination);
+            zip(source, destination, level, skipFilter);
+        }
+    }
+
     /**
      * Adds a directory to a ZIP-archive and returns its bytes. Uses default level of compression.
      * Ignores &quot;.svn&quot; files and directories.
@@ -249,11 +338,34 @@ public final class ZipUtil {
 
     public static void unzip(byte[] bytes, File destinationDirectory, @Nullable FileFilter skipFilter)
             throws IOException {
+        unzip(bytes, destinationDirectory, skipFilter, DEFAULT_UNZIP_THREAD_COUNT);
+    }
+
+    /**
+     * Unzips ZIP-archive bytes to the specified directory extracting files in parallel straight from memory.
+     * See {@link #unzip(File, File, FileFilter, int)} for the limits.
+     *
+     * @param bytes                ZIP-archive bytes
+     * @param destinationDirectory directory to unzip to
+     * @param skipFilter           skipped files filter or {@code null} to accept all files
+     * @param threadCount          maximal number of files extracted at once
+     * @throws IOException if any I/O-exception occurred or the archive exceeds the limits
+     */
+    public static void unzip(
+            byte[] bytes, File destinationDirectory, @Nullable FileFilter skipFilter, int threadCount)
+            throws IOException {
+        try (ParallelZipExtractor extractor = ParallelZipExtractor.open(
+                bytes, threadCount, MAX_ZIP_ENTRY_SIZE, MAX_ZIP_EXPANSION_RATIO)) {
+            if (unzip(extractor, destinationDirectory, skipFilter)) {
+                return;
+            }
+        }
+
         File zipArchive = null;
         try {
             zipArchive = File.createTempFile(System.currentTimeMillis() + "-", ".tmp.zip");
             FileUtil.writeFile(zipArchive, bytes);
-            unzip(zipArchive, destinationDirectory, skipFilter);
+            unzipUseZip4j(zipArchive, destinationDirectory, skipFilter);
         } finally {
             if (zipArchive != null) {
                 Files.deleteIfExists(zipArchive.toPath());
@@ -366,6 +478,66 @@ public final class ZipUtil {
 
     public static void unzip(File zipArchive, File destinationDirectory, @Nullable FileFilter skipFilter)
             throws IOException {
+        unzip(zipArchive, destinationDirectory, skipFilter, DEFAULT_UNZIP_THREAD_COUNT);
+    }
+
+    /**
+     * Unzips a ZIP-archive to the specified directory extracting files in parallel. The central directory
+     * is read once, then each file is inflated by positional reads of the archive.
+     * <p>
+     * Declared sizes are not trusted: extraction fails if a file turns out to be larger than declared
+     * or than 1 GB, if its CRC is wrong, or if all files together exceed {@code 200} sizes of the archive
+     * (archives expanding to less than 64 MB are not checked). A partially written file is deleted, files extracted
+     * before the failure are kept. Archives with encrypted entries or other compression methods than deflate
+     * are extracted by zip4j with the checks of the declared sizes only.
+     *
+     * @param zipArchive           ZIP-archive to unzip
+     * @param destinationDirectory directory to unzip to
+     * @param skipFilter           skipped files filter or {@code null} to accept all files
+     * @param threadCount          maximal number of files extracted at once
+     * @throws IOException if any I/O-exception occurred or the archive exceeds the limits
+     */
+    public static void unzip(
+            File zipArchive, File destinationDirectory, @Nullable FileFilter skipFilter, int threadCount)
+            throws IOException {
+        try (ParallelZipExtractor extractor = ParallelZipExtractor.open(
+                zipArchive, threadCount, MAX_ZIP_ENTRY_SIZE, MAX_ZIP_EXPANSION_RATIO)) {
+            if (unzip(extractor, destinationDirectory, skipFilter)) {
+                return;
+            }
+        }
+
+        unzipUseZip4j(zipArchive, destinationDirectory, skipFilter);
+    }
+
+    /**
+     * @return {@code false} if the archive is not supported by the extractor and nothing has been extracted
+     */
+    private static boolean unzip(
+            ParallelZipExtractor extractor, File destinationDirectory, @Nullable FileFilter skipFilter)
+            throws IOException {
+        long startTimeMillis = System.currentTimeMillis();
+
+        List<ParallelZipExtractor.Entry> entries = extractor.readEntries();
+        if (!ParallelZipExtractor.isSupported(entries)) {
+            return false;
+        }
+
+        int count = extractor.extract(entries, destinationDirectory, skipFilter, MAX_ZIP_ENTRY_COUNT);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format(
+                    "Unzipped %d entries to '%s' in %d ms. Compressed size: %s, Uncompressed size: %s.",
+                    count, destinationDirectory.getAbsolutePath(), System.currentTimeMillis() - startTimeMillis,
+                    FileUtil.formatSize(extractor.getArchiveSize()), FileUtil.formatSize(extractor.getTotalSize())
+            ));
+        }
+
+        return true;
+    }
+
+    private static void unzipUseZip4j(File zipArchive, File destinationDirectory, @Nullable FileFilter skipFilter)
+            throws IOException {
         try (net.lingala.zip4j.ZipFile zipFile = new net.lingala.zip4j.ZipFile(zipArchive)) {
             FileUtil.ensureDirectoryExists(destinationDirectory);
 
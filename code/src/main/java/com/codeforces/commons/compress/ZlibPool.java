@@ -0,0 +1,67 @@
+package com.codeforces.commons.compress;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of {@link Deflater} and {@link Inflater} instances. Each instance owns native zlib memory, which
+ * is costly to allocate and is released only by {@code end()} or by the finalization. The pool is shared by all
+ * threads instead of being thread-local, so short-lived (e.g. virtual) threads don't leave native memory behind.
+ * Instances which don't fit into the pool are ended.
+ */
+final class ZlibPool {
+    private static final int MAX_POOLED_COUNT = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(MAX_POOLED_COUNT);
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(MAX_POOLED_COUNT);
+
+    private ZlibPool() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nonnull
+    static Deflater borrowDeflater(int level) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(level);
+        }
+
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    static void releaseDeflater(@Nonnull Deflater deflater) {
+        try {
+            deflater.reset();
+        } catch (RuntimeException ignored) {
+            deflater.end();
+            return;
+        }
+
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    @Nonnull
+    static Inflater borrowInflater() {
+        Inflater inflater = inflaters.poll();
+        return inflater == null ? new Inflater() : inflater;
+    }
+
+    static void releaseInflater(@Nonnull Inflater inflater) {
+        try {
+            inflater.reset();
+        } catch (RuntimeException ignored) {
+            inflater.end();
+            return;
+        }
+
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+}
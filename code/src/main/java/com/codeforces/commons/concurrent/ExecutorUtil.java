@@ -1,10 +1,14 @@
 package com.codeforces.commons.concurrent;
 
 import com.codeforces.commons.annotation.NullableElements;
+import com.codeforces.commons.process.ThreadUtil;
 import com.codeforces.commons.time.TimeUtil;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -12,6 +16,62 @@ import java.util.concurrent.TimeUnit;
  *         Date: 13.11.2016
  */
 public final class ExecutorUtil {
+    /**
+     * Set this system property to {@code false} to run blocking executors by platform threads
+     * even if the runtime supports virtual threads.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "com.codeforces.commons.concurrent.virtualThreads";
+
+    private static final int SHARED_BLOCKING_EXECUTOR_MAX_CONCURRENCY = 256;
+    private static final int SHARED_BLOCKING_EXECUTOR_QUEUE_CAPACITY = 65536;
+
+    /**
+     * Creates an executor of CPU-bound tasks, which are always run by platform threads.
+     *
+     * @param name          executor name, also used as the thread name prefix
+     * @param threadCount   maximal number of threads
+     * @param queueCapacity maximal number of waiting tasks
+     * @return new executor
+     */
+    @Nonnull
+    public static ManagedExecutor newExecutor(@Nonnull String name, int threadCount, int queueCapacity) {
+        return new ManagedExecutor(name, threadCount, queueCapacity, false);
+    }
+
+    /**
+     * Creates an executor of blocking (I/O) tasks. Tasks are run by virtual threads if the runtime supports them
+     * and {@link #VIRTUAL_THREADS_PROPERTY} is not {@code false}.
+     *
+     * @param name           executor name, also used as the thread name prefix
+     * @param maxConcurrency maximal number of simultaneously running tasks
+     * @param queueCapacity  maximal number of waiting tasks
+     * @return new executor
+     */
+    @Nonnull
+    public static ManagedExecutor newBlockingExecutor(@Nonnull String name, int maxConcurrency, int queueCapacity) {
+        return new ManagedExecutor(
+                name, maxConcurrency, queueCapacity, !"false".equals(System.getProperty(VIRTUAL_THREADS_PROPERTY))
+        );
+    }
+
+    /**
+     * @return executor of the library internal blocking tasks (asynchronous file deletions, request cancellations
+     * and so on), it should never be shut down
+     */
+    @Nonnull
+    public static ManagedExecutor getSharedBlockingExecutor() {
+        return SharedBlockingExecutorHolder.INSTANCE;
+    }
+
+    /**
+     * @return single thread scheduler of the library internal delayed actions (timeouts, request cancellations
+     * and so on), scheduled actions should be short and non-blocking, it should never be shut down
+     */
+    @Nonnull
+    public static ScheduledExecutorService getSharedScheduledExecutor() {
+        return SharedScheduledExecutorHolder.INSTANCE;
+    }
+
     @SuppressWarnings({"ForLoopWithMissingComponent", "OverloadedVarargsMethod", "WeakerAccess"})
     public static void shutdownQuietly(long timeoutMillis, @Nullable @NullableElements ExecutorService... executors) {
         if (executors == null) {
@@ -45,4 +105,17 @@ public final class ExecutorUtil {
     private ExecutorUtil() {
         throw new UnsupportedOperationException();
     }
+
+    private static final class SharedBlockingExecutorHolder {
+        private static final ManagedExecutor INSTANCE = newBlockingExecutor(
+                "CodeforcesCommons#SharedBlockingThread",
+                SHARED_BLOCKING_EXECUTOR_MAX_CONCURRENCY, SHARED_BLOCKING_EXECUTOR_QUEUE_CAPACITY
+        );
+    }
+
+    private static final class SharedScheduledExecutorHolder {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+                ThreadUtil.newThreadFactory("CodeforcesCommons#SharedSchedulerThread", true)
+        );
+    }
 }
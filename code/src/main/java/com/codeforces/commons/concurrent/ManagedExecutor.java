@@ -0,0 +1,211 @@
+package com.codeforces.commons.concurrent;
+
+import com.codeforces.commons.process.ThreadUtil;
+import com.codeforces.commons.text.StringUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named executor which runs at most {@code maxConcurrency} tasks at once and keeps at most {@code queueCapacity}
+ * waiting tasks. Further tasks are rejected with {@link RejectedExecutionException}.
+ * <p>
+ * In platform mode tasks are run by a pool of daemon threads, idle threads stop in a minute.
+ * In virtual mode each task gets its own virtual thread, which waits for a permit before running the task,
+ * so waiting tasks cost no OS threads. Use {@link ExecutorUtil} to create instances.
+ */
+public final class ManagedExecutor extends AbstractExecutorService {
+    private static final long KEEP_ALIVE_MINUTES = 1L;
+
+    private final String name;
+    private final int maxConcurrency;
+    private final int maxTaskCount;
+    private final ExecutorService delegate;
+    @Nullable
+    private final Semaphore permits;
+    private final boolean virtual;
+
+    private final AtomicInteger taskCount = new AtomicInteger();
+    private final AtomicInteger activeTaskCount = new AtomicInteger();
+    private final LongAdder completedTaskCount = new LongAdder();
+    private final LongAdder failedTaskCount = new LongAdder();
+    private final LongAdder rejectedTaskCount = new LongAdder();
+
+    ManagedExecutor(@Nonnull String name, int maxConcurrency, int queueCapacity, boolean preferVirtual) {
+        if (StringUtil.isBlank(name)) {
+            throw new IllegalArgumentException("Argument 'name' is blank.");
+        }
+
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Argument 'maxConcurrency' should be positive.");
+        }
+
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Argument 'queueCapacity' is negative.");
+        }
+
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.maxTaskCount = (int) Math.min(Integer.MAX_VALUE, (long) maxConcurrency + queueCapacity);
+
+        ExecutorService virtualExecutor = preferVirtual ? ThreadUtil.newVirtualThreadPerTaskExecutor(name) : null;
+        if (virtualExecutor == null) {
+            ThreadPoolExecutor platformExecutor = new ThreadPoolExecutor(
+                    maxConcurrency, maxConcurrency, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(), ThreadUtil.newThreadFactory(name, true)
+            );
+            platformExecutor.allowCoreThreadTimeOut(true);
+
+            this.delegate = platformExecutor;
+            this.permits = null;
+            this.virtual = false;
+        } else {
+            this.delegate = virtualExecutor;
+            this.permits = new Semaphore(maxConcurrency);
+            this.virtual = true;
+        }
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("Argument 'command' is 'null'.");
+        }
+
+        if (taskCount.incrementAndGet() > maxTaskCount) {
+            taskCount.decrementAndGet();
+            rejectedTaskCount.increment();
+            throw new RejectedExecutionException("Executor '" + name + "' is overloaded.");
+        }
+
+        try {
+            delegate.execute(() -> run(command));
+        } catch (RejectedExecutionException e) {
+            taskCount.decrementAndGet();
+            rejectedTaskCount.increment();
+            throw e;
+        }
+    }
+
+    private void run(Runnable command) {
+        try {
+            if (permits != null) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    failedTaskCount.increment();
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            activeTaskCount.incrementAndGet();
+            try {
+                command.run();
+                completedTaskCount.increment();
+            } catch (RuntimeException | Error e) {
+                failedTaskCount.increment();
+                throw e;
+            } finally {
+                activeTaskCount.decrementAndGet();
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        } finally {
+            taskCount.decrementAndGet();
+        }
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return {@code true} iff tasks are run by virtual threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return number of running tasks
+     */
+    public int getActiveTaskCount() {
+        return activeTaskCount.get();
+    }
+
+    /**
+     * @return number of accepted tasks which are not running yet
+     */
+    public int getQueuedTaskCount() {
+        return Math.max(0, taskCount.get() - activeTaskCount.get());
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount.sum();
+    }
+
+    /**
+     * @return number of tasks finished with an exception, tasks submitted as futures report exceptions
+     * through the futures and are counted as completed
+     */
+    public long getFailedTaskCount() {
+        return failedTaskCount.sum();
+    }
+
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Nonnull
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "ManagedExecutor {name='%s', virtual=%b, maxConcurrency=%d, activeTaskCount=%d, queuedTaskCount=%d, "
+                        + "completedTaskCount=%d, failedTaskCount=%d, rejectedTaskCount=%d}",
+                name, virtual, maxConcurrency, getActiveTaskCount(), getQueuedTaskCount(),
+                getCompletedTaskCount(), getFailedTaskCount(), getRejectedTaskCount()
+        );
+    }
+}
@@ -0,0 +1,429 @@
+package com.codeforces.commons.concurrent;
+
+import com.codeforces.commons.process.ThreadUtil;
+import com.codeforces.commons.text.StringUtil;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking alternative to {@link ThreadUtil#execute(ThreadUtil.Operation, int, ThreadUtil.ExecutionStrategy)}.
+ * Attempts are run by the executor (the {@link ExecutorUtil#getSharedBlockingExecutor() shared blocking executor}
+ * by default), and retries are scheduled by a shared timer, so no thread sleeps between attempts.
+ * <p>
+ * Delays follow the {@link ThreadUtil.ExecutionStrategy strategy} reduced by a random part of up to
+ * {@code jitterRatio}, so the retries of simultaneous failures spread in time.
+ * <p>
+ * Each scope (for example, a remote host) has a shared state:
+ * <ul>
+ * <li>retry budget: each call adds {@code retryBudgetRatio} of a retry to the budget and each retry takes one
+ * retry from it, so during an outage retries add at most {@code retryBudgetRatio} to the load;</li>
+ * <li>circuit breaker: after {@code failureThreshold} consecutive failed calls the circuit opens and calls fail
+ * with {@link CircuitOpenException} without attempts for {@code openDurationMillis}, then a single trial call is
+ * let through, and its success closes the circuit. If the trial call does not complete
+ * in {@code openDurationMillis}, it is considered lost and the next call becomes the trial.</li>
+ * </ul>
+ * The state of a scope is dropped after ten minutes without calls unless its circuit is open.
+ */
+public final class RetryExecutor {
+    private static final Logger logger = Logger.getLogger(RetryExecutor.class);
+
+    public static final double DEFAULT_JITTER_RATIO = 0.5D;
+    public static final double DEFAULT_RETRY_BUDGET_RATIO = 0.2D;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 10;
+    public static final long DEFAULT_OPEN_DURATION_MILLIS = TimeUnit.SECONDS.toMillis(10L);
+
+    /**
+     * Budget is kept in thousandths of a retry.
+     */
+    private static final long RETRY_COST = 1000L;
+    private static final long INITIAL_RETRY_BUDGET = 10L * RETRY_COST;
+    private static final long MAX_RETRY_BUDGET = 100L * RETRY_COST;
+
+    static final long SCOPE_IDLE_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(10L);
+    private static final long SCOPE_EVICTION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1L);
+
+    private static final ConcurrentMap<String, ScopeState> stateByScope = new ConcurrentHashMap<>();
+    private static final AtomicLong nextScopeEvictionTimeMillis = new AtomicLong();
+
+    private final int attemptCount;
+    private final ThreadUtil.ExecutionStrategy strategy;
+    private final double jitterRatio;
+    private final long retryBudgetIncrement;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final Executor executor;
+
+    /**
+     * Creates executor with the default jitter, retry budget and circuit breaker settings.
+     */
+    public RetryExecutor(int attemptCount, @Nonnull ThreadUtil.ExecutionStrategy strategy) {
+        this(
+                attemptCount, strategy, DEFAULT_JITTER_RATIO, DEFAULT_RETRY_BUDGET_RATIO,
+                DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION_MILLIS, ExecutorUtil.getSharedBlockingExecutor()
+        );
+    }
+
+    /**
+     * @param attemptCount       maximal number of attempts of a call
+     * @param strategy           delays between attempts
+     * @param jitterRatio        maximal part of a delay to remove randomly, from {@code 0.0} to {@code 1.0}
+     * @param retryBudgetRatio   retries per call allowed in a long run, {@code 0.0} allows only the initial budget
+     * @param failureThreshold   number of consecutive failed calls to open the circuit, {@code 0} disables
+     *                           the circuit breaker
+     * @param openDurationMillis time to reject calls after the circuit has opened
+     * @param executor           executor of attempts
+     */
+    public RetryExecutor(
+            int attemptCount, @Nonnull ThreadUtil.ExecutionStrategy strategy, double jitterRatio,
+            double retryBudgetRatio, @Nonnegative int failureThreshold, long openDurationMillis,
+            @Nonnull Executor executor) {
+        if (attemptCount < 1) {
+            throw new IllegalArgumentException("Argument 'attemptCount' should be positive.");
+        }
+
+        if (strategy == null) {
+            throw new IllegalArgumentException("Argument 'strategy' can't be 'null'.");
+        }
+
+        if (!(jitterRatio >= 0.0D && jitterRatio <= 1.0D)) {
+            throw new IllegalArgumentException("Argument 'jitterRatio' should be between 0.0 and 1.0.");
+        }
+
+        if (!(retryBudgetRatio >= 0.0D && retryBudgetRatio <= MAX_RETRY_BUDGET / RETRY_COST)) {
+            throw new IllegalArgumentException("Argument 'retryBudgetRatio' is out of range.");
+        }
+
+        if (failureThreshold < 0) {
+            throw new IllegalArgumentException("Argument 'failureThreshold' is negative.");
+        }
+
+        if (openDurationMillis < 1L) {
+            throw new IllegalArgumentException("Argument 'openDurationMillis' should be positive.");
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("Argument 'executor' can't be 'null'.");
+        }
+
+        this.attemptCount = attemptCount;
+        this.strategy = strategy;
+        this.jitterRatio = jitterRatio;
+        this.retryBudgetIncrement = Math.round(retryBudgetRatio * RETRY_COST);
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs blocking operation by the executor.
+     *
+     * @param scope     scope name
+     * @param operation operation to run
+     * @param <T>       result type
+     * @return future of the result of the first successful attempt or of the last failure
+     */
+    @Nonnull
+    public <T> CompletableFuture<T> execute(@Nonnull String scope, @Nonnull ThreadUtil.Operation<T> operation) {
+        return execute(scope, operation, null);
+    }
+
+    /**
+     * Runs blocking operation by the executor.
+     *
+     * @param scope         scope name
+     * @param operation     operation to run
+     * @param resultChecker returns {@code false} for results to retry, the result of the last attempt
+     *                      is returned anyway
+     * @param <T>           result type
+     * @return future of the result of the first successful attempt or of the last attempt
+     */
+    @Nonnull
+    public <T> CompletableFuture<T> execute(
+            @Nonnull String scope, @Nonnull ThreadUtil.Operation<T> operation,
+            @Nullable Predicate<? super T> resultChecker) {
+        if (operation == null) {
+            throw new IllegalArgumentException("Argument 'operation' can't be 'null'.");
+        }
+
+        return executeAsync(scope, () -> {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.run());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            return future;
+        }, resultChecker);
+    }
+
+    /**
+     * Runs asynchronous operation. The operation is started by the calling thread or by the timer thread,
+     * so it should not block.
+     *
+     * @param scope         scope name
+     * @param operation     starts an attempt
+     * @param resultChecker returns {@code false} for results to retry, the result of the last attempt
+     *                      is returned anyway
+     * @param <T>           result type
+     * @return future of the result of the first successful attempt or of the last attempt
+     */
+    @Nonnull
+    public <T> CompletableFuture<T> executeAsync(
+            @Nonnull String scope, @Nonnull Supplier<? extends CompletionStage<T>> operation,
+            @Nullable Predicate<? super T> resultChecker) {
+        if (StringUtil.isEmpty(scope)) {
+            throw new IllegalArgumentException("Argument 'scope' is empty.");
+        }
+
+        if (operation == null) {
+            throw new IllegalArgumentException("Argument 'operation' can't be 'null'.");
+        }
+
+        long currentTimeMillis = System.currentTimeMillis();
+        ScopeState state = getScopeState(scope, currentTimeMillis);
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        if (failureThreshold > 0 && !state.tryEnter(currentTimeMillis, openDurationMillis)) {
+            result.completeExceptionally(new CircuitOpenException(scope));
+            return result;
+        }
+
+        state.depositRetryBudget(retryBudgetIncrement);
+        attempt(scope, state, operation, resultChecker, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(
+            String scope, ScopeState state, Supplier<? extends CompletionStage<T>> operation,
+            @Nullable Predicate<? super T> resultChecker, int attemptIndex, CompletableFuture<T> result) {
+        CompletionStage<T> stage;
+        try {
+            stage = operation.get();
+        } catch (RuntimeException | Error e) {
+            CompletableFuture<T> failedFuture = new CompletableFuture<>();
+            failedFuture.completeExceptionally(e);
+            stage = failedFuture;
+        }
+
+        stage.whenComplete((value, throwable) -> {
+            Throwable failure = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause()
+                    : throwable;
+
+            boolean succeeded;
+            try {
+                succeeded = failure == null && (resultChecker == null || resultChecker.test(value));
+            } catch (RuntimeException e) {
+                failure = e;
+                succeeded = false;
+            }
+
+            if (succeeded) {
+                state.onSuccess();
+                result.complete(value);
+                return;
+            }
+
+            if (attemptIndex < attemptCount && !state.isOpen(System.currentTimeMillis())
+                    && state.tryWithdrawRetryBudget()) {
+                if (logger.isInfoEnabled()) {
+                    logger.info("Iteration #" + attemptIndex + " in scope '" + scope + "' has been failed"
+                            + (failure == null ? "." : ": " + failure.getMessage()));
+                }
+
+                try {
+                    Timer.SERVICE.schedule(
+                            () -> attempt(scope, state, operation, resultChecker, attemptIndex + 1, result),
+                            getDelayTimeMillis(attemptIndex), TimeUnit.MILLISECONDS
+                    );
+                    return;
+                } catch (RejectedExecutionException e) {
+                    logger.error("Can't schedule retry in scope '" + scope + "'.", e);
+                }
+            }
+
+            if (failureThreshold > 0) {
+                state.onFailure(failureThreshold, openDurationMillis, System.currentTimeMillis());
+            }
+
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                logger.warn("Iteration #" + attemptIndex + " in scope '" + scope + "' has been failed: "
+                        + failure.getMessage(), failure);
+                result.completeExceptionally(failure);
+            }
+        });
+    }
+
+    long getDelayTimeMillis(int attemptIndex) {
+        long delayTimeMillis = strategy.getDelayTimeMillis(attemptIndex);
+        return delayTimeMillis - (long) (delayTimeMillis * jitterRatio * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * @param scope scope name
+     * @return current circuit state of the scope
+     */
+    @Nonnull
+    public static CircuitState getCircuitState(@Nonnull String scope) {
+        ScopeState state = stateByScope.get(scope);
+        return state == null ? CircuitState.CLOSED : state.getCircuitState(System.currentTimeMillis());
+    }
+
+    /**
+     * @param scope scope name
+     * @return number of retries available to the scope now
+     */
+    public static long getRetryBudget(@Nonnull String scope) {
+        ScopeState state = stateByScope.get(scope);
+        return (state == null ? INITIAL_RETRY_BUDGET : state.retryBudget.get()) / RETRY_COST;
+    }
+
+    private static ScopeState getScopeState(String scope, long currentTimeMillis) {
+        long nextEvictionTimeMillis = nextScopeEvictionTimeMillis.get();
+        if (currentTimeMillis >= nextEvictionTimeMillis && nextScopeEvictionTimeMillis.compareAndSet(
+                nextEvictionTimeMillis, currentTimeMillis + SCOPE_EVICTION_INTERVAL_MILLIS)) {
+            evictIdleScopes(currentTimeMillis);
+        }
+
+        ScopeState state = stateByScope.get(scope);
+        if (state == null) {
+            state = stateByScope.computeIfAbsent(scope, ignored -> new ScopeState());
+        }
+
+        state.lastAccessTimeMillis = currentTimeMillis;
+        return state;
+    }
+
+    static void evictIdleScopes(long currentTimeMillis) {
+        stateByScope.values().removeIf(state -> currentTimeMillis - state.lastAccessTimeMillis
+                >= SCOPE_IDLE_LIFETIME_MILLIS && !state.isOpen(currentTimeMillis));
+    }
+
+    static boolean hasScopeState(@Nonnull String scope) {
+        return stateByScope.containsKey(scope);
+    }
+
+    public enum CircuitState {
+        /**
+         * Calls are made as usual.
+         */
+        CLOSED,
+
+        /**
+         * Calls fail without attempts.
+         */
+        OPEN,
+
+        /**
+         * Trial call is allowed to check if the scope has recovered.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Thrown (as a cause of the future failure) when the call is rejected by the open circuit.
+     */
+    public static final class CircuitOpenException extends RuntimeException {
+        private CircuitOpenException(String scope) {
+            super("Circuit of scope '" + scope + "' is open.");
+        }
+    }
+
+    private static final class ScopeState {
+        private final AtomicLong retryBudget = new AtomicLong(INITIAL_RETRY_BUDGET);
+        private final AtomicInteger consecutiveFailureCount = new AtomicInteger();
+        /**
+         * Start time of the trial call in progress or {@code 0}.
+         */
+        private final AtomicLong trialStartTimeMillis = new AtomicLong();
+        private volatile long openUntilTimeMillis;
+        private volatile long lastAccessTimeMillis;
+
+        private void depositRetryBudget(long increment) {
+            if (increment > 0L && retryBudget.get() < MAX_RETRY_BUDGET) {
+                retryBudget.accumulateAndGet(increment, (budget, delta) -> Math.min(MAX_RETRY_BUDGET, budget + delta));
+            }
+        }
+
+        private boolean tryWithdrawRetryBudget() {
+            while (true) {
+                long budget = retryBudget.get();
+                if (budget < RETRY_COST) {
+                    return false;
+                }
+
+                if (retryBudget.compareAndSet(budget, budget - RETRY_COST)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean tryEnter(long currentTimeMillis, long trialTimeoutMillis) {
+            long openUntil = openUntilTimeMillis;
+            if (openUntil == 0L) {
+                return true;
+            }
+
+            if (currentTimeMillis < openUntil) {
+                return false;
+            }
+
+            long trialStart = trialStartTimeMillis.get();
+            return (trialStart == 0L || currentTimeMillis - trialStart >= trialTimeoutMillis)
+                    && trialStartTimeMillis.compareAndSet(trialStart, currentTimeMillis);
+        }
+
+        private boolean isOpen(long currentTimeMillis) {
+            return currentTimeMillis < openUntilTimeMillis;
+        }
+
+        private void onSuccess() {
+            consecutiveFailureCount.set(0);
+            openUntilTimeMillis = 0L;
+            trialStartTimeMillis.set(0L);
+        }
+
+        private void onFailure(int failureThreshold, long openDurationMillis, long currentTimeMillis) {
+            if (consecutiveFailureCount.incrementAndGet() >= failureThreshold || trialStartTimeMillis.get() != 0L) {
+                openUntilTimeMillis = currentTimeMillis + openDurationMillis;
+                trialStartTimeMillis.set(0L);
+            }
+        }
+
+        private CircuitState getCircuitState(long currentTimeMillis) {
+            long openUntil = openUntilTimeMillis;
+            if (openUntil == 0L) {
+                return CircuitState.CLOSED;
+            }
+            return currentTimeMillis < openUntil ? CircuitState.OPEN : CircuitState.HALF_OPEN;
+        }
+    }
+
+    private static final class Timer {
+        private static final ScheduledExecutorService SERVICE = Executors.newSingleThreadScheduledExecutor(
+                ThreadUtil.newThreadFactory(RetryExecutor.class.getSimpleName() + "#TimerThread", true)
+        );
+    }
+}
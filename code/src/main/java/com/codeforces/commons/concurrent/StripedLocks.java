@@ -0,0 +1,227 @@
+package com.codeforces.commons.concurrent;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Fixed set of locks shared by any number of keys: a key is mapped to a stripe by its hash code, so the memory
+ * doesn't depend on the number of keys. Different keys may share a stripe, so a thread should not hold locks
+ * of several keys at once unless it acquires them in the stripe order (see {@link #getStripeIndex(Object)}).
+ * <p>
+ * Each stripe has a reentrant read/write lock and a {@link StampedLock} for optimistic reads, see
+ * {@link #readOptimistically(Object, Supplier)}. Acquisitions which had to wait are counted,
+ * see {@link #getContendedAcquisitionCount()}. Use {@link WeakKeyLocks} if keys should never share a lock.
+ */
+public final class StripedLocks {
+    public static final int DEFAULT_STRIPE_COUNT = 64;
+
+    private final int stripeMask;
+    private final StripeLock[] readWriteLocks;
+    private final StampedLock[] stampedLocks;
+
+    private final LongAdder acquisitionCount = new LongAdder();
+    private final LongAdder contendedAcquisitionCount = new LongAdder();
+    private final LongAdder optimisticReadCount = new LongAdder();
+    private final LongAdder failedOptimisticReadCount = new LongAdder();
+
+    public StripedLocks() {
+        this(DEFAULT_STRIPE_COUNT);
+    }
+
+    /**
+     * @param stripeCount minimal number of stripes, it is rounded up to a power of two
+     */
+    public StripedLocks(int stripeCount) {
+        if (stripeCount < 1 || stripeCount > 1 << 16) {
+            throw new IllegalArgumentException("Argument 'stripeCount' is out of range.");
+        }
+
+        int actualStripeCount = stripeCount == 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+
+        this.stripeMask = actualStripeCount - 1;
+        this.readWriteLocks = new StripeLock[actualStripeCount];
+        this.stampedLocks = new StampedLock[actualStripeCount];
+
+        for (int i = 0; i < actualStripeCount; ++i) {
+            readWriteLocks[i] = new StripeLock();
+            stampedLocks[i] = new StampedLock();
+        }
+    }
+
+    public int getStripeCount() {
+        return stripeMask + 1;
+    }
+
+    /**
+     * @param key any object with a stable hash code
+     * @return index of the key stripe, keys with the same index share locks
+     */
+    public int getStripeIndex(@Nonnull Object key) {
+        int hash = key.hashCode();
+        return (hash ^ hash >>> 16) & stripeMask;
+    }
+
+    @Nonnull
+    public ReadWriteLock getReadWriteLock(@Nonnull Object key) {
+        return readWriteLocks[getStripeIndex(key)];
+    }
+
+    /**
+     * @return write lock of the key stripe
+     */
+    @Nonnull
+    public Lock getLock(@Nonnull Object key) {
+        return readWriteLocks[getStripeIndex(key)].writeLock;
+    }
+
+    /**
+     * Stamped locks are not reentrant and are not counted by the statistics except for
+     * {@link #readOptimistically(Object, Supplier)}.
+     */
+    @Nonnull
+    public StampedLock getStampedLock(@Nonnull Object key) {
+        return stampedLocks[getStripeIndex(key)];
+    }
+
+    /**
+     * Reads without locking if no thread holds the write lock of the key {@link #getStampedLock(Object) stamped lock}
+     * during the read, otherwise repeats the read under the read lock. The reader may observe inconsistent state
+     * during a failed optimistic read, so it should only read fields and not act on them.
+     *
+     * @param key    key
+     * @param reader reads the state guarded by the stamped lock
+     * @param <T>    result type
+     * @return result of the reader
+     */
+    public <T> T readOptimistically(@Nonnull Object key, @Nonnull Supplier<T> reader) {
+        StampedLock lock = stampedLocks[getStripeIndex(key)];
+        optimisticReadCount.increment();
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            T result = reader.get();
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        failedOptimisticReadCount.increment();
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return number of acquisitions of the read/write locks
+     */
+    public long getAcquisitionCount() {
+        return acquisitionCount.sum();
+    }
+
+    /**
+     * @return number of acquisitions of the read/write locks which have not succeeded immediately
+     */
+    public long getContendedAcquisitionCount() {
+        return contendedAcquisitionCount.sum();
+    }
+
+    public long getOptimisticReadCount() {
+        return optimisticReadCount.sum();
+    }
+
+    /**
+     * @return number of optimistic reads repeated under the read lock
+     */
+    public long getFailedOptimisticReadCount() {
+        return failedOptimisticReadCount.sum();
+    }
+
+    private final class StripeLock implements ReadWriteLock {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Lock readLock = new CountingLock(lock.readLock());
+        private final Lock writeLock = new CountingLock(lock.writeLock());
+
+        @Nonnull
+        @Override
+        public Lock readLock() {
+            return readLock;
+        }
+
+        @Nonnull
+        @Override
+        public Lock writeLock() {
+            return writeLock;
+        }
+    }
+
+    private final class CountingLock implements Lock {
+        private final Lock lock;
+
+        private CountingLock(Lock lock) {
+            this.lock = lock;
+        }
+
+        @Override
+        public void lock() {
+            if (!lock.tryLock()) {
+                contendedAcquisitionCount.increment();
+                lock.lock();
+            }
+            acquisitionCount.increment();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (!lock.tryLock()) {
+                contendedAcquisitionCount.increment();
+                lock.lockInterruptibly();
+            }
+            acquisitionCount.increment();
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (lock.tryLock()) {
+                acquisitionCount.increment();
+                return true;
+            }
+
+            contendedAcquisitionCount.increment();
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, @Nonnull TimeUnit unit) throws InterruptedException {
+            if (!lock.tryLock()) {
+                contendedAcquisitionCount.increment();
+                if (!lock.tryLock(time, unit)) {
+                    return false;
+                }
+            }
+
+            acquisitionCount.increment();
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+            lock.unlock();
+        }
+
+        @Nonnull
+        @Override
+        public Condition newCondition() {
+            return lock.newCondition();
+        }
+    }
+}
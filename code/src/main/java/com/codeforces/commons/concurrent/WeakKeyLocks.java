@@ -0,0 +1,68 @@
+package com.codeforces.commons.concurrent;
+
+import javax.annotation.Nonnull;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lock per key which is kept only while some thread references it, so the memory depends on the number of keys
+ * in use rather than on the number of keys ever used. Unlike {@link StripedLocks}, different keys never share a lock.
+ * A caller should keep the returned lock in a local variable while using it.
+ *
+ * @param <K> key type
+ */
+public final class WeakKeyLocks<K> {
+    private final ConcurrentMap<K, LockReference<K>> lockByKey = new ConcurrentHashMap<>();
+    private final ReferenceQueue<ReadWriteLock> referenceQueue = new ReferenceQueue<>();
+
+    @Nonnull
+    public ReadWriteLock getReadWriteLock(@Nonnull K key) {
+        removeCollectedLocks();
+
+        while (true) {
+            LockReference<K> reference = lockByKey.get(key);
+            ReadWriteLock lock = reference == null ? null : reference.get();
+            if (lock != null) {
+                return lock;
+            }
+
+            ReadWriteLock newLock = new ReentrantReadWriteLock();
+            LockReference<K> newReference = new LockReference<>(key, newLock, referenceQueue);
+
+            if (reference == null
+                    ? lockByKey.putIfAbsent(key, newReference) == null
+                    : lockByKey.replace(key, reference, newReference)) {
+                return newLock;
+            }
+        }
+    }
+
+    /**
+     * @return number of keys with a lock which may still be in use
+     */
+    public int size() {
+        removeCollectedLocks();
+        return lockByKey.size();
+    }
+
+    private void removeCollectedLocks() {
+        LockReference<?> reference;
+        while ((reference = (LockReference<?>) referenceQueue.poll()) != null) {
+            //noinspection SuspiciousMethodCalls
+            lockByKey.remove(reference.key, reference);
+        }
+    }
+
+    private static final class LockReference<K> extends WeakReference<ReadWriteLock> {
+        private final K key;
+
+        private LockReference(K key, ReadWriteLock lock, ReferenceQueue<ReadWriteLock> referenceQueue) {
+            super(lock, referenceQueue);
+            this.key = key;
+        }
+    }
+}
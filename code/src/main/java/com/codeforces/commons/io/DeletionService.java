@@ -0,0 +1,499 @@
+package com.codeforces.commons.io;
+
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import com.codeforces.commons.concurrent.ManagedExecutor;
+import com.codeforces.commons.math.RandomUtil;
+import com.codeforces.commons.process.ThreadUtil;
+import de.schlichtherle.truezip.file.TFile;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes files and directories in the background by a bounded number of workers.
+ * <p>
+ * A file is renamed to a hidden sibling ({@code .deleting-<token>}) before it is queued, so its name is free
+ * at once and the deletion looks instant to the caller. Workers unlink the queued files by batches.
+ * Renamed files are recorded in a journal file, and the deletions interrupted by a restart are resumed by the next
+ * service opening the same journal. Files which can't be renamed (e.g. archive entries) are deleted in place
+ * and are not journaled, since a new file with the same name may appear after a restart.
+ * <p>
+ * Journal records are replayed as deletions, so the journal is used only if it and its directory belong to the current
+ * user and are not writable by others, and only the trash names are replayed.
+ */
+public final class DeletionService implements Closeable {
+    private static final Logger logger = Logger.getLogger(DeletionService.class);
+
+    public static final int DEFAULT_WORKER_COUNT = 4;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    static final String TRASH_NAME_PREFIX = ".deleting-";
+
+    private static final long AWAIT_INTERVAL_MILLIS = 10L;
+
+    private final String name;
+    private final int workerCount;
+    private final int batchSize;
+    private final ManagedExecutor executor;
+    @Nullable
+    private final Journal journal;
+
+    private final Queue<File> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger activeWorkerCount = new AtomicInteger();
+    private final LongAdder deletedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    /**
+     * Creates a service and resumes the deletions pending in the journal.
+     *
+     * @param name        service name, also used as the thread name prefix
+     * @param journalFile journal of pending deletions or {@code null} to keep them only in memory;
+     *                    if the journal is locked by another process or is accessible by other users,
+     *                    the service also works without it
+     * @param workerCount maximal number of concurrent workers
+     * @param batchSize   number of files processed by a worker between journal updates
+     */
+    public DeletionService(@Nonnull String name, @Nullable File journalFile, int workerCount, int batchSize) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Argument 'workerCount' should be positive.");
+        }
+
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Argument 'batchSize' should be positive.");
+        }
+
+        this.name = name;
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.executor = ExecutorUtil.newBlockingExecutor(name, workerCount, workerCount);
+        this.journal = journalFile == null ? null : Journal.open(journalFile);
+
+        if (journal != null) {
+            for (File file : journal.getPendingFiles()) {
+                if (!file.getName().startsWith(TRASH_NAME_PREFIX)) {
+                    logger.warn("Unexpected file '" + file + "' in deletion journal is ignored.");
+                    journal.remove(file);
+                } else if (Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+                    enqueue(file);
+                } else {
+                    journal.remove(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules the deletion of the file or directory. Does nothing if the file doesn't exist.
+     *
+     * @param file file or directory to be deleted
+     */
+    public void delete(@Nullable File file) {
+        if (file == null || !exists(file)) {
+            return;
+        }
+
+        if (file instanceof TFile) {
+            enqueue(file);
+            return;
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent == null) {
+            enqueue(file);
+            return;
+        }
+
+        File trashFile = new File(parent, TRASH_NAME_PREFIX + RandomUtil.getRandomToken());
+        if (journal != null) {
+            journal.add(trashFile);
+        }
+
+        try {
+            Files.move(file.toPath(), trashFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Can't move '" + file + "' to trash, it will be deleted in place: " + e);
+            if (journal != null) {
+                journal.remove(trashFile);
+            }
+            enqueue(file);
+            return;
+        }
+
+        enqueue(trashFile);
+    }
+
+    /**
+     * Schedules the deletion of the directory elements accepted by the filter. Rejected subdirectories
+     * (but not symbolic links) are cleaned recursively. Elements which are already being deleted by this service
+     * are skipped.
+     *
+     * @param directory        directory to be cleaned
+     * @param deleteFileFilter filter of elements to delete or {@code null} to delete all
+     */
+    public void cleanDirectory(@Nonnull File directory, @Nullable FileFilter deleteFileFilter) {
+        File[] files = directory.listFiles(file -> !file.getName().startsWith(TRASH_NAME_PREFIX));
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (deleteFileFilter == null || deleteFileFilter.accept(file)) {
+                delete(file);
+            } else if (file.isDirectory() && !Files.isSymbolicLink(Paths.get(file.toURI()))) {
+                cleanDirectory(file, deleteFileFilter);
+            }
+        }
+    }
+
+    /**
+     * @return number of files and directories which are queued or being deleted
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getDeletedCount() {
+        return deletedCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public boolean isJournaled() {
+        return journal != null;
+    }
+
+    /**
+     * Waits until the queue is empty.
+     *
+     * @param timeoutMillis maximal time to wait
+     * @return {@code true} iff the queue is empty
+     */
+    public boolean awaitEmptyQueue(long timeoutMillis) {
+        long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+
+        while (queueDepth.get() > 0) {
+            if (System.currentTimeMillis() >= deadlineMillis) {
+                return false;
+            }
+            ThreadUtil.sleep(AWAIT_INTERVAL_MILLIS);
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops the workers. Pending journaled deletions are resumed by the next service opening the journal.
+     */
+    @Override
+    public void close() {
+        ExecutorUtil.shutdownQuietly(executor);
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "DeletionService {name='%s', queueDepth=%d, deletedCount=%d, failedCount=%d, journaled=%b}",
+                name, getQueueDepth(), getDeletedCount(), getFailedCount(), isJournaled()
+        );
+    }
+
+    private void enqueue(File file) {
+        queueDepth.incrementAndGet();
+        queue.add(file);
+        startWorkerIfNeeded();
+    }
+
+    private void startWorkerIfNeeded() {
+        while (!queue.isEmpty()) {
+            int count = activeWorkerCount.get();
+            if (count >= workerCount) {
+                return;
+            }
+
+            if (activeWorkerCount.compareAndSet(count, count + 1)) {
+                try {
+                    executor.execute(this::drainQueue);
+                } catch (RejectedExecutionException e) {
+                    activeWorkerCount.decrementAndGet();
+                    logger.warn("Can't start worker of " + this + ": " + e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void drainQueue() {
+        try {
+            List<File> batch = new ArrayList<>(batchSize);
+
+            while (true) {
+                batch.clear();
+                for (File file; batch.size() < batchSize && (file = queue.poll()) != null; ) {
+                    batch.add(file);
+                }
+
+                if (batch.isEmpty()) {
+                    return;
+                }
+
+                for (File file : batch) {
+                    try {
+                        FileUtil.deleteTotally(file);
+                        deletedCount.increment();
+                    } catch (IOException | RuntimeException e) {
+                        failedCount.increment();
+                        logger.warn("Can't delete '" + file + "'.", e);
+                    }
+                }
+
+                if (journal != null) {
+                    journal.removeAll(batch);
+                }
+                queueDepth.addAndGet(-batch.size());
+            }
+        } finally {
+            activeWorkerCount.decrementAndGet();
+            // The files queued after the last poll may have seen all workers busy.
+            startWorkerIfNeeded();
+        }
+    }
+
+    private static boolean exists(File file) {
+        return file instanceof TFile ? file.exists() : Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Append-only list of {@code +path} and {@code -path} records. It is rewritten when opened
+     * and truncated when there are no pending files.
+     */
+    private static final class Journal {
+        private static final char ADD_RECORD = '+';
+        private static final char REMOVE_RECORD = '-';
+
+        private final File file;
+        private final FileChannel channel;
+        private final FileLock lock;
+        private final Set<String> pendingPaths = new LinkedHashSet<>();
+        private boolean broken;
+
+        private Journal(File file, FileChannel channel, FileLock lock) {
+            this.file = file;
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Nullable
+        static Journal open(@Nonnull File file) {
+            FileChannel channel = null;
+
+            try {
+                Path directory = file.getAbsoluteFile().toPath().getParent();
+                ensurePrivateDirectoryExists(directory);
+
+                if (!isPrivate(directory) || Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS)
+                        && !isPrivate(file.toPath())) {
+                    logger.warn("Deletion journal '" + file + "' or its directory is accessible by other users, "
+                            + "the journal is not used.");
+                    return null;
+                }
+
+                channel = FileChannel.open(
+                        file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+                );
+
+                FileLock lock;
+                try {
+                    lock = channel.tryLock();
+                } catch (OverlappingFileLockException ignored) {
+                    lock = null;
+                }
+
+                if (lock == null) {
+                    logger.warn("Deletion journal '" + file + "' is used by another service.");
+                    channel.close();
+                    return null;
+                }
+
+                Journal journal = new Journal(file, channel, lock);
+                journal.load();
+                return journal;
+            } catch (IOException e) {
+                logger.warn("Can't open deletion journal '" + file + "'.", e);
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // No operations.
+                    }
+                }
+                return null;
+            }
+        }
+
+        private static void ensurePrivateDirectoryExists(Path directory) throws IOException {
+            if (Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+                return;
+            }
+
+            if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(
+                        PosixFilePermissions.fromString("rwx------")
+                ));
+            } else {
+                Files.createDirectories(directory);
+            }
+        }
+
+        /**
+         * @return {@code true} iff the path is not a symbolic link, belongs to the current user
+         * and is not writable by others
+         */
+        private static boolean isPrivate(Path path) throws IOException {
+            if (Files.isSymbolicLink(path)) {
+                return false;
+            }
+
+            FileSystem fileSystem = path.getFileSystem();
+            Set<String> views = fileSystem.supportedFileAttributeViews();
+
+            if (views.contains("owner")) {
+                UserPrincipal currentUser = fileSystem.getUserPrincipalLookupService()
+                        .lookupPrincipalByName(System.getProperty("user.name"));
+                if (!currentUser.equals(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS))) {
+                    return false;
+                }
+            }
+
+            return !views.contains("posix") || !Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS)
+                    .contains(PosixFilePermission.OTHERS_WRITE);
+        }
+
+        private void load() throws IOException {
+            for (String record : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (record.length() > 1) {
+                    String path = record.substring(1);
+                    if (record.charAt(0) == ADD_RECORD) {
+                        pendingPaths.add(path);
+                    } else if (record.charAt(0) == REMOVE_RECORD) {
+                        pendingPaths.remove(path);
+                    }
+                }
+            }
+
+            channel.truncate(0L);
+            StringBuilder records = new StringBuilder();
+            for (String path : pendingPaths) {
+                records.append(ADD_RECORD).append(path).append('\n');
+            }
+            write(records);
+        }
+
+        @Nonnull
+        synchronized List<File> getPendingFiles() {
+            List<File> files = new ArrayList<>(pendingPaths.size());
+            for (String path : pendingPaths) {
+                files.add(new File(path));
+            }
+            return files;
+        }
+
+        synchronized void add(@Nonnull File file) {
+            String path = file.getAbsolutePath();
+            if (path.indexOf('\n') < 0 && pendingPaths.add(path)) {
+                write(new StringBuilder().append(ADD_RECORD).append(path).append('\n'));
+            }
+        }
+
+        synchronized void remove(@Nonnull File file) {
+            removeAll(Collections.singletonList(file));
+        }
+
+        synchronized void removeAll(@Nonnull Collection<File> files) {
+            StringBuilder records = new StringBuilder();
+            for (File file : files) {
+                String path = file.getAbsolutePath();
+                if (pendingPaths.remove(path)) {
+                    records.append(REMOVE_RECORD).append(path).append('\n');
+                }
+            }
+
+            if (pendingPaths.isEmpty()) {
+                try {
+                    channel.truncate(0L);
+                } catch (IOException e) {
+                    markBroken(e);
+                }
+            } else {
+                write(records);
+            }
+        }
+
+        synchronized void close() {
+            broken = true;
+            try {
+                lock.release();
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Can't close deletion journal '" + file + "'.", e);
+            }
+        }
+
+        private void write(CharSequence records) {
+            if (broken || records.length() == 0) {
+                return;
+            }
+
+            try {
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(records.toString());
+                long position = channel.size();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                markBroken(e);
+            }
+        }
+
+        private void markBroken(IOException e) {
+            broken = true;
+            logger.error("Can't update deletion journal '" + file + "', pending deletions won't survive restart.", e);
+        }
+    }
+}
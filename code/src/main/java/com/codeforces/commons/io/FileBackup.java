@@ -1,60 +1,118 @@
 package com.codeforces.commons.io;
 
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import com.codeforces.commons.concurrent.ManagedExecutor;
+import com.codeforces.commons.concurrent.StripedLocks;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Keeps copies of files and directories to restore them later.
+ * <p>
+ * Files are snapshotted according to the {@link SnapshotMode mode} by a bounded pool of threads.
+ * Each backup remembers the size and the modification time of the files, and {@link #restoreAll()} rewrites only
+ * the files which differ from the backup: the ones with other size or modification time, and the ones modified
+ * too close to the backup time to rely on the modification time, whose content is compared.
+ * Restored files are always copied, so they never share data with the backup. Backups are restored one by one
+ * in the order of their paths, so a backup of a nested file or directory is applied after the backup
+ * of its ancestor.
+ *
  * @author Maxim Shipko (sladethe@gmail.com)
  *         Date: 26.12.12
  */
 @ThreadSafe
 public class FileBackup implements Closeable {
+    private static final Logger logger = Logger.getLogger(FileBackup.class);
+
     private static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+    private static final int COPY_THREAD_COUNT = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Modification time resolution of some file systems is 2 seconds.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION_MILLIS = TimeUnit.SECONDS.toMillis(2L);
+
+    private static final String ROOT_PATH = "";
 
     private final AtomicBoolean closed = new AtomicBoolean();
 
     private final File backupDir;
     private final boolean removeBackupDirOnClose;
     private final int concurrencyLevel;
+    private final SnapshotMode snapshotMode;
 
     private final ConcurrentMap<String, BackupEntry> backupEntryByOriginalPath = new ConcurrentHashMap<>();
+    private final StripedLocks backupLocks = new StripedLocks();
     private final Semaphore semaphore;
+    private final ManagedExecutor copyExecutor;
+
+    private volatile boolean linkSupported = true;
+    private volatile boolean cloneSupported = true;
 
     public FileBackup(
-            @Nonnull File backupDir, boolean removeBackupDirOnClose, int concurrencyLevel) throws IOException {
+            @Nonnull File backupDir, boolean removeBackupDirOnClose, int concurrencyLevel,
+            @Nonnull SnapshotMode snapshotMode) throws IOException {
         this.backupDir = FileUtil.ensureDirectoryExists(backupDir);
         FileUtil.cleanDirectory(backupDir);
         this.removeBackupDirOnClose = removeBackupDirOnClose;
         this.concurrencyLevel = concurrencyLevel;
+        this.snapshotMode = Objects.requireNonNull(snapshotMode, "Argument 'snapshotMode' is null.");
         this.semaphore = new Semaphore(concurrencyLevel);
+        this.copyExecutor = newCopyExecutor();
+    }
+
+    public FileBackup(
+            @Nonnull File backupDir, boolean removeBackupDirOnClose, int concurrencyLevel) throws IOException {
+        this(backupDir, removeBackupDirOnClose, concurrencyLevel, SnapshotMode.COPY);
     }
 
     public FileBackup(@Nonnull File backupDir, boolean removeBackupDirOnClose) throws IOException {
         this(backupDir, removeBackupDirOnClose, DEFAULT_CONCURRENCY_LEVEL);
     }
 
-    public FileBackup(int concurrencyLevel) throws IOException {
+    public FileBackup(int concurrencyLevel, @Nonnull SnapshotMode snapshotMode) throws IOException {
         this.backupDir = FileUtil.createTemporaryDirectory("file-backup");
         this.removeBackupDirOnClose = true;
         this.concurrencyLevel = concurrencyLevel;
+        this.snapshotMode = Objects.requireNonNull(snapshotMode, "Argument 'snapshotMode' is null.");
         this.semaphore = new Semaphore(concurrencyLevel);
+        this.copyExecutor = newCopyExecutor();
+    }
+
+    public FileBackup(int concurrencyLevel) throws IOException {
+        this(concurrencyLevel, SnapshotMode.COPY);
     }
 
     public FileBackup() throws IOException {
         this(DEFAULT_CONCURRENCY_LEVEL);
     }
 
+    private static ManagedExecutor newCopyExecutor() {
+        return ExecutorUtil.newBlockingExecutor(
+                FileBackup.class.getSimpleName() + "#CopyThread", COPY_THREAD_COUNT, Integer.MAX_VALUE
+        );
+    }
+
     public void backup(File file) throws IOException {
         ensureNotClosed();
 
@@ -66,11 +124,11 @@ public class FileBackup implements Closeable {
             BackupEntry backupEntry = backupEntryByOriginalPath.get(originalPath);
 
             if (backupEntry == null) {
-                backupEntryByOriginalPath.putIfAbsent(originalPath, new BackupEntry(null));
+                backupEntryByOriginalPath.putIfAbsent(originalPath, new BackupEntry());
                 backupEntry = backupEntryByOriginalPath.get(originalPath);
             }
 
-            Lock backupLock = backupEntry.getLock();
+            Lock backupLock = backupLocks.getLock(originalPath);
 
             backupLock.lock();
             try {
@@ -78,21 +136,26 @@ public class FileBackup implements Closeable {
 
                 if (backupFile != null) {
                     FileUtil.deleteTotally(backupFile);
+                    backupEntry.set(null, Collections.emptyMap(), 0L);
                 }
 
+                long backupTimeMillis = System.currentTimeMillis();
+                Map<String, FileState> stateByRelativePath = new HashMap<>();
+
                 if (file.isFile()) {
                     backupFile = FileUtil.executeIoOperation(
                             () -> File.createTempFile(file.getName() + '-', "", backupDir)
                     );
-                    FileUtil.copyFile(file, backupFile);
+                    snapshotFile(file.toPath(), backupFile.toPath());
+                    stateByRelativePath.put(ROOT_PATH, FileState.of(file.toPath()));
                 } else if (file.isDirectory()) {
                     backupFile = FileUtil.createTemporaryDirectory(file.getName(), backupDir);
-                    FileUtil.copyDirectory(file, backupFile);
+                    snapshotDirectory(file.toPath(), backupFile.toPath(), stateByRelativePath);
                 } else {
                     backupFile = null;
                 }
 
-                backupEntry.setFile(backupFile);
+                backupEntry.set(backupFile, stateByRelativePath, backupTimeMillis);
             } finally {
                 backupLock.unlock();
             }
@@ -101,6 +164,109 @@ public class FileBackup implements Closeable {
         }
     }
 
+    private void snapshotDirectory(
+            Path source, Path target, Map<String, FileState> stateByRelativePath) throws IOException {
+        if (snapshotMode == SnapshotMode.CLONE && cloneSupported) {
+            if (cloneTree(source, target)) {
+                Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                        stateByRelativePath.put(getRelativePath(source, directory), FileState.of(attributes));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        stateByRelativePath.put(getRelativePath(source, file), FileState.of(attributes));
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                return;
+            }
+
+            FileUtil.cleanDirectory(target.toFile());
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                    Path directory, BasicFileAttributes attributes) throws IOException {
+                String relativePath = getRelativePath(source, directory);
+                Files.createDirectories(target.resolve(relativePath));
+                stateByRelativePath.put(relativePath, FileState.of(attributes));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                String relativePath = getRelativePath(source, file);
+                stateByRelativePath.put(relativePath, FileState.of(attributes));
+                futures.add(runAsync(() -> snapshotFile(file, target.resolve(relativePath))));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        awaitAll(futures);
+    }
+
+    private void snapshotFile(Path source, Path target) throws IOException {
+        if (snapshotMode == SnapshotMode.LINK && linkSupported && !Files.isSymbolicLink(source)) {
+            try {
+                Files.deleteIfExists(target);
+                Files.createLink(target, source);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                linkSupported = false;
+                logger.info("Hard links are not supported in '" + backupDir + "', files will be copied: "
+                        + e.getMessage());
+            }
+        } else if (snapshotMode == SnapshotMode.CLONE && cloneSupported && !Files.isSymbolicLink(source)) {
+            if (cloneTree(source, target)) {
+                return;
+            }
+        }
+
+        copy(source, target);
+    }
+
+    /**
+     * Clones a file or the content of a directory using copy-on-write ({@code cp --reflink=always}).
+     *
+     * @return {@code true} iff cloned, otherwise clones are disabled for this backup
+     */
+    private boolean cloneTree(Path source, Path target) {
+        List<String> command = Files.isDirectory(source)
+                ? Arrays.asList("cp", "-R", "--reflink=always", "--preserve=mode,timestamps",
+                source + File.separator + '.', target.toString())
+                : Arrays.asList("cp", "--reflink=always", "--preserve=mode,timestamps",
+                source.toString(), target.toString());
+
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output;
+            try (InputStream inputStream = process.getInputStream()) {
+                output = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+            }
+
+            if (process.waitFor() == 0) {
+                return true;
+            }
+
+            logger.info("Copy-on-write clones are not supported in '" + backupDir + "', files will be copied: "
+                    + output.trim());
+        } catch (IOException e) {
+            logger.info("Can't run 'cp' to clone files, files will be copied: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        cloneSupported = false;
+        return false;
+    }
+
     public void restoreAll() throws IOException {
         ensureNotClosed();
 
@@ -108,23 +274,165 @@ public class FileBackup implements Closeable {
         try {
             ensureNotClosed();
 
-            for (Map.Entry<String, BackupEntry> entry : backupEntryByOriginalPath.entrySet()) {
-                File originalFile = new File(entry.getKey());
-                File backupFile = entry.getValue().getFile();
+            for (Map.Entry<String, BackupEntry> entry : new TreeMap<>(backupEntryByOriginalPath).entrySet()) {
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                restore(Paths.get(entry.getKey()), entry.getValue(), futures);
+                awaitAll(futures);
+            }
+        } finally {
+            semaphore.release(concurrencyLevel);
+        }
+    }
 
-                FileUtil.deleteTotally(originalFile);
+    private void restore(Path original, BackupEntry backupEntry, List<CompletableFuture<Void>> futures)
+            throws IOException {
+        File backupFile = backupEntry.getFile();
 
-                if (backupFile != null) {
-                    if (backupFile.isFile()) {
-                        FileUtil.copyFile(backupFile, originalFile);
-                    } else if (backupFile.isDirectory()) {
-                        FileUtil.copyDirectory(backupFile, originalFile);
+        if (backupFile == null) {
+            FileUtil.deleteTotally(original.toFile());
+            return;
+        }
+
+        Path backup = backupFile.toPath();
+        Map<String, FileState> stateByRelativePath = backupEntry.getStateByRelativePath();
+        FileState rootState = stateByRelativePath.get(ROOT_PATH);
+
+        if (rootState == null || !rootState.isDirectory()) {
+            if (!isUnchanged(original, backup, rootState, backupEntry.getBackupTimeMillis())) {
+                FileUtil.deleteTotally(original.toFile());
+                futures.add(runAsync(() -> copy(backup, original)));
+            }
+            return;
+        }
+
+        if (!Files.isDirectory(original, LinkOption.NOFOLLOW_LINKS)) {
+            FileUtil.deleteTotally(original.toFile());
+        }
+
+        Set<String> existingPaths = new HashSet<>();
+
+        if (Files.isDirectory(original, LinkOption.NOFOLLOW_LINKS)) {
+            Files.walkFileTree(original, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        Path directory, BasicFileAttributes attributes) throws IOException {
+                    String relativePath = getRelativePath(original, directory);
+                    FileState state = stateByRelativePath.get(relativePath);
+
+                    if (state != null && state.isDirectory()) {
+                        existingPaths.add(relativePath);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    FileUtil.deleteTotally(directory.toFile());
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    String relativePath = getRelativePath(original, file);
+                    FileState state = stateByRelativePath.get(relativePath);
+
+                    if (state != null && !state.isDirectory() && isUnchanged(
+                            file, backup.resolve(relativePath), state, backupEntry.getBackupTimeMillis())) {
+                        existingPaths.add(relativePath);
+                    } else {
+                        FileUtil.deleteTotally(file.toFile());
                     }
+                    return FileVisitResult.CONTINUE;
                 }
+            });
+        }
+
+        List<String> relativePaths = new ArrayList<>(stateByRelativePath.keySet());
+        Collections.sort(relativePaths);
+
+        for (String relativePath : relativePaths) {
+            if (existingPaths.contains(relativePath)) {
+                continue;
             }
-        } finally {
-            semaphore.release(concurrencyLevel);
+
+            Path target = original.resolve(relativePath);
+            if (stateByRelativePath.get(relativePath).isDirectory()) {
+                Files.createDirectories(target);
+            } else {
+                futures.add(runAsync(() -> copy(backup.resolve(relativePath), target)));
+            }
+        }
+    }
+
+    /**
+     * Regular files of the same size and modification time are considered equal, unless they are modified
+     * within the modification time resolution from the backup time.
+     */
+    private static boolean isUnchanged(
+            Path file, Path backup, @Nullable FileState state, long backupTimeMillis) throws IOException {
+        if (state == null || !state.isRegularFile()) {
+            return false;
         }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException ignored) {
+            return false;
+        }
+
+        if (!attributes.isRegularFile() || attributes.size() != state.getSize()
+                || attributes.lastModifiedTime().toMillis() != state.getLastModifiedMillis()) {
+            return false;
+        }
+
+        if (state.getLastModifiedMillis() < backupTimeMillis - MODIFICATION_TIME_RESOLUTION_MILLIS
+                || Files.isSameFile(file, backup)) {
+            return true;
+        }
+
+        try (InputStream fileStream = Files.newInputStream(file);
+             InputStream backupStream = Files.newInputStream(backup)) {
+            return IOUtils.contentEquals(fileStream, backupStream);
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        FileUtil.executeIoOperation(() -> {
+            Path parent = target.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            Files.copy(
+                    source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES,
+                    LinkOption.NOFOLLOW_LINKS
+            );
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> runAsync(IoOperation operation) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                operation.run();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, copyExecutor);
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> futures) throws IOException {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Can't copy files.", cause == null ? e : cause);
+        }
+    }
+
+    private static String getRelativePath(Path root, Path path) {
+        return root.relativize(path).toString();
     }
 
     @Override
@@ -132,6 +440,7 @@ public class FileBackup implements Closeable {
         if (closed.compareAndSet(false, true)) {
             semaphore.acquireUninterruptibly(concurrencyLevel);
             try {
+                copyExecutor.shutdown();
                 if (removeBackupDirOnClose) {
                     FileUtil.deleteTotally(backupDir);
                 }
@@ -153,28 +462,100 @@ public class FileBackup implements Closeable {
         }
     }
 
-    private static final class BackupEntry {
-        @Nonnull
-        private final Lock lock = new ReentrantLock();
+    /**
+     * Determines how backups are made.
+     */
+    public enum SnapshotMode {
+        /**
+         * Files are copied.
+         */
+        COPY,
+
+        /**
+         * Files are cloned using copy-on-write ({@code cp --reflink}, supported by Btrfs, XFS and some other
+         * file systems), so a backup takes no time and space until the files change. Falls back to {@link #COPY}.
+         */
+        CLONE,
+
+        /**
+         * Backups are hard links to the original files. Use it only if the files are never modified in place
+         * (they are deleted or replaced by new files instead), since an in-place modification changes the backup
+         * as well. Falls back to {@link #COPY} if the backup directory is on another file system.
+         */
+        LINK
+    }
 
-        @Nullable
-        private File file;
+    @FunctionalInterface
+    private interface IoOperation {
+        void run() throws IOException;
+    }
 
-        private BackupEntry(@Nullable File file) {
-            this.file = file;
+    private static final class FileState {
+        private final boolean directory;
+        private final boolean regularFile;
+        private final long size;
+        private final long lastModifiedMillis;
+
+        private FileState(boolean directory, boolean regularFile, long size, long lastModifiedMillis) {
+            this.directory = directory;
+            this.regularFile = regularFile;
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+        }
+
+        private static FileState of(Path path) throws IOException {
+            return of(Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
         }
 
-        @Nonnull
-        public Lock getLock() {
-            return lock;
+        private static FileState of(BasicFileAttributes attributes) {
+            return new FileState(
+                    attributes.isDirectory(), attributes.isRegularFile(), attributes.size(),
+                    attributes.lastModifiedTime().toMillis()
+            );
         }
 
+        private boolean isDirectory() {
+            return directory;
+        }
+
+        private boolean isRegularFile() {
+            return regularFile;
+        }
+
+        private long getSize() {
+            return size;
+        }
+
+        private long getLastModifiedMillis() {
+            return lastModifiedMillis;
+        }
+    }
+
+    /**
+     * Guarded by the lock of the original path in {@link #backupLocks}.
+     */
+    private static final class BackupEntry {
+        @Nullable
+        private volatile File file;
+        private volatile Map<String, FileState> stateByRelativePath = Collections.emptyMap();
+        private volatile long backupTimeMillis;
+
         @Nullable
         public File getFile() {
             return file;
         }
 
-        public void setFile(@Nullable File file) {
+        public Map<String, FileState> getStateByRelativePath() {
+            return stateByRelativePath;
+        }
+
+        public long getBackupTimeMillis() {
+            return backupTimeMillis;
+        }
+
+        public void set(@Nullable File file, Map<String, FileState> stateByRelativePath, long backupTimeMillis) {
+            this.stateByRelativePath = stateByRelativePath;
+            this.backupTimeMillis = backupTimeMillis;
             this.file = file;
         }
     }
@@ -0,0 +1,17 @@
+package com.codeforces.commons.io;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+
+/**
+ * Receives the progress of a directory copy or comparison. Files are processed in parallel,
+ * so the implementation should be thread-safe.
+ */
+@FunctionalInterface
+public interface FileTreeListener {
+    /**
+     * @param file      processed file (the source file in case of a copy, the first file in case of a comparison)
+     * @param byteCount number of bytes copied or compared
+     */
+    void onFileProcessed(@Nonnull Path file, long byteCount);
+}
@@ -1,10 +1,14 @@
 package com.codeforces.commons.io;
 
 import com.codeforces.commons.compress.ZipUtil;
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import com.codeforces.commons.concurrent.RetryExecutor;
+import com.codeforces.commons.io.internal.ParallelFileTreeUtil;
 import com.codeforces.commons.io.internal.UnsafeFileUtil;
 import com.codeforces.commons.math.NumberUtil;
 import com.codeforces.commons.process.ThreadUtil;
 import com.codeforces.commons.text.StringUtil;
+import com.google.errorprone.annotations.MustBeClosed;
 import de.schlichtherle.truezip.file.TFile;
 import de.schlichtherle.truezip.file.TFileInputStream;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -16,6 +20,7 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -26,7 +31,9 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * @author Mike Mirzayanov
@@ -56,6 +63,8 @@ public class FileUtil {
     public static final long BYTES_PER_TB = BYTES_PER_GB * GB_PER_TB;
     public static final long BYTES_PER_PB = BYTES_PER_TB * TB_PER_PB;
 
+    public static final int DEFAULT_MAPPED_REGION_SIZE = (int) (256L * BYTES_PER_MB);
+
     private static final Pattern SIZE_PATTERN = Pattern.compile("(0|[1-9][01-9]{0,5})(\\.[01-9]{1,5})? ?[KMGTP]?B?");
 
     private FileUtil() {
@@ -88,6 +97,20 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Asynchronous version of {@link #executeIoOperation(ThreadUtil.Operation)}: retries are scheduled instead of
+     * sleeping in the calling thread. Retries of all asynchronous file operations share a retry budget,
+     * there is no circuit breaker since failures of different files are unrelated.
+     *
+     * @param operation operation to execute
+     * @param <T>       result type
+     * @return future of the operation result
+     */
+    @Nonnull
+    public static <T> CompletableFuture<T> executeIoOperationAsync(ThreadUtil.Operation<T> operation) {
+        return IoRetryExecutorHolder.INSTANCE.execute(FileUtil.class.getName(), operation);
+    }
+
     /**
      * @param file Existing file.
      * @return SHA-1 hashCode in hexadecimal.
@@ -121,10 +144,35 @@ public class FileUtil {
      * @throws IOException when can't perform copy.
      */
     public static void copyDirectory(File source, File destination) throws IOException {
-        executeIoOperation(() -> {
-            UnsafeFileUtil.copyDirectory(source, destination);
-            return null;
-        });
+        if (source instanceof TFile || destination instanceof TFile) {
+            executeIoOperation(() -> {
+                UnsafeFileUtil.copyDirectory(source, destination);
+                return null;
+            });
+        } else {
+            copyDirectory(source, destination, null);
+        }
+    }
+
+    /**
+     * Copy one directory into another in parallel. If the second one exists it copies nested files from
+     * the source to destination. Archives are not supported.
+     *
+     * @param source      Source directory.
+     * @param destination Destination directory.
+     * @param listener    Listener of copied files.
+     * @return number of copied bytes
+     * @throws IOException when can't perform copy.
+     */
+    public static long copyDirectory(
+            File source, File destination, @Nullable FileTreeListener listener) throws IOException {
+        if (source instanceof TFile || destination instanceof TFile) {
+            throw new UnsupportedOperationException("Can't copy archive files in parallel.");
+        }
+
+        return Objects.requireNonNull(executeIoOperation(
+                () -> ParallelFileTreeUtil.copyDirectory(source.toPath(), destination.toPath(), listener)
+        ));
     }
 
     /**
@@ -198,18 +246,22 @@ public class FileUtil {
 
     /**
      * Deletes file or directory. Finishes quietly in _any_ case.
-     * Will start new thread.
+     * The file is renamed at once and is deleted later by the {@link #getDeletionService() deletion service}.
      *
      * @param file File to be deleted.
      */
     public static void deleteTotallyAsync(@Nullable File file) {
-        new Thread(() -> {
-            try {
-                deleteTotally(file);
-            } catch (IOException ignored) {
-                // No operations.
-            }
-        }).start();
+        getDeletionService().delete(file);
+    }
+
+    /**
+     * @return service deleting files for {@link #deleteTotallyAsync(File)} and
+     * {@link #cleanDirectoryAsync(File, FileFilter)}, its journal is stored in a private directory of the current
+     * user in the temporary directory
+     */
+    @Nonnull
+    public static DeletionService getDeletionService() {
+        return DeletionServiceHolder.INSTANCE;
     }
 
     /**
@@ -242,33 +294,23 @@ public class FileUtil {
 
     /**
      * Cleans directory asynchronously. All nested elements will be recursively deleted.
+     * Elements are renamed at once and are deleted later by the {@link #getDeletionService() deletion service}.
      *
      * @param directory        Directory to be deleted
      * @param deleteFileFilter Filter of files to delete
      */
     public static void cleanDirectoryAsync(File directory, @Nullable FileFilter deleteFileFilter) {
-        new Thread(() -> {
-            try {
-                cleanDirectory(directory, deleteFileFilter);
-            } catch (IOException ignored) {
-                // No operations.
-            }
-        }).start();
+        getDeletionService().cleanDirectory(directory, deleteFileFilter);
     }
 
     /**
      * Cleans directory asynchronously. All nested elements will be recursively deleted.
+     * Elements are renamed at once and are deleted later by the {@link #getDeletionService() deletion service}.
      *
      * @param directory Directory to be deleted
      */
     public static void cleanDirectoryAsync(File directory) {
-        new Thread(() -> {
-            try {
-                cleanDirectory(directory);
-            } catch (IOException ignored) {
-                // No operations.
-            }
-        }).start();
+        getDeletionService().cleanDirectory(directory, null);
     }
 
     /**
@@ -488,6 +530,70 @@ public class FileUtil {
         return Objects.requireNonNull(executeIoOperation(() -> UnsafeFileUtil.getInputStream(file)));
     }
 
+    /**
+     * Reads the file by chunks, so the heap usage doesn't depend on the file size. The buffer passed to
+     * the processor is reused for the next chunk. Unlike the most methods of this class, the reading is not retried
+     * on failure, since the processor could see the same chunks twice.
+     *
+     * @param file      regular file to be read
+     * @param chunkSize chunk size in bytes, only the last chunk may be shorter
+     * @param processor chunk processor, may stop the reading by returning {@code false}
+     * @throws IOException if can't read file or the processor has failed
+     */
+    public static void forEachChunk(
+            @Nonnull File file, int chunkSize, @Nonnull ChunkProcessor processor) throws IOException {
+        UnsafeFileUtil.forEachChunk(file, chunkSize, processor);
+    }
+
+    /**
+     * Same as {@link #forEachMappedRegion(File, int, ChunkProcessor)} with regions of
+     * {@link #DEFAULT_MAPPED_REGION_SIZE} bytes.
+     */
+    public static void forEachMappedRegion(@Nonnull File file, @Nonnull ChunkProcessor processor) throws IOException {
+        UnsafeFileUtil.forEachMappedRegion(file, DEFAULT_MAPPED_REGION_SIZE, processor);
+    }
+
+    /**
+     * Passes the file to the processor as read-only memory-mapped regions, so files larger than 2 GB can be
+     * processed without copying them to the heap. Regions are never unmapped explicitly, so the buffer and its
+     * slices stay valid even if the processor keeps them, and the mapping is released when the buffer is collected
+     * by GC. Keep in mind that mapped regions hold the file (it can't be deleted on Windows) until then.
+     * The reading is not retried on failure.
+     *
+     * @param file       regular file to be mapped
+     * @param regionSize region size in bytes, only the last region may be shorter
+     * @param processor  region processor, may stop the reading by returning {@code false}
+     * @throws IOException if can't map file or the processor has failed
+     */
+    public static void forEachMappedRegion(
+            @Nonnull File file, int regionSize, @Nonnull ChunkProcessor processor) throws IOException {
+        UnsafeFileUtil.forEachMappedRegion(file, regionSize, processor);
+    }
+
+    /**
+     * Lazily reads lines of the UTF-8 file, see {@link #lines(File, Charset)}.
+     */
+    @MustBeClosed
+    @Nonnull
+    public static Stream<String> lines(@Nonnull File file) throws IOException {
+        return lines(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lazily reads lines of the file, so the heap usage depends only on the longest line. Unlike
+     * {@link Files#lines(Path, Charset)}, malformed input is replaced and doesn't fail the stream.
+     *
+     * @param file    regular file to be read
+     * @param charset file charset
+     * @return stream of lines, it should be closed to release the file
+     * @throws IOException if can't open file
+     */
+    @MustBeClosed
+    @Nonnull
+    public static Stream<String> lines(@Nonnull File file, @Nonnull Charset charset) throws IOException {
+        return Objects.requireNonNull(executeIoOperation(() -> UnsafeFileUtil.lines(file, charset)));
+    }
+
     /**
      * Creates temporary directory with auto-generated name with specific prefix.
      *
@@ -759,12 +865,34 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Compares two files or directories by content in parallel. Archives are not supported.
+     *
+     * @param fileA    first file or directory
+     * @param fileB    second file or directory
+     * @param listener listener of compared files
+     * @return {@code true} iff both items A and B are {@link File#equals(Object) equals} or have the same content
+     * @throws IOException in case of any I/O-exception
+     */
+    public static boolean equalsOrSameContent(
+            @Nonnull File fileA, @Nonnull File fileB, @Nullable FileTreeListener listener) throws IOException {
+        if (fileA instanceof TFile || fileB instanceof TFile) {
+            throw new UnsupportedOperationException("Can't compare archive files in parallel.");
+        }
+
+        return fileA.equals(fileB) || ParallelFileTreeUtil.contentEquals(fileA.toPath(), fileB.toPath(), listener);
+    }
+
     @SuppressWarnings("OverlyComplexMethod")
     private static boolean internalEqualsOrSameContent(@Nonnull File fileA, @Nonnull File fileB) throws IOException {
         if (fileA.equals(fileB)) {
             return true;
         }
 
+        if (!(fileA instanceof TFile) && !(fileB instanceof TFile)) {
+            return ParallelFileTreeUtil.contentEquals(fileA.toPath(), fileB.toPath(), null);
+        }
+
         if (fileA.isFile()) {
             if (fileB.isFile()) {
                 InputStream inputStreamA = null;
@@ -1088,6 +1216,20 @@ public class FileUtil {
         setExecutable(file, true);
     }
 
+    /**
+     * Processes consecutive parts of a file, see {@link #forEachChunk(File, int, ChunkProcessor)}.
+     */
+    @FunctionalInterface
+    public interface ChunkProcessor {
+        /**
+         * @param position position of the chunk in the file
+         * @param chunk    chunk content between the buffer position and limit, valid only during the call
+         * @return {@code true} to continue with the next chunk
+         * @throws IOException if can't process chunk
+         */
+        boolean process(long position, @Nonnull ByteBuffer chunk) throws IOException;
+    }
+
     /**
      * Excludes service files, such as hidden or svn.
      */
@@ -1098,4 +1240,21 @@ public class FileUtil {
             return !file.isHidden() && !".svn".equalsIgnoreCase(file.getName());
         }
     }
+
+    private static final class DeletionServiceHolder {
+        private static final DeletionService INSTANCE = new DeletionService(
+                "CodeforcesCommons#DeletionThread",
+                new File(UnsafeFileUtil.getTemporaryDirectory(), ".deletion-journal-"
+                        + System.getProperty("user.name", "").replaceAll("[^A-Za-z0-9._-]", "_") + "/journal"),
+                DeletionService.DEFAULT_WORKER_COUNT, DeletionService.DEFAULT_BATCH_SIZE
+        );
+    }
+
+    private static final class IoRetryExecutorHolder {
+        private static final RetryExecutor INSTANCE = new RetryExecutor(
+                9, new ThreadUtil.ExecutionStrategy(50L, ThreadUtil.ExecutionStrategy.Type.SQUARE),
+                RetryExecutor.DEFAULT_JITTER_RATIO, RetryExecutor.DEFAULT_RETRY_BUDGET_RATIO,
+                0, RetryExecutor.DEFAULT_OPEN_DURATION_MILLIS, ExecutorUtil.getSharedBlockingExecutor()
+        );
+    }
 }
@@ -1,7 +1,7 @@
 package com.codeforces.commons.io.http;
 
+import com.codeforces.commons.concurrent.ExecutorUtil;
 import com.codeforces.commons.io.IoUtil;
-import com.codeforces.commons.process.ThreadUtil;
 import com.codeforces.commons.properties.internal.CommonsPropertiesUtil;
 import com.codeforces.commons.text.StringUtil;
 import com.codeforces.commons.text.UrlUtil;
@@ -36,7 +36,6 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Maxim Shipko (sladethe@gmail.com)
@@ -48,20 +47,8 @@ public class HttpClientUtil {
     private static final int CONNECTION_POOL_DEFAULT_MAX_SIZE = 50;
     private static final int CONNECTION_POOL_DEFAULT_MAX_SIZE_PER_HOST = 25;
 
-    private static final ExecutorService timedRequestExecutor = new ThreadPoolExecutor(
-            0, Short.MAX_VALUE, 5L, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
-            ThreadUtil.getCustomPoolThreadFactory(new ThreadUtil.ThreadCustomizer() {
-                private final AtomicLong threadIndex = new AtomicLong();
-
-                @Override
-                public void customize(Thread thread) {
-                    thread.setDaemon(true);
-                    thread.setName(String.format(
-                            "%s#RequestExecutionThread-%d",
-                            HttpClientUtil.class.getSimpleName(), threadIndex.incrementAndGet()
-                    ));
-                }
-            })
+    private static final ExecutorService timedRequestExecutor = ExecutorUtil.newBlockingExecutor(
+            HttpClientUtil.class.getSimpleName() + "#RequestExecutionThread", Short.MAX_VALUE, Short.MAX_VALUE
     );
 
     private HttpClientUtil() {
@@ -515,7 +502,12 @@ public class HttpClientUtil {
 
     private static <R> R internalExecuteLimitedTimeRequest(
             long executionTimeoutMillis, String url, Callable<R> httpTask) throws IOException {
-        Future<R> requestFuture = timedRequestExecutor.submit(httpTask);
+        Future<R> requestFuture;
+        try {
+            requestFuture = timedRequestExecutor.submit(httpTask);
+        } catch (RejectedExecutionException e) {
+            throw new IOException(String.format("Can't execute HTTP request to '%s': too many requests.", url), e);
+        }
 
         try {
             return requestFuture.get(executionTimeoutMillis, TimeUnit.MILLISECONDS);
@@ -529,10 +521,9 @@ public class HttpClientUtil {
                 throw new IOException("Can't execute HTTP request.", e);
             }
         } catch (TimeoutException e) {
-            new Thread(() -> {
-                ThreadUtil.sleep(executionTimeoutMillis);
-                requestFuture.cancel(true);
-            }).start();
+            ExecutorUtil.getSharedScheduledExecutor().schedule(
+                    () -> requestFuture.cancel(true), executionTimeoutMillis, TimeUnit.MILLISECONDS
+            );
             throw new IOException(String.format(
                     "Can't execute HTTP request to '%s' in %d ms.", url, executionTimeoutMillis
             ), e);
@@ -1,5 +1,7 @@
 package com.codeforces.commons.io.http;
 
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import com.codeforces.commons.concurrent.RetryExecutor;
 import com.codeforces.commons.io.CountingInputStream;
 import com.codeforces.commons.io.FileUtil;
 import com.codeforces.commons.io.IoUtil;
@@ -29,6 +31,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.*;
 
@@ -388,6 +391,59 @@ public final class HttpRequest {
         return internalExecute(true);
     }
 
+    /**
+     * Executes the request by the {@link ExecutorUtil#getSharedBlockingExecutor() shared blocking executor}.
+     * Retries are scheduled by {@link RetryExecutor} instead of sleeping, they are limited by the retry budget
+     * of the host, and the requests to a host failing constantly are rejected by the circuit breaker for a while.
+     * The request should not be changed until the future completes.
+     *
+     * @return future of the response code
+     */
+    @Nonnull
+    public CompletableFuture<Integer> executeAsync() {
+        return internalExecuteAsync(false).thenApply(HttpResponse::getCode);
+    }
+
+    /**
+     * See {@link #executeAsync()}. The circuit breaker rejection is returned as a response with {@code IOException}.
+     *
+     * @return future of the response
+     */
+    @Nonnull
+    public CompletableFuture<HttpResponse> executeAndReturnResponseAsync() {
+        return internalExecuteAsync(true);
+    }
+
+    @Nonnull
+    private CompletableFuture<HttpResponse> internalExecuteAsync(boolean readBytes) {
+        String internalUrl = appendGetParametersToUrl(this.url);
+
+        if (method == HttpMethod.GET && hasBinaryEntity()) {
+            String message = "Can't write binary entity to '" + internalUrl + "' with GET method.";
+            logger.warn(message);
+            return CompletableFuture.completedFuture(new HttpResponse(-1, null, null, new IOException(message)));
+        }
+
+        String scope;
+        try {
+            scope = HttpRequest.class.getSimpleName() + '#' + new URL(internalUrl).getHost();
+        } catch (MalformedURLException e) {
+            String message = "Can't parse URL '" + internalUrl + "'.";
+            logger.warn(message, e);
+            return CompletableFuture.completedFuture(new HttpResponse(-1, null, null, new IOException(message, e)));
+        }
+
+        long startTimeMillis = System.currentTimeMillis();
+
+        return new RetryExecutor(maxRetryCount, retryStrategy).execute(
+                scope, () -> internalGetHttpResponse(readBytes, internalUrl, startTimeMillis, 0),
+                responseChecker::check
+        ).exceptionally(e -> new HttpResponse(-1, null, null, e instanceof IOException
+                ? (IOException) e
+                : new IOException("Can't execute request to '" + internalUrl + "'.", e)
+        ));
+    }
+
     @Nonnull
     private HttpResponse internalExecute(boolean readBytes) {
         String internalUrl = appendGetParametersToUrl(this.url);
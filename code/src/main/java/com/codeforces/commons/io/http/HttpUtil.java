@@ -1,15 +1,19 @@
 package com.codeforces.commons.io.http;
 
-import com.codeforces.commons.process.ThreadUtil;
+import com.codeforces.commons.concurrent.ExecutorUtil;
+import org.apache.log4j.Logger;
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author Mike Mirzayanov (mirzayanovmr@gmail.com)
  */
 @SuppressWarnings({"UnusedDeclaration", "OverloadedVarargsMethod", "WeakerAccess"})
 public final class HttpUtil {
+    private static final Logger logger = Logger.getLogger(HttpUtil.class);
+
     public static HttpRequest newRequest(String url, Object... parameters) {
         return HttpRequest.create(url, parameters);
     }
@@ -42,8 +46,15 @@ public final class HttpUtil {
         return newRequest(url, parameters).setTimeoutMillis(timeoutMillis).setMethod(HttpMethod.POST).execute();
     }
 
+    /**
+     * Executes the request in background. The request is dropped with a warning if there are too many of them.
+     */
     public static void executePostRequestAsync(String url, Object... parameters) {
-        ThreadUtil.newThread(() -> executePostRequest(url, parameters)).start();
+        try {
+            ExecutorUtil.getSharedBlockingExecutor().execute(() -> executePostRequest(url, parameters));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Can't execute asynchronous POST request to '" + url + "': too many requests.", e);
+        }
     }
 
     public static HttpResponse executePostRequestAndReturnResponse(int timeoutMillis, String url, Object... parameters) {
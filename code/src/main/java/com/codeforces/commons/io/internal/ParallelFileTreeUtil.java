@@ -0,0 +1,451 @@
+package com.codeforces.commons.io.internal;
+
+import com.codeforces.commons.io.FileTreeListener;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Copies and compares directory trees by a fork-join pool: each directory and each file is a separate task,
+ * so the I/O latencies of different files overlap.
+ * <p>
+ * Files are copied by {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * which lets the OS copy without passing the data through the Java heap. Files of different sizes are considered
+ * different without reading them. Small files are compared in memory and large files by memory-mapped regions.
+ * Checksums of fully compared files are cached (by path, size, modification time and file key), so repeated
+ * comparisons of the same files are rejected early if the checksums differ.
+ */
+public final class ParallelFileTreeUtil {
+    private static final Logger logger = Logger.getLogger(ParallelFileTreeUtil.class);
+
+    private static final int PARALLELISM = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+
+    private static final long TRANSFER_CHUNK_SIZE = 64L * 1024L * 1024L;
+    private static final long MAPPED_REGION_SIZE = 64L * 1024L * 1024L;
+    private static final long MAX_IN_MEMORY_COMPARISON_SIZE = 1024L * 1024L;
+    private static final int CHECKSUM_CHUNK_SIZE = 64 * 1024;
+
+    private static final int MAX_CHECKSUM_CACHE_SIZE = 100_000;
+    private static final ConcurrentMap<Path, Checksum> checksumByPath = new ConcurrentHashMap<>();
+
+    private ParallelFileTreeUtil() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Copies the content of the source directory into the destination directory, replacing existing files.
+     * Symbolic links are followed.
+     *
+     * @param source      source directory
+     * @param destination destination directory, created if absent
+     * @param listener    listener of copied files
+     * @return number of copied bytes
+     * @throws IOException if can't copy
+     */
+    public static long copyDirectory(
+            @Nonnull Path source, @Nonnull Path destination, @Nullable FileTreeListener listener) throws IOException {
+        if (!Files.isDirectory(source)) {
+            throw new IOException("'" + source + "' is not a directory.");
+        }
+
+        LongAdder byteCount = new LongAdder();
+        invoke(new CopyDirectoryTask(source, destination, listener, byteCount));
+        return byteCount.sum();
+    }
+
+    /**
+     * Copies a file, replacing the destination. The destination is deleted before writing, so a symbolic link
+     * is replaced instead of its target and a hard link is unlinked instead of being truncated.
+     *
+     * @return number of copied bytes
+     */
+    public static long copyFile(
+            @Nonnull Path source, @Nonnull Path destination, @Nullable FileTreeListener listener) throws IOException {
+        if (Files.isDirectory(destination, LinkOption.NOFOLLOW_LINKS)) {
+            UnsafeFileUtil.deleteTotally(destination.toFile());
+        } else {
+            Files.deleteIfExists(destination);
+        }
+
+        long byteCount = 0L;
+
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel destinationChannel = FileChannel.open(
+                     destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            long size = sourceChannel.size();
+
+            // A single call may transfer less than requested.
+            while (byteCount < size) {
+                long transferredByteCount = sourceChannel.transferTo(
+                        byteCount, Math.min(TRANSFER_CHUNK_SIZE, size - byteCount), destinationChannel
+                );
+                if (transferredByteCount <= 0L) {
+                    break;
+                }
+                byteCount += transferredByteCount;
+            }
+        }
+
+        if (listener != null) {
+            listener.onFileProcessed(source, byteCount);
+        }
+
+        return byteCount;
+    }
+
+    /**
+     * @param pathA    first file or directory
+     * @param pathB    second file or directory
+     * @param listener listener of compared files
+     * @return {@code true} iff both paths are files with the same content or directories with the same names
+     * of children and the same content of each child
+     * @throws IOException if can't compare
+     */
+    public static boolean contentEquals(
+            @Nonnull Path pathA, @Nonnull Path pathB, @Nullable FileTreeListener listener) throws IOException {
+        if (Files.isDirectory(pathA) && Files.isDirectory(pathB)) {
+            return invoke(new CompareTask(pathA, pathB, listener, new AtomicBoolean()));
+        }
+
+        return Files.isRegularFile(pathA) && Files.isRegularFile(pathB) && fileContentEquals(pathA, pathB, listener);
+    }
+
+    private static boolean fileContentEquals(
+            Path fileA, Path fileB, @Nullable FileTreeListener listener) throws IOException {
+        BasicFileAttributes attributesA = Files.readAttributes(fileA, BasicFileAttributes.class);
+        BasicFileAttributes attributesB = Files.readAttributes(fileB, BasicFileAttributes.class);
+        long size = attributesA.size();
+
+        if (size != attributesB.size()) {
+            return false;
+        }
+
+        if (Files.isSameFile(fileA, fileB)) {
+            return true;
+        }
+
+        Checksum checksumA = getCachedChecksum(fileA, attributesA);
+        Checksum checksumB = getCachedChecksum(fileB, attributesB);
+        if (checksumA != null && checksumB != null && checksumA.value != checksumB.value) {
+            return false;
+        }
+
+        CRC32 crcA = new CRC32();
+        CRC32 crcB = new CRC32();
+        boolean equal;
+
+        if (size <= MAX_IN_MEMORY_COMPARISON_SIZE) {
+            byte[] bytesA = Files.readAllBytes(fileA);
+            byte[] bytesB = Files.readAllBytes(fileB);
+            equal = Arrays.equals(bytesA, bytesB);
+            if (equal) {
+                crcA.update(bytesA, 0, bytesA.length);
+                crcB.update(bytesB, 0, bytesB.length);
+            }
+        } else {
+            equal = mappedContentEquals(fileA, fileB, size, crcA, crcB);
+        }
+
+        if (equal) {
+            putCachedChecksum(fileA, attributesA, crcA.getValue());
+            putCachedChecksum(fileB, attributesB, crcB.getValue());
+        }
+
+        if (listener != null) {
+            listener.onFileProcessed(fileA, size);
+        }
+
+        return equal;
+    }
+
+    private static boolean mappedContentEquals(
+            Path fileA, Path fileB, long size, CRC32 crcA, CRC32 crcB) throws IOException {
+        byte[] chunk = new byte[CHECKSUM_CHUNK_SIZE];
+
+        try (FileChannel channelA = FileChannel.open(fileA, StandardOpenOption.READ);
+             FileChannel channelB = FileChannel.open(fileB, StandardOpenOption.READ)) {
+            for (long position = 0L; position < size; position += MAPPED_REGION_SIZE) {
+                long regionSize = Math.min(MAPPED_REGION_SIZE, size - position);
+                MappedByteBuffer bufferA = channelA.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+                MappedByteBuffer bufferB = channelB.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+
+                try {
+                    if (!bufferA.equals(bufferB)) {
+                        return false;
+                    }
+
+                    updateChecksum(crcA, bufferA, chunk);
+                    updateChecksum(crcB, bufferB, chunk);
+                } finally {
+                    unmap(bufferA);
+                    unmap(bufferB);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * {@code CRC32.update(ByteBuffer)} appeared in Java 9, so the buffer is passed by chunks.
+     */
+    private static void updateChecksum(CRC32 crc, ByteBuffer buffer, byte[] chunk) {
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+    }
+
+    @Nullable
+    private static Checksum getCachedChecksum(Path file, BasicFileAttributes attributes) {
+        Checksum checksum = checksumByPath.get(file.toAbsolutePath());
+        return checksum != null && checksum.matches(attributes) ? checksum : null;
+    }
+
+    private static void putCachedChecksum(Path file, BasicFileAttributes attributes, long value) {
+        if (checksumByPath.size() >= MAX_CHECKSUM_CACHE_SIZE) {
+            checksumByPath.clear();
+        }
+        checksumByPath.put(file.toAbsolutePath(), new Checksum(attributes, value));
+    }
+
+    private static <T> T invoke(ForkJoinTask<T> task) throws IOException {
+        try {
+            return pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Releases the mapped region now rather than on garbage collection, otherwise the file can't be deleted
+     * on Windows for a while. Does nothing if the runtime doesn't allow it.
+     */
+    static void unmap(@Nonnull MappedByteBuffer buffer) {
+        Unmapper.unmap(buffer);
+    }
+
+    private static final class Checksum {
+        private final long size;
+        private final long lastModifiedMillis;
+        @Nullable
+        private final Object fileKey;
+        private final long value;
+
+        private Checksum(BasicFileAttributes attributes, long value) {
+            this.size = attributes.size();
+            this.lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+            this.value = value;
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModifiedMillis == attributes.lastModifiedTime().toMillis()
+                    && Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+
+    private static final class CopyDirectoryTask extends RecursiveAction {
+        private final Path source;
+        private final Path destination;
+        @Nullable
+        private final FileTreeListener listener;
+        private final LongAdder byteCount;
+
+        private CopyDirectoryTask(
+                Path source, Path destination, @Nullable FileTreeListener listener, LongAdder byteCount) {
+            this.source = source;
+            this.destination = destination;
+            this.listener = listener;
+            this.byteCount = byteCount;
+        }
+
+        @Override
+        protected void compute() {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+            try {
+                if (Files.isRegularFile(destination)) {
+                    throw new IOException("'" + destination + "' is a file.");
+                }
+                Files.createDirectories(destination);
+
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(source)) {
+                    for (Path child : children) {
+                        Path childDestination = destination.resolve(child.getFileName().toString());
+                        if (Files.isDirectory(child)) {
+                            tasks.add(new CopyDirectoryTask(child, childDestination, listener, byteCount));
+                        } else {
+                            tasks.add(new RecursiveAction() {
+                                @Override
+                                protected void compute() {
+                                    try {
+                                        byteCount.add(copyFile(child, childDestination, listener));
+                                    } catch (IOException e) {
+                                        throw new UncheckedIOException(e);
+                                    }
+                                }
+                            });
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            invokeAll(tasks);
+        }
+    }
+
+    private static final class CompareTask extends RecursiveTask<Boolean> {
+        private final Path pathA;
+        private final Path pathB;
+        @Nullable
+        private final FileTreeListener listener;
+
+        /**
+         * Set as soon as any difference is found, so the remaining tasks finish without reading.
+         */
+        private final AtomicBoolean differenceFound;
+
+        private CompareTask(Path pathA, Path pathB, @Nullable FileTreeListener listener, AtomicBoolean differenceFound) {
+            this.pathA = pathA;
+            this.pathB = pathB;
+            this.listener = listener;
+            this.differenceFound = differenceFound;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (differenceFound.get()) {
+                return false;
+            }
+
+            boolean equal;
+            try {
+                equal = internalCompute();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (!equal) {
+                differenceFound.set(true);
+            }
+            return equal;
+        }
+
+        private boolean internalCompute() throws IOException {
+            if (Files.isRegularFile(pathA)) {
+                return Files.isRegularFile(pathB) && fileContentEquals(pathA, pathB, listener);
+            }
+
+            if (!Files.isDirectory(pathA) || !Files.isDirectory(pathB)) {
+                return false;
+            }
+
+            Set<String> namesA = listNames(pathA);
+            if (!namesA.equals(listNames(pathB))) {
+                return false;
+            }
+
+            List<CompareTask> tasks = new ArrayList<>(namesA.size());
+            for (String name : namesA) {
+                tasks.add(new CompareTask(pathA.resolve(name), pathB.resolve(name), listener, differenceFound));
+            }
+
+            for (CompareTask task : invokeAll(tasks)) {
+                if (!task.join()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private static Set<String> listNames(Path directory) throws IOException {
+            Set<String> names = new HashSet<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (Path child : children) {
+                    names.add(child.getFileName().toString());
+                }
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Uses {@code sun.misc.Unsafe.invokeCleaner} on Java 9+ and the buffer cleaner on Java 8.
+     */
+    private static final class Unmapper {
+        @Nullable
+        private static final Object UNSAFE;
+        @Nullable
+        private static final Method INVOKE_CLEANER_METHOD;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleanerMethod = null;
+
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                unsafeField.setAccessible(true);
+                unsafe = unsafeField.get(null);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                invokeCleanerMethod = null;
+            }
+
+            UNSAFE = unsafe;
+            INVOKE_CLEANER_METHOD = invokeCleanerMethod;
+        }
+
+        private static void unmap(MappedByteBuffer buffer) {
+            try {
+                if (INVOKE_CLEANER_METHOD != null) {
+                    INVOKE_CLEANER_METHOD.invoke(UNSAFE, buffer);
+                } else {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.debug("Can't unmap buffer: " + e);
+            }
+        }
+    }
+}
@@ -23,14 +23,20 @@ import java.io.*;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -45,6 +51,8 @@ import static com.codeforces.commons.math.Math.max;
 public class UnsafeFileUtil {
     private static final Logger logger = Logger.getLogger(UnsafeFileUtil.class);
     private static final int BUFFER_SIZE = 655360;
+    private static final int LINE_BUFFER_SIZE = 65536;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
     private static final char DOS_FILE_SEPARATOR = '\\';
     private static final char UNIX_FILE_SEPARATOR = '/';
 
@@ -481,16 +489,136 @@ public class UnsafeFileUtil {
 
     @Nonnull
     private static byte[] forceGetBytesFromExistingRegularFile(@Nonnull File file) throws IOException {
-        long size = file.length();
-        FileInputStream stream = new FileInputStream(file);
-        FileChannel channel = stream.getChannel();
-        ByteBuffer bytes = ByteBuffer.allocate(Ints.checkedCast(size));
-        channel.read(bytes);
-        channel.close();
-        stream.close();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_ARRAY_SIZE) {
+                throw new IOException(String.format(
+                        "File '%s' is too large to be read into memory (%d bytes), "
+                                + "use FileUtil.forEachChunk(...) or FileUtil.forEachMappedRegion(...).", file, size
+                ));
+            }
+            return readFully(channel, (int) size);
+        }
+    }
+
+    /**
+     * A single {@link FileChannel#read(ByteBuffer)} may return less bytes than requested, so reads until the buffer
+     * is full or the end of the channel is reached.
+     *
+     * @return bytes read, may be shorter than {@code size} if the file has been truncated meanwhile
+     */
+    @Nonnull
+    private static byte[] readFully(@Nonnull FileChannel channel, int size) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes) < 0) {
+                return Arrays.copyOf(bytes.array(), bytes.position());
+            }
+        }
         return bytes.array();
     }
 
+    /**
+     * Fills the buffer from the channel.
+     *
+     * @return {@code false} iff the end of the channel is reached
+     */
+    private static boolean fill(@Nonnull ReadableByteChannel channel, @Nonnull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the file by chunks of the specified size into a reused heap buffer.
+     *
+     * @param file      regular file
+     * @param chunkSize chunk size, only the last chunk may be shorter
+     * @param processor chunk processor, may stop the reading by returning {@code false}
+     * @throws IOException if can't read file or the processor has failed
+     */
+    public static void forEachChunk(
+            @Nonnull File file, int chunkSize, @Nonnull FileUtil.ChunkProcessor processor) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Argument 'chunkSize' should be positive.");
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(chunkSize, Math.max(channel.size(), 1L)));
+            long position = 0L;
+            boolean endOfFile = false;
+
+            while (!endOfFile) {
+                ((Buffer) chunk).clear();
+                endOfFile = !fill(channel, chunk);
+                ((Buffer) chunk).flip();
+
+                int chunkLength = chunk.remaining();
+                if (chunkLength == 0 || !processor.process(position, chunk)) {
+                    return;
+                }
+                position += chunkLength;
+            }
+        }
+    }
+
+    /**
+     * Maps the file by read-only regions of the specified size. The processor may keep references to the buffer
+     * or its slices, so regions are not unmapped explicitly, but released by GC.
+     *
+     * @param file       regular file
+     * @param regionSize region size, only the last region may be shorter
+     * @param processor  region processor, may stop the reading by returning {@code false}
+     * @throws IOException if can't map file or the processor has failed
+     */
+    public static void forEachMappedRegion(
+            @Nonnull File file, int regionSize, @Nonnull FileUtil.ChunkProcessor processor) throws IOException {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("Argument 'regionSize' should be positive.");
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            for (long position = 0L; position < size; position += regionSize) {
+                MappedByteBuffer region = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position)
+                );
+
+                if (!processor.process(position, region)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lazily reads lines of the file. Malformed input is replaced instead of failing the stream.
+     *
+     * @param file    regular file
+     * @param charset file charset
+     * @return stream of lines, it should be closed to release the file
+     * @throws IOException if can't open file
+     */
+    @MustBeClosed
+    @Nonnull
+    public static Stream<String> lines(@Nonnull File file, @Nonnull Charset charset) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), charset), LINE_BUFFER_SIZE
+        );
+
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
     /**
      * Returns 511 first bytes of the file. Returns smaller number of bytes it it contains less.
      *
@@ -522,13 +650,9 @@ public class UnsafeFileUtil {
                 truncated = true;
                 size = maxSize;
             }
-            FileInputStream stream = new FileInputStream(file);
-            FileChannel channel = stream.getChannel();
-            ByteBuffer bytes = ByteBuffer.allocate(Ints.checkedCast(size));
-            channel.read(bytes);
-            channel.close();
-            stream.close();
-            return new FileUtil.FirstBytes(truncated, bytes.array());
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return new FileUtil.FirstBytes(truncated, readFully(channel, Ints.checkedCast(size)));
+            }
         } else {
             throw new FileNotFoundException("'" + file + "' is not file.");
         }
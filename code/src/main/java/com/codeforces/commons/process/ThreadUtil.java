@@ -6,9 +6,13 @@ import org.apache.log4j.Logger;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Maxim Shipko (sladethe@gmail.com)
@@ -17,6 +21,41 @@ import java.util.concurrent.ThreadFactory;
 public class ThreadUtil {
     private static final Logger logger = Logger.getLogger(ThreadUtil.class);
 
+    /**
+     * Virtual threads appeared in Java 21 and the library is built for Java 8, so they are accessed reflectively.
+     * All four methods are {@code null} if the runtime doesn't support virtual threads.
+     */
+    @Nullable
+    private static final Method OF_VIRTUAL_METHOD;
+    @Nullable
+    private static final Method BUILDER_NAME_METHOD;
+    @Nullable
+    private static final Method BUILDER_FACTORY_METHOD;
+    @Nullable
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR_METHOD;
+
+    static {
+        Method ofVirtualMethod = null;
+        Method builderNameMethod = null;
+        Method builderFactoryMethod = null;
+        Method newThreadPerTaskExecutorMethod = null;
+
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+            builderNameMethod = builderClass.getMethod("name", String.class, long.class);
+            builderFactoryMethod = builderClass.getMethod("factory");
+            newThreadPerTaskExecutorMethod = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException ignored) {
+            ofVirtualMethod = null;
+        }
+
+        OF_VIRTUAL_METHOD = ofVirtualMethod;
+        BUILDER_NAME_METHOD = builderNameMethod;
+        BUILDER_FACTORY_METHOD = builderFactoryMethod;
+        NEW_THREAD_PER_TASK_EXECUTOR_METHOD = newThreadPerTaskExecutorMethod;
+    }
+
     private ThreadUtil() {
         throw new UnsupportedOperationException();
     }
@@ -123,6 +162,10 @@ public class ThreadUtil {
         }
     }
 
+    /**
+     * Blocks the calling thread between attempts. Use {@link com.codeforces.commons.concurrent.RetryExecutor}
+     * to retry without holding a thread.
+     */
     @Nullable
     public static <T> T execute(Operation<T> operation, int attemptCount, ExecutionStrategy strategy) throws Throwable {
         ensureArguments(operation, attemptCount, strategy);
@@ -198,6 +241,70 @@ public class ThreadUtil {
         };
     }
 
+    /**
+     * Creates daemon or non-daemon platform threads named {@code namePrefix-1}, {@code namePrefix-2} and so on.
+     * Threads get the same uncaught exception handler as ones created by {@link #newThread(String, Runnable)}.
+     *
+     * @param namePrefix thread name prefix
+     * @param daemon     whether threads are daemons
+     * @return thread factory
+     */
+    @Nonnull
+    public static ThreadFactory newThreadFactory(@Nonnull String namePrefix, boolean daemon) {
+        AtomicLong threadIndex = new AtomicLong();
+        return runnable -> newThread(namePrefix + '-' + threadIndex.incrementAndGet(), runnable, daemon);
+    }
+
+    /**
+     * @return {@code true} iff the runtime supports virtual threads (Java 21 or later)
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL_METHOD != null;
+    }
+
+    /**
+     * Creates virtual threads named {@code namePrefix-1}, {@code namePrefix-2} and so on.
+     * Virtual threads are always daemons.
+     *
+     * @param namePrefix thread name prefix
+     * @return thread factory or {@code null} if the runtime doesn't support virtual threads
+     */
+    @Nullable
+    public static ThreadFactory newVirtualThreadFactory(@Nonnull String namePrefix) {
+        if (OF_VIRTUAL_METHOD == null || BUILDER_NAME_METHOD == null || BUILDER_FACTORY_METHOD == null) {
+            return null;
+        }
+
+        try {
+            Object builder = BUILDER_NAME_METHOD.invoke(OF_VIRTUAL_METHOD.invoke(null), namePrefix + '-', 1L);
+            return (ThreadFactory) BUILDER_FACTORY_METHOD.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            logger.warn("Can't create virtual thread factory.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task.
+     *
+     * @param namePrefix thread name prefix
+     * @return executor or {@code null} if the runtime doesn't support virtual threads
+     */
+    @Nullable
+    public static ExecutorService newVirtualThreadPerTaskExecutor(@Nonnull String namePrefix) {
+        ThreadFactory threadFactory = newVirtualThreadFactory(namePrefix);
+        if (threadFactory == null || NEW_THREAD_PER_TASK_EXECUTOR_METHOD == null) {
+            return null;
+        }
+
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR_METHOD.invoke(null, threadFactory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            logger.warn("Can't create virtual thread per task executor.", e);
+            return null;
+        }
+    }
+
     private static <T> void ensureArguments(Operation<T> operation, int attemptCount, ExecutionStrategy strategy) {
         if (operation == null) {
             throw new IllegalArgumentException("Argument 'operation' can't be 'null'.");
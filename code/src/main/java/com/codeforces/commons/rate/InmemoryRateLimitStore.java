@@ -0,0 +1,41 @@
+package com.codeforces.commons.rate;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the state in memory of this process. Changing the restriction of a scope resets its history.
+ */
+public class InmemoryRateLimitStore implements RateLimitStore {
+    private final ConcurrentMap<String, RateLimiter> limiterByScope = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean tryAcquire(
+            @Nonnull String scope, @Nonnull String session, long intervalMillis, int maxRatePerInterval) {
+        RateLimiter limiter = limiterByScope.get(scope);
+
+        if (limiter == null || !limiter.hasRestriction(intervalMillis, maxRatePerInterval)) {
+            limiter = limiterByScope.compute(scope, (s, currentLimiter) -> currentLimiter != null
+                    && currentLimiter.hasRestriction(intervalMillis, maxRatePerInterval)
+                    ? currentLimiter : new RateLimiter(intervalMillis, maxRatePerInterval));
+        }
+
+        return limiter.tryAcquire(session, System.currentTimeMillis());
+    }
+
+    @Override
+    public long getActiveSessionCount(@Nonnull String scope) {
+        RateLimiter limiter = limiterByScope.get(scope);
+        return limiter == null ? 0L : limiter.getSessionCount();
+    }
+
+    /**
+     * Sessions removed before the last change of the scope restriction are not counted.
+     */
+    @Override
+    public long getEvictedSessionCount(@Nonnull String scope) {
+        RateLimiter limiter = limiterByScope.get(scope);
+        return limiter == null ? 0L : limiter.getEvictedSessionCount();
+    }
+}
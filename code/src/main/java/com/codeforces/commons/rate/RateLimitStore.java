@@ -0,0 +1,36 @@
+package com.codeforces.commons.rate;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Keeps the state of rate limited sessions and makes decisions for {@link RateUtil}. Implementations may share
+ * the state between processes, so the restriction is enforced for the whole cluster.
+ */
+public interface RateLimitStore {
+    /**
+     * Registers an event of the session if it doesn't exceed the restriction.
+     *
+     * @param scope              scope name
+     * @param session            session name (unique for each scope)
+     * @param intervalMillis     interval length
+     * @param maxRatePerInterval maximal long-term number of events per interval, see {@link RateLimiter}
+     * @return {@code true} iff the event is allowed
+     */
+    boolean tryAcquire(@Nonnull String scope, @Nonnull String session, long intervalMillis, int maxRatePerInterval);
+
+    /**
+     * @param scope scope name
+     * @return number of sessions of the scope kept by this store or {@code -1} if it is unknown
+     */
+    default long getActiveSessionCount(@Nonnull String scope) {
+        return -1L;
+    }
+
+    /**
+     * @param scope scope name
+     * @return number of idle sessions of the scope removed by this store or {@code -1} if it is unknown
+     */
+    default long getEvictedSessionCount(@Nonnull String scope) {
+        return -1L;
+    }
+}
@@ -0,0 +1,260 @@
+package com.codeforces.commons.rate;
+
+import javax.annotation.Nonnull;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Multi-level GCRA (generic cell rate algorithm) limiter of a single scope.
+ * <p>
+ * Level {@code i} covers the window of {@code 2^i} intervals and allows a burst of
+ * {@code round(maxRatePerInterval * 1.5^(LEVEL_COUNT - i - 1)) * 2^i + 1} events refilled evenly over the window.
+ * So each doubling of the window reduces the allowed rate 1.5 times, and the long-term rate is
+ * about {@code maxRatePerInterval} per interval. An event is allowed only if it conforms to all levels.
+ * <p>
+ * The state of a session is packed into a single {@code long}: 22 bits of the last update time in ticks and
+ * 14 bits per level of the theoretical arrival time offset in fractions of the level emission interval.
+ * Rates too large for 14 bits (more than about 4000 events per interval) use an immutable state object with
+ * the offsets in milliseconds instead. Either way a decision is a single CAS of the state, denials change nothing.
+ * Idle sessions are removed a few at a time by the calls of {@link #tryAcquire(String, long)}.
+ */
+final class RateLimiter {
+    static final int LEVEL_COUNT = 3;
+
+    private static final int OFFSET_BITS = 14;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1L;
+    private static final int TIME_BITS = Long.SIZE - LEVEL_COUNT * OFFSET_BITS;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1L;
+
+    /**
+     * The widest window takes at most {@code 2^(TIME_BITS - 2)} ticks, so the tick counter wraps not earlier
+     * than in four widest windows. States older than two widest windows are recognized by
+     * {@link Session#lastAllowedTimeMillis} and treated as idle.
+     */
+    private static final int WINDOW_TICK_BITS = TIME_BITS - 2;
+
+    /**
+     * Relative error of accumulated emission intervals, which is tolerated by the wide state.
+     */
+    private static final double WIDE_TOLERANCE_EPSILON = 1.0E-9D;
+
+    private static final int EXPIRATION_CHECKS_PER_EVENT = 2;
+
+    private final long intervalMillis;
+    private final int maxRatePerInterval;
+    private final long maxWindowMillis;
+    private final long tickMillis;
+    private final long wrapMillis;
+    private final boolean wide;
+
+    private final long[] emissionUnits = new long[LEVEL_COUNT];
+    private final long[] toleranceUnits = new long[LEVEL_COUNT];
+    private final double[] unitsPerTick = new double[LEVEL_COUNT];
+
+    private final double[] emissionMillis = new double[LEVEL_COUNT];
+    private final double[] toleranceMillis = new double[LEVEL_COUNT];
+
+    private final ConcurrentMap<String, Session> sessionByName = new ConcurrentHashMap<>();
+    private final AtomicBoolean expirationInProgress = new AtomicBoolean();
+    private final LongAdder evictedSessionCount = new LongAdder();
+    private Iterator<Map.Entry<String, Session>> expirationIterator;
+
+    RateLimiter(long intervalMillis, int maxRatePerInterval) {
+        ensureRestriction(intervalMillis, maxRatePerInterval);
+
+        this.intervalMillis = intervalMillis;
+        this.maxRatePerInterval = maxRatePerInterval;
+        this.maxWindowMillis = intervalMillis << (LEVEL_COUNT - 1);
+        this.tickMillis = Math.max(1L, (maxWindowMillis + (1L << WINDOW_TICK_BITS) - 1L) >> WINDOW_TICK_BITS);
+        this.wrapMillis = tickMillis > Long.MAX_VALUE >> (TIME_BITS - 1)
+                ? Long.MAX_VALUE : tickMillis << (TIME_BITS - 1);
+        this.wide = getEventCount(maxRatePerInterval, LEVEL_COUNT - 1) > OFFSET_MASK;
+
+        for (int level = 0; level < LEVEL_COUNT; ++level) {
+            long eventCount = getEventCount(maxRatePerInterval, level);
+            emissionMillis[level] = (double) (intervalMillis << level) / eventCount;
+            toleranceMillis[level] = emissionMillis[level] * (eventCount - 1L);
+
+            if (wide) {
+                continue;
+            }
+
+            int eventCountBits = Long.SIZE - Long.numberOfLeadingZeros(eventCount);
+
+            // Offsets are measured in 2^(OFFSET_BITS - eventCountBits) units per emission interval,
+            // so the emission interval is exact and the offset never exceeds OFFSET_MASK.
+            emissionUnits[level] = 1L << (OFFSET_BITS - eventCountBits);
+            toleranceUnits[level] = (eventCount - 1L) * emissionUnits[level];
+            unitsPerTick[level] = (double) tickMillis * eventCount * emissionUnits[level]
+                    / (intervalMillis << level);
+        }
+    }
+
+    static void ensureRestriction(long intervalMillis, int maxRatePerInterval) {
+        if (intervalMillis < 1L || intervalMillis > Long.MAX_VALUE >> LEVEL_COUNT) {
+            throw new IllegalArgumentException("Argument 'intervalMillis' is out of range.");
+        }
+
+        if (maxRatePerInterval < 0) {
+            throw new IllegalArgumentException("Argument 'maxRatePerInterval' is negative.");
+        }
+    }
+
+    /**
+     * @return number of events allowed at once by the level, it is also the number of events per its window
+     */
+    static long getEventCount(int maxRatePerInterval, int level) {
+        return (Math.round(maxRatePerInterval * Math.pow(1.5D, LEVEL_COUNT - level - 1)) << level) + 1L;
+    }
+
+    boolean hasRestriction(long intervalMillis, int maxRatePerInterval) {
+        return this.intervalMillis == intervalMillis && this.maxRatePerInterval == maxRatePerInterval;
+    }
+
+    boolean tryAcquire(@Nonnull String sessionName, long currentTimeMillis) {
+        Session session = sessionByName.get(sessionName);
+        if (session == null) {
+            session = sessionByName.computeIfAbsent(sessionName, ignored -> new Session());
+        }
+
+        boolean allowed = wide ? tryAcquireWide(session, currentTimeMillis) : tryAcquire(session, currentTimeMillis);
+        expireIdleSessions(currentTimeMillis);
+        return allowed;
+    }
+
+    private boolean tryAcquire(Session session, long currentTimeMillis) {
+        long currentTick = currentTimeMillis / tickMillis;
+
+        while (true) {
+            // The state is read first: the last allowed time is updated before the state is changed.
+            long state = session.state.get();
+            long lastAllowedTimeMillis = session.lastAllowedTimeMillis;
+            boolean idle = currentTimeMillis - lastAllowedTimeMillis >= wrapMillis;
+            long elapsedTicks = (currentTick - (state >>> (LEVEL_COUNT * OFFSET_BITS))) & TIME_MASK;
+
+            long newState = (currentTick & TIME_MASK) << (LEVEL_COUNT * OFFSET_BITS);
+
+            for (int level = 0; level < LEVEL_COUNT; ++level) {
+                long offset = idle ? 0L : (state >>> (level * OFFSET_BITS)) & OFFSET_MASK;
+                if (offset > 0L) {
+                    offset = Math.max(0L, offset - Math.round(elapsedTicks * unitsPerTick[level]));
+                }
+
+                if (offset > toleranceUnits[level]) {
+                    return false;
+                }
+
+                newState |= (offset + emissionUnits[level]) << (level * OFFSET_BITS);
+            }
+
+            updateLastAllowedTime(session, lastAllowedTimeMillis, currentTimeMillis);
+            if (session.state.compareAndSet(state, newState)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean tryAcquireWide(Session session, long currentTimeMillis) {
+        while (true) {
+            WideState state = session.wideState;
+            long elapsedMillis = Math.max(0L, currentTimeMillis - state.updateTimeMillis);
+            double[] newOffsetMillis = new double[LEVEL_COUNT];
+
+            for (int level = 0; level < LEVEL_COUNT; ++level) {
+                double offsetMillis = Math.max(0.0D, state.offsetMillis[level] - elapsedMillis);
+                if (offsetMillis > toleranceMillis[level] * (1.0D + WIDE_TOLERANCE_EPSILON)) {
+                    return false;
+                }
+
+                newOffsetMillis[level] = offsetMillis + emissionMillis[level];
+            }
+
+            // Offsets are relative to the update time, which is not moved back if the calls are reordered.
+            WideState newState = new WideState(
+                    Math.max(currentTimeMillis, state.updateTimeMillis), newOffsetMillis
+            );
+            updateLastAllowedTime(session, session.lastAllowedTimeMillis, currentTimeMillis);
+            if (Session.wideStateUpdater.compareAndSet(session, state, newState)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The last allowed time is only used to recognize idle sessions, so it is updated by a plain write and only
+     * if it lags behind by a tick.
+     */
+    private void updateLastAllowedTime(Session session, long lastAllowedTimeMillis, long currentTimeMillis) {
+        if (currentTimeMillis - lastAllowedTimeMillis >= tickMillis) {
+            session.lastAllowedTimeMillis = currentTimeMillis;
+        }
+    }
+
+    /**
+     * Checks a few sessions per call and removes the ones idle for the widest window, so the sessions
+     * are swept gradually without pauses.
+     */
+    private void expireIdleSessions(long currentTimeMillis) {
+        if (!expirationInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < EXPIRATION_CHECKS_PER_EVENT; ++i) {
+                if (expirationIterator == null || !expirationIterator.hasNext()) {
+                    expirationIterator = sessionByName.entrySet().iterator();
+                    if (!expirationIterator.hasNext()) {
+                        return;
+                    }
+                }
+
+                Map.Entry<String, Session> entry = expirationIterator.next();
+                if (currentTimeMillis - entry.getValue().lastAllowedTimeMillis >= maxWindowMillis
+                        && sessionByName.remove(entry.getKey(), entry.getValue())) {
+                    evictedSessionCount.increment();
+                }
+            }
+        } finally {
+            expirationInProgress.set(false);
+        }
+    }
+
+    int getSessionCount() {
+        return sessionByName.size();
+    }
+
+    long getEvictedSessionCount() {
+        return evictedSessionCount.sum();
+    }
+
+    private static final class Session {
+        private static final AtomicReferenceFieldUpdater<Session, WideState> wideStateUpdater
+                = AtomicReferenceFieldUpdater.newUpdater(Session.class, WideState.class, "wideState");
+
+        private final AtomicLong state = new AtomicLong();
+        private volatile long lastAllowedTimeMillis = Long.MIN_VALUE / 2;
+
+        /**
+         * Is used instead of {@link #state} if the rate is too large to be packed.
+         */
+        private volatile WideState wideState = WideState.INITIAL;
+    }
+
+    private static final class WideState {
+        private static final WideState INITIAL = new WideState(Long.MIN_VALUE / 2, new double[LEVEL_COUNT]);
+
+        private final long updateTimeMillis;
+        private final double[] offsetMillis;
+
+        private WideState(long updateTimeMillis, double[] offsetMillis) {
+            this.updateTimeMillis = updateTimeMillis;
+            this.offsetMillis = offsetMillis;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.codeforces.commons.rate;
+
+import com.codeforces.commons.text.StringUtil;
+
+/**
+ * Decision counters of a scope collected by {@link RateUtil} since the scope restriction has been set first.
+ */
+public final class RateScopeSnapshot {
+    private final long allowedEventCount;
+    private final long deniedEventCount;
+    private final long activeSessionCount;
+    private final long evictedSessionCount;
+
+    RateScopeSnapshot(long allowedEventCount, long deniedEventCount, long activeSessionCount, long evictedSessionCount) {
+        this.allowedEventCount = allowedEventCount;
+        this.deniedEventCount = deniedEventCount;
+        this.activeSessionCount = activeSessionCount;
+        this.evictedSessionCount = evictedSessionCount;
+    }
+
+    public long getAllowedEventCount() {
+        return allowedEventCount;
+    }
+
+    public long getDeniedEventCount() {
+        return deniedEventCount;
+    }
+
+    /**
+     * @return number of sessions kept by the store or {@code -1} if the store doesn't report it
+     */
+    public long getActiveSessionCount() {
+        return activeSessionCount;
+    }
+
+    /**
+     * @return number of idle sessions removed by the store or {@code -1} if the store doesn't report it
+     */
+    public long getEvictedSessionCount() {
+        return evictedSessionCount;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.toString(
+                this, false, "allowedEventCount", "deniedEventCount", "activeSessionCount", "evictedSessionCount"
+        );
+    }
+}
@@ -1,168 +1,149 @@
 package com.codeforces.commons.rate;
 
-import com.codeforces.commons.pair.SimplePair;
 import org.apache.log4j.Logger;
 
-import java.util.*;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicLong;
-
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the rate of events per session within a scope. See {@link RateLimiter} for the limiting rules.
+ * Decisions are made by the {@link RateLimitStore store}, which is {@link InmemoryRateLimitStore} by default.
+ * <p>
+ * Decisions are counted per scope, see {@link #getSnapshot()}. Denied events are logged only with the probability
+ * {@code 1 / deniedEventLogSamplingRate}, so a flood of denied events costs no logging.
+ */
 @SuppressWarnings("unused")
 public class RateUtil {
     private static final Logger logger = Logger.getLogger(RateUtil.class);
 
-    private static final ConcurrentMap<String, SimplePair<Long, Integer>> maxRatePerIntervalByScope
-            = new ConcurrentHashMap<>();
+    public static final int DEFAULT_DENIED_EVENT_LOG_SAMPLING_RATE = 1000;
+
+    private static final ConcurrentMap<String, Scope> scopeByName = new ConcurrentHashMap<>();
 
-    private static final ConcurrentMap<String, ConcurrentMap<String, Data>> datas = new ConcurrentHashMap<>();
-    private static final AtomicLong dataCount = new AtomicLong();
-    private static final AtomicLong counter = new AtomicLong();
+    private static volatile RateLimitStore store = new InmemoryRateLimitStore();
+    private static volatile int deniedEventLogSamplingRate = DEFAULT_DENIED_EVENT_LOG_SAMPLING_RATE;
 
     private RateUtil() {
         // No operations.
     }
 
+    /**
+     * Replaces the store. Events registered by the previous store are not transferred.
+     *
+     * @param store store to make decisions, for example {@link RedisRateLimitStore} to share the restrictions
+     *              between processes
+     */
+    public static void setStore(@Nonnull RateLimitStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("Argument 'store' is 'null'.");
+        }
+
+        RateUtil.store = store;
+    }
+
+    /**
+     * @param deniedEventLogSamplingRate {@code 1} to log each denied event, {@code N} to log one of {@code N}
+     *                                   denied events on average, {@code 0} to disable the logging
+     */
+    public static void setDeniedEventLogSamplingRate(int deniedEventLogSamplingRate) {
+        if (deniedEventLogSamplingRate < 0) {
+            throw new IllegalArgumentException("Argument 'deniedEventLogSamplingRate' is negative.");
+        }
+
+        RateUtil.deniedEventLogSamplingRate = deniedEventLogSamplingRate;
+    }
+
+    /**
+     * Sets the restriction of the scope. Changing the restriction may reset the history of the scope sessions.
+     *
+     * @param scope                    scope name
+     * @param intervalMillis           interval length
+     * @param maxRatePerIntervalMillis maximal long-term number of events per interval, short bursts may be greater
+     */
     public static void setRestriction(String scope, long intervalMillis, int maxRatePerIntervalMillis) {
-        maxRatePerIntervalByScope.put(scope, new SimplePair<>(intervalMillis, maxRatePerIntervalMillis));
+        RateLimiter.ensureRestriction(intervalMillis, maxRatePerIntervalMillis);
+        scopeByName.compute(scope, (name, currentScope) -> new Scope(
+                intervalMillis, maxRatePerIntervalMillis, currentScope
+        ));
     }
 
     public static boolean addEvent(String scope, String session) {
-        clear();
-
-        SimplePair<Long, Integer> restriction = maxRatePerIntervalByScope.get(scope);
+        Scope restriction = scopeByName.get(scope);
         if (restriction == null) {
             throw new IllegalStateException("No restriction for the scope '" + scope
                     + "', use #setRestriction(scope, maxRatePerInterval).");
         }
 
-        ConcurrentMap<String, Data> scopeDatas = datas.compute(scope, (s, stringQueueConcurrentMap) -> {
-            if (stringQueueConcurrentMap == null) {
-                return new ConcurrentHashMap<>();
-            } else {
-                return stringQueueConcurrentMap;
-            }
-        });
-
-        @SuppressWarnings("ConstantConditions") final Data data = scopeDatas.compute(session, (k, v) -> v == null
-                ? new Data(3, restriction.getFirst(), restriction.getSecond()) : v);
-
-        synchronized (data) {
-            boolean add = data.add(scope, session);
-            if (!add) {
-                logger.info("Rate limit exceeded, RateUtil#addEvent returns false [scope=" + scope + ", session=" + session + "].");
-            }
-            return add;
+        if (store.tryAcquire(scope, session, restriction.intervalMillis, restriction.maxRatePerInterval)) {
+            restriction.allowedEventCount.increment();
+            return true;
         }
-    }
 
-    private static void clear() {
-        if (2 * dataCount.get() < counter.incrementAndGet()) {
-            logger.warn("Clearing RateUtil [" + dataCount.get() + ", " + counter.get() + "].");
-            counter.set(0);
-
-            long startTimeMillis = System.currentTimeMillis();
-            int previousSize = 0;
-            int removeSize = 0;
-
-            synchronized (datas) {
-                for (Map.Entry<String, ConcurrentMap<String, Data>> e : datas.entrySet()) {
-                    previousSize += e.getValue().size();
-                    List<String> emptySessions = new ArrayList<>();
-                    for (Map.Entry<String, Data> sessionAndData : e.getValue().entrySet()) {
-                        synchronized (sessionAndData.getValue()) {
-                            sessionAndData.getValue().adjust(startTimeMillis);
-                            if (sessionAndData.getValue().isEmpty()) {
-                                emptySessions.add(sessionAndData.getKey());
-                            }
-                        }
-                    }
-                    for (String emptySession : emptySessions) {
-                        logger.warn("Cleared RateUtil session [scope=" + e.getKey() + ", session=" + emptySession + "].");
-                        e.getValue().remove(emptySession);
-                        removeSize++;
-                    }
-                }
-            }
-
-            logger.warn("RateUtil#clear done [size: previousSize=" + previousSize
-                    + " -> currentSize=" + (previousSize - removeSize) + ", removedSize=" + removeSize + "].");
-        }
-    }
+        restriction.deniedEventCount.increment();
 
-    private static final class Data {
-        private final int depth;
-        private final long intervalMills;
-        private final long maxRatePerInterval;
-        private final Queue<Long>[] queues;
-
-        private Data(int depth, long intervalMills, int maxRatePerIntervalMillis) {
-            long count;
-            if ((count = RateUtil.dataCount.incrementAndGet()) % 1000 == 0) {
-                logger.info("Created instance of RateUtil#Data [count=" + count + "].");
-            }
-
-            this.depth = depth;
-            this.intervalMills = intervalMills;
-            this.maxRatePerInterval = maxRatePerIntervalMillis;
-
-            //noinspection unchecked
-            queues = new Queue[depth];
-            for (int i = 0; i < depth; i++) {
-                queues[i] = new LinkedList<>();
-            }
+        int samplingRate = deniedEventLogSamplingRate;
+        if (samplingRate > 0 && logger.isInfoEnabled()
+                && (samplingRate == 1 || ThreadLocalRandom.current().nextInt(samplingRate) == 0)) {
+            logger.info("Rate limit exceeded, RateUtil#addEvent returns false [scope=" + scope
+                    + ", session=" + session + ", deniedEventCount=" + restriction.deniedEventCount.sum() + "].");
         }
 
-        private boolean add(String scope, String session) {
-            long currentTimeMillis = System.currentTimeMillis();
-            adjust(currentTimeMillis);
+        return false;
+    }
 
-            if (isProper(scope, session)) {
-                queues[0].add(currentTimeMillis);
-                return true;
-            } else {
-                return false;
-            }
-        }
+    /**
+     * @return snapshots of all scopes ordered by scope name
+     */
+    @Nonnull
+    public static SortedMap<String, RateScopeSnapshot> getSnapshot() {
+        RateLimitStore currentStore = store;
+        SortedMap<String, RateScopeSnapshot> snapshotByScope = new TreeMap<>();
 
-        private void adjust(long currentTimeMillis) {
-            for (int i = depth - 1; i >= 0; i--) {
-                Queue<Long> queue = queues[i];
-                while (!queue.isEmpty() && queue.peek() < currentTimeMillis - (1L << i) * intervalMills) {
-                    Long elem = queue.poll();
-                    if (elem != null) {
-                        for (int j = i + 1; j < depth; j++) {
-                            if (elem >= currentTimeMillis - (1L << j) * intervalMills) {
-                                queues[j].add(elem);
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
+        for (Map.Entry<String, Scope> entry : scopeByName.entrySet()) {
+            snapshotByScope.put(entry.getKey(), entry.getValue().getSnapshot(currentStore, entry.getKey()));
         }
 
-        private boolean isEmpty() {
-            for (Queue<Long> queue : queues) {
-                if (!queue.isEmpty()) {
-                    return false;
-                }
-            }
-            return true;
+        return snapshotByScope;
+    }
+
+    /**
+     * @param scope scope name
+     * @return snapshot of the scope or {@code null} if the scope has no restriction
+     */
+    @Nullable
+    public static RateScopeSnapshot getSnapshot(@Nonnull String scope) {
+        Scope restriction = scopeByName.get(scope);
+        return restriction == null ? null : restriction.getSnapshot(store, scope);
+    }
+
+    private static final class Scope {
+        private final long intervalMillis;
+        private final int maxRatePerInterval;
+        private final LongAdder allowedEventCount;
+        private final LongAdder deniedEventCount;
+
+        /**
+         * Counters are kept when the restriction changes.
+         */
+        private Scope(long intervalMillis, int maxRatePerInterval, @Nullable Scope previousScope) {
+            this.intervalMillis = intervalMillis;
+            this.maxRatePerInterval = maxRatePerInterval;
+            this.allowedEventCount = previousScope == null ? new LongAdder() : previousScope.allowedEventCount;
+            this.deniedEventCount = previousScope == null ? new LongAdder() : previousScope.deniedEventCount;
         }
 
-        private boolean isProper(String scope, String session) {
-            for (int i = 0; i < depth; i++) {
-                long lim = Math.round(maxRatePerInterval * Math.pow(1.5, depth - i - 1)) << i;
-                if (queues[i].size() > lim) {
-                    logger.info("Queue #" + i + " has size " + queues[i].size() + " exceeds limit " + lim
-                            + " [maxRatePerInterval=" + maxRatePerInterval
-                            + ", scope=" + scope
-                            + ", session=" + session + "].");
-                    return false;
-                }
-            }
-            return true;
+        private RateScopeSnapshot getSnapshot(RateLimitStore store, String scope) {
+            return new RateScopeSnapshot(
+                    allowedEventCount.sum(), deniedEventCount.sum(),
+                    store.getActiveSessionCount(scope), store.getEvictedSessionCount(scope)
+            );
         }
     }
 }
@@ -0,0 +1,254 @@
+package com.codeforces.commons.rate;
+
+import com.codeforces.commons.text.Patterns;
+import com.codeforces.commons.time.TimeUtil;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the state in Redis, so the restriction is shared by all processes and survives restarts.
+ * <p>
+ * Each decision is a single Lua script implementing the same multi-level GCRA as {@link RateLimiter}
+ * with the Redis server clock. If the session is clearly under its limit, the script grants a lease of several
+ * events (at most {@code leaseSize} and at most a half of the remaining burst), and the next events of the session
+ * in this process are allowed without a round trip while the lease is valid. The lease is valid for one emission
+ * interval of the shortest level, so leased events are never accounted notably earlier than they happen.
+ * <p>
+ * If Redis is unavailable, decisions are made by the {@link InmemoryRateLimitStore local store}. After a failure
+ * Redis is not used for several seconds, so an outage does not make each event wait for a connection timeout,
+ * and failures are logged at most once a minute.
+ */
+public class RedisRateLimitStore implements RateLimitStore, Closeable {
+    private static final Logger logger = Logger.getLogger(RedisRateLimitStore.class);
+
+    public static final int DEFAULT_LEASE_SIZE = 4;
+    private static final String KEY_PREFIX = "rate:";
+    private static final int EXPIRATION_CHECKS_PER_EVENT = 2;
+    private static final long UNAVAILABILITY_BACKOFF_MILLIS = 5L * TimeUtil.MILLIS_PER_SECOND;
+    private static final long WARNING_INTERVAL_MILLIS = TimeUtil.MILLIS_PER_MINUTE;
+
+    /**
+     * KEYS[1] is the session key, ARGV[1] is the key lifetime, ARGV[2] is the requested event count,
+     * then the emission interval and the tolerance of each level follow. Returns the granted event count.
+     * <p>
+     * The script works in microseconds and stores whole microseconds rounded down, so the rounding errors
+     * can't add up to a shorter burst than in {@link RateLimiter}.
+     */
+    static final String SCRIPT = ""
+            + "if redis.replicate_commands then redis.replicate_commands() end\n"
+            + "local time = redis.call('TIME')\n"
+            + "local now = tonumber(time[1]) * 1000000 + tonumber(time[2])\n"
+            + "local requested = tonumber(ARGV[2])\n"
+            + "local levelCount = (#ARGV - 2) / 2\n"
+            + "local tats = {}\n"
+            + "local stored = redis.call('GET', KEYS[1])\n"
+            + "if stored then\n"
+            + "    for value in string.gmatch(stored, '%S+') do tats[#tats + 1] = tonumber(value) end\n"
+            + "end\n"
+            + "local granted = requested\n"
+            + "for level = 1, levelCount do\n"
+            + "    local emission = tonumber(ARGV[2 * level + 1]) * 1000\n"
+            + "    local tolerance = tonumber(ARGV[2 * level + 2]) * 1000\n"
+            + "    local offset = math.max((tats[level] or now) - now, 0)\n"
+            + "    local available = math.floor((tolerance - offset) / emission + 0.000001) + 1\n"
+            + "    if available < 1 then return 0 end\n"
+            + "    if requested > 1 then available = math.max(1, math.floor(available / 2)) end\n"
+            + "    granted = math.min(granted, available)\n"
+            + "end\n"
+            + "local values = {}\n"
+            + "for level = 1, levelCount do\n"
+            + "    local emission = tonumber(ARGV[2 * level + 1]) * 1000\n"
+            + "    local tat = math.max(tats[level] or now, now) + granted * emission\n"
+            + "    values[level] = string.format('%.0f', math.floor(tat))\n"
+            + "end\n"
+            + "redis.call('SET', KEYS[1], table.concat(values, ' '), 'PX', ARGV[1])\n"
+            + "return granted\n";
+
+    private final JedisPool jedisPool;
+    private final int leaseSize;
+    private final RateLimitStore fallbackStore = new InmemoryRateLimitStore();
+
+    private final ConcurrentMap<String, Lease> leaseByKey = new ConcurrentHashMap<>();
+    private final AtomicBoolean expirationInProgress = new AtomicBoolean();
+    private Iterator<Map.Entry<String, Lease>> expirationIterator;
+
+    private volatile String scriptSha;
+    private volatile long redisRetryTimeMillis = Long.MIN_VALUE;
+
+    private final AtomicLong lastWarningTimeMillis = new AtomicLong(Long.MIN_VALUE / 2);
+    private final LongAdder suppressedWarningCount = new LongAdder();
+
+    public RedisRateLimitStore(@Nonnull String hostAndPort) {
+        this(hostAndPort, DEFAULT_LEASE_SIZE);
+    }
+
+    /**
+     * @param hostAndPort Redis address
+     * @param leaseSize   maximal number of events to acquire at once, {@code 1} disables leases
+     */
+    public RedisRateLimitStore(@Nonnull String hostAndPort, int leaseSize) {
+        if (leaseSize < 1) {
+            throw new IllegalArgumentException("Argument 'leaseSize' should be positive.");
+        }
+
+        String[] items = Patterns.COLON_PATTERN.split(hostAndPort);
+        this.jedisPool = items.length == 1
+                ? new JedisPool(hostAndPort, Protocol.DEFAULT_PORT)
+                : new JedisPool(items[0], Integer.parseInt(items[1]));
+        this.leaseSize = leaseSize;
+    }
+
+    @Override
+    public boolean tryAcquire(
+            @Nonnull String scope, @Nonnull String session, long intervalMillis, int maxRatePerInterval) {
+        String key = KEY_PREFIX + scope + ':' + session;
+        long currentTimeMillis = System.currentTimeMillis();
+
+        Lease lease = leaseByKey.get(key);
+        if (lease != null) {
+            if (lease.tryTake(currentTimeMillis)) {
+                return true;
+            }
+            leaseByKey.remove(key, lease);
+        }
+
+        expireLeases(currentTimeMillis);
+
+        if (currentTimeMillis < redisRetryTimeMillis) {
+            return fallbackStore.tryAcquire(scope, session, intervalMillis, maxRatePerInterval);
+        }
+
+        long grantedCount;
+        try {
+            grantedCount = evaluate(key, getArguments(intervalMillis, maxRatePerInterval));
+        } catch (JedisException e) {
+            redisRetryTimeMillis = currentTimeMillis + UNAVAILABILITY_BACKOFF_MILLIS;
+            logRedisFailure(e, currentTimeMillis);
+            return fallbackStore.tryAcquire(scope, session, intervalMillis, maxRatePerInterval);
+        }
+
+        if (grantedCount > 1L) {
+            long leaseLifetimeMillis = Math.max(1L, intervalMillis / RateLimiter.getEventCount(maxRatePerInterval, 0));
+            leaseByKey.put(key, new Lease((int) grantedCount - 1, currentTimeMillis + leaseLifetimeMillis));
+        }
+
+        return grantedCount > 0L;
+    }
+
+    List<String> getArguments(long intervalMillis, int maxRatePerInterval) {
+        RateLimiter.ensureRestriction(intervalMillis, maxRatePerInterval);
+
+        List<String> arguments = new ArrayList<>(2 + 2 * RateLimiter.LEVEL_COUNT);
+        arguments.add(Long.toString(intervalMillis << (RateLimiter.LEVEL_COUNT - 1)));
+        arguments.add(Integer.toString(leaseSize));
+
+        for (int level = 0; level < RateLimiter.LEVEL_COUNT; ++level) {
+            long eventCount = RateLimiter.getEventCount(maxRatePerInterval, level);
+            double emissionMillis = (double) (intervalMillis << level) / eventCount;
+            arguments.add(Double.toString(emissionMillis));
+            arguments.add(Double.toString(emissionMillis * (eventCount - 1L)));
+        }
+
+        return arguments;
+    }
+
+    /**
+     * @return number of events granted by the script
+     */
+    long evaluate(String key, List<String> arguments) {
+        List<String> keys = Collections.singletonList(key);
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            String sha = scriptSha;
+            if (sha != null) {
+                try {
+                    return (Long) jedis.evalsha(sha, keys, arguments);
+                } catch (JedisNoScriptException ignored) {
+                    // Script cache has been flushed, load the script again.
+                }
+            }
+
+            sha = jedis.scriptLoad(SCRIPT);
+            scriptSha = sha;
+            return (Long) jedis.evalsha(sha, keys, arguments);
+        }
+    }
+
+    private void logRedisFailure(JedisException e, long currentTimeMillis) {
+        long previousWarningTimeMillis = lastWarningTimeMillis.get();
+        if (currentTimeMillis - previousWarningTimeMillis < WARNING_INTERVAL_MILLIS
+                || !lastWarningTimeMillis.compareAndSet(previousWarningTimeMillis, currentTimeMillis)) {
+            suppressedWarningCount.increment();
+            return;
+        }
+
+        logger.warn("Can't make rate limit decisions using Redis, the local store is used for "
+                + UNAVAILABILITY_BACKOFF_MILLIS + " ms [suppressedWarningCount="
+                + suppressedWarningCount.sumThenReset() + "].", e);
+    }
+
+    private void expireLeases(long currentTimeMillis) {
+        if (!expirationInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < EXPIRATION_CHECKS_PER_EVENT; ++i) {
+                if (expirationIterator == null || !expirationIterator.hasNext()) {
+                    expirationIterator = leaseByKey.entrySet().iterator();
+                    if (!expirationIterator.hasNext()) {
+                        return;
+                    }
+                }
+
+                Map.Entry<String, Lease> entry = expirationIterator.next();
+                if (currentTimeMillis >= entry.getValue().expirationTimeMillis) {
+                    leaseByKey.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            expirationInProgress.set(false);
+        }
+    }
+
+    int getLeaseCount() {
+        return leaseByKey.size();
+    }
+
+    @Override
+    public void close() {
+        jedisPool.destroy();
+    }
+
+    private static final class Lease {
+        private final AtomicInteger eventCount;
+        private final long expirationTimeMillis;
+
+        private Lease(int eventCount, long expirationTimeMillis) {
+            this.eventCount = new AtomicInteger(eventCount);
+            this.expirationTimeMillis = expirationTimeMillis;
+        }
+
+        private boolean tryTake(long currentTimeMillis) {
+            return currentTimeMillis < expirationTimeMillis && eventCount.getAndDecrement() > 0;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.codeforces.commons.resource;
 
+import com.codeforces.commons.concurrent.StripedLocks;
 import com.codeforces.commons.io.FileUtil;
 import com.codeforces.commons.io.IoUtil;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -17,7 +18,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author Edvard Davtyan
@@ -25,7 +25,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class ResourceUtil {
     private static final Logger logger = Logger.getLogger(ResourceUtil.class);
 
-    private static final ConcurrentMap<File, ReadWriteLock> cacheLockByDirectory = new ConcurrentHashMap<>();
+    private static final StripedLocks cacheLocks = new StripedLocks();
     private static final ConcurrentMap<CacheKey, Boolean> validationResultByCacheKey = new ConcurrentHashMap<>();
 
     @Nonnull
@@ -137,11 +137,7 @@ public class ResourceUtil {
         } else {
             File cacheFile = new File(cacheDirectory, toRelativePath(resource));
 
-            ReadWriteLock cacheLock = cacheLockByDirectory.get(cacheDirectory);
-            if (cacheLock == null) {
-                cacheLockByDirectory.putIfAbsent(cacheDirectory, new ReentrantReadWriteLock());
-                cacheLock = cacheLockByDirectory.get(cacheDirectory);
-            }
+            ReadWriteLock cacheLock = cacheLocks.getReadWriteLock(cacheDirectory);
 
             boolean valid;
 
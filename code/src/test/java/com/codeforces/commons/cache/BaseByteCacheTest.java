@@ -111,6 +111,43 @@ public abstract class BaseByteCacheTest extends TestCase {
         }
     }
 
+    public void testBatchOperations() throws Exception {
+        File tempDir = FileUtil.createTemporaryDirectory("file-system-cache");
+        try {
+            ByteCache cache = newByteCache(tempDir);
+            Random random = new Random();
+
+            Map<String, byte[]> valueByKey = new LinkedHashMap<>();
+            for (int keyIndex = 0; keyIndex < KEY_PER_SECTION_COUNT; ++keyIndex) {
+                byte[] value = new byte[VALUE_LENGTH];
+                random.nextBytes(value);
+                valueByKey.put("key" + keyIndex, value);
+            }
+
+            cache.putAll("testBatchOperations", valueByKey);
+
+            List<String> keys = new ArrayList<>(valueByKey.keySet());
+            keys.add("absentKey");
+
+            Map<String, byte[]> cachedValueByKey = cache.getAll("testBatchOperations", keys);
+            assertEquals("Unexpected number of values.", valueByKey.size(), cachedValueByKey.size());
+            for (Map.Entry<String, byte[]> entry : valueByKey.entrySet()) {
+                Assert.assertArrayEquals(entry.getValue(), cachedValueByKey.get(entry.getKey()));
+            }
+
+            assertEquals(2, cache.removeAll("testBatchOperations", Arrays.asList("key0", "key1", "absentKey")));
+            assertNull(cache.get("testBatchOperations", "key0"));
+            assertEquals(valueByKey.size() - 2, cache.getAll("testBatchOperations", keys).size());
+
+            cache.putAll("testBatchOperations", Collections.singletonMap("key0", new byte[]{1, 2, 3}), 100L);
+            Assert.assertArrayEquals(new byte[]{1, 2, 3}, cache.get("testBatchOperations", "key0"));
+            ThreadUtil.sleep(250L);
+            assertTrue(cache.getAll("testBatchOperations", Collections.singletonList("key0")).isEmpty());
+        } finally {
+            FileUtil.deleteTotally(tempDir);
+        }
+    }
+
     public void testConcurrentStoringOfValuesWithLifetime() throws Exception {
         try {
             internalTestConcurrentStoringOfValuesWithLifetime(VALUE_LIFETIME_MILLIS, VALUE_CHECK_INTERVAL_MILLIS);
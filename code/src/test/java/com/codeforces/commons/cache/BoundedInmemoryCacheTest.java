@@ -0,0 +1,152 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.io.FileUtil;
+import com.codeforces.commons.math.NumberUtil;
+import com.codeforces.commons.process.ThreadUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings({"JUnitTestMethodWithNoAssertions"})
+public class BoundedInmemoryCacheTest {
+    private static final int THREAD_COUNT = 10 * Runtime.getRuntime().availableProcessors();
+    private static final int SLEEPING_THREAD_COUNT = 1000;
+
+    private static final int SECTION_COUNT = 50;
+    private static final int KEY_PER_SECTION_COUNT = 50;
+    private static final int TOTAL_KEY_COUNT = SECTION_COUNT * KEY_PER_SECTION_COUNT;
+
+    private static final long VALUE_LIFETIME_MILLIS = 350L;
+    private static final long VALUE_CHECK_INTERVAL_MILLIS = 250L;
+
+    private static final int VALUE_LENGTH = NumberUtil.toInt(FileUtil.BYTES_PER_KB);
+
+    @Test
+    public void testStoringOfValues() throws Exception {
+        CacheTestUtil.testStoringOfValues(
+                BoundedInmemoryCacheTest.class, BoundedInmemoryCache.newInstance(TOTAL_KEY_COUNT),
+                SECTION_COUNT, KEY_PER_SECTION_COUNT, TOTAL_KEY_COUNT, VALUE_LENGTH
+        );
+    }
+
+    @Test
+    public void testOverridingOfValuesWithLifetime() throws Exception {
+        CacheTestUtil.testOverridingOfValuesWithLifetime(
+                BoundedInmemoryCacheTest.class, BoundedInmemoryCache.newInstance(TOTAL_KEY_COUNT),
+                VALUE_LENGTH
+        );
+    }
+
+    @Test
+    public void testConcurrentStoringOfValues() throws Exception {
+        CacheTestUtil.testConcurrentStoringOfValues(
+                BoundedInmemoryCacheTest.class, BoundedInmemoryCache.newInstance(TOTAL_KEY_COUNT),
+                SECTION_COUNT, KEY_PER_SECTION_COUNT, TOTAL_KEY_COUNT, VALUE_LENGTH, THREAD_COUNT
+        );
+    }
+
+    @Test
+    public void testConcurrentStoringOfValuesWithLifetime() throws Exception {
+        try {
+            CacheTestUtil.testConcurrentStoringOfValuesWithLifetime(
+                    BoundedInmemoryCacheTest.class, BoundedInmemoryCache.newInstance(TOTAL_KEY_COUNT),
+                    SECTION_COUNT, KEY_PER_SECTION_COUNT, TOTAL_KEY_COUNT, VALUE_LENGTH,
+                    SLEEPING_THREAD_COUNT, VALUE_LIFETIME_MILLIS, VALUE_CHECK_INTERVAL_MILLIS
+            );
+        } catch (AssertionError ignoredA) {
+            try {
+                CacheTestUtil.testConcurrentStoringOfValuesWithLifetime(
+                        BoundedInmemoryCacheTest.class, BoundedInmemoryCache.newInstance(TOTAL_KEY_COUNT),
+                        SECTION_COUNT, KEY_PER_SECTION_COUNT, TOTAL_KEY_COUNT, VALUE_LENGTH,
+                        SLEEPING_THREAD_COUNT, VALUE_LIFETIME_MILLIS * 2L, VALUE_CHECK_INTERVAL_MILLIS * 2L
+                );
+            } catch (AssertionError ignoredB) {
+                CacheTestUtil.testConcurrentStoringOfValuesWithLifetime(
+                        BoundedInmemoryCacheTest.class, BoundedInmemoryCache.newInstance(TOTAL_KEY_COUNT),
+                        SECTION_COUNT, KEY_PER_SECTION_COUNT, TOTAL_KEY_COUNT, VALUE_LENGTH,
+                        SLEEPING_THREAD_COUNT, VALUE_LIFETIME_MILLIS * 4L, VALUE_CHECK_INTERVAL_MILLIS * 4L
+                );
+            }
+        }
+    }
+
+    @Test
+    public void testSizeBounds() {
+        BoundedInmemoryCache<String, Integer> cache = BoundedInmemoryCache.newInstance(100L, 30L);
+
+        for (int i = 0; i < 1000; ++i) {
+            cache.put("S" + i % 10, "K" + i, i);
+        }
+
+        Assert.assertTrue("Cache size exceeds the limit.", cache.size() <= 100L);
+
+        for (int i = 0; i < 1000; ++i) {
+            cache.put("S", "K" + i, i);
+        }
+
+        int sectionSize = 0;
+        for (int i = 0; i < 1000; ++i) {
+            if (cache.get("S", "K" + i) != null) {
+                ++sectionSize;
+            }
+        }
+
+        Assert.assertTrue("Section size exceeds the limit.", sectionSize <= 30);
+        Assert.assertTrue("Cache size exceeds the limit.", cache.size() <= 100L);
+    }
+
+    @Test
+    public void testNewEntryIsReadableAfterPut() {
+        BoundedInmemoryCache<String, Integer> cache = BoundedInmemoryCache.newInstance(1000L, 3L);
+
+        for (int i = 0; i < 10; ++i) {
+            cache.put("S", "K" + i, i);
+            Assert.assertEquals(
+                    "New entry has been evicted right after put.", Integer.valueOf(i), cache.get("S", "K" + i)
+            );
+        }
+
+        for (int i = 7; i < 10; ++i) {
+            Assert.assertEquals(
+                    "Recent entry of full section has been evicted.", Integer.valueOf(i), cache.get("S", "K" + i)
+            );
+        }
+
+        Assert.assertNull("Least recently used entry of full section has not been evicted.", cache.get("S", "K0"));
+    }
+
+    @Test
+    public void testFrequentEntriesSurvive() {
+        BoundedInmemoryCache<String, Integer> cache = BoundedInmemoryCache.newInstance(100L);
+
+        for (int i = 0; i < 50; ++i) {
+            cache.put("S", "H" + i, i);
+        }
+
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 50; ++i) {
+                Assert.assertNotNull("Hot entry has been evicted.", cache.get("S", "H" + i));
+            }
+
+            for (int i = 0; i < 100; ++i) {
+                cache.put("S", "C" + round + '-' + i, i);
+            }
+        }
+
+        for (int i = 0; i < 50; ++i) {
+            Assert.assertNotNull("Hot entry has been evicted by one-hit entries.", cache.get("S", "H" + i));
+        }
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() {
+        BoundedInmemoryCache<String, Integer> cache = BoundedInmemoryCache.newInstance(1000L);
+
+        for (int i = 0; i < 100; ++i) {
+            cache.put("S", "K" + i, i, 100L);
+        }
+
+        Assert.assertEquals("Unexpected cache size.", 100L, cache.size());
+        ThreadUtil.sleep(1000L);
+        Assert.assertEquals("Expired entries have not been removed.", 0L, cache.size());
+    }
+}
@@ -1,6 +1,15 @@
 package com.codeforces.commons.cache;
 
+import com.codeforces.commons.compress.CompressionCodecs;
+import com.codeforces.commons.compress.ZipUtil;
+import com.codeforces.commons.io.FileUtil;
+import com.codeforces.commons.math.RandomUtil;
+import org.junit.Assert;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * @author Maxim Shipko (sladethe@gmail.com)
@@ -12,4 +21,39 @@ public class FileSystemByteCacheTest extends BaseByteCacheTest {
     protected ByteCache newByteCache(File tempDir) {
         return new FileSystemByteCache(tempDir, true);
     }
+
+    public void testSectionCodecsAndLegacyValues() throws Exception {
+        File tempDir = FileUtil.createTemporaryDirectory("file-system-cache");
+        try {
+            FileSystemByteCache cache = new FileSystemByteCache(tempDir, CompressionCodecs.LZ4, true, 0L);
+            cache.setSectionCodec("Deflated", CompressionCodecs.DEFLATE);
+            assertSame(CompressionCodecs.LZ4, cache.getSectionCodec("Fast"));
+            assertSame(CompressionCodecs.DEFLATE, cache.getSectionCodec("Deflated"));
+
+            byte[] value = RandomUtil.getRandomBytes(1000);
+            cache.put("Fast", "key", value);
+            cache.put("Deflated", "key", value);
+
+            cache.setSectionCodec("Deflated", null);
+            Assert.assertArrayEquals(value, cache.get("Fast", "key"));
+            Assert.assertArrayEquals("Codec change should not affect stored values.", value, cache.get("Deflated", "key"));
+
+            byte[] packedValue = packLegacyValue(value);
+            Assert.assertArrayEquals(value, FileSystemByteCache.extractValue(packedValue));
+            Assert.assertArrayEquals(value, FileSystemByteCache.extractValue(
+                    ZipUtil.compress(packedValue, ZipUtil.MAXIMAL_COMPRESSION_LEVEL)
+            ));
+        } finally {
+            FileUtil.deleteTotally(tempDir);
+        }
+    }
+
+    /**
+     * Storage format before the codec header.
+     */
+    private static byte[] packLegacyValue(byte[] value) throws IOException {
+        byte[] hashBytes = org.apache.commons.codec.digest.DigestUtils.sha1(value);
+        return ByteBuffer.allocate(4 + hashBytes.length + 8 + value.length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(hashBytes.length).put(hashBytes).putLong(Long.MAX_VALUE).put(value).array();
+    }
 }
@@ -0,0 +1,153 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.io.FileUtil;
+import com.codeforces.commons.math.RandomUtil;
+import com.codeforces.commons.process.ThreadUtil;
+import org.junit.Assert;
+
+import java.io.File;
+import java.io.IOException;
+
+@SuppressWarnings({"JUnitTestMethodWithNoAssertions", "ThrowableResultOfMethodCallIgnored", "ErrorNotRethrown"})
+public class LogStructuredByteCacheTest extends BaseByteCacheTest {
+    @Override
+    protected ByteCache newByteCache(File tempDir) {
+        return new LogStructuredByteCache(new File(tempDir, "segments"), true);
+    }
+
+    public void testReopening() throws IOException {
+        File tempDir = FileUtil.createTemporaryDirectory("log-structured-cache");
+        try {
+            byte[] value = RandomUtil.getRandomBytes(1000);
+
+            LogStructuredByteCache cache = new LogStructuredByteCache(tempDir, false);
+            cache.put("S", "kept", value);
+            cache.put("S", "removed", value);
+            cache.remove("S", "removed");
+            cache.put("S", "overwritten", RandomUtil.getRandomBytes(100));
+            cache.put("S", "overwritten", value);
+            cache.put("S", "expired", value, 1L);
+            cache.put("T", "cleared", value);
+            cache.clearSection("T");
+            ThreadUtil.sleep(10L);
+            cache.close();
+
+            cache = new LogStructuredByteCache(tempDir, false);
+            try {
+                Assert.assertArrayEquals(value, cache.get("S", "kept"));
+                Assert.assertArrayEquals(value, cache.get("S", "overwritten"));
+                Assert.assertNull(cache.get("S", "removed"));
+                Assert.assertNull(cache.get("S", "expired"));
+                Assert.assertNull(cache.get("T", "cleared"));
+            } finally {
+                cache.close();
+            }
+        } finally {
+            FileUtil.deleteTotally(tempDir);
+        }
+    }
+
+    public void testCompactionDropsGarbage() throws IOException {
+        File tempDir = FileUtil.createTemporaryDirectory("log-structured-cache");
+        try {
+            LogStructuredByteCache cache = new LogStructuredByteCache(
+                    tempDir, false, 0L, 64L * FileUtil.BYTES_PER_KB, 0L
+            );
+
+            byte[] value = null;
+            for (int i = 0; i < 1000; ++i) {
+                value = RandomUtil.getRandomBytes(1000);
+                cache.put("S", "K" + i % 10, value);
+                cache.put("S", "R" + i, value);
+                cache.remove("S", "R" + i);
+            }
+
+            long sizeBeforeCompaction = FileUtil.getDirectorySize(tempDir);
+            cache.compact();
+            long sizeAfterCompaction = FileUtil.getDirectorySize(tempDir);
+
+            Assert.assertTrue(String.format(
+                    "Compaction has not reduced size (before=%d, after=%d).", sizeBeforeCompaction, sizeAfterCompaction
+            ), sizeAfterCompaction < sizeBeforeCompaction / 4L);
+            Assert.assertArrayEquals(value, cache.get("S", "K9"));
+            cache.close();
+
+            cache = new LogStructuredByteCache(tempDir, false);
+            try {
+                Assert.assertArrayEquals(value, cache.get("S", "K9"));
+                Assert.assertNull(cache.get("S", "R999"));
+            } finally {
+                cache.close();
+            }
+        } finally {
+            FileUtil.deleteTotally(tempDir);
+        }
+    }
+
+    public void testCompactedClearDoesNotHideLaterValues() throws IOException {
+        File tempDir = FileUtil.createTemporaryDirectory("log-structured-cache");
+        try {
+            LogStructuredByteCache cache = new LogStructuredByteCache(
+                    tempDir, false, 0L, 64L * FileUtil.BYTES_PER_KB, 0L
+            );
+
+            // The first segment stays live, the second one is garbage except the tombstone of the section.
+            byte[] value = RandomUtil.getRandomBytes(1000);
+            for (int i = 0; i < 60; ++i) {
+                cache.put("S", "L" + i, value);
+            }
+            cache.put("T", "old", value);
+
+            for (int i = 0; i < 70; ++i) {
+                cache.put("S", "R" + i, value);
+                cache.remove("S", "R" + i);
+                if (i == 40) {
+                    cache.clearSection("T");
+                }
+            }
+
+            cache.put("T", "new", value);
+            cache.compact();
+            Assert.assertArrayEquals(value, cache.get("T", "new"));
+            cache.close();
+
+            cache = new LogStructuredByteCache(tempDir, false);
+            try {
+                Assert.assertArrayEquals(value, cache.get("T", "new"));
+                Assert.assertArrayEquals(value, cache.get("S", "L59"));
+                Assert.assertNull(cache.get("T", "old"));
+                Assert.assertNull(cache.get("S", "R69"));
+            } finally {
+                cache.close();
+            }
+        } finally {
+            FileUtil.deleteTotally(tempDir);
+        }
+    }
+
+    public void testInterruptedReaderDoesNotBreakCache() throws IOException {
+        File tempDir = FileUtil.createTemporaryDirectory("log-structured-cache");
+        try {
+            LogStructuredByteCache cache = new LogStructuredByteCache(tempDir, false);
+            try {
+                byte[] value = RandomUtil.getRandomBytes(1000);
+                cache.put("S", "K", value);
+
+                Thread.currentThread().interrupt();
+                try {
+                    cache.get("S", "K");
+                } finally {
+                    Assert.assertTrue("Interrupt status has been lost.", Thread.interrupted());
+                }
+
+                Assert.assertArrayEquals(value, cache.get("S", "K"));
+                cache.put("S", "L", value);
+                Assert.assertArrayEquals(value, cache.get("S", "L"));
+            } finally {
+                cache.close();
+            }
+        } finally {
+            FileUtil.deleteTotally(tempDir);
+        }
+    }
+}
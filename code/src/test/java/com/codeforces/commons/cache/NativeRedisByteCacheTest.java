@@ -0,0 +1,83 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.process.ThreadUtil;
+import org.junit.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Runs {@link RedisByteCache} in {@link RedisByteCache.StorageMode#NATIVE native} mode against {@link RedisStandIn}.
+ */
+@SuppressWarnings({"JUnitTestMethodWithNoAssertions", "ThrowableResultOfMethodCallIgnored", "ErrorNotRethrown"})
+public class NativeRedisByteCacheTest extends BaseByteCacheTest {
+    private static RedisStandIn redis;
+
+    private static synchronized RedisStandIn getRedis() {
+        if (redis == null) {
+            try {
+                redis = new RedisStandIn();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return redis;
+    }
+
+    @Override
+    protected ByteCache newByteCache(File tempDir) {
+        return new RedisByteCache(getRedis().getHostAndPort(), RedisByteCache.StorageMode.NATIVE);
+    }
+
+    public void testNativeExpiration() {
+        ByteCache cache = newByteCache(null);
+        try {
+            cache.put("testNativeExpiration", "key", new byte[]{1}, 100L);
+
+            long lifetimeMillis = getRedis().getLifetimeMillis("testNativeExpiration/key");
+            Assert.assertTrue("Redis expiration is not set.", lifetimeMillis > 0L && lifetimeMillis <= 100L);
+            Assert.assertTrue(
+                    "Section index should outlive its keys.",
+                    getRedis().getLifetimeMillis("testNativeExpiration:keys") >= lifetimeMillis
+            );
+
+            ThreadUtil.sleep(250L);
+            Assert.assertEquals(-2L, getRedis().getLifetimeMillis("testNativeExpiration/key"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testAtomicPutIfAbsent() {
+        ByteCache cache = newByteCache(null);
+        try {
+            cache.putIfAbsent("testAtomicPutIfAbsent", "key", new byte[]{1});
+            cache.putIfAbsent("testAtomicPutIfAbsent", "key", new byte[]{2});
+            Assert.assertArrayEquals(new byte[]{1}, cache.get("testAtomicPutIfAbsent", "key"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testClearSection() {
+        ByteCache cache = newByteCache(null);
+        try {
+            for (int i = 0; i < 2500; ++i) {
+                cache.put("testClearSection", "key" + i, new byte[]{(byte) i});
+            }
+            cache.put("testClearSectionKept", "key", new byte[]{1});
+
+            cache.clearSection("testClearSection");
+
+            Assert.assertNull(cache.get("testClearSection", "key0"));
+            Assert.assertNull(cache.get("testClearSection", "key2499"));
+            Assert.assertEquals(-2L, getRedis().getLifetimeMillis("testClearSection:keys"));
+            Assert.assertArrayEquals(new byte[]{1}, cache.get("testClearSectionKept", "key"));
+
+            cache.clearSection("testClearSection");
+        } finally {
+            cache.close();
+        }
+    }
+}
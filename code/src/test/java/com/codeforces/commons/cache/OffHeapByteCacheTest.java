@@ -0,0 +1,58 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.io.FileUtil;
+import com.codeforces.commons.math.RandomUtil;
+import com.google.common.primitives.Ints;
+import org.junit.Assert;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+@SuppressWarnings({"JUnitTestMethodWithNoAssertions", "ThrowableResultOfMethodCallIgnored", "ErrorNotRethrown"})
+public class OffHeapByteCacheTest extends BaseByteCacheTest {
+    @Override
+    protected ByteCache newByteCache(File tempDir) {
+        return new OffHeapByteCache(
+                new File(tempDir, "slabs"), 256L * FileUtil.BYTES_PER_MB, Ints.checkedCast(64L * FileUtil.BYTES_PER_MB)
+        );
+    }
+
+    public void testEvictionWithinMemoryBudget() {
+        OffHeapByteCache cache = new OffHeapByteCache(4L * FileUtil.BYTES_PER_MB, 64 * 1024);
+        try {
+            byte[] hotValue = RandomUtil.getRandomBytes(1000);
+            cache.put("S", "hot", hotValue);
+
+            for (int i = 0; i < 100_000; ++i) {
+                cache.put("S", "K" + i, RandomUtil.getRandomBytes(100 + i % 3000));
+                if (i % 10 == 0) {
+                    Assert.assertArrayEquals("Frequently read value has been evicted.", hotValue, cache.get("S", "hot"));
+                }
+            }
+
+            Assert.assertTrue(cache.getAllocatedMemory() <= cache.getMaxMemory());
+            Assert.assertNotNull("Last value has been evicted.", cache.get("S", "K99999"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testReadValueWithoutCopying() {
+        OffHeapByteCache cache = new OffHeapByteCache(FileUtil.BYTES_PER_MB);
+        try {
+            byte[] value = RandomUtil.getRandomBytes(777);
+            cache.put("S", "K", value);
+
+            Assert.assertEquals(Integer.valueOf(777), cache.readValue("S", "K", ByteBuffer::remaining));
+            Assert.assertTrue(cache.readValue("S", "K", ByteBuffer::isReadOnly));
+            Assert.assertTrue(Arrays.equals(value, cache.get("S", "K")));
+            Assert.assertNull(cache.readValue("S", "L", ByteBuffer::remaining));
+
+            cache.clearSection("S");
+            Assert.assertNull(cache.get("S", "K"));
+        } finally {
+            cache.close();
+        }
+    }
+}
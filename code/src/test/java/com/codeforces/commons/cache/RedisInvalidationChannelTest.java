@@ -0,0 +1,49 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.process.ThreadUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class RedisInvalidationChannelTest {
+    @Test
+    public void testInvalidationsAreDelivered() throws IOException {
+        try (RedisStandIn redis = new RedisStandIn();
+             RedisInvalidationChannel publisher = new RedisInvalidationChannel(redis.getHostAndPort());
+             RedisInvalidationChannel subscriber = new RedisInvalidationChannel(redis.getHostAndPort())) {
+            List<Invalidation> invalidations = new CopyOnWriteArrayList<>();
+            subscriber.subscribe(invalidations::add);
+
+            // Subscription is established asynchronously, so publish until the first invalidation is received.
+            for (int attempt = 0; attempt < 100 && invalidations.isEmpty(); ++attempt) {
+                publisher.publish(Invalidation.ofAll("A"));
+                ThreadUtil.sleep(20L);
+            }
+            Assert.assertFalse("Subscriber hasn't received anything.", invalidations.isEmpty());
+
+            invalidations.clear();
+            publisher.publish(Invalidation.ofKey("A", "S", "K"));
+            publisher.publish(Invalidation.ofSection("B", "S"));
+            publisher.publish(Invalidation.ofKeys("C", "S", Arrays.asList("K1", "K2", "K3")));
+
+            for (int attempt = 0; attempt < 100 && invalidations.size() < 3; ++attempt) {
+                ThreadUtil.sleep(20L);
+            }
+
+            Assert.assertEquals(3, invalidations.size());
+            Assert.assertEquals("A", invalidations.get(0).getOriginId());
+            Assert.assertEquals("S", invalidations.get(0).getSection());
+            Assert.assertEquals(Collections.singletonList("K"), invalidations.get(0).getKeys());
+            Assert.assertEquals("B", invalidations.get(1).getOriginId());
+            Assert.assertEquals("S", invalidations.get(1).getSection());
+            Assert.assertNull(invalidations.get(1).getKeys());
+            Assert.assertEquals("C", invalidations.get(2).getOriginId());
+            Assert.assertEquals(Arrays.asList("K1", "K2", "K3"), invalidations.get(2).getKeys());
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.codeforces.commons.cache;
+
+import com.codeforces.commons.io.IoUtil;
+import com.codeforces.commons.process.ThreadUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Minimal in-process Redis server speaking RESP. Supports only the commands used by {@link RedisByteCache}
+ * and {@link RedisInvalidationChannel}.
+ */
+final class RedisStandIn implements Closeable {
+    private final ServerSocket serverSocket;
+    private final Map<String, Entry> entryByKey = new HashMap<>();
+    private final Map<String, Set<OutputStream>> subscribersByChannel = new HashMap<>();
+
+    RedisStandIn() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        ThreadUtil.newThread("RedisStandIn#AcceptThread", this::acceptConnections, true).start();
+    }
+
+    String getHostAndPort() {
+        return "127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    synchronized int size() {
+        removeExpiredEntries();
+        return entryByKey.size();
+    }
+
+    synchronized long getLifetimeMillis(String key) {
+        Entry entry = getEntry(key);
+        return entry == null ? -2L : entry.expirationTimeMillis == Long.MAX_VALUE
+                ? -1L : entry.expirationTimeMillis - System.currentTimeMillis();
+    }
+
+    @Override
+    public void close() {
+        IoUtil.closeQuietly(serverSocket);
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                ThreadUtil.newThread("RedisStandIn#ConnectionThread", () -> serve(socket), true).start();
+            } catch (IOException ignored) {
+                // Server socket has been closed.
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+             OutputStream outputStream = new SubscriberOutputStream(socket)) {
+            while (true) {
+                List<byte[]> command = readCommand(inputStream);
+                if (command == null) {
+                    return;
+                }
+
+                execute(command, outputStream);
+                if (inputStream.available() == 0) {
+                    outputStream.flush();
+                }
+            }
+        } catch (IOException ignored) {
+            // Connection has been closed.
+        } finally {
+            unsubscribe(socket);
+            IoUtil.closeQuietly(socket);
+        }
+    }
+
+    private synchronized void unsubscribe(Socket socket) {
+        for (Set<OutputStream> subscribers : subscribersByChannel.values()) {
+            subscribers.removeIf(subscriber -> ((SubscriberOutputStream) subscriber).socket == socket);
+        }
+    }
+
+    private synchronized void execute(List<byte[]> command, OutputStream outputStream) throws IOException {
+        removeExpiredEntries();
+
+        String name = toString(command.get(0)).toUpperCase(Locale.ENGLISH);
+        switch (name) {
+            case "PING":
+                writeSimpleString(outputStream, "PONG");
+                break;
+            case "SET":
+                executeSet(command, outputStream);
+                break;
+            case "GET": {
+                Entry entry = getEntry(toString(command.get(1)));
+                writeBulkString(outputStream, entry == null ? null : entry.value);
+                break;
+            }
+            case "MGET":
+                writeArrayHeader(outputStream, command.size() - 1);
+                for (int i = 1; i < command.size(); ++i) {
+                    Entry entry = getEntry(toString(command.get(i)));
+                    writeBulkString(outputStream, entry == null ? null : entry.value);
+                }
+                break;
+            case "EXISTS": {
+                int count = 0;
+                for (int i = 1; i < command.size(); ++i) {
+                    count += getEntry(toString(command.get(i))) == null ? 0 : 1;
+                }
+                writeInteger(outputStream, count);
+                break;
+            }
+            case "DEL":
+            case "UNLINK": {
+                int count = 0;
+                for (int i = 1; i < command.size(); ++i) {
+                    count += entryByKey.remove(toString(command.get(i))) == null ? 0 : 1;
+                }
+                writeInteger(outputStream, count);
+                break;
+            }
+            case "SADD":
+            case "SREM": {
+                String key = toString(command.get(1));
+                Entry entry = getEntry(key);
+                if (entry == null) {
+                    entry = new Entry(null, new LinkedHashSet<>(), Long.MAX_VALUE);
+                    entryByKey.put(key, entry);
+                }
+
+                int count = 0;
+                for (int i = 2; i < command.size(); ++i) {
+                    String member = toString(command.get(i));
+                    count += ("SADD".equals(name) ? entry.members.add(member) : entry.members.remove(member)) ? 1 : 0;
+                }
+
+                if (entry.members.isEmpty()) {
+                    entryByKey.remove(key);
+                }
+                writeInteger(outputStream, count);
+                break;
+            }
+            case "SMEMBERS": {
+                Entry entry = getEntry(toString(command.get(1)));
+                Set<String> members = entry == null ? new LinkedHashSet<>() : entry.members;
+                writeArrayHeader(outputStream, members.size());
+                for (String member : members) {
+                    writeBulkString(outputStream, member.getBytes(StandardCharsets.ISO_8859_1));
+                }
+                break;
+            }
+            case "PTTL":
+                writeInteger(outputStream, getLifetimeMillis(toString(command.get(1))));
+                break;
+            case "PEXPIRE": {
+                Entry entry = getEntry(toString(command.get(1)));
+                if (entry != null) {
+                    entry.expirationTimeMillis = System.currentTimeMillis() + Long.parseLong(toString(command.get(2)));
+                }
+                writeInteger(outputStream, entry == null ? 0 : 1);
+                break;
+            }
+            case "RENAME": {
+                Entry entry = entryByKey.remove(toString(command.get(1)));
+                if (entry == null) {
+                    writeError(outputStream, "ERR no such key");
+                } else {
+                    entryByKey.put(toString(command.get(2)), entry);
+                    writeSimpleString(outputStream, "OK");
+                }
+                break;
+            }
+            case "SUBSCRIBE":
+            case "UNSUBSCRIBE":
+                for (int i = 1; i < command.size(); ++i) {
+                    String channel = toString(command.get(i));
+                    Set<OutputStream> subscribers = subscribersByChannel.computeIfAbsent(
+                            channel, c -> new LinkedHashSet<>()
+                    );
+                    int count;
+                    if ("SUBSCRIBE".equals(name)) {
+                        subscribers.add(outputStream);
+                        count = 1;
+                    } else {
+                        subscribers.remove(outputStream);
+                        count = 0;
+                    }
+
+                    writeArrayHeader(outputStream, 3);
+                    writeBulkString(outputStream, name.toLowerCase(Locale.ENGLISH).getBytes(StandardCharsets.ISO_8859_1));
+                    writeBulkString(outputStream, command.get(i));
+                    writeInteger(outputStream, count);
+                }
+                break;
+            case "PUBLISH": {
+                Set<OutputStream> subscribers = subscribersByChannel.get(toString(command.get(1)));
+                int count = 0;
+                if (subscribers != null) {
+                    for (OutputStream subscriber : subscribers) {
+                        writeArrayHeader(subscriber, 3);
+                        writeBulkString(subscriber, "message".getBytes(StandardCharsets.ISO_8859_1));
+                        writeBulkString(subscriber, command.get(1));
+                        writeBulkString(subscriber, command.get(2));
+                        subscriber.flush();
+                        ++count;
+                    }
+                }
+                writeInteger(outputStream, count);
+                break;
+            }
+            case "FLUSHALL":
+            case "FLUSHDB":
+                entryByKey.clear();
+                writeSimpleString(outputStream, "OK");
+                break;
+            default:
+                writeError(outputStream, "ERR unknown command '" + name + '\'');
+        }
+    }
+
+    private void executeSet(List<byte[]> command, OutputStream outputStream) throws IOException {
+        String key = toString(command.get(1));
+        long expirationTimeMillis = Long.MAX_VALUE;
+        boolean onlyIfAbsent = false;
+
+        for (int i = 3; i < command.size(); ++i) {
+            String option = toString(command.get(i)).toUpperCase(Locale.ENGLISH);
+            if ("PX".equals(option)) {
+                expirationTimeMillis = System.currentTimeMillis() + Long.parseLong(toString(command.get(++i)));
+            } else if ("NX".equals(option)) {
+                onlyIfAbsent = true;
+            } else {
+                writeError(outputStream, "ERR syntax error");
+                return;
+            }
+        }
+
+        if (onlyIfAbsent && getEntry(key) != null) {
+            writeBulkString(outputStream, null);
+        } else {
+            entryByKey.put(key, new Entry(command.get(2), null, expirationTimeMillis));
+            writeSimpleString(outputStream, "OK");
+        }
+    }
+
+    private Entry getEntry(String key) {
+        Entry entry = entryByKey.get(key);
+        if (entry != null && entry.expirationTimeMillis <= System.currentTimeMillis()) {
+            entryByKey.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void removeExpiredEntries() {
+        long currentTimeMillis = System.currentTimeMillis();
+        entryByKey.values().removeIf(entry -> entry.expirationTimeMillis <= currentTimeMillis);
+    }
+
+    private static List<byte[]> readCommand(InputStream inputStream) throws IOException {
+        int marker = inputStream.read();
+        if (marker == -1) {
+            return null;
+        }
+
+        if (marker != '*') {
+            throw new IOException("Unexpected marker '" + (char) marker + "'.");
+        }
+
+        int argumentCount = Integer.parseInt(readLine(inputStream));
+        List<byte[]> arguments = new ArrayList<>(argumentCount);
+
+        for (int i = 0; i < argumentCount; ++i) {
+            if (inputStream.read() != '$') {
+                throw new IOException("Bulk string expected.");
+            }
+
+            byte[] argument = new byte[Integer.parseInt(readLine(inputStream))];
+            for (int offset = 0; offset < argument.length; ) {
+                int count = inputStream.read(argument, offset, argument.length - offset);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                offset += count;
+            }
+
+            readLine(inputStream);
+            arguments.add(argument);
+        }
+
+        return arguments;
+    }
+
+    private static String readLine(InputStream inputStream) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = inputStream.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            line.append((char) c);
+        }
+        inputStream.read();
+        return line.toString();
+    }
+
+    private static String toString(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeSimpleString(OutputStream outputStream, String s) throws IOException {
+        outputStream.write(('+' + s + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void writeError(OutputStream outputStream, String message) throws IOException {
+        outputStream.write(('-' + message + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void writeInteger(OutputStream outputStream, long value) throws IOException {
+        outputStream.write((":" + value + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void writeArrayHeader(OutputStream outputStream, int size) throws IOException {
+        outputStream.write(("*" + size + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void writeBulkString(OutputStream outputStream, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            outputStream.write("$-1\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            outputStream.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            outputStream.write(bytes);
+            outputStream.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    private static final class SubscriberOutputStream extends BufferedOutputStream {
+        private final Socket socket;
+
+        private SubscriberOutputStream(Socket socket) throws IOException {
+            super(socket.getOutputStream());
+            this.socket = socket;
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] value;
+        private final Set<String> members;
+        private long expirationTimeMillis;
+
+        private Entry(byte[] value, Set<String> members, long expirationTimeMillis) {
+            this.value = value;
+            this.members = members;
+            this.expirationTimeMillis = expirationTimeMillis;
+        }
+    }
+}
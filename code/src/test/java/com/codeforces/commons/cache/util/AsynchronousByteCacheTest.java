@@ -0,0 +1,161 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.cache.InmemoryByteCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsynchronousByteCacheTest {
+    @Test
+    public void testPendingWritesAreCollapsedAndBatched() throws InterruptedException {
+        BlockingByteCache delegate = new BlockingByteCache();
+        AsynchronousByteCache cache = Caches.newWriteBehindByteCache(
+                delegate, 100, 1, 100, AsynchronousByteCache.OverflowPolicy.DROP_NEWEST
+        );
+
+        cache.put("S", "first", new byte[]{0});
+        delegate.awaitBlocked();
+
+        for (int i = 1; i <= 10; ++i) {
+            cache.put("S", "K", new byte[]{(byte) i});
+            cache.put("S", "K" + i, new byte[]{(byte) i});
+        }
+
+        Assert.assertEquals(11, cache.getQueueSize());
+        Assert.assertEquals(9L, cache.getCollapsedWriteCount());
+        Assert.assertArrayEquals("Pending value should be visible.", new byte[]{10}, cache.get("S", "K"));
+
+        delegate.release();
+        cache.close();
+
+        Assert.assertArrayEquals(new byte[]{10}, delegate.get("S", "K"));
+        Assert.assertArrayEquals(new byte[]{5}, delegate.get("S", "K5"));
+        Assert.assertEquals(0L, cache.getDroppedWriteCount());
+        Assert.assertEquals("Pending writes should be flushed in one batch.", 2, delegate.batchSizes.size());
+        Assert.assertEquals(11, (int) delegate.batchSizes.get(1));
+    }
+
+    @Test
+    public void testRemoveDiscardsPendingWrite() throws InterruptedException {
+        BlockingByteCache delegate = new BlockingByteCache();
+        AsynchronousByteCache cache = Caches.newWriteBehindByteCache(
+                delegate, 10, AsynchronousByteCache.OverflowPolicy.DROP_NEWEST
+        );
+
+        cache.put("S", "first", new byte[]{0});
+        delegate.awaitBlocked();
+
+        cache.put("S", "K", new byte[]{1});
+        cache.remove("S", "K");
+
+        delegate.release();
+        cache.close();
+
+        Assert.assertNull(delegate.get("S", "K"));
+    }
+
+    @Test
+    public void testRemoveSupersedesWriteBeingFlushed() throws InterruptedException {
+        BlockingByteCache delegate = new BlockingByteCache();
+        AsynchronousByteCache cache = Caches.newWriteBehindByteCache(
+                delegate, 10, AsynchronousByteCache.OverflowPolicy.DROP_NEWEST
+        );
+
+        cache.put("S", "K", new byte[]{1});
+        delegate.awaitBlocked();
+        Assert.assertArrayEquals("Value being flushed should be visible.", new byte[]{1}, cache.get("S", "K"));
+
+        CountDownLatch removedLatch = new CountDownLatch(1);
+        Thread remover = new Thread(() -> {
+            cache.remove("S", "K");
+            removedLatch.countDown();
+        });
+        remover.start();
+
+        Assert.assertFalse("Removal should wait for the write being flushed.",
+                removedLatch.await(100L, TimeUnit.MILLISECONDS));
+
+        delegate.release();
+        remover.join();
+        cache.close();
+
+        Assert.assertNull(delegate.get("S", "K"));
+    }
+
+    @Test
+    public void testOverflowPolicies() throws InterruptedException {
+        Assert.assertArrayEquals(new boolean[]{true, true, false}, testOverflowPolicy(
+                AsynchronousByteCache.OverflowPolicy.DROP_NEWEST, 1L
+        ));
+        Assert.assertArrayEquals(new boolean[]{false, true, true}, testOverflowPolicy(
+                AsynchronousByteCache.OverflowPolicy.DROP_OLDEST, 1L
+        ));
+        Assert.assertArrayEquals(new boolean[]{true, true, true}, testOverflowPolicy(
+                AsynchronousByteCache.OverflowPolicy.CALLER_RUNS, 0L
+        ));
+    }
+
+    private static boolean[] testOverflowPolicy(
+            AsynchronousByteCache.OverflowPolicy overflowPolicy, long expectedDroppedWriteCount)
+            throws InterruptedException {
+        BlockingByteCache delegate = new BlockingByteCache();
+        AsynchronousByteCache cache = Caches.newWriteBehindByteCache(delegate, 2, 1, 10, overflowPolicy);
+
+        cache.put("S", "first", new byte[]{0});
+        delegate.awaitBlocked();
+
+        cache.put("S", "A", new byte[]{1});
+        cache.put("S", "B", new byte[]{2});
+        cache.put("S", "C", new byte[]{3});
+
+        Assert.assertEquals(expectedDroppedWriteCount, cache.getDroppedWriteCount());
+        Assert.assertEquals(2, cache.getQueueSize());
+
+        delegate.release();
+        cache.close();
+
+        return new boolean[]{delegate.contains("S", "A"), delegate.contains("S", "B"), delegate.contains("S", "C")};
+    }
+
+    /**
+     * Blocks the first batch write until {@link #release()} is called.
+     */
+    private static final class BlockingByteCache extends InmemoryByteCache {
+        private final CountDownLatch blockedLatch = new CountDownLatch(1);
+        private final CountDownLatch releaseLatch = new CountDownLatch(1);
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+            batchSizes.add(valueByKey.size());
+
+            blockedLatch.countDown();
+            try {
+                releaseLatch.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+
+            super.putAll(section, valueByKey);
+        }
+
+        private void awaitBlocked() throws InterruptedException {
+            blockedLatch.await();
+        }
+
+        private void release() {
+            releaseLatch.countDown();
+        }
+
+        @Override
+        public void close() {
+            // Values are checked after closing the asynchronous cache.
+        }
+    }
+}
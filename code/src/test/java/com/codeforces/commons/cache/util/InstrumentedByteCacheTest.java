@@ -0,0 +1,102 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.cache.BoundedInmemoryCache;
+import com.codeforces.commons.cache.ByteCache;
+import com.codeforces.commons.cache.Cache;
+import com.codeforces.commons.cache.InmemoryByteCache;
+import com.codeforces.commons.cache.InmemoryCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class InstrumentedByteCacheTest {
+    @Test
+    public void testCounters() {
+        CacheMetrics metrics = new CacheMetrics();
+        ByteCache cache = Caches.newInstrumentedByteCache(new InmemoryByteCache(), metrics);
+
+        cache.put("S", "A", new byte[]{1});
+        cache.putAll("S", Collections.singletonMap("B", new byte[]{2}));
+        cache.put("T", "A", new byte[]{3}, 10_000L);
+
+        Assert.assertArrayEquals(new byte[]{1}, cache.get("S", "A"));
+        Assert.assertNull(cache.get("S", "C"));
+        Assert.assertEquals(2, cache.getAll("S", Arrays.asList("A", "B", "C")).size());
+
+        Assert.assertTrue(cache.remove("S", "A"));
+        Assert.assertFalse(cache.remove("S", "A"));
+        cache.clearSection("T");
+
+        CacheMetrics.SectionSnapshot snapshot = metrics.getSectionSnapshot("S");
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(3L, snapshot.getHitCount());
+        Assert.assertEquals(2L, snapshot.getMissCount());
+        Assert.assertEquals(0.6D, snapshot.getHitRatio(), 1.0E-9D);
+        Assert.assertEquals(2L, snapshot.getPutCount());
+        Assert.assertEquals(1L, snapshot.getRemoveCount());
+        Assert.assertEquals(3L, snapshot.getGetLatency().getCount());
+        Assert.assertEquals(2L, snapshot.getPutLatency().getCount());
+        Assert.assertEquals(2L, snapshot.getRemoveLatency().getCount());
+        Assert.assertTrue(snapshot.getGetLatency().getMaxNanos() >= snapshot.getGetLatency().getMedianNanos());
+
+        Assert.assertEquals(Arrays.asList("S", "T"), Arrays.asList(metrics.getSnapshot().keySet().toArray()));
+        Assert.assertEquals(1L, metrics.getSnapshot().get("T").getClearCount());
+        Assert.assertNull(metrics.getSectionSnapshot("U"));
+    }
+
+    @Test
+    public void testGenericCache() {
+        CacheMetrics metrics = new CacheMetrics();
+        Cache<Integer, String> cache = Caches.newInstrumentedCache(InmemoryCache.newInstance(), metrics);
+
+        cache.put("S", 1, "one");
+        Assert.assertEquals("one", cache.get("S", 1));
+        Assert.assertNull(cache.get("S", 2));
+
+        CacheMetrics.SectionSnapshot snapshot = metrics.getSectionSnapshot("S");
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(1L, snapshot.getHitCount());
+        Assert.assertEquals(1L, snapshot.getMissCount());
+        Assert.assertEquals(1L, snapshot.getPutCount());
+    }
+
+    @Test
+    public void testEvictionsOfBoundedCache() {
+        CacheMetrics metrics = new CacheMetrics();
+        Cache<Integer, String> cache = Caches.newInstrumentedCache(BoundedInmemoryCache.newInstance(100L, 3L), metrics);
+
+        for (int i = 0; i < 10; ++i) {
+            cache.put("S", i, "value" + i);
+        }
+        cache.put("T", 0, "value");
+
+        CacheMetrics.SectionSnapshot snapshot = metrics.getSectionSnapshot("S");
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(10L, snapshot.getPutCount());
+        Assert.assertEquals(7L, snapshot.getEvictionCount());
+        Assert.assertEquals(0L, metrics.getSnapshot().get("T").getEvictionCount());
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        for (long nanos = 0L; nanos < 1_000_000L; nanos = nanos * 5 / 4 + 1) {
+            long upperBound = LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucketIndex(nanos));
+            Assert.assertTrue("Bucket doesn't contain " + nanos + '.', upperBound >= nanos);
+            Assert.assertTrue("Bucket of " + nanos + " is too wide.", upperBound <= nanos + nanos / 8);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(i * 1000L);
+        }
+
+        CacheMetrics.LatencySnapshot snapshot = histogram.getSnapshot();
+        Assert.assertEquals(100L, snapshot.getCount());
+        Assert.assertEquals(50_500L, snapshot.getMeanNanos());
+        Assert.assertEquals(50_000.0D, snapshot.getMedianNanos(), 50_000.0D / 8);
+        Assert.assertEquals(99_000.0D, snapshot.getPercentile99Nanos(), 99_000.0D / 8);
+        Assert.assertEquals(100_000.0D, snapshot.getMaxNanos(), 100_000.0D / 8);
+    }
+}
@@ -0,0 +1,145 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.cache.ByteCache;
+import com.codeforces.commons.cache.InProcessInvalidationChannel;
+import com.codeforces.commons.cache.InmemoryByteCache;
+import com.codeforces.commons.cache.Invalidation;
+import com.codeforces.commons.cache.InvalidationChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LocalAndRemoteByteCacheTest {
+    @Test
+    public void testGetAllFetchesOnlyLocalMisses() {
+        List<Collection<String>> remoteRequests = new ArrayList<>();
+
+        ByteCache localCache = new InmemoryByteCache();
+        ByteCache remoteCache = new InmemoryByteCache() {
+            @Nonnull
+            @Override
+            public Map<String, byte[]> getAll(@Nonnull String section, @Nonnull Collection<String> keys) {
+                remoteRequests.add(new ArrayList<>(keys));
+                return super.getAll(section, keys);
+            }
+        };
+
+        localCache.put("S", "A", new byte[]{1});
+        remoteCache.put("S", "B", new byte[]{2});
+        remoteCache.put("S", "C", new byte[]{3});
+
+        ByteCache cache = Caches.newLocalAndRemoteByteCache(localCache, remoteCache);
+        Map<String, byte[]> valueByKey = cache.getAll("S", Arrays.asList("A", "B", "C", "D"));
+
+        Assert.assertEquals(Arrays.asList("A", "B", "C"), new ArrayList<>(valueByKey.keySet()));
+        Assert.assertEquals(1, remoteRequests.size());
+        Assert.assertEquals(Arrays.asList("B", "C", "D"), remoteRequests.get(0));
+        Assert.assertArrayEquals(new byte[]{3}, localCache.get("S", "C"));
+
+        cache.getAll("S", Arrays.asList("A", "B", "C"));
+        Assert.assertEquals("Local hits should not be requested remotely.", 1, remoteRequests.size());
+    }
+
+    @Test
+    public void testGetAllStoresRemoteValuesLocallyWithLifetime() {
+        List<Long> localLifetimes = new ArrayList<>();
+
+        ByteCache localCache = new InmemoryByteCache() {
+            @Override
+            public void putAll(@Nonnull String section, @Nonnull Map<String, byte[]> valueByKey) {
+                throw new AssertionError("Remote values should not be stored locally forever.");
+            }
+
+            @Override
+            public void putAll(
+                    @Nonnull String section, @Nonnull Map<String, byte[]> valueByKey, long lifetimeMillis) {
+                localLifetimes.add(lifetimeMillis);
+                super.putAll(section, valueByKey, lifetimeMillis);
+            }
+        };
+        ByteCache remoteCache = new InmemoryByteCache();
+        remoteCache.put("S", "A", new byte[]{1});
+
+        ByteCache cache = Caches.newLocalAndRemoteByteCache(localCache, remoteCache);
+        Assert.assertEquals(1, cache.getAll("S", Arrays.asList("A", "B")).size());
+
+        Assert.assertEquals(1, localLifetimes.size());
+        Assert.assertTrue(localLifetimes.get(0) < Long.MAX_VALUE);
+        Assert.assertArrayEquals(new byte[]{1}, localCache.get("S", "A"));
+    }
+
+    @Test
+    public void testChangesInvalidateOtherLocalCaches() {
+        InvalidationChannel channel = new InProcessInvalidationChannel();
+        ByteCache remoteCache = new InmemoryByteCache();
+        ByteCache localCacheA = new InmemoryByteCache();
+        ByteCache localCacheB = new InmemoryByteCache();
+
+        ByteCache cacheA = Caches.newLocalAndRemoteByteCache(localCacheA, remoteCache, channel);
+        ByteCache cacheB = Caches.newLocalAndRemoteByteCache(localCacheB, remoteCache, channel);
+
+        cacheA.put("S", "K", new byte[]{1});
+        Assert.assertArrayEquals(new byte[]{1}, cacheB.get("S", "K"));
+        Assert.assertArrayEquals(new byte[]{1}, localCacheB.get("S", "K"));
+
+        cacheA.put("S", "K", new byte[]{2});
+        Assert.assertArrayEquals("Own local copy is kept.", new byte[]{2}, localCacheA.get("S", "K"));
+        Assert.assertNull("Stale local copy is dropped.", localCacheB.get("S", "K"));
+        Assert.assertArrayEquals(new byte[]{2}, cacheB.get("S", "K"));
+
+        cacheA.remove("S", "K");
+        Assert.assertNull(cacheB.get("S", "K"));
+
+        cacheB.put("S", "K1", new byte[]{1});
+        cacheB.put("T", "K2", new byte[]{2});
+        Assert.assertArrayEquals(new byte[]{1}, cacheA.get("S", "K1"));
+        Assert.assertArrayEquals(new byte[]{2}, cacheA.get("T", "K2"));
+
+        cacheB.clearSection("S");
+        Assert.assertNull(localCacheA.get("S", "K1"));
+        Assert.assertArrayEquals(new byte[]{2}, localCacheA.get("T", "K2"));
+    }
+
+    @Test
+    public void testBatchChangesArePublishedOnce() {
+        List<Invalidation> invalidations = new ArrayList<>();
+        InvalidationChannel channel = new InProcessInvalidationChannel() {
+            @Override
+            public void publish(@Nonnull Invalidation invalidation) {
+                invalidations.add(invalidation);
+                super.publish(invalidation);
+            }
+        };
+
+        ByteCache remoteCache = new InmemoryByteCache();
+        ByteCache localCacheB = new InmemoryByteCache();
+        ByteCache cacheA = Caches.newLocalAndRemoteByteCache(new InmemoryByteCache(), remoteCache, channel);
+        ByteCache cacheB = Caches.newLocalAndRemoteByteCache(localCacheB, remoteCache, channel);
+
+        Map<String, byte[]> valueByKey = new LinkedHashMap<>();
+        valueByKey.put("K1", new byte[]{1});
+        valueByKey.put("K2", new byte[]{2});
+        valueByKey.put("K3", new byte[]{3});
+        cacheA.putAll("S", valueByKey);
+        Assert.assertEquals(1, invalidations.size());
+        Assert.assertEquals(Arrays.asList("K1", "K2", "K3"), invalidations.get(0).getKeys());
+
+        Assert.assertEquals(3, cacheB.getAll("S", valueByKey.keySet()).size());
+        cacheA.removeAll("S", Arrays.asList("K1", "K2"));
+        Assert.assertEquals(2, invalidations.size());
+        Assert.assertNull(localCacheB.get("S", "K1"));
+        Assert.assertNull(localCacheB.get("S", "K2"));
+        Assert.assertArrayEquals(new byte[]{3}, localCacheB.get("S", "K3"));
+
+        cacheA.removeAll("S", Collections.emptyList());
+        Assert.assertEquals("Empty batch is not published.", 2, invalidations.size());
+    }
+}
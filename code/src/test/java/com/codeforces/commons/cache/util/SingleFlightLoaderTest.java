@@ -0,0 +1,101 @@
+package com.codeforces.commons.cache.util;
+
+import com.codeforces.commons.cache.ByteCache;
+import com.codeforces.commons.cache.InmemoryByteCache;
+import com.codeforces.commons.process.ThreadUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightLoaderTest {
+    private static final int THREAD_COUNT = 16;
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        SingleFlightLoader<String, byte[]> loader = Caches.newSingleFlightLoader(
+                Caches.newSilentByteCache(new InmemoryByteCache())
+        );
+
+        AtomicInteger loadCount = new AtomicInteger();
+        CountDownLatch startLatch = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < THREAD_COUNT; ++i) {
+                futures.add(executorService.submit(() -> {
+                    startLatch.await();
+                    return loader.getOrLoad("S", "K", (section, key) -> {
+                        loadCount.incrementAndGet();
+                        ThreadUtil.sleep(200L);
+                        return new byte[]{42};
+                    }, 10_000L);
+                }));
+            }
+
+            startLatch.countDown();
+            for (Future<byte[]> future : futures) {
+                Assert.assertArrayEquals(new byte[]{42}, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        Assert.assertEquals("Loader should be invoked once.", 1, loadCount.get());
+        Assert.assertArrayEquals(new byte[]{42}, loader.getCache().get("S", "K"));
+    }
+
+    @Test
+    public void testFailureIsPropagatedToWaiters() {
+        SingleFlightLoader<String, byte[]> loader = Caches.newSingleFlightLoader(new InmemoryByteCache());
+
+        try {
+            loader.getOrLoad("S", "K", (section, key) -> {
+                throw new IOException("Unavailable.");
+            }, 1000L);
+            Assert.fail("Exception expected.");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+
+        Assert.assertNull(loader.getCache().get("S", "K"));
+    }
+
+    @Test
+    public void testStaleValueIsServedWhileRefreshing() {
+        ByteCache cache = new InmemoryByteCache();
+        SingleFlightLoader<String, byte[]> loader = Caches.newSingleFlightLoader(cache, 0.5D, 10_000L);
+        AtomicInteger version = new AtomicInteger();
+        CountDownLatch refreshLatch = new CountDownLatch(1);
+
+        SingleFlightLoader.Loader<String, byte[]> versionLoader = (section, key) -> {
+            if (version.get() > 0) {
+                refreshLatch.await();
+            }
+            return new byte[]{(byte) version.incrementAndGet()};
+        };
+
+        Assert.assertArrayEquals(new byte[]{1}, loader.getOrLoad("S", "K", versionLoader, 200L));
+        ThreadUtil.sleep(300L);
+
+        // Value is stale: it is returned and the refresh is started in background.
+        Assert.assertArrayEquals(new byte[]{1}, loader.getOrLoad("S", "K", versionLoader, 200L));
+        Assert.assertArrayEquals(new byte[]{1}, loader.getOrLoad("S", "K", versionLoader, 200L));
+
+        refreshLatch.countDown();
+        for (int attempt = 0; attempt < 50 && cache.get("S", "K")[0] != 2; ++attempt) {
+            ThreadUtil.sleep(20L);
+        }
+
+        Assert.assertArrayEquals(new byte[]{2}, loader.getOrLoad("S", "K", versionLoader, 200L));
+        Assert.assertEquals("Refresh should be invoked once.", 2, version.get());
+    }
+}
@@ -0,0 +1,130 @@
+package com.codeforces.commons.compress;
+
+import com.codeforces.commons.math.RandomUtil;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class CompressionCodecsTest extends TestCase {
+    private static final CompressionCodec[] CODECS = {
+            CompressionCodecs.NONE, CompressionCodecs.DEFLATE, CompressionCodecs.newDeflateCodec(1),
+            CompressionCodecs.LZMA, CompressionCodecs.LZ4, CompressionCodecs.SNAPPY
+    };
+
+    public void testEncodeDecode() throws IOException {
+        for (byte[] bytes : getSamples()) {
+            for (CompressionCodec codec : CODECS) {
+                byte[] encodedBytes = CompressionCodecs.encode(codec, bytes);
+                assertTrue(CompressionCodecs.isEncoded(encodedBytes));
+                assertArrayEquals(codec + " should restore " + bytes.length + " bytes.",
+                        bytes, CompressionCodecs.decode(encodedBytes));
+            }
+        }
+    }
+
+    public void testLz4Ratio() throws IOException {
+        byte[] bytes = StringUtils.repeat("Accepted on test 1\n", 10_000).getBytes(StandardCharsets.UTF_8);
+        byte[] encodedBytes = CompressionCodecs.encode(CompressionCodecs.LZ4, bytes);
+        assertTrue(encodedBytes.length < bytes.length / 50);
+
+        byte[] randomBytes = RandomUtil.getRandomBytes(100_000);
+        encodedBytes = CompressionCodecs.encode(CompressionCodecs.LZ4, randomBytes);
+        assertTrue(encodedBytes.length <= randomBytes.length + randomBytes.length / 255 + 24);
+    }
+
+    public void testMalformedData() {
+        byte[] bytes = StringUtils.repeat("abcdefgh", 1000).getBytes(StandardCharsets.UTF_8);
+
+        for (CompressionCodec codec : new CompressionCodec[]{CompressionCodecs.DEFLATE, CompressionCodecs.LZ4}) {
+            try {
+                byte[] encodedBytes = CompressionCodecs.encode(codec, bytes);
+                CompressionCodecs.decode(Arrays.copyOf(encodedBytes, encodedBytes.length / 2));
+                fail(codec + " should reject truncated data.");
+            } catch (IOException ignored) {
+                // Expected.
+            }
+        }
+
+        try {
+            CompressionCodecs.decode(new byte[]{(byte) 0xFF, 1, 2, 3});
+            fail("Unknown codec should be rejected.");
+        } catch (IOException ignored) {
+            // Expected.
+        }
+    }
+
+    public void testRegistry() {
+        assertSame(CompressionCodecs.LZ4, CompressionCodecs.getCodec("LZ4"));
+        assertSame(CompressionCodecs.DEFLATE, CompressionCodecs.getCodec(CompressionCodecs.DEFLATE.getId()));
+        assertNull(CompressionCodecs.getCodec(CompressionCodecs.MAX_CODEC_ID));
+
+        try {
+            CompressionCodecs.register(new FakeCodec(CompressionCodecs.LZ4.getId()));
+            fail("Identifier of another codec should not be reused.");
+        } catch (IllegalArgumentException ignored) {
+            // Expected.
+        }
+
+        try {
+            CompressionCodecs.register(new FakeCodec(CompressionCodecs.MIN_CUSTOM_CODEC_ID - 1));
+            fail("Identifiers of built-in codecs should be reserved.");
+        } catch (IllegalArgumentException ignored) {
+            // Expected.
+        }
+        assertNull(CompressionCodecs.getCodec(CompressionCodecs.MIN_CUSTOM_CODEC_ID - 1));
+
+        FakeCodec customCodec = new FakeCodec(CompressionCodecs.MIN_CUSTOM_CODEC_ID + 1);
+        CompressionCodecs.register(customCodec);
+        assertSame(customCodec, CompressionCodecs.getCodec(CompressionCodecs.MIN_CUSTOM_CODEC_ID + 1));
+    }
+
+    private static byte[][] getSamples() {
+        byte[] repeated = new byte[70_000];
+        Arrays.fill(repeated, (byte) 'x');
+
+        byte[] mixed = new byte[200_000];
+        for (int i = 0; i < mixed.length; ++i) {
+            mixed[i] = (byte) (i % 1000 < 500 ? i % 7 : RandomUtil.getRandomInt(256));
+        }
+
+        return new byte[][]{
+                new byte[0], new byte[]{42}, "abcdabcdabcdabcd".getBytes(StandardCharsets.UTF_8),
+                RandomUtil.getRandomBytes(12), RandomUtil.getRandomBytes(13), RandomUtil.getRandomBytes(5000),
+                repeated, mixed,
+                StringUtils.repeat("codeforces ", 20_000).getBytes(StandardCharsets.UTF_8)
+        };
+    }
+
+    private static final class FakeCodec implements CompressionCodec {
+        private final int id;
+
+        private FakeCodec(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return "fake" + id;
+        }
+
+        @Override
+        public byte[] compress(byte[] bytes, int offset, int length) {
+            return bytes;
+        }
+
+        @Override
+        public byte[] decompress(byte[] bytes, int offset, int length) {
+            return bytes;
+        }
+    }
+}
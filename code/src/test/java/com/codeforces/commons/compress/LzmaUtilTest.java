@@ -0,0 +1,120 @@
+package com.codeforces.commons.compress;
+
+import com.codeforces.commons.math.RandomUtil;
+import junit.framework.TestCase;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class LzmaUtilTest extends TestCase {
+    public void testStreamCompression() throws IOException {
+        for (byte[] bytes : getSamples()) {
+            ByteArrayOutputStream compressedOut = new ByteArrayOutputStream();
+            LzmaUtil.compress(new ByteArrayInputStream(bytes), compressedOut, LzmaUtil.MIN_DICTIONARY_SIZE);
+            byte[] compressedBytes = compressedOut.toByteArray();
+
+            assertArrayEquals(bytes, decompress(compressedBytes));
+            assertArrayEquals(bytes, LzmaUtil.decompress(compressedBytes));
+        }
+    }
+
+    public void testBlockCompression() throws IOException {
+        for (byte[] bytes : getSamples()) {
+            for (int threadCount = 1; threadCount <= 4; threadCount += 3) {
+                ByteArrayOutputStream compressedOut = new ByteArrayOutputStream();
+                LzmaUtil.compressBlocks(
+                        new ByteArrayInputStream(bytes), compressedOut, LzmaUtil.DEFAULT_DICTIONARY_SIZE, 10_000,
+                        threadCount
+                );
+                byte[] compressedBytes = compressedOut.toByteArray();
+
+                assertArrayEquals(bytes, decompress(compressedBytes));
+                assertArrayEquals(bytes, LzmaUtil.decompress(compressedBytes));
+            }
+        }
+    }
+
+    public void testChannelCompression() throws IOException {
+        byte[] bytes = StringUtils.repeat("Wrong answer on test 7\n", 5_000).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream compressedOut = new ByteArrayOutputStream();
+        LzmaUtil.compress(
+                Channels.newChannel(new ByteArrayInputStream(bytes)), Channels.newChannel(compressedOut),
+                LzmaUtil.DEFAULT_DICTIONARY_SIZE
+        );
+        assertTrue(compressedOut.size() < bytes.length / 50);
+
+        ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+        LzmaUtil.decompress(
+                Channels.newChannel(new ByteArrayInputStream(compressedOut.toByteArray())),
+                Channels.newChannel(plainOut)
+        );
+        assertArrayEquals(bytes, plainOut.toByteArray());
+    }
+
+    public void testByteArrayCompatibility() throws IOException {
+        for (byte[] bytes : getSamples()) {
+            byte[] compressedBytes = LzmaUtil.compress(bytes);
+            assertArrayEquals(bytes, LzmaUtil.decompress(compressedBytes));
+            assertArrayEquals(bytes, decompress(compressedBytes));
+        }
+    }
+
+    public void testMalformedData() throws IOException {
+        byte[] bytes = RandomUtil.getRandomBytes(50_000);
+
+        ByteArrayOutputStream compressedOut = new ByteArrayOutputStream();
+        LzmaUtil.compressBlocks(new ByteArrayInputStream(bytes), compressedOut, LzmaUtil.DEFAULT_DICTIONARY_SIZE,
+                10_000, 2);
+        byte[] compressedBytes = compressedOut.toByteArray();
+
+        try {
+            decompress(Arrays.copyOf(compressedBytes, compressedBytes.length - 4));
+            fail("Truncated block stream should be rejected.");
+        } catch (IOException ignored) {
+            // Expected.
+        }
+
+        try {
+            LzmaUtil.compress(new ByteArrayInputStream(bytes), new ByteArrayOutputStream(), 1);
+            fail("Too small dictionary should be rejected.");
+        } catch (IllegalArgumentException ignored) {
+            // Expected.
+        }
+    }
+
+    public void testExpectedSizeIsNotTrusted() throws IOException {
+        byte[] bytes = new byte[1_000_000];
+        byte[] compressedBytes = LzmaUtil.compress(bytes);
+        assertTrue(LzmaUtil.getExpectedSize(compressedBytes) <= 16 * compressedBytes.length);
+        assertArrayEquals(bytes, LzmaUtil.decompress(compressedBytes));
+
+        byte[] forgedBytes = Arrays.copyOf(LzmaUtil.compress(new byte[0]), 13);
+        Arrays.fill(forgedBytes, 5, 13, (byte) 0);
+        forgedBytes[8] = 0x10;
+        assertTrue(LzmaUtil.getExpectedSize(forgedBytes) <= 256);
+    }
+
+    private static byte[] decompress(byte[] compressedBytes) throws IOException {
+        ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+        LzmaUtil.decompress(new ByteArrayInputStream(compressedBytes), plainOut);
+        return plainOut.toByteArray();
+    }
+
+    private static byte[][] getSamples() {
+        return new byte[][]{
+                new byte[0],
+                {42},
+                StringUtils.repeat("Accepted\n", 10_000).getBytes(StandardCharsets.UTF_8),
+                RandomUtil.getRandomBytes(25_000),
+                RandomUtil.getRandomBytes(20_000)
+        };
+    }
+}
@@ -7,9 +7,18 @@ import com.codeforces.commons.math.RandomUtil;
 import com.google.common.primitives.Ints;
 import de.schlichtherle.truezip.file.TFile;
 import junit.framework.TestCase;
+import org.apache.commons.lang3.StringUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.Assert.assertArrayEquals;
 
@@ -41,6 +50,80 @@ public class ZipUtilTest extends TestCase {
                 plainBytes, ZipUtil.decompress(compressedBytes));
     }
 
+    public void testCompressDecompressOfSmallValues() throws Exception {
+        for (int size : new int[]{1, 17, 256, 4096, 100_000}) {
+            byte[] plainBytes = RandomUtil.getRandomBytes(size);
+            byte[] textBytes = StringUtils.repeat("codeforces ", size).getBytes(StandardCharsets.UTF_8);
+
+            for (int level = ZipUtil.MINIMAL_COMPRESSION_LEVEL; level <= ZipUtil.MAXIMAL_COMPRESSION_LEVEL; ++level) {
+                assertArrayEquals(plainBytes, ZipUtil.decompress(ZipUtil.compress(plainBytes, level)));
+                assertArrayEquals(textBytes, ZipUtil.decompress(ZipUtil.compress(textBytes, level)));
+                assertArrayEquals(textBytes, ZipUtil.decompress(compressByNewDeflater(textBytes, level)));
+            }
+        }
+
+        byte[] compressedBytes = ZipUtil.compress(RandomUtil.getRandomBytes(1000));
+        try {
+            ZipUtil.decompress(Arrays.copyOf(compressedBytes, compressedBytes.length / 2));
+            fail("Truncated data should not be decompressed.");
+        } catch (DataFormatException ignored) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Decompressed data exactly filling the initial buffer should not make the inflater wait for more output.
+     */
+    public void testDecompressionExactlyFillingBuffer() throws Exception {
+        byte[] textBytes = StringUtils.repeat("codeforces ", 1000).getBytes(StandardCharsets.UTF_8);
+        int exactFillCount = 0;
+
+        for (int size = 1; size <= textBytes.length; ++size) {
+            byte[] plainBytes = Arrays.copyOf(textBytes, size);
+            byte[] compressedBytes = ZipUtil.compress(plainBytes);
+
+            if (size == Math.max(ZipUtil.MIN_DECOMPRESSION_BUFFER_SIZE, 4 * compressedBytes.length)) {
+                assertArrayEquals(plainBytes, ZipUtil.decompress(compressedBytes));
+                ++exactFillCount;
+            }
+        }
+
+        assertTrue("No data exactly filling the buffer.", exactFillCount > 0);
+    }
+
+    /**
+     * Pooled deflaters are reset between calls, so they should compress exactly as a new deflater does.
+     */
+    public void testPooledCompressionOfSmallValues() throws Exception {
+        for (int pass = 0; pass < 2; ++pass) {
+            for (int i = 0; i < 1000; ++i) {
+                byte[] value = StringUtils.repeat("value" + i, 1 + i % 100).getBytes(StandardCharsets.UTF_8);
+                int level = i % (ZipUtil.MAXIMAL_COMPRESSION_LEVEL + 1);
+
+                byte[] compressedValue = ZipUtil.compress(value, level);
+                assertArrayEquals(compressByNewDeflater(value, level), compressedValue);
+                assertArrayEquals(value, ZipUtil.decompress(compressedValue));
+            }
+        }
+    }
+
+    private static byte[] compressByNewDeflater(byte[] bytes, int level) {
+        Deflater deflater = new Deflater();
+        deflater.setLevel(level);
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream(bytes.length);
+        byte[] buffer = new byte[IoUtil.BUFFER_SIZE];
+
+        while (!deflater.finished()) {
+            outputStream.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        deflater.end();
+        return outputStream.toByteArray();
+    }
+
     public void testZipUnzipAndZipRelatedFileUtilOperations() throws Exception {
         File fileDir = null;
         File fileCopyDir = null;
@@ -127,6 +210,172 @@ public class ZipUtilTest extends TestCase {
         }
     }
 
+    public void testParallelZip() throws Exception {
+        File fileDir = null;
+        File archiveDir = null;
+        File unpackedDir = null;
+        try {
+            String randomToken = RandomUtil.getRandomToken();
+            fileDir = FileUtil.createTemporaryDirectory("test-parallel-zip-files-" + randomToken);
+            archiveDir = FileUtil.createTemporaryDirectory("test-parallel-zip-archive-" + randomToken);
+
+            prepareFilesForTestZip(fileDir);
+            FileUtil.writeFile(new File(fileDir, "subdir/large.txt"), StringUtils.repeat(
+                    "Time limit exceeded on test 42\n", 600_000
+            ).getBytes(StandardCharsets.UTF_8));
+
+            for (int level : new int[]{ZipUtil.MINIMAL_COMPRESSION_LEVEL, ZipUtil.DEFAULT_COMPRESSION_LEVEL}) {
+                File singleThreadZipFile = new File(archiveDir, "single-" + level + ".zip");
+                File multiThreadZipFile = new File(archiveDir, "multi-" + level + ".zip");
+
+                ZipUtil.zip(fileDir, singleThreadZipFile, level, null, 1);
+                ZipUtil.zip(fileDir, multiThreadZipFile, level, null, 4);
+
+                assertTrue(
+                        "ZIP-archive depends on the number of threads.",
+                        FileUtil.equalsOrSameContent(singleThreadZipFile, multiThreadZipFile)
+                );
+
+                unpackedDir = FileUtil.createTemporaryDirectory("test-parallel-zip-unpacked-" + randomToken);
+                ZipUtil.unzip(multiThreadZipFile, unpackedDir);
+                assertTrue(
+                        "Unzipped directory does not equal to the original directory.",
+                        FileUtil.equalsOrSameContent(unpackedDir, fileDir)
+                );
+                FileUtil.deleteTotally(unpackedDir);
+
+                assertTrue(ZipUtil.isCorrectZipFile(multiThreadZipFile));
+                assertArrayEquals(
+                        FileUtil.getBytes(new File(fileDir, "subdir/large.txt")),
+                        ZipUtil.getZipEntryBytes(multiThreadZipFile, "subdir/large.txt")
+                );
+            }
+        } finally {
+            FileUtil.deleteTotally(fileDir);
+            FileUtil.deleteTotally(archiveDir);
+            FileUtil.deleteTotally(unpackedDir);
+        }
+    }
+
+    public void testParallelUnzipLimits() throws Exception {
+        File unpackedDir = null;
+        try {
+            unpackedDir = FileUtil.createTemporaryDirectory("test-parallel-unzip-" + RandomUtil.getRandomToken());
+
+            byte[] textBytes = StringUtils.repeat("Runtime error on test 3\n", 1000).getBytes(StandardCharsets.UTF_8);
+            byte[] zipBytes = zipEntry("text.txt", textBytes, ZipEntry.DEFLATED);
+
+            for (int threadCount = 1; threadCount <= 4; threadCount += 3) {
+                ZipUtil.unzip(zipBytes, unpackedDir, null, threadCount);
+                assertArrayEquals(textBytes, FileUtil.getBytes(new File(unpackedDir, "text.txt")));
+            }
+
+            byte[] understatedZipBytes = zipBytes.clone();
+            setCentralDirectoryInt(understatedZipBytes, 24, textBytes.length - 1);
+            assertUnzipFails("Entry larger than declared should be rejected.", understatedZipBytes, unpackedDir);
+            assertFalse(new File(unpackedDir, "text.txt").exists());
+
+            byte[] storedZipBytes = zipEntry("stored.txt", textBytes, ZipEntry.STORED);
+            storedZipBytes[40 + "stored.txt".length()] ^= 1;
+            assertUnzipFails("Entry with wrong CRC should be rejected.", storedZipBytes, unpackedDir);
+
+            byte[] bombZipBytes = zipEntry("zeros", new byte[Ints.checkedCast(80L * FileUtil.BYTES_PER_MB)],
+                    ZipEntry.DEFLATED);
+            assertUnzipFails("Archive exceeding the expansion ratio should be rejected.", bombZipBytes, unpackedDir);
+        } finally {
+            FileUtil.deleteTotally(unpackedDir);
+        }
+    }
+
+    public void testParallelUnzipFailureStopsOtherEntries() throws Exception {
+        File unpackedDir = null;
+        try {
+            unpackedDir = FileUtil.createTemporaryDirectory("test-parallel-unzip-" + RandomUtil.getRandomToken());
+
+            byte[] bytes = RandomUtil.getRandomBytes(Ints.checkedCast(FileUtil.BYTES_PER_MB));
+            java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream();
+            try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+                zipOutputStream.putNextEntry(new ZipEntry("broken"));
+                zipOutputStream.write(getBytes("description"));
+                zipOutputStream.closeEntry();
+
+                for (int i = 0; i < 16; ++i) {
+                    zipOutputStream.putNextEntry(new ZipEntry("file" + i));
+                    zipOutputStream.write(bytes);
+                    zipOutputStream.closeEntry();
+                }
+            }
+
+            byte[] zipBytes = outputStream.toByteArray();
+            int centralDirectoryOffset = ByteBuffer.wrap(zipBytes, zipBytes.length - 6, 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).getInt();
+            zipBytes[centralDirectoryOffset + 16] ^= 1;
+
+            for (int attempt = 0; attempt < 3; ++attempt) {
+                try {
+                    ZipUtil.unzip(zipBytes, unpackedDir, null, 4);
+                    fail("Entry with wrong CRC should be rejected.");
+                } catch (IOException ignored) {
+                    // Expected.
+                }
+
+                String[] fileNames = unpackedDir.list();
+                assertNotNull(fileNames);
+                for (String fileName : fileNames) {
+                    assertFalse("broken".equals(fileName));
+                    assertArrayEquals("Entry is extracted partially: " + fileName,
+                            bytes, FileUtil.getBytes(new File(unpackedDir, fileName)));
+                }
+
+                Thread.sleep(100L);
+                assertEquals("Extraction continues after failure.",
+                        new HashSet<>(Arrays.asList(fileNames)), new HashSet<>(Arrays.asList(unpackedDir.list())));
+                FileUtil.cleanDirectory(unpackedDir);
+            }
+        } finally {
+            FileUtil.deleteTotally(unpackedDir);
+        }
+    }
+
+    private static void assertUnzipFails(String message, byte[] zipBytes, File destinationDirectory) {
+        try {
+            ZipUtil.unzip(zipBytes, destinationDirectory, null, 2);
+            fail(message);
+        } catch (IOException ignored) {
+            // Expected.
+        }
+    }
+
+    private static byte[] zipEntry(String name, byte[] bytes, int method) throws IOException {
+        java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(method);
+            if (method == ZipEntry.STORED) {
+                CRC32 crc32 = new CRC32();
+                crc32.update(bytes);
+                entry.setSize(bytes.length);
+                entry.setCrc(crc32.getValue());
+            }
+            zipOutputStream.putNextEntry(entry);
+            zipOutputStream.write(bytes);
+            zipOutputStream.closeEntry();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void setCentralDirectoryInt(byte[] zipBytes, int fieldOffset, int value) {
+        for (int i = zipBytes.length - 4; i >= 0; --i) {
+            if (zipBytes[i] == 0x50 && zipBytes[i + 1] == 0x4B && zipBytes[i + 2] == 0x01 && zipBytes[i + 3] == 0x02) {
+                for (int j = 0; j < 4; ++j) {
+                    zipBytes[i + fieldOffset + j] = (byte) (value >>> (8 * j));
+                }
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Central directory is not found.");
+    }
+
     public void testZipEntryManipulations() throws Exception {
         File fileDir = null;
         File archiveDir = null;
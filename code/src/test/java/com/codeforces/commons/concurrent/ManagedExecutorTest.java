@@ -0,0 +1,62 @@
+package com.codeforces.commons.concurrent;
+
+import com.codeforces.commons.process.ThreadUtil;
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ManagedExecutorTest extends TestCase {
+    public void testBoundsAndCounters() throws Exception {
+        ManagedExecutor executor = ExecutorUtil.newBlockingExecutor("ManagedExecutorTest", 2, 3);
+        assertEquals(ThreadUtil.isVirtualThreadSupported(), executor.isVirtual());
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        AtomicInteger maxActiveCount = new AtomicInteger();
+
+        for (int i = 0; i < 5; ++i) {
+            executor.execute(() -> {
+                maxActiveCount.accumulateAndGet(executor.getActiveTaskCount(), Math::max);
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        assertTrue(started.await(10L, TimeUnit.SECONDS));
+        assertEquals(2, executor.getActiveTaskCount());
+        assertEquals(3, executor.getQueuedTaskCount());
+
+        try {
+            executor.execute(() -> {
+            });
+            fail("Task should be rejected.");
+        } catch (RejectedExecutionException ignored) {
+            // Expected.
+        }
+        assertEquals(1L, executor.getRejectedTaskCount());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10L, TimeUnit.SECONDS));
+
+        assertEquals(5L, executor.getCompletedTaskCount());
+        assertEquals(0L, executor.getFailedTaskCount());
+        assertEquals(0, executor.getQueuedTaskCount());
+        assertTrue(maxActiveCount.get() <= 2);
+    }
+
+    public void testThreadNames() throws Exception {
+        ManagedExecutor executor = ExecutorUtil.newExecutor("ManagedExecutorTest#Thread", 1, 0);
+        String threadName = executor.submit(() -> Thread.currentThread().getName()).get(10L, TimeUnit.SECONDS);
+        assertEquals("ManagedExecutorTest#Thread-1", threadName);
+        assertFalse(executor.isVirtual());
+        ExecutorUtil.shutdownQuietly(executor);
+    }
+}
@@ -0,0 +1,157 @@
+package com.codeforces.commons.concurrent;
+
+import com.codeforces.commons.process.ThreadUtil;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RetryExecutorTest extends TestCase {
+    private static final ThreadUtil.ExecutionStrategy STRATEGY = new ThreadUtil.ExecutionStrategy(
+            10L, ThreadUtil.ExecutionStrategy.Type.LINEAR
+    );
+
+    public void testRetryUntilSuccess() throws Exception {
+        RetryExecutor retryExecutor = new RetryExecutor(5, STRATEGY);
+        AtomicInteger callCount = new AtomicInteger();
+
+        String result = retryExecutor.execute("RetryExecutorTest#success", () -> {
+            if (callCount.incrementAndGet() < 3) {
+                throw new IOException("Failure #" + callCount.get() + '.');
+            }
+            return "OK";
+        }).get(10L, TimeUnit.SECONDS);
+
+        assertEquals("OK", result);
+        assertEquals(3, callCount.get());
+        assertEquals(RetryExecutor.CircuitState.CLOSED, RetryExecutor.getCircuitState("RetryExecutorTest#success"));
+    }
+
+    public void testResultChecker() throws Exception {
+        RetryExecutor retryExecutor = new RetryExecutor(3, STRATEGY);
+        AtomicInteger callCount = new AtomicInteger();
+
+        int result = retryExecutor.execute(
+                "RetryExecutorTest#checker", callCount::incrementAndGet, value -> value > 5
+        ).get(10L, TimeUnit.SECONDS);
+
+        assertEquals("The last result should be returned.", 3, result);
+        assertEquals(3, callCount.get());
+    }
+
+    public void testCircuitBreaker() throws Exception {
+        String scope = "RetryExecutorTest#breaker";
+        RetryExecutor retryExecutor = new RetryExecutor(
+                2, STRATEGY, 0.0D, RetryExecutor.DEFAULT_RETRY_BUDGET_RATIO, 3, 200L,
+                ExecutorUtil.getSharedBlockingExecutor()
+        );
+        AtomicInteger callCount = new AtomicInteger();
+        ThreadUtil.Operation<String> failingOperation = () -> {
+            callCount.incrementAndGet();
+            throw new IOException("Failure.");
+        };
+
+        for (int i = 0; i < 3; ++i) {
+            assertFailure(retryExecutor, scope, failingOperation, IOException.class);
+        }
+        assertEquals(6, callCount.get());
+        assertEquals(RetryExecutor.CircuitState.OPEN, RetryExecutor.getCircuitState(scope));
+
+        assertFailure(retryExecutor, scope, failingOperation, RetryExecutor.CircuitOpenException.class);
+        assertEquals("Open circuit should reject calls without attempts.", 6, callCount.get());
+
+        ThreadUtil.sleep(300L);
+        assertEquals(RetryExecutor.CircuitState.HALF_OPEN, RetryExecutor.getCircuitState(scope));
+        assertEquals("OK", retryExecutor.execute(scope, () -> "OK").get(10L, TimeUnit.SECONDS));
+        assertEquals(RetryExecutor.CircuitState.CLOSED, RetryExecutor.getCircuitState(scope));
+    }
+
+    public void testLostTrialCall() throws Exception {
+        String scope = "RetryExecutorTest#lostTrial";
+        RetryExecutor retryExecutor = new RetryExecutor(
+                1, STRATEGY, 0.0D, RetryExecutor.DEFAULT_RETRY_BUDGET_RATIO, 1, 200L,
+                ExecutorUtil.getSharedBlockingExecutor()
+        );
+
+        assertFailure(retryExecutor, scope, () -> {
+            throw new IOException("Failure.");
+        }, IOException.class);
+        assertEquals(RetryExecutor.CircuitState.OPEN, RetryExecutor.getCircuitState(scope));
+
+        ThreadUtil.sleep(300L);
+        CompletableFuture<String> lostTrial = retryExecutor.executeAsync(scope, CompletableFuture::new, null);
+        assertFailure(retryExecutor, scope, () -> "OK", RetryExecutor.CircuitOpenException.class);
+
+        ThreadUtil.sleep(300L);
+        assertEquals("OK", retryExecutor.execute(scope, () -> "OK").get(10L, TimeUnit.SECONDS));
+        assertEquals(RetryExecutor.CircuitState.CLOSED, RetryExecutor.getCircuitState(scope));
+        assertFalse(lostTrial.isDone());
+    }
+
+    public void testIdleScopeEviction() throws Exception {
+        String scope = "RetryExecutorTest#idle";
+        String openScope = "RetryExecutorTest#idleOpen";
+        RetryExecutor retryExecutor = new RetryExecutor(
+                1, STRATEGY, 0.0D, RetryExecutor.DEFAULT_RETRY_BUDGET_RATIO, 1, TimeUnit.HOURS.toMillis(1L),
+                ExecutorUtil.getSharedBlockingExecutor()
+        );
+
+        assertEquals("OK", retryExecutor.execute(scope, () -> "OK").get(10L, TimeUnit.SECONDS));
+        assertFailure(retryExecutor, openScope, () -> {
+            throw new IOException("Failure.");
+        }, IOException.class);
+
+        RetryExecutor.evictIdleScopes(System.currentTimeMillis());
+        assertTrue(RetryExecutor.hasScopeState(scope));
+
+        RetryExecutor.evictIdleScopes(System.currentTimeMillis() + RetryExecutor.SCOPE_IDLE_LIFETIME_MILLIS);
+        assertFalse(RetryExecutor.hasScopeState(scope));
+        assertTrue("Open circuit should be kept.", RetryExecutor.hasScopeState(openScope));
+        assertEquals(RetryExecutor.CircuitState.OPEN, RetryExecutor.getCircuitState(openScope));
+    }
+
+    public void testRetryBudget() throws Exception {
+        String scope = "RetryExecutorTest#budget";
+        RetryExecutor retryExecutor = new RetryExecutor(
+                3, STRATEGY, 0.0D, 0.0D, 0, 1000L, ExecutorUtil.getSharedBlockingExecutor()
+        );
+        long initialBudget = RetryExecutor.getRetryBudget(scope);
+        AtomicInteger callCount = new AtomicInteger();
+
+        for (int i = 0; i < initialBudget; ++i) {
+            assertFailure(retryExecutor, scope, () -> {
+                callCount.incrementAndGet();
+                throw new IOException("Failure.");
+            }, IOException.class);
+        }
+
+        assertEquals("Retries should stop when the budget is exhausted.", 2 * initialBudget, callCount.get());
+        assertEquals(0L, RetryExecutor.getRetryBudget(scope));
+    }
+
+    public void testJitter() {
+        RetryExecutor retryExecutor = new RetryExecutor(
+                3, new ThreadUtil.ExecutionStrategy(1000L, ThreadUtil.ExecutionStrategy.Type.SQUARE), 0.5D,
+                0.0D, 0, 1000L, ExecutorUtil.getSharedBlockingExecutor()
+        );
+
+        for (int i = 0; i < 100; ++i) {
+            long delayTimeMillis = retryExecutor.getDelayTimeMillis(2);
+            assertTrue(delayTimeMillis > 2000L && delayTimeMillis <= 4000L);
+        }
+    }
+
+    private static void assertFailure(
+            RetryExecutor retryExecutor, String scope, ThreadUtil.Operation<String> operation,
+            Class<? extends Throwable> expectedClass) throws Exception {
+        try {
+            retryExecutor.execute(scope, operation).get(10L, TimeUnit.SECONDS);
+            fail("Operation should fail.");
+        } catch (ExecutionException e) {
+            assertEquals(expectedClass, e.getCause().getClass());
+        }
+    }
+}
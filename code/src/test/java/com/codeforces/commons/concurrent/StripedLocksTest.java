@@ -0,0 +1,82 @@
+package com.codeforces.commons.concurrent;
+
+import com.codeforces.commons.process.ThreadUtil;
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+public class StripedLocksTest extends TestCase {
+    public void testStripes() {
+        assertEquals(1, new StripedLocks(1).getStripeCount());
+        assertEquals(64, new StripedLocks(64).getStripeCount());
+        assertEquals(128, new StripedLocks(65).getStripeCount());
+
+        StripedLocks locks = new StripedLocks(16);
+        assertSame(locks.getReadWriteLock("a"), locks.getReadWriteLock(new String("a")));
+        assertSame(locks.getLock("a"), locks.getReadWriteLock("a").writeLock());
+        assertSame(locks.getStampedLock("a"), locks.getStampedLock("a"));
+    }
+
+    public void testContentionStatistics() throws Exception {
+        StripedLocks locks = new StripedLocks();
+        Lock lock = locks.getLock("key");
+
+        lock.lock();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = ThreadUtil.newThread("StripedLocksTest#Thread", () -> {
+            lock.lock();
+            lock.unlock();
+            acquired.countDown();
+        }, true);
+        thread.start();
+
+        while (locks.getContendedAcquisitionCount() == 0L) {
+            ThreadUtil.sleep(1L);
+        }
+        lock.unlock();
+
+        assertTrue(acquired.await(10L, TimeUnit.SECONDS));
+        assertEquals(2L, locks.getAcquisitionCount());
+        assertEquals(1L, locks.getContendedAcquisitionCount());
+    }
+
+    public void testOptimisticRead() {
+        StripedLocks locks = new StripedLocks();
+        AtomicLong value = new AtomicLong(1L);
+
+        assertEquals(Long.valueOf(1L), locks.readOptimistically("key", value::get));
+        assertEquals(0L, locks.getFailedOptimisticReadCount());
+
+        StampedLock stampedLock = locks.getStampedLock("key");
+        assertEquals(Long.valueOf(2L), locks.readOptimistically("key", () -> {
+            if (value.get() == 1L) {
+                long stamp = stampedLock.writeLock();
+                value.set(2L);
+                stampedLock.unlockWrite(stamp);
+            }
+            return value.get();
+        }));
+        assertEquals(2L, locks.getOptimisticReadCount());
+        assertEquals(1L, locks.getFailedOptimisticReadCount());
+    }
+
+    public void testWeakKeyLocks() {
+        WeakKeyLocks<String> locks = new WeakKeyLocks<>();
+        ReadWriteLock lock = locks.getReadWriteLock("a");
+        assertSame(lock, locks.getReadWriteLock("a"));
+        assertNotSame(lock, locks.getReadWriteLock("b"));
+
+        for (int i = 0; i < 100 && locks.size() > 1; ++i) {
+            System.gc();
+            ThreadUtil.sleep(10L);
+        }
+
+        assertEquals("Only the referenced lock should stay.", 1, locks.size());
+        assertSame(lock, locks.getReadWriteLock("a"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.codeforces.commons.io;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public class DeletionServiceTest extends TestCase {
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = FileUtil.createTemporaryDirectory(DeletionServiceTest.class.getSimpleName());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.deleteTotally(directory);
+        super.tearDown();
+    }
+
+    public void testDeleteAndClean() throws IOException {
+        File workspace = new File(directory, "workspace");
+        for (int i = 0; i < 100; ++i) {
+            FileUtil.writeFile(new File(workspace, "nested" + i % 7 + "/file" + i), "content" + i);
+        }
+        File single = new File(directory, "single");
+        FileUtil.writeFile(single, "single");
+
+        try (DeletionService service = new DeletionService(
+                "DeletionServiceTest#Thread", new File(directory, "journal"), 2, 3)) {
+            assertTrue(service.isJournaled());
+
+            service.delete(single);
+            assertFalse("Name should be free at once.", single.exists());
+
+            service.cleanDirectory(workspace, file -> !"nested0".equals(file.getName())
+                    && !"file7".equals(file.getName()));
+            assertTrue(service.awaitEmptyQueue(10000L));
+
+            File[] remaining = workspace.listFiles();
+            assertNotNull(remaining);
+            assertEquals(1, remaining.length);
+            assertEquals("nested0", remaining[0].getName());
+
+            // Rejected directories are cleaned recursively.
+            File[] nestedRemaining = remaining[0].listFiles();
+            assertNotNull(nestedRemaining);
+            assertEquals(1, nestedRemaining.length);
+            assertEquals("file7", nestedRemaining[0].getName());
+
+            File[] directoryFiles = directory.listFiles();
+            assertNotNull(directoryFiles);
+            for (File file : directoryFiles) {
+                assertFalse(file.getName().startsWith(DeletionService.TRASH_NAME_PREFIX));
+            }
+
+            assertEquals(7L + 14L, service.getDeletedCount());
+            assertEquals(0L, service.getFailedCount());
+            assertEquals(0, service.getQueueDepth());
+            assertEquals(0L, new File(directory, "journal").length());
+        }
+    }
+
+    public void testJournalResume() throws IOException {
+        File journalFile = new File(directory, "journal");
+        File trashFile = new File(directory, DeletionService.TRASH_NAME_PREFIX + "interrupted");
+        File deletedTrashFile = new File(directory, DeletionService.TRASH_NAME_PREFIX + "deleted");
+        FileUtil.writeFile(new File(trashFile, "file"), "content");
+        FileUtil.writeFile(deletedTrashFile, "content");
+
+        Files.write(journalFile.toPath(), (
+                '+' + trashFile.getAbsolutePath() + '\n'
+                        + '+' + deletedTrashFile.getAbsolutePath() + '\n'
+                        + '-' + deletedTrashFile.getAbsolutePath() + '\n'
+        ).getBytes(StandardCharsets.UTF_8));
+
+        try (DeletionService service = new DeletionService("DeletionServiceTest#Thread", journalFile, 1, 1)) {
+            assertTrue(service.awaitEmptyQueue(10000L));
+            assertFalse(trashFile.exists());
+            assertTrue("Completed deletions should not be repeated.", deletedTrashFile.exists());
+
+            try (DeletionService secondService = new DeletionService(
+                    "DeletionServiceTest#Thread", journalFile, 1, 1)) {
+                assertFalse("Locked journal should not be shared.", secondService.isJournaled());
+            }
+        }
+    }
+
+    public void testOnlyTrashIsReplayed() throws IOException {
+        File journalFile = new File(directory, "journal");
+        File regularFile = new File(directory, "regular");
+        FileUtil.writeFile(regularFile, "content");
+
+        Files.write(
+                journalFile.toPath(), ('+' + regularFile.getAbsolutePath() + '\n').getBytes(StandardCharsets.UTF_8)
+        );
+
+        try (DeletionService service = new DeletionService("DeletionServiceTest#Thread", journalFile, 1, 1)) {
+            assertTrue(service.isJournaled());
+            assertTrue(service.awaitEmptyQueue(10000L));
+            assertTrue("Only trash files should be deleted on replay.", regularFile.exists());
+            assertEquals(0L, journalFile.length());
+        }
+    }
+
+    public void testSharedJournalIsNotUsed() throws IOException {
+        File sharedDirectory = new File(directory, "shared");
+        File journalFile = new File(sharedDirectory, "journal");
+        File trashFile = new File(directory, DeletionService.TRASH_NAME_PREFIX + "planted");
+        FileUtil.writeFile(trashFile, "content");
+        FileUtil.writeFile(journalFile, '+' + trashFile.getAbsolutePath() + '\n');
+
+        if (!sharedDirectory.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        Files.setPosixFilePermissions(sharedDirectory.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+
+        try (DeletionService service = new DeletionService("DeletionServiceTest#Thread", journalFile, 1, 1)) {
+            assertFalse("Journal in a directory writable by others should not be used.", service.isJournaled());
+            assertTrue(service.awaitEmptyQueue(10000L));
+            assertTrue(trashFile.exists());
+        }
+    }
+
+    public void testPrivateJournalDirectory() throws IOException {
+        File journalFile = new File(directory, "private/journal");
+
+        try (DeletionService service = new DeletionService("DeletionServiceTest#Thread", journalFile, 1, 1)) {
+            assertTrue(service.isJournaled());
+        }
+
+        if (journalFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals(
+                    PosixFilePermissions.fromString("rwx------"),
+                    Files.getPosixFilePermissions(journalFile.getParentFile().toPath())
+            );
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.codeforces.commons.io;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+public class FileBackupTest extends TestCase {
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = FileUtil.createTemporaryDirectory(FileBackupTest.class.getSimpleName());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.deleteTotally(directory);
+        super.tearDown();
+    }
+
+    public void testCopy() throws IOException {
+        checkBackupAndRestore(FileBackup.SnapshotMode.COPY);
+    }
+
+    public void testClone() throws IOException {
+        checkBackupAndRestore(FileBackup.SnapshotMode.CLONE);
+    }
+
+    /**
+     * Files are replaced rather than modified in place, as required by the link mode.
+     */
+    public void testLink() throws IOException {
+        checkBackupAndRestore(FileBackup.SnapshotMode.LINK);
+    }
+
+    private void checkBackupAndRestore(FileBackup.SnapshotMode snapshotMode) throws IOException {
+        File workspace = new File(directory, "workspace");
+        File unchangedFile = writeFile(new File(workspace, "unchanged.txt"), "unchanged", true);
+        File changedFile = writeFile(new File(workspace, "nested/changed.txt"), "original", true);
+        File deletedFile = writeFile(new File(workspace, "nested/deleted.txt"), "deleted", true);
+        File singleFile = writeFile(new File(directory, "single.txt"), "single", true);
+        File absentFile = new File(directory, "absent.txt");
+
+        try (FileBackup backup = new FileBackup(new File(directory, "backup"), true, 2, snapshotMode)) {
+            backup.backup(workspace);
+            backup.backup(singleFile);
+            backup.backup(absentFile);
+
+            Object unchangedFileKey = getFileKey(unchangedFile);
+
+            Files.delete(changedFile.toPath());
+            writeFile(changedFile, "modified", false);
+            Files.delete(deletedFile.toPath());
+            File addedFile = writeFile(new File(workspace, "added/added.txt"), "added", false);
+            Files.delete(singleFile.toPath());
+            writeFile(singleFile, "changed", false);
+            writeFile(absentFile, "created", false);
+
+            backup.restoreAll();
+
+            assertEquals("unchanged", FileUtil.readFile(unchangedFile));
+            assertEquals("Unchanged file should not be rewritten.", unchangedFileKey, getFileKey(unchangedFile));
+            assertEquals("original", FileUtil.readFile(changedFile));
+            assertEquals("deleted", FileUtil.readFile(deletedFile));
+            assertFalse(addedFile.exists());
+            assertFalse(addedFile.getParentFile().exists());
+            assertEquals("single", FileUtil.readFile(singleFile));
+            assertFalse(absentFile.exists());
+
+            // The restored files are copies, so the next restore still has the original content.
+            Files.delete(changedFile.toPath());
+            writeFile(changedFile, "modified again", false);
+            backup.restoreAll();
+            assertEquals("original", FileUtil.readFile(changedFile));
+        }
+    }
+
+    public void testNestedBackups() throws IOException {
+        File workspace = new File(directory, "workspace");
+        File nestedDirectory = new File(workspace, "nested");
+        File nestedFile = writeFile(new File(nestedDirectory, "file.txt"), "first", true);
+
+        try (FileBackup backup = new FileBackup(new File(directory, "backup"), true, 2)) {
+            backup.backup(nestedFile);
+            Files.delete(nestedFile.toPath());
+            writeFile(nestedFile, "second", true);
+            for (int i = 0; i < 20; ++i) {
+                writeFile(new File(nestedDirectory, "other" + i + ".txt"), "other" + i, true);
+            }
+            backup.backup(workspace);
+
+            Files.delete(nestedFile.toPath());
+            writeFile(nestedFile, "modified", false);
+            FileUtil.deleteTotally(new File(nestedDirectory, "other0.txt"));
+
+            for (int i = 0; i < 3; ++i) {
+                backup.restoreAll();
+
+                assertEquals("Nested backup should be applied last.", "first", FileUtil.readFile(nestedFile));
+                for (int j = 0; j < 20; ++j) {
+                    assertEquals("other" + j, FileUtil.readFile(new File(nestedDirectory, "other" + j + ".txt")));
+                }
+            }
+        }
+    }
+
+    private static File writeFile(File file, String content, boolean old) throws IOException {
+        FileUtil.writeFile(file, content.getBytes(StandardCharsets.UTF_8));
+        if (old) {
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() - 60_000L));
+        }
+        return file;
+    }
+
+    private static Object getFileKey(File file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return attributes.fileKey();
+    }
+}
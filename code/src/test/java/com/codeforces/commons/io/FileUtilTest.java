@@ -6,13 +6,23 @@ import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import org.apache.commons.lang3.RandomUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.codeforces.commons.math.Math.abs;
 
@@ -142,6 +152,153 @@ public class FileUtilTest extends TestCase {
         assertSameFiles(binaryFile, targetFile);
     }
 
+    public void testCopyAndCompareDirectory() throws IOException {
+        File source = new File(directory, "source");
+        File nested = new File(source, "nested/deeper");
+        FileUtil.ensureDirectoryExists(nested);
+
+        long totalSize = 0L;
+        for (int i = 0; i < 20; ++i) {
+            File file = createFile(i == 0 ? 3 * 1024 * 1024 : 100 * i, i % 2 == 0);
+            File parent = i % 3 == 0 ? source : i % 3 == 1 ? nested.getParentFile() : nested;
+            totalSize += file.length();
+            assertTrue(file.renameTo(new File(parent, file.getName())));
+        }
+        FileUtil.ensureDirectoryExists(new File(source, "empty"));
+
+        File destination = new File(directory, "destination");
+        AtomicLong listenedSize = new AtomicLong();
+        AtomicInteger listenedFileCount = new AtomicInteger();
+        FileTreeListener listener = (file, byteCount) -> {
+            listenedSize.addAndGet(byteCount);
+            listenedFileCount.incrementAndGet();
+        };
+
+        assertEquals(totalSize, FileUtil.copyDirectory(source, destination, listener));
+        assertEquals(totalSize, listenedSize.get());
+        assertEquals(20, listenedFileCount.get());
+
+        assertTrue(FileUtil.equalsOrSameContent(source, destination));
+        assertTrue(FileUtil.equalsOrSameContent(source, destination));
+
+        File[] largeFiles = source.listFiles(file -> file.length() > 1024 * 1024);
+        assertNotNull(largeFiles);
+        File copiedLargeFile = new File(destination, largeFiles[0].getName());
+        byte[] bytes = FileUtil.getBytes(copiedLargeFile);
+        bytes[bytes.length - 1] ^= 1;
+        FileUtil.writeFile(copiedLargeFile, bytes);
+        assertFalse(FileUtil.equalsOrSameContent(source, destination));
+
+        bytes[bytes.length - 1] ^= 1;
+        FileUtil.writeFile(copiedLargeFile, bytes);
+        assertTrue(FileUtil.equalsOrSameContent(source, destination));
+
+        FileUtil.ensureDirectoryExists(new File(destination, "nested/extra"));
+        assertFalse(FileUtil.equalsOrSameContent(source, destination));
+    }
+
+    public void testCopyOntoLinks() throws IOException {
+        File source = createFile(1024, false);
+        File outsideFile = createFile(100, false);
+        byte[] outsideBytes = FileUtil.getBytes(outsideFile);
+
+        File symbolicLink = new File(directory, "symbolic-link");
+        File hardLink = new File(directory, "hard-link");
+        try {
+            Files.createSymbolicLink(symbolicLink.toPath(), outsideFile.toPath());
+            Files.createLink(hardLink.toPath(), outsideFile.toPath());
+        } catch (IOException | UnsupportedOperationException ignored) {
+            // Links are not supported by the file system.
+            return;
+        }
+
+        FileUtil.copyFile(source, symbolicLink);
+        assertFalse(Files.isSymbolicLink(symbolicLink.toPath()));
+        assertSameFiles(source, symbolicLink);
+        assertTrue(Arrays.equals(outsideBytes, FileUtil.getBytes(outsideFile)));
+
+        FileUtil.copyFile(source, hardLink);
+        assertSameFiles(source, hardLink);
+        assertTrue(Arrays.equals(outsideBytes, FileUtil.getBytes(outsideFile)));
+
+        File sourceDirectory = new File(directory, "source");
+        File destinationDirectory = new File(directory, "destination");
+        FileUtil.ensureDirectoryExists(sourceDirectory);
+        FileUtil.ensureDirectoryExists(destinationDirectory);
+        FileUtil.copyFile(source, new File(sourceDirectory, "file"));
+        FileUtil.copyFile(source, new File(sourceDirectory, "linked-file"));
+        Files.createSymbolicLink(new File(destinationDirectory, "file").toPath(), outsideFile.toPath());
+        Files.createLink(new File(destinationDirectory, "linked-file").toPath(), outsideFile.toPath());
+
+        FileUtil.copyDirectory(sourceDirectory, destinationDirectory, null);
+        assertSameFiles(source, new File(destinationDirectory, "file"));
+        assertSameFiles(source, new File(destinationDirectory, "linked-file"));
+        assertTrue(Arrays.equals(outsideBytes, FileUtil.getBytes(outsideFile)));
+    }
+
+    public void testChunkedAndMappedReading() throws IOException {
+        File file = createFile(1000003, true);
+        byte[] expectedBytes = FileUtil.getBytes(file);
+
+        ByteArrayOutputStream chunkedBytes = new ByteArrayOutputStream();
+        AtomicInteger chunkCount = new AtomicInteger();
+        FileUtil.forEachChunk(file, 65536, (position, chunk) -> {
+            assertEquals(chunkedBytes.size(), position);
+            assertTrue(chunk.remaining() == 65536 || position + chunk.remaining() == expectedBytes.length);
+            chunkCount.incrementAndGet();
+            copy(chunk, chunkedBytes);
+            return true;
+        });
+        assertEquals(16, chunkCount.get());
+        assertTrue(Arrays.equals(expectedBytes, chunkedBytes.toByteArray()));
+
+        ByteArrayOutputStream mappedBytes = new ByteArrayOutputStream();
+        List<ByteBuffer> regions = new ArrayList<>();
+        FileUtil.forEachMappedRegion(file, 300000, (position, region) -> {
+            assertEquals(mappedBytes.size(), position);
+            regions.add(region.duplicate());
+            copy(region, mappedBytes);
+            return true;
+        });
+        assertTrue(Arrays.equals(expectedBytes, mappedBytes.toByteArray()));
+
+        // Regions kept by the processor are still readable.
+        mappedBytes.reset();
+        for (ByteBuffer region : regions) {
+            copy(region, mappedBytes);
+        }
+        assertTrue(Arrays.equals(expectedBytes, mappedBytes.toByteArray()));
+
+        chunkCount.set(0);
+        FileUtil.forEachChunk(file, 1024, (position, chunk) -> chunkCount.incrementAndGet() < 3);
+        assertEquals(3, chunkCount.get());
+
+        FileUtil.forEachChunk(createFile(0, false), 1024, (position, chunk) -> {
+            fail("Empty file should have no chunks.");
+            return true;
+        });
+    }
+
+    public void testLines() throws IOException {
+        File file = new File(directory, "lines.txt");
+        FileUtil.writeFile(file, "first\nsecond\r\n\nlast");
+
+        try (Stream<String> lines = FileUtil.lines(file)) {
+            assertEquals(Arrays.asList("first", "second", "", "last"), lines.collect(Collectors.toList()));
+        }
+
+        FileUtil.writeFile(file, new byte[]{'a', (byte) 0xFF, '\n', 'b'});
+        try (Stream<String> lines = FileUtil.lines(file)) {
+            assertEquals(2L, lines.count());
+        }
+    }
+
+    private static void copy(ByteBuffer buffer, ByteArrayOutputStream output) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        output.write(bytes, 0, bytes.length);
+    }
+
     public void testFirstBytesConcat() {
         String lineSep = System.getProperty("line.separator");
 
@@ -0,0 +1,105 @@
+package com.codeforces.commons.rate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+    private static final long INTERVAL_MILLIS = 1000L;
+    private static final int MAX_RATE = 10;
+
+    @Test
+    public void testBurstIsLimitedByShortestLevel() {
+        RateLimiter limiter = new RateLimiter(INTERVAL_MILLIS, MAX_RATE);
+        long burst = RateLimiter.getEventCount(MAX_RATE, 0);
+        Assert.assertEquals(24L, burst);
+
+        long startTimeMillis = 1_000_000L;
+        for (int i = 0; i < burst; ++i) {
+            Assert.assertTrue("Event #" + i + " should be allowed.", limiter.tryAcquire("s", startTimeMillis));
+        }
+
+        Assert.assertFalse(limiter.tryAcquire("s", startTimeMillis));
+        Assert.assertTrue("Other session is independent.", limiter.tryAcquire("t", startTimeMillis));
+
+        // The first level refills one event per 1000 / 24 ms.
+        Assert.assertFalse(limiter.tryAcquire("s", startTimeMillis + 30L));
+        Assert.assertTrue(limiter.tryAcquire("s", startTimeMillis + 45L));
+    }
+
+    @Test
+    public void testLongTermRate() {
+        RateLimiter limiter = new RateLimiter(INTERVAL_MILLIS, MAX_RATE);
+
+        long startTimeMillis = 5_000_000L;
+        int allowedCount = 0;
+        int intervalCount = 100;
+
+        for (long time = startTimeMillis; time < startTimeMillis + intervalCount * INTERVAL_MILLIS; time += 5L) {
+            if (limiter.tryAcquire("s", time)) {
+                ++allowedCount;
+            }
+        }
+
+        // The last level allows its event count per 2^(LEVEL_COUNT - 1) intervals plus the initial burst.
+        long lastLevelEventCount = RateLimiter.getEventCount(MAX_RATE, RateLimiter.LEVEL_COUNT - 1);
+        long maxCount = lastLevelEventCount * (intervalCount / (1 << (RateLimiter.LEVEL_COUNT - 1)) + 1);
+        Assert.assertTrue("Too many events allowed: " + allowedCount + '.', allowedCount <= maxCount);
+        Assert.assertTrue("Too few events allowed: " + allowedCount + '.', allowedCount >= MAX_RATE * intervalCount * 0.95D);
+    }
+
+    @Test
+    public void testIdleSessionsExpire() {
+        RateLimiter limiter = new RateLimiter(INTERVAL_MILLIS, MAX_RATE);
+
+        for (int i = 0; i < 100; ++i) {
+            limiter.tryAcquire("s" + i, 0L);
+        }
+        Assert.assertEquals(100, limiter.getSessionCount());
+
+        long idleTimeMillis = INTERVAL_MILLIS << (RateLimiter.LEVEL_COUNT - 1);
+        for (int i = 0; i < 100; ++i) {
+            limiter.tryAcquire("active", idleTimeMillis + i);
+        }
+        Assert.assertEquals(1, limiter.getSessionCount());
+
+        for (int i = 0; i < RateLimiter.getEventCount(MAX_RATE, 0); ++i) {
+            Assert.assertTrue("Expired session starts from scratch.", limiter.tryAcquire("s0", idleTimeMillis));
+        }
+    }
+
+    @Test
+    public void testLargeRate() {
+        for (int maxRate : new int[]{4095, 4096, 100_000, Integer.MAX_VALUE}) {
+            RateLimiter limiter = new RateLimiter(INTERVAL_MILLIS, maxRate);
+            long burst = RateLimiter.getEventCount(maxRate, 0);
+
+            long startTimeMillis = 1_000_000L;
+            for (int i = 0; i < Math.min(burst, 1_000_000L); ++i) {
+                Assert.assertTrue("Event #" + i + " should be allowed.", limiter.tryAcquire("s", startTimeMillis));
+            }
+
+            if (burst <= 1_000_000L) {
+                Assert.assertFalse(limiter.tryAcquire("s", startTimeMillis));
+                Assert.assertTrue(limiter.tryAcquire("s", startTimeMillis + INTERVAL_MILLIS));
+            }
+        }
+
+        RateLimiter limiter = new RateLimiter(INTERVAL_MILLIS, 10_000);
+        long startTimeMillis = 5_000_000L;
+        int allowedCount = 0;
+        int intervalCount = 20;
+
+        for (long time = startTimeMillis; time < startTimeMillis + intervalCount * INTERVAL_MILLIS; ++time) {
+            for (int i = 0; i < 20; ++i) {
+                if (limiter.tryAcquire("s", time)) {
+                    ++allowedCount;
+                }
+            }
+        }
+
+        long lastLevelEventCount = RateLimiter.getEventCount(10_000, RateLimiter.LEVEL_COUNT - 1);
+        long maxCount = lastLevelEventCount * (intervalCount / (1 << (RateLimiter.LEVEL_COUNT - 1)) + 1);
+        Assert.assertTrue("Too many events allowed: " + allowedCount + '.', allowedCount <= maxCount);
+        Assert.assertTrue("Too few events allowed: " + allowedCount + '.', allowedCount >= 10_000 * intervalCount * 0.95D);
+    }
+}
@@ -0,0 +1,35 @@
+package com.codeforces.commons.rate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateUtilTest {
+    @Test
+    public void testSnapshot() {
+        RateUtil.setRestriction("RateUtilTest", 60_000L, 2);
+        RateUtil.setDeniedEventLogSamplingRate(0);
+
+        long burst = RateLimiter.getEventCount(2, 0);
+        for (int i = 0; i < burst + 3; ++i) {
+            Assert.assertEquals(i < burst, RateUtil.addEvent("RateUtilTest", "session"));
+        }
+        Assert.assertTrue(RateUtil.addEvent("RateUtilTest", "other"));
+
+        RateScopeSnapshot snapshot = RateUtil.getSnapshot("RateUtilTest");
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals(burst + 1, snapshot.getAllowedEventCount());
+        Assert.assertEquals(3L, snapshot.getDeniedEventCount());
+        Assert.assertEquals(2L, snapshot.getActiveSessionCount());
+        Assert.assertEquals(0L, snapshot.getEvictedSessionCount());
+
+        Assert.assertTrue(RateUtil.getSnapshot().containsKey("RateUtilTest"));
+        Assert.assertNull(RateUtil.getSnapshot("RateUtilTest#unknown"));
+
+        RateUtil.setDeniedEventLogSamplingRate(RateUtil.DEFAULT_DENIED_EVENT_LOG_SAMPLING_RATE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnknownScope() {
+        RateUtil.addEvent("RateUtilTest#unknown", "session");
+    }
+}
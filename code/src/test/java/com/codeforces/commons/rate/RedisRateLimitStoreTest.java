@@ -0,0 +1,240 @@
+package com.codeforces.commons.rate;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks {@link RedisRateLimitStore} replacing the script evaluation with a stub. The script itself is run
+ * only against a real Redis given by the system property {@value #REDIS_PROPERTY}.
+ */
+public class RedisRateLimitStoreTest {
+    private static final String REDIS_PROPERTY = "com.codeforces.commons.rate.redis";
+
+    @Test
+    public void testLeaseAvoidsRoundTrips() {
+        List<String> evaluatedKeys = new ArrayList<>();
+        RedisRateLimitStore store = new RedisRateLimitStore("localhost:1", 4) {
+            @Override
+            long evaluate(String key, List<String> arguments) {
+                evaluatedKeys.add(key);
+                Assert.assertEquals("4", arguments.get(1));
+                Assert.assertEquals(2 + 2 * RateLimiter.LEVEL_COUNT, arguments.size());
+                return 4L;
+            }
+        };
+
+        try {
+            for (int i = 0; i < 4; ++i) {
+                Assert.assertTrue(store.tryAcquire("scope", "session", 60_000L, 10));
+            }
+            Assert.assertEquals(1, evaluatedKeys.size());
+            Assert.assertEquals("rate:scope:session", evaluatedKeys.get(0));
+
+            Assert.assertTrue(store.tryAcquire("scope", "session", 60_000L, 10));
+            Assert.assertEquals("Lease is exhausted.", 2, evaluatedKeys.size());
+
+            Assert.assertTrue(store.tryAcquire("scope", "other", 60_000L, 10));
+            Assert.assertEquals("Leases are per session.", 3, evaluatedKeys.size());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testDenial() {
+        RedisRateLimitStore store = new RedisRateLimitStore("localhost:1", 1) {
+            @Override
+            long evaluate(String key, List<String> arguments) {
+                return 0L;
+            }
+        };
+
+        try {
+            Assert.assertFalse(store.tryAcquire("scope", "session", 1000L, 10));
+            Assert.assertEquals(0, store.getLeaseCount());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testFallbackToLocalStore() {
+        RedisRateLimitStore store = new RedisRateLimitStore("127.0.0.1:1");
+
+        try {
+            int allowedCount = 0;
+            for (int i = 0; i < 100; ++i) {
+                if (store.tryAcquire("scope", "session", 60_000L, 10)) {
+                    ++allowedCount;
+                }
+            }
+            Assert.assertEquals(RateLimiter.getEventCount(10, 0), allowedCount);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testBackoffAfterRedisFailure() {
+        AtomicInteger evaluationCount = new AtomicInteger();
+        RedisRateLimitStore store = new RedisRateLimitStore("localhost:1", 1) {
+            @Override
+            long evaluate(String key, List<String> arguments) {
+                evaluationCount.incrementAndGet();
+                throw new JedisConnectionException("Connection refused.");
+            }
+        };
+
+        try {
+            for (int i = 0; i < 10; ++i) {
+                Assert.assertTrue(store.tryAcquire("scope", "session", 60_000L, 10));
+            }
+            Assert.assertEquals("Redis is not used after a failure.", 1, evaluationCount.get());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testArguments() {
+        RedisRateLimitStore store = new RedisRateLimitStore("localhost:1", 4);
+
+        try {
+            long[][] restrictions = {
+                    {1000L, 10L}, {60_000L, 10L}, {1000L, 1L}, {1000L, 0L}, {7L, 3L}, {3_600_000L, 1000L}
+            };
+            for (long[] restriction : restrictions) {
+                long intervalMillis = restriction[0];
+                int maxRatePerInterval = (int) restriction[1];
+                List<String> arguments = store.getArguments(intervalMillis, maxRatePerInterval);
+
+                Assert.assertEquals(2 + 2 * RateLimiter.LEVEL_COUNT, arguments.size());
+                Assert.assertEquals(intervalMillis << (RateLimiter.LEVEL_COUNT - 1), Long.parseLong(arguments.get(0)));
+                Assert.assertEquals(4, Integer.parseInt(arguments.get(1)));
+
+                for (int level = 0; level < RateLimiter.LEVEL_COUNT; ++level) {
+                    long eventCount = RateLimiter.getEventCount(maxRatePerInterval, level);
+                    double emissionMillis = Double.parseDouble(arguments.get(2 * level + 2));
+                    double toleranceMillis = Double.parseDouble(arguments.get(2 * level + 3));
+
+                    Assert.assertEquals((double) (intervalMillis << level), emissionMillis * eventCount,
+                            1.0E-9D * (intervalMillis << level));
+                    Assert.assertEquals("Burst of level " + level + " differs from RateLimiter.",
+                            eventCount, (long) Math.floor(toleranceMillis / emissionMillis + 0.000001D) + 1L);
+                }
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Evaluates the script arithmetic with the arguments and compares the decisions with {@link RateLimiter}.
+     */
+    @Test
+    public void testArgumentsAgainstRateLimiter() {
+        RedisRateLimitStore store = new RedisRateLimitStore("localhost:1", 1);
+
+        try {
+            for (int maxRatePerInterval : new int[]{1, 10, 100}) {
+                long intervalMillis = 1000L;
+                List<String> arguments = store.getArguments(intervalMillis, maxRatePerInterval);
+                RateLimiter limiter = new RateLimiter(intervalMillis, maxRatePerInterval);
+                double[] theoreticalArrivalTimes = new double[RateLimiter.LEVEL_COUNT];
+
+                long startTimeMillis = 1_000_000L;
+                int scriptAllowedCount = 0;
+                int limiterAllowedCount = 0;
+
+                for (long time = startTimeMillis; time < startTimeMillis + 100L * intervalMillis; time += 3L) {
+                    for (int i = 0; i < (time == startTimeMillis ? 1000 : 1); ++i) {
+                        if (evaluateScript(arguments, theoreticalArrivalTimes, time) > 0L) {
+                            ++scriptAllowedCount;
+                        }
+                        if (limiter.tryAcquire("session", time)) {
+                            ++limiterAllowedCount;
+                        }
+                    }
+
+                    if (time == startTimeMillis) {
+                        Assert.assertEquals("Bursts differ.", limiterAllowedCount, scriptAllowedCount);
+                    }
+                }
+
+                Assert.assertEquals("Long-term rates differ.",
+                        limiterAllowedCount, scriptAllowedCount, 0.01D * limiterAllowedCount + 1.0D);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Same arithmetic as {@link RedisRateLimitStore#SCRIPT} for a session key which has not expired.
+     */
+    private static long evaluateScript(List<String> arguments, double[] theoreticalArrivalTimes, long nowMillis) {
+        double now = nowMillis * 1000.0D;
+        long requested = Long.parseLong(arguments.get(1));
+        long granted = requested;
+
+        for (int level = 0; level < RateLimiter.LEVEL_COUNT; ++level) {
+            double emission = Double.parseDouble(arguments.get(2 * level + 2)) * 1000.0D;
+            double tolerance = Double.parseDouble(arguments.get(2 * level + 3)) * 1000.0D;
+            double offset = Math.max(Math.max(theoreticalArrivalTimes[level], now) - now, 0.0D);
+
+            long available = (long) Math.floor((tolerance - offset) / emission + 0.000001D) + 1L;
+            if (available < 1L) {
+                return 0L;
+            }
+
+            if (requested > 1L) {
+                available = Math.max(1L, available / 2L);
+            }
+            granted = Math.min(granted, available);
+        }
+
+        for (int level = 0; level < RateLimiter.LEVEL_COUNT; ++level) {
+            double emission = Double.parseDouble(arguments.get(2 * level + 2)) * 1000.0D;
+            theoreticalArrivalTimes[level] = Math.floor(
+                    Math.max(theoreticalArrivalTimes[level], now) + granted * emission
+            );
+        }
+
+        return granted;
+    }
+
+    /**
+     * Runs the script against a real Redis, e.g. {@code -Dcom.codeforces.commons.rate.redis=127.0.0.1:6379}.
+     */
+    @Test
+    public void testScript() {
+        String hostAndPort = System.getProperty(REDIS_PROPERTY);
+        Assume.assumeTrue("Redis is not configured.", hostAndPort != null);
+
+        for (int leaseSize : new int[]{1, RedisRateLimitStore.DEFAULT_LEASE_SIZE}) {
+            RedisRateLimitStore store = new RedisRateLimitStore(hostAndPort, leaseSize);
+
+            try {
+                String session = "session" + leaseSize + '-' + System.nanoTime();
+                int allowedCount = 0;
+                for (int i = 0; i < 100; ++i) {
+                    if (store.tryAcquire("scope", session, 60_000L, 10)) {
+                        ++allowedCount;
+                    }
+                }
+                Assert.assertEquals(RateLimiter.getEventCount(10, 0), allowedCount);
+                Assert.assertTrue(
+                        "Sessions are independent.", store.tryAcquire("scope", "other" + session, 60_000L, 10)
+                );
+            } finally {
+                store.close();
+            }
+        }
+    }
+}